@@ -0,0 +1,168 @@
+package com.pluralsight.benchmarks;
+
+import com.pluralsight.FileManager;
+import com.pluralsight.LedgerEngine;
+import com.pluralsight.LedgerGenerator;
+import com.pluralsight.Screen;
+import com.pluralsight.Transactions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the hot paths of the ledger: loading the transaction file, writing a row to the report file,
+ * the custom search filter, the three custom search sorts and the home menu balance.
+ *
+ * Every ledger size gets its own generated file, "AllTransactions/bench{rows}-g{version}-s{seed}transactions.csv" in
+ * the folder the benchmarks run from. The file is made by the LedgerGenerator from a fixed seed the first time it is
+ * needed and reused afterwards, so results from different commits are measured on the same rows; the generator's
+ * VERSION and the seed are part of the name, so a file made by another generator or seed is never reused.
+ * "Reports/Report.txt" there is emptied before every iteration, so run them from a folder of their own.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar -rf json -rff results-$(git rev-parse --short HEAD).json
+ * java -jar target/benchmarks.jar -p rows=1000,100000 search
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class LedgerBenchmarks {
+
+    private static final long SEED = 20231030L;
+
+    /**
+     * A generated ledger of a given size, loaded into the list of transactions.
+     */
+    @State(Scope.Benchmark)
+    public static class Ledger {
+
+        @Param({"1000", "100000", "10000000"})
+        public int rows;
+
+        String name;
+        LedgerEngine engine;
+        // the middle 60% of the ledger's dates, generated ledgers span more years the more rows they have
+        LocalDate searchFrom;
+        LocalDate searchTo;
+        ArrayList<Transactions> searchResult;
+        Transactions sample;
+        private PrintStream console;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            // the application prints as it works, which would only measure the terminal
+            console = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            new File("AllTransactions").mkdirs();
+            new File("Reports").mkdirs();
+            name = "bench" + rows + "-g" + LedgerGenerator.VERSION + "-s" + SEED;
+            generate(new File("AllTransactions/" + name + Screen.FILE_NAME), rows);
+            engine = LedgerEngine.open(name);
+            engine.close();
+            engine.load();
+            List<Transactions> all = engine.transactions();
+            sample = all.get(0);
+            LocalDate first = sample.getDate();
+            long days = all.get(all.size() - 1).getDate().toEpochDay() - first.toEpochDay();
+            searchFrom = first.plusDays(days / 5);
+            searchTo = first.plusDays(days * 4 / 5);
+            searchResult = engine.search(searchFrom, searchTo, "", "", -50, 50);
+        }
+
+        @Setup(Level.Iteration)
+        public void emptyReport() throws IOException {
+            // printRowToReportFile appends a row on every call, so the report file is started over each iteration
+            // instead of growing for as long as the benchmarks run
+            new FileWriter("Reports/Report.txt").close();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            System.setOut(console);
+        }
+    }
+
+    @Benchmark
+    public int loadTransactions(Ledger ledger) throws IOException {
+        ledger.engine.unload();
+        ledger.engine.load();
+        return ledger.engine.transactions().size();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void printRowToReportFile(Ledger ledger) {
+        FileManager.printToReportFile(ledger.sample);
+    }
+
+    @Benchmark
+    public ArrayList<Transactions> customSearch(Ledger ledger) {
+        return ledger.engine.search(ledger.searchFrom, ledger.searchTo, "", "", -50, 50);
+    }
+
+    @Benchmark
+    public void sortByDate(Ledger ledger, Blackhole blackhole) throws IOException {
+        LedgerEngine.forEachSorted(ledger.searchResult, LedgerEngine.DATE_ORDER, blackhole::consume);
+    }
+
+    @Benchmark
+    public void sortByPrice(Ledger ledger, Blackhole blackhole) throws IOException {
+        LedgerEngine.forEachSorted(ledger.searchResult, LedgerEngine.PRICE_ORDER, blackhole::consume);
+    }
+
+    @Benchmark
+    public void sortByVendor(Ledger ledger, Blackhole blackhole) throws IOException {
+        LedgerEngine.forEachSorted(ledger.searchResult, LedgerEngine.VENDOR_ORDER, blackhole::consume);
+    }
+
+    /** The home menu balance as it used to be worked out: a sum over every row. */
+    @Benchmark
+    public double balanceSum(Ledger ledger) {
+        double sum = 0;
+        for (Transactions x : ledger.engine.transactions()) {
+            sum += x.getAmount();
+        }
+        return sum;
+    }
+
+    /** The home menu balance as it is now, kept up to date by the EventLog. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public double balanceEventLog(Ledger ledger) {
+        return ledger.engine.balance();
+    }
+
+    private static void generate(File file, int rows) throws IOException {
+        if (file.exists() && file.length() > 0) return;
+        try {
+            new LedgerGenerator(rows, SEED, 5000).write(file.toPath());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * The AmountQuantiles Class keeps a QuantileSketch of the transaction amounts of each month, one for deposits and one
+ * for payments (payments are kept as positive USD amounts). A question about a range of months is answered by merging
+ * the sketches of those months, without going back to the rows.
+ *
+ * A sketch can't take a value back out, so a month an edit or a delete took a row from is marked stale, and its
+ * sketches are built again from the month's rows as they are now (see EventLog.refreshQuantiles).
+ *
+ * Like the BalanceSeries, it is fed by the EventLog and kept in the EventLog snapshot.
+ */
+public class AmountQuantiles {
+
+    public static final int DEPOSITS = 0;
+    public static final int PAYMENTS = 1;
+    private final TreeMap<YearMonth, QuantileSketch[]> buckets = new TreeMap<>();
+    private final TreeSet<YearMonth> stale = new TreeSet<>();
+
+    /**
+     * Adds a transaction amount to its month.
+     * @param date The date of the transaction.
+     * @param amount The amount (positive for deposits, negative for payments).
+     */
+    public synchronized void add(LocalDate date, double amount) {
+        QuantileSketch[] bucket = buckets.computeIfAbsent(YearMonth.from(date), m -> new QuantileSketch[]{new QuantileSketch(), new QuantileSketch()});
+        bucket[amount >= 0 ? DEPOSITS : PAYMENTS].update(Math.abs(amount));
+    }
+
+    /**
+     * Merges the sketches of a range of months.
+     * @param from The first month.
+     * @param to The last month.
+     * @param side DEPOSITS or PAYMENTS.
+     * @return A new sketch covering every month of the range.
+     */
+    public synchronized QuantileSketch range(YearMonth from, YearMonth to, int side) {
+        QuantileSketch merged = new QuantileSketch();
+        if (from.isAfter(to)) return merged;
+        for (QuantileSketch[] bucket : buckets.subMap(from, true, to, true).values()) {
+            merged.merge(bucket[side]);
+        }
+        return merged;
+    }
+
+    /**
+     * Gets the months that have transactions in a range.
+     * @param from The first month.
+     * @param to The last month.
+     * @return The months, oldest first.
+     */
+    public synchronized Iterable<YearMonth> months(YearMonth from, YearMonth to) {
+        if (from.isAfter(to)) return List.of();
+        return new ArrayList<>(buckets.subMap(from, true, to, true).keySet());
+    }
+
+    /**
+     * Marks a month whose sketches still hold an amount that was edited or deleted.
+     * @param month The month.
+     */
+    public synchronized void markStale(YearMonth month) {
+        stale.add(month);
+    }
+
+    /**
+     * Gets the months marked stale in a range.
+     * @param from The first month.
+     * @param to The last month.
+     * @return The months, oldest first.
+     */
+    public synchronized Set<YearMonth> staleMonths(YearMonth from, YearMonth to) {
+        if (from.isAfter(to)) return Set.of();
+        return new TreeSet<>(stale.subSet(from, true, to, true));
+    }
+
+    /**
+     * Empties the bucket of a month before it is built again. The month stays stale until rebuilt is called, so a
+     * rebuild that fails halfway is started over.
+     * @param month The month.
+     */
+    public synchronized void clearMonth(YearMonth month) {
+        buckets.remove(month);
+    }
+
+    /**
+     * Marks a month as built again from its rows.
+     * @param month The month.
+     */
+    public synchronized void rebuilt(YearMonth month) {
+        stale.remove(month);
+    }
+
+    /**
+     * Empties every bucket.
+     */
+    public synchronized void clear() {
+        buckets.clear();
+        stale.clear();
+    }
+
+    /**
+     * Goes through every bucket (used to write the EventLog snapshot).
+     * @param consumer Gets the month and its serialized deposits and payments sketches, as "deposits|payments".
+     */
+    public synchronized void forEachBucket(BiConsumer<YearMonth, String> consumer) {
+        for (Map.Entry<YearMonth, QuantileSketch[]> e : buckets.entrySet()) {
+            consumer.accept(e.getKey(), e.getValue()[DEPOSITS].serialize() + "|" + e.getValue()[PAYMENTS].serialize());
+        }
+    }
+
+    /**
+     * Gets every month marked stale (used to write the EventLog snapshot).
+     * @return The months, oldest first.
+     */
+    public synchronized List<YearMonth> staleMonths() {
+        return new ArrayList<>(stale);
+    }
+
+    /**
+     * Restores a bucket written by forEachBucket.
+     * @param month The month.
+     * @param deposits The serialized deposits sketch.
+     * @param payments The serialized payments sketch.
+     */
+    public synchronized void restoreBucket(YearMonth month, String deposits, String payments) {
+        buckets.put(month, new QuantileSketch[]{QuantileSketch.deserialize(deposits), QuantileSketch.deserialize(payments)});
+    }
+}
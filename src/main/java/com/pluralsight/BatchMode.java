@@ -0,0 +1,502 @@
+package com.pluralsight;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Console;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The BatchMode Class runs ledger commands from the command line or a script file, without any
+ * prompts, colors or animations. Every result row is printed in the same date|time|description|vendor|amount
+ * format as the transaction files, and every command ends with a status line, so the output can be read by other programs.
+ *
+ * <pre>
+ * java com.pluralsight.Screen --batch --user hamza add now now Coffee Starbucks -3.50 ; report mtd
+ * java com.pluralsight.Screen --batch --user hamza --script commands.txt
+ * </pre>
+ *
+ * The user's password is checked like at the console login before anything runs. It is read from the LEDGER_PASSWORD
+ * environment variable if that is set, otherwise it is asked for on the terminal, or read from the first line of the
+ * standard input when there is no terminal.
+ *
+ * Commands (one per script line, or separated by a lone ";" on the command line):
+ * <ul>
+ *     <li>add DATE|now TIME|now DESCRIPTION VENDOR AMOUNT</li>
+ *     <li>rows [from=DATE] [to=DATE]</li>
+ *     <li>edit ID DATE|now TIME|now DESCRIPTION VENDOR AMOUNT</li>
+ *     <li>delete ID</li>
+ *     <li>compact</li>
+ *     <li>report all|deposits|payments|mtd|prevmonth|ytd|prevyear|duplicates|vendor NAME</li>
+ *     <li>search [from=DATE] [to=DATE] [desc=TEXT] [vendor=TEXT] [min=AMOUNT] [max=AMOUNT] [sort=date|price|vendor]</li>
+ *     <li>top [from=DATE] [to=DATE] [n=COUNT]</li>
+ *     <li>trend [from=DATE] [to=DATE] [view=D|W|M|POINTS]</li>
+ *     <li>quantiles [from=yyyy-MM] [to=yyyy-MM]</li>
+ *     <li>recurring</li>
+ *     <li>reconcile STATEMENT [days=N] [cents=N] [out=PREFIX]</li>
+ *     <li>balance</li>
+ *     <li>partitions</li>
+ *     <li>verify</li>
+ *     <li>metrics</li>
+ *     <li>export FILE</li>
+ * </ul>
+ * Status lines look like "ok|command|rows" or "error|command|message". An add that looks like a duplicate
+ * is recorded anyway, with a "duplicate|row" line before its status, and an add that goes over a budget
+ * limit prints an "alert|message" line. A vendor report that finds nothing prints "suggest|vendor" lines
+ * for the closest known vendors. metrics prints a "metric|name|type|values" line for every metric of this run
+ * (see Metrics). partitions prints a "partition|file|year|rows|first|last|deposits|payments|bytes|rawBytes" line for
+ * every year partition of the ledger (see LedgerPartitions), then a "compression|rawBytes|bytes|ratio" line.
+ * verify prints a "corrupt|end|row" line for every row that doesn't match its checksum (see LedgerChecksums), and
+ * rows that were quarantined when the ledger was opened are reported first as "quarantine|rows|truncatedBytes".
+ * Rows and events the EventLog could not read are reported first too, as "unreadable|events|rows", and budget rules
+ * it could not read as "unreadable-budgets|rules"; a ledger that
+ * can't be opened prints "error|open|message", and one whose snapshot can't be written when it is closed prints
+ * "error|close|message" (both make the exit status 1).
+ * rows prints every transaction of a date range as "row|id|date|time|description|vendor|amount", and the id is what
+ * edit and delete take (until the changes are settled into the transaction file, see LedgerEngine.close); they
+ * print the transaction as it was. compact drops the rows edits and deletes left behind in the partitions and reports
+ * how many (it also happens in the background).
+ */
+public class BatchMode {
+
+    // buffered and flushed at the end, so thousands of rows don't cost a system call each
+    private static final PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+
+    /**
+     * Runs batch mode.
+     *
+     * @param args The command line arguments, starting with "--batch".
+     * @return The exit code, 0 if every command worked and 1 otherwise.
+     */
+    public static int run(String[] args) {
+        try {
+            return runCommands(args);
+        } finally {
+            out.flush();
+        }
+    }
+
+    private static int runCommands(String[] args) {
+        String user = null;
+        String script = null;
+        List<String> commandArgs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--user") && i + 1 < args.length) {
+                user = args[++i];
+            } else if (args[i].equals("--script") && i + 1 < args.length) {
+                script = args[++i];
+            } else {
+                commandArgs.add(args[i]);
+            }
+        }
+        if (user == null) {
+            out.println("error|batch|missing --user NAME");
+            return 1;
+        }
+        // the same check as the console login, a ledger is only opened for its owner
+        String password = password(user);
+        boolean verified;
+        try {
+            verified = password != null && CredentialStore.verify(user, password);
+        } catch (RejectedExecutionException e) {
+            verified = false;
+        }
+        if (!verified) {
+            out.println("error|batch|wrong credentials for " + user);
+            return 1;
+        }
+        LedgerEngine ledger;
+        try {
+            ledger = LedgerEngine.open(user);
+        } catch (IOException e) {
+            out.println("error|open|" + e.getMessage());
+            return 1;
+        }
+        LedgerChecksums.Recovery recovery = ledger.recovery();
+        if (recovery != null && recovery.quarantined() > 0) {
+            out.println("quarantine|" + recovery.quarantined() + "|" + recovery.truncatedBytes());
+        }
+        EventLog.Recovery events = ledger.events();
+        if (events.unreadableEvents() > 0 || events.unreadableRows() > 0) {
+            out.println("unreadable|" + events.unreadableEvents() + "|" + events.unreadableRows());
+        }
+        if (events.unreadableRules() > 0) {
+            out.println("unreadable-budgets|" + events.unreadableRules());
+        }
+
+        boolean failed = false;
+        if (script != null) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(script))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+                    failed |= !execute(tokenize(line), ledger);
+                }
+            } catch (IOException e) {
+                out.println("error|script|" + e.getMessage());
+                failed = true;
+            }
+        }
+        List<String> command = new ArrayList<>();
+        for (String arg : commandArgs) {
+            if (arg.equals(";")) {
+                if (!command.isEmpty()) failed |= !execute(command, ledger);
+                command = new ArrayList<>();
+            } else {
+                command.add(arg);
+            }
+        }
+        if (!command.isEmpty()) failed |= !execute(command, ledger);
+        try {
+            ledger.close();
+        } catch (IOException e) {
+            out.println("error|close|" + e.getMessage());
+            failed = true;
+        }
+        return failed ? 1 : 0;
+    }
+
+    // from LEDGER_PASSWORD, or else asked on the terminal, or else the first line of the standard input
+    private static String password(String user) {
+        String password = System.getenv("LEDGER_PASSWORD");
+        if (password != null) return password;
+        Console console = System.console();
+        if (console != null) {
+            char[] typed = console.readPassword("Password for %s: ", user);
+            return typed == null ? null : new String(typed);
+        }
+        try {
+            return new BufferedReader(new InputStreamReader(System.in)).readLine();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Runs a single command and prints its rows and status line.
+     *
+     * @param command The command name followed by its arguments.
+     * @param ledger The user's ledger.
+     * @return true if the command worked.
+     */
+    public static boolean execute(List<String> command, LedgerEngine ledger) {
+        String verb = command.get(0).toLowerCase();
+        try {
+            switch (verb) {
+                case "add" -> {
+                    if (command.size() != 6) throw new IllegalArgumentException("usage: add DATE TIME DESCRIPTION VENDOR AMOUNT");
+                    Transactions transaction = transaction(command.subList(1, 6));
+                    LedgerEngine.AppendResult result = ledger.append(transaction);
+                    if (result.duplicate()) {
+                        out.println("duplicate|" + FileManager.formatTransaction(transaction));
+                    }
+                    for (String alert : result.alerts()) {
+                        out.println("alert|" + alert);
+                    }
+                    printRows(verb, List.of(transaction));
+                }
+                case "rows" -> rows(command, ledger);
+                case "edit" -> {
+                    if (command.size() != 7) throw new IllegalArgumentException("usage: edit ID DATE TIME DESCRIPTION VENDOR AMOUNT");
+                    printRows(verb, List.of(ledger.edit(Long.parseLong(command.get(1)), transaction(command.subList(2, 7)))));
+                }
+                case "delete" -> {
+                    if (command.size() != 2) throw new IllegalArgumentException("usage: delete ID");
+                    printRows(verb, List.of(ledger.delete(Long.parseLong(command.get(1)))));
+                }
+                case "compact" -> out.println("ok|compact|" + ledger.compact());
+                case "report" -> printRows(verb, report(command, ledger));
+                case "search" -> search(command, ledger);
+                case "top" -> top(command, ledger);
+                case "trend" -> trend(command, ledger);
+                case "quantiles" -> quantiles(command, ledger);
+                case "recurring" -> recurring(ledger);
+                case "reconcile" -> reconcile(command, ledger);
+                case "metrics" -> {
+                    for (Map.Entry<String, Metrics.Metric> metric : Metrics.all().entrySet()) {
+                        out.println("metric|" + metric.getKey() + "|" + metric.getValue().getClass().getSimpleName() + "|" + metric.getValue().describe());
+                    }
+                    out.println("ok|metrics|" + Metrics.all().size());
+                }
+                case "balance" -> {
+                    out.printf("balance|%.2f%n", ledger.balance());
+                    out.println("ok|balance|1");
+                }
+                case "partitions" -> {
+                    List<LedgerPartitions.Segment> segments = ledger.partitions();
+                    long bytes = 0;
+                    long rawBytes = 0;
+                    for (LedgerPartitions.Segment s : segments) {
+                        out.printf("partition|%s|%d|%d|%s|%s|%.2f|%.2f|%d|%d%n", s.file(), s.year(), s.rows(), s.first(), s.last(),
+                                s.deposits(), s.payments(), s.bytes(), s.rawBytes());
+                        bytes += s.bytes();
+                        rawBytes += s.rawBytes();
+                    }
+                    out.printf("compression|%d|%d|%.2f%n", rawBytes, bytes, bytes == 0 ? 1.0 : (double) rawBytes / bytes);
+                    out.println("ok|partitions|" + segments.size());
+                }
+                case "verify" -> {
+                    List<LedgerChecksums.Corrupt> corrupt = ledger.verify();
+                    for (LedgerChecksums.Corrupt c : corrupt) {
+                        out.println("corrupt|" + c.end() + "|" + c.line());
+                    }
+                    out.println("ok|verify|" + corrupt.size());
+                }
+                case "export" -> {
+                    if (command.size() != 2) throw new IllegalArgumentException("usage: export FILE");
+                    out.println("ok|export|" + ledger.export(command.get(1)));
+                }
+                default -> throw new IllegalArgumentException("unknown command");
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            out.println("error|" + verb + "|" + e.getMessage());
+            return false;
+        }
+    }
+
+    // DATE|now TIME|now DESCRIPTION VENDOR AMOUNT
+    private static Transactions transaction(List<String> words) {
+        LocalDate date = words.get(0).equalsIgnoreCase("now") ? LocalDate.now() : LocalDate.parse(words.get(0), Screen.DATE_FORMATTER);
+        LocalTime time = words.get(1).equalsIgnoreCase("now") ? LocalTime.now().withNano(0) : LocalTime.parse(words.get(1), Screen.TIME_FORMATTER);
+        return new Transactions(words.get(2), words.get(3), date, time, Double.parseDouble(words.get(4)));
+    }
+
+    private static void rows(List<String> command, LedgerEngine ledger) {
+        LocalDate from = LocalDate.of(1700, 1, 1);
+        LocalDate to = LocalDate.of(4000, 12, 31);
+        for (String criteria : command.subList(1, command.size())) {
+            String[] kv = criteria.split("=", 2);
+            if (kv.length != 2) throw new IllegalArgumentException("expected key=value but got " + criteria);
+            switch (kv[0].toLowerCase()) {
+                case "from" -> from = LocalDate.parse(kv[1], Screen.DATE_FORMATTER);
+                case "to" -> to = LocalDate.parse(kv[1], Screen.DATE_FORMATTER);
+                default -> throw new IllegalArgumentException("unknown criteria " + criteria);
+            }
+        }
+        List<Transactions> found = ledger.between(from, to);
+        StringBuilder sb = new StringBuilder();
+        for (Transactions x : found) {
+            sb.append("row|").append(x.getId()).append('|').append(FileManager.formatTransaction(x)).append('\n');
+        }
+        out.print(sb);
+        out.println("ok|rows|" + found.size());
+    }
+
+    private static List<Transactions> report(List<String> command, LedgerEngine ledger) {
+        if (command.size() < 2) throw new IllegalArgumentException("usage: report TYPE");
+        return switch (command.get(1).toLowerCase()) {
+            case "all" -> ledger.transactions();
+            case "deposits" -> ledger.deposits();
+            case "payments" -> ledger.payments();
+            case "mtd" -> ledger.monthToDate();
+            case "prevmonth" -> ledger.previousMonth();
+            case "ytd" -> ledger.yearToDate();
+            case "prevyear" -> ledger.previousYear();
+            case "duplicates" -> ledger.duplicates();
+            case "vendor" -> {
+                if (command.size() != 3) throw new IllegalArgumentException("usage: report vendor NAME");
+                List<Transactions> found = ledger.byVendor(command.get(2));
+                if (found.isEmpty()) {
+                    for (String suggestion : ledger.suggestVendors(command.get(2), 3)) out.println("suggest|" + suggestion);
+                }
+                yield found;
+            }
+            default -> throw new IllegalArgumentException("unknown report " + command.get(1));
+        };
+    }
+
+    private static void search(List<String> command, LedgerEngine ledger) throws IOException {
+        LocalDate from = LocalDate.of(1700, 1, 1);
+        LocalDate to = LocalDate.of(4000, 12, 31);
+        String description = "";
+        String vendor = "";
+        double min = Double.NEGATIVE_INFINITY;
+        double max = Double.POSITIVE_INFINITY;
+        Comparator<Transactions> order = null;
+        for (String criteria : command.subList(1, command.size())) {
+            int equals = criteria.indexOf('=');
+            if (equals < 0) throw new IllegalArgumentException("expected key=value but got " + criteria);
+            String value = criteria.substring(equals + 1);
+            switch (criteria.substring(0, equals).toLowerCase()) {
+                case "from" -> from = LocalDate.parse(value, Screen.DATE_FORMATTER);
+                case "to" -> to = LocalDate.parse(value, Screen.DATE_FORMATTER);
+                case "desc" -> description = value.toLowerCase();
+                case "vendor" -> vendor = value.toLowerCase();
+                case "min" -> min = Double.parseDouble(value);
+                case "max" -> max = Double.parseDouble(value);
+                case "sort" -> order = switch (value.toLowerCase()) {
+                    case "date" -> LedgerEngine.DATE_ORDER;
+                    case "price" -> LedgerEngine.PRICE_ORDER;
+                    case "vendor" -> LedgerEngine.VENDOR_ORDER;
+                    default -> throw new IllegalArgumentException("unknown sort " + value);
+                };
+                default -> throw new IllegalArgumentException("unknown criteria " + criteria);
+            }
+        }
+        if (order == null) {
+            printRows("search", ledger.search(from, to, description, vendor, min, max));
+            return;
+        }
+        // the matching rows go straight into the sort, big results are sorted on disk and printed as they come
+        // out of the merge
+        long found = ledger.searchSorted(from, to, description, vendor, min, max, order, x -> out.println(FileManager.formatTransaction(x)));
+        out.println("ok|search|" + found);
+    }
+
+    private static void top(List<String> command, LedgerEngine ledger) {
+        LocalDate from = LocalDate.of(1700, 1, 1);
+        LocalDate to = LocalDate.of(4000, 12, 31);
+        int n = 10;
+        for (String criteria : command.subList(1, command.size())) {
+            String[] kv = criteria.split("=", 2);
+            if (kv.length != 2) throw new IllegalArgumentException("expected key=value but got " + criteria);
+            switch (kv[0].toLowerCase()) {
+                case "from" -> from = LocalDate.parse(kv[1], Screen.DATE_FORMATTER);
+                case "to" -> to = LocalDate.parse(kv[1], Screen.DATE_FORMATTER);
+                case "n" -> n = Integer.parseInt(kv[1]);
+                default -> throw new IllegalArgumentException("unknown criteria " + criteria);
+            }
+        }
+        VendorAnalytics.Result result = ledger.topVendors(from, to, n);
+        for (SpaceSaving.Counter c : result.bySpend()) {
+            out.printf("spend|%s|%.2f|%.2f%n", c.key(), c.weight(), c.error());
+        }
+        for (SpaceSaving.Counter c : result.byFrequency()) {
+            out.printf("count|%s|%d|%d%n", c.key(), (long) c.weight(), (long) c.error());
+        }
+        out.println("exact|" + result.exact());
+        out.println("ok|top|" + (result.bySpend().size() + result.byFrequency().size()));
+    }
+
+    private static void trend(List<String> command, LedgerEngine ledger) {
+        LocalDate from = LocalDate.of(1700, 1, 1);
+        LocalDate to = LocalDate.of(4000, 12, 31);
+        String view = "D";
+        for (String criteria : command.subList(1, command.size())) {
+            String[] kv = criteria.split("=", 2);
+            if (kv.length != 2) throw new IllegalArgumentException("expected key=value but got " + criteria);
+            switch (kv[0].toLowerCase()) {
+                case "from" -> from = LocalDate.parse(kv[1], Screen.DATE_FORMATTER);
+                case "to" -> to = LocalDate.parse(kv[1], Screen.DATE_FORMATTER);
+                case "view" -> view = kv[1];
+                default -> throw new IllegalArgumentException("unknown criteria " + criteria);
+            }
+        }
+        List<BalanceSeries.Point> points = ledger.balanceTrend(from, to, view);
+        StringBuilder sb = new StringBuilder();
+        for (BalanceSeries.Point p : points) {
+            sb.append("trend|").append(p.date()).append('|').append(String.format("%.2f|%.2f", p.netFlow(), p.closingBalance())).append('\n');
+        }
+        out.print(sb);
+        out.println("ok|trend|" + points.size());
+    }
+
+    private static void quantiles(List<String> command, LedgerEngine ledger) {
+        YearMonth from = YearMonth.of(1700, 1);
+        YearMonth to = YearMonth.of(4000, 12);
+        for (String criteria : command.subList(1, command.size())) {
+            String[] kv = criteria.split("=", 2);
+            if (kv.length != 2) throw new IllegalArgumentException("expected key=value but got " + criteria);
+            switch (kv[0].toLowerCase()) {
+                case "from" -> from = YearMonth.parse(kv[1]);
+                case "to" -> to = YearMonth.parse(kv[1]);
+                default -> throw new IllegalArgumentException("unknown criteria " + criteria);
+            }
+        }
+        String[] sides = {"deposits", "payments"};
+        List<LedgerEngine.QuantileRow> rows = ledger.quantiles(from, to);
+        for (LedgerEngine.QuantileRow row : rows) {
+            QuantileSketch sketch = row.sketch();
+            out.printf("quantiles|%s|%s|%d|%.2f|%.2f|%.2f|%.2f%n", row.month() == null ? "all" : row.month(), sides[row.side()], sketch.count(),
+                    sketch.quantile(0.5), sketch.quantile(0.9), sketch.quantile(0.95), sketch.quantile(0.99));
+        }
+        out.println("ok|quantiles|" + rows.size());
+    }
+
+    private static void recurring(LedgerEngine ledger) {
+        List<RecurringDetector.Series> found = ledger.recurring();
+        for (RecurringDetector.Series s : found) {
+            out.printf("recurring|%s|%s|%d|%.2f|%s|%s%n", s.vendor(), s.cadence().name().toLowerCase(), s.occurrences(),
+                    s.typicalAmount(), s.lastDate(), s.nextDate());
+        }
+        out.println("ok|recurring|" + found.size());
+    }
+
+    private static void reconcile(List<String> command, LedgerEngine ledger) throws IOException {
+        if (command.size() < 2) throw new IllegalArgumentException("usage: reconcile STATEMENT [days=N] [cents=N] [out=PREFIX]");
+        int days = 3;
+        long cents = 0;
+        String prefix = "Reports/" + ledger.user().toLowerCase() + "-reconcile-";
+        for (String criteria : command.subList(2, command.size())) {
+            String[] kv = criteria.split("=", 2);
+            if (kv.length != 2) throw new IllegalArgumentException("expected key=value but got " + criteria);
+            switch (kv[0].toLowerCase()) {
+                case "days" -> days = Integer.parseInt(kv[1]);
+                case "cents" -> cents = Long.parseLong(kv[1]);
+                case "out" -> prefix = kv[1];
+                default -> throw new IllegalArgumentException("unknown criteria " + criteria);
+            }
+        }
+        Reconciler.Summary summary = ledger.reconcile(command.get(1), days, cents, prefix);
+        out.println("reconcile|matched|" + summary.matched() + "|" + prefix + "matched.csv");
+        out.println("reconcile|ledger-only|" + summary.ledgerOnly() + "|" + prefix + "ledger-only.csv");
+        out.println("reconcile|statement-only|" + summary.statementOnly() + "|" + prefix + "statement-only.csv");
+        out.println("ok|reconcile|3");
+    }
+
+    private static void printRows(String verb, List<Transactions> rows) {
+        StringBuilder sb = new StringBuilder();
+        for (Transactions x : rows) {
+            sb.append(FileManager.formatTransaction(x)).append('\n');
+            // printed a piece at a time, so a big report isn't held in memory twice
+            if (sb.length() >= 1 << 16) {
+                out.print(sb);
+                sb.setLength(0);
+            }
+        }
+        out.print(sb);
+        out.println("ok|" + verb + "|" + rows.size());
+    }
+
+    /**
+     * Splits a script line into words. Words can be wrapped in double quotes to keep spaces in them.
+     *
+     * @param line The script line.
+     * @return The words of the line.
+     */
+    public static List<String> tokenize(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean quoted = false;
+        boolean inWord = false;
+        for (char c : line.toCharArray()) {
+            if (c == '"') {
+                quoted = !quoted;
+                inWord = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inWord) words.add(word.toString());
+                word.setLength(0);
+                inWord = false;
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (inWord) words.add(word.toString());
+        return words;
+    }
+}
@@ -0,0 +1,253 @@
+package com.pluralsight;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * The BudgetAlerts Class watches spending limits, like "alert when monthly payments to PetroCo go over $500".
+ *
+ * Rules are read from "AllTransactions/budgets.csv", one per line as "user|vendor|period|limit", where user and vendor
+ * can be "*" for everyone and every vendor, and period is daily, weekly, monthly or yearly. Only payments count
+ * towards a limit.
+ *
+ * The EventLog hands every transaction in here as it is applied. Each (vendor, period) pair that has a rule keeps a
+ * running total per period, found with one lookup for the vendor and one for "*", so a transaction only costs the
+ * rules it touches. When a total goes over a limit, an alert is written to "AllTransactions/NAMEalerts.log" and
+ * shown by the menus. Replayed events only rebuild the totals, they don't alert again; and rows imported from the file
+ * only alert for the current period, so importing an old ledger doesn't raise an alert for every month of its past.
+ * The totals are kept in the EventLog snapshot.
+ *
+ * Nothing is printed here: rules that can't be read are counted by load, for the EventLog's Recovery, and an alert
+ * that could not be written to the alert log says so in its message.
+ */
+public class BudgetAlerts {
+
+    /**
+     * The length of time a limit applies to.
+     */
+    public enum Period {
+        DAILY, WEEKLY, MONTHLY, YEARLY;
+
+        LocalDate start(LocalDate date) {
+            return switch (this) {
+                case DAILY -> date;
+                case WEEKLY -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTHLY -> date.withDayOfMonth(1);
+                case YEARLY -> date.withDayOfYear(1);
+            };
+        }
+    }
+
+    public static final String RULES_FILE = "AllTransactions/budgets.csv";
+    private static final String ANY = "*";
+
+    // the running totals of one vendor (or "*") and period, shared by every limit on them
+    private static class Tracker {
+        final String vendor;
+        final Period period;
+        final List<Double> limits = new ArrayList<>();
+        final HashMap<LocalDate, Double> spent = new HashMap<>();
+
+        Tracker(String vendor, Period period) {
+            this.vendor = vendor;
+            this.period = period;
+        }
+    }
+
+    private final VendorCanonicalizer vendors;
+    private String name = "";
+    private final HashMap<String, List<Tracker>> trackers = new HashMap<>();
+    private final List<String> pending = new ArrayList<>();
+
+    /**
+     * @param vendors The vendors of the ledger, limits count every spelling of a vendor together.
+     */
+    public BudgetAlerts(VendorCanonicalizer vendors) {
+        this.vendors = vendors;
+    }
+
+    /**
+     * Loads the rules of a user, replacing any loaded before, and forgets every running total.
+     *
+     * @param userName The user's name, to pick their rules and alert log.
+     * @return The number of rules that could not be read and were skipped.
+     * @throws IOException if the rules file exists but can not be read.
+     */
+    public synchronized int load(String userName) throws IOException {
+        name = userName.toLowerCase();
+        trackers.clear();
+        pending.clear();
+        int unreadable = 0;
+        if (!new File(RULES_FILE).exists()) return unreadable;
+        try (BufferedReader reader = new BufferedReader(new FileReader(RULES_FILE))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) continue;
+                String[] t = line.split("\\|");
+                try {
+                    if (t.length != 4) throw new IllegalArgumentException();
+                    if (!t[0].trim().equals(ANY) && !t[0].trim().equalsIgnoreCase(name)) continue;
+                    String vendor = t[1].trim().equals(ANY) ? ANY : vendors.name(t[1]);
+                    Period period = Period.valueOf(t[2].trim().toUpperCase());
+                    double limit = Double.parseDouble(t[3].trim());
+                    tracker(vendor, period, true).limits.add(limit);
+                } catch (IllegalArgumentException e) {
+                    unreadable++;
+                }
+            }
+        }
+        return unreadable;
+    }
+
+    /**
+     * Adds a transaction to the running totals of the rules it touches.
+     *
+     * @param transaction The transaction.
+     * @param live false while replaying events that were already checked, so they don't alert again.
+     * @param imported true if the row came from the transaction file rather than being added here.
+     */
+    public synchronized void record(Transactions transaction, boolean live, boolean imported) {
+        double amount = transaction.getAmount();
+        if (amount >= 0 || trackers.isEmpty()) return;
+        LocalDate date = transaction.getDate();
+        for (String vendor : new String[]{vendors.name(transaction.getVendor()), ANY}) {
+            List<Tracker> touched = trackers.get(vendor);
+            if (touched == null) continue;
+            for (Tracker tracker : touched) {
+                LocalDate start = tracker.period.start(date);
+                double before = tracker.spent.getOrDefault(start, 0.0);
+                double after = before - amount;
+                tracker.spent.put(start, after);
+                if (!live || (imported && !start.equals(tracker.period.start(LocalDate.now())))) continue;
+                for (double limit : tracker.limits) {
+                    if (before <= limit && after > limit) alert(tracker, start, limit, after, transaction);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes a transaction back out of the running totals (it was deleted, or replaced by an edit).
+     *
+     * @param transaction The transaction as it was recorded.
+     */
+    public synchronized void unrecord(Transactions transaction) {
+        double amount = transaction.getAmount();
+        if (amount >= 0 || trackers.isEmpty()) return;
+        LocalDate date = transaction.getDate();
+        for (String vendor : new String[]{vendors.name(transaction.getVendor()), ANY}) {
+            List<Tracker> touched = trackers.get(vendor);
+            if (touched == null) continue;
+            for (Tracker tracker : touched) {
+                tracker.spent.computeIfPresent(tracker.period.start(date), (start, spent) -> spent + amount);
+            }
+        }
+    }
+
+    /**
+     * Gets the alerts raised since the last call.
+     * @return The alert messages, oldest first.
+     */
+    public synchronized List<String> takeAlerts() {
+        List<String> alerts = new ArrayList<>(pending);
+        pending.clear();
+        return alerts;
+    }
+
+    /**
+     * Prints alerts.
+     * @param alerts The alert messages.
+     */
+    public static void printAlerts(List<String> alerts) {
+        for (String alert : alerts) {
+            System.out.println(ConsoleColors.YELLOW_BOLD_BRIGHT + "💸BUDGET ALERT! " + alert + ConsoleColors.RESET);
+        }
+    }
+
+    /**
+     * Forgets every running total (the rules stay loaded).
+     */
+    public synchronized void clearTotals() {
+        for (List<Tracker> list : trackers.values()) {
+            for (Tracker tracker : list) tracker.spent.clear();
+        }
+    }
+
+    /**
+     * Describes which totals are being kept, so a snapshot taken with other rules can be told apart.
+     * @return The tracked "vendor/period" pairs, sorted and comma separated.
+     */
+    public synchronized String signature() {
+        TreeSet<String> pairs = new TreeSet<>();
+        for (List<Tracker> list : trackers.values()) {
+            for (Tracker tracker : list) pairs.add(tracker.vendor + "/" + tracker.period);
+        }
+        return String.join(",", pairs);
+    }
+
+    /**
+     * Goes through every running total (used to write the EventLog snapshot).
+     * @param consumer Gets "vendor|period|periodStart|spent" for each total.
+     */
+    public synchronized void forEachTotal(Consumer<String> consumer) {
+        for (List<Tracker> list : trackers.values()) {
+            for (Tracker tracker : list) {
+                for (Map.Entry<LocalDate, Double> e : tracker.spent.entrySet()) {
+                    consumer.accept(tracker.vendor + "|" + tracker.period + "|" + e.getKey() + "|" + e.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Restores a running total written by forEachTotal. Totals of rules that are no longer loaded are dropped.
+     * @param vendor The vendor key, or "*".
+     * @param period The period.
+     * @param start The first day of the period.
+     * @param spent The total spent in the period.
+     */
+    public synchronized void restoreTotal(String vendor, String period, LocalDate start, double spent) {
+        Tracker tracker = tracker(vendor, Period.valueOf(period), false);
+        if (tracker != null) tracker.spent.put(start, spent);
+    }
+
+    private Tracker tracker(String vendor, Period period, boolean create) {
+        List<Tracker> list = trackers.get(vendor);
+        if (list != null) {
+            for (Tracker tracker : list) {
+                if (tracker.period == period) return tracker;
+            }
+        }
+        if (!create) return null;
+        Tracker tracker = new Tracker(vendor, period);
+        trackers.computeIfAbsent(vendor, v -> new ArrayList<>()).add(tracker);
+        return tracker;
+    }
+
+    private void alert(Tracker tracker, LocalDate start, double limit, double spent, Transactions transaction) {
+        String who = tracker.vendor.equals(ANY) ? "ALL VENDORS" : transaction.getVendor().toUpperCase();
+        String message = String.format("%s PAYMENTS TO %s FOR THE PERIOD STARTING %s ARE $%.2f, OVER THE $%.2f LIMIT",
+                tracker.period, who, start, spent, limit);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter("AllTransactions/" + name + "alerts.log", true))) {
+            writer.write(LocalDate.now() + "|" + LocalTime.now().format(Screen.TIME_FORMATTER) + "|" + tracker.vendor + "|"
+                    + tracker.period + "|" + start + "|" + limit + "|" + spent + "|" + FileManager.formatTransaction(transaction) + "\n");
+        } catch (IOException e) {
+            message += " (IT COULD NOT BE SAVED TO THE ALERT LOG: " + e.getMessage() + ")";
+        }
+        pending.add(message);
+    }
+}
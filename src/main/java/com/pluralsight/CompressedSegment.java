@@ -0,0 +1,232 @@
+package com.pluralsight;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The CompressedSegment Class writes and reads the segments of years that are over (see LedgerPartitions) as
+ * blocks of about 64 KiB of rows, each compressed with Deflater on its own, followed by a block index.
+ * Every block in the index has its place in the file, its sizes, its row count and its first and last date, so a
+ * read only inflates the blocks that can have rows in its date range, and different blocks can be inflated by
+ * different threads.
+ *
+ * <pre>
+ * [block 1] ... [block n] [n] [offset|length|rawLength|rows|first|last] x n [index offset] [MAGIC]
+ * </pre>
+ */
+public class CompressedSegment {
+
+    private static final int MAGIC = 0x4C424C4B;
+    // raw bytes of rows per block, it can be tuned with -Dledger.partition.blockBytes
+    private static final int BLOCK_BYTES = Integer.getInteger("ledger.partition.blockBytes", 1 << 16);
+    private static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES;
+
+    private static final Metrics.Histogram DECODE = Metrics.histogram("ledger.partitions.decode");
+    private static final Metrics.Counter DECODED_BYTES = Metrics.counter("ledger.partitions.decodedBytes");
+    private static final Metrics.Counter WRITTEN_RAW_BYTES = Metrics.counter("ledger.partitions.writtenRawBytes");
+    private static final Metrics.Counter WRITTEN_BYTES = Metrics.counter("ledger.partitions.writtenBytes");
+    private static final LongAdder decodeNanos = new LongAdder();
+    // raw MB inflated per second spent inflating (per thread, blocks are inflated side by side)
+    private static final Metrics.Gauge DECODE_THROUGHPUT = Metrics.gauge("ledger.partitions.decodeMBps",
+            () -> decodeNanos.sum() == 0 ? 0 : DECODED_BYTES.getCount() * 1000 / decodeNanos.sum());
+
+    /**
+     * One block of a segment, as listed in its index.
+     * @param offset Where the block starts in the file.
+     * @param length The compressed size in bytes.
+     * @param rawLength The size of its rows in bytes.
+     * @param rows The number of rows.
+     * @param first The earliest date.
+     * @param last The latest date.
+     */
+    public record Block(long offset, int length, int rawLength, int rows, LocalDate first, LocalDate last) {
+        boolean overlaps(LocalDate from, LocalDate to) {
+            return !last.isBefore(from) && !first.isAfter(to);
+        }
+    }
+
+    /**
+     * Writes a compressed segment, one row at a time.
+     */
+    public static class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final Deflater deflater = new Deflater();
+        private final ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_BYTES + 1024);
+        private final byte[] buffer = new byte[BLOCK_BYTES];
+        private final List<Block> index = new ArrayList<>();
+        private long offset;
+        private long rawBytes;
+        private int rows;
+        private LocalDate first = LocalDate.MAX;
+        private LocalDate last = LocalDate.MIN;
+        private boolean closed;
+
+        /**
+         * @param path The file to write (it is replaced).
+         * @throws IOException if the file can not be created.
+         */
+        public Writer(Path path) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path.toFile()), 1 << 16));
+        }
+
+        /**
+         * Adds a row.
+         * @param row The row, without the line break.
+         * @param date The row's date.
+         * @throws IOException if a block could not be written.
+         */
+        public void add(String row, LocalDate date) throws IOException {
+            block.write(row.getBytes(StandardCharsets.UTF_8));
+            block.write('\n');
+            rows++;
+            if (date.isBefore(first)) first = date;
+            if (date.isAfter(last)) last = date;
+            if (block.size() >= BLOCK_BYTES) flushBlock();
+        }
+
+        /** @return The size of the rows written so far, before compression. */
+        public long rawBytes() {
+            return rawBytes + block.size();
+        }
+
+        /**
+         * Writes the last block and the index.
+         * @throws IOException if they could not be written.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                flushBlock();
+                long indexOffset = offset;
+                out.writeInt(index.size());
+                for (Block b : index) {
+                    out.writeLong(b.offset());
+                    out.writeInt(b.length());
+                    out.writeInt(b.rawLength());
+                    out.writeInt(b.rows());
+                    out.writeLong(b.first().toEpochDay());
+                    out.writeLong(b.last().toEpochDay());
+                }
+                out.writeLong(indexOffset);
+                out.writeInt(MAGIC);
+                WRITTEN_RAW_BYTES.add(rawBytes);
+                WRITTEN_BYTES.add(out.size());
+            } finally {
+                deflater.end();
+                out.close();
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (rows == 0) return;
+            byte[] raw = block.toByteArray();
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+                length += n;
+            }
+            index.add(new Block(offset, length, raw.length, rows, first, last));
+            offset += length;
+            rawBytes += raw.length;
+            block.reset();
+            rows = 0;
+            first = LocalDate.MAX;
+            last = LocalDate.MIN;
+        }
+    }
+
+    /**
+     * Reads the block index of a compressed segment.
+     * @param channel The segment file.
+     * @return The blocks, in the order they were written.
+     * @throws IOException if the file can not be read or is not a compressed segment.
+     */
+    public static List<Block> index(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer trailer = read(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+        long indexOffset = trailer.getLong();
+        if (trailer.getInt() != MAGIC) throw new IOException("not a compressed segment");
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                read(channel, indexOffset, (int) (size - TRAILER_BYTES - indexOffset)).array()));
+        int count = in.readInt();
+        List<Block> blocks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            blocks.add(new Block(in.readLong(), in.readInt(), in.readInt(), in.readInt(),
+                    LocalDate.ofEpochDay(in.readLong()), LocalDate.ofEpochDay(in.readLong())));
+        }
+        return blocks;
+    }
+
+    /**
+     * Inflates one block. Different blocks of the same channel can be inflated by different threads at once.
+     * @param channel The segment file.
+     * @param block The block.
+     * @return The rows of the block, without their line breaks.
+     * @throws IOException if the block can not be read or is damaged.
+     */
+    public static List<String> decode(FileChannel channel, Block block) throws IOException {
+        long start = System.nanoTime();
+        byte[] raw = new byte[block.rawLength()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(read(channel, block.offset(), block.length()).array());
+            int n = 0;
+            while (n < raw.length && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, n, raw.length - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += inflated;
+            }
+            if (n != raw.length) throw new IOException("damaged block at " + block.offset());
+        } catch (DataFormatException e) {
+            throw new IOException("damaged block at " + block.offset(), e);
+        } finally {
+            inflater.end();
+        }
+        List<String> rows = new ArrayList<>(block.rows());
+        int lineStart = 0;
+        for (int i = 0; i < raw.length; i++) {
+            if (raw[i] == '\n') {
+                rows.add(new String(raw, lineStart, i - lineStart, StandardCharsets.UTF_8));
+                lineStart = i + 1;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        DECODE.record(nanos);
+        decodeNanos.add(nanos);
+        DECODED_BYTES.add(raw.length);
+        return rows;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        if (position < 0 || length < 0) throw new IOException("not a compressed segment");
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("compressed segment cut short");
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
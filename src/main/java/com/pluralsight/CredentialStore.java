@@ -0,0 +1,172 @@
+package com.pluralsight;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The CredentialStore Class keeps the usernames and password hashes from users.csv in memory.
+ * The file is read once per run, lookups are O(1), and new users (or upgraded hashes) are appended safely.
+ * Password checks run on a small bounded worker pool, so a burst of logins can't take over the machine.
+ */
+public class CredentialStore {
+    private static final String CSV_FILE = "AllTransactions/users.csv";
+    private static final ConcurrentHashMap<String, String> credentials = new ConcurrentHashMap<>();
+    private static final Object fileLock = new Object();
+    private static volatile boolean loaded = false;
+
+    private static final int LOGIN_THREADS = Integer.getInteger("ledger.login.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int LOGIN_QUEUE = Integer.getInteger("ledger.login.queue", 64);
+    private static final long LOGIN_TIMEOUT_MS = Long.getLong("ledger.login.timeoutMs", 10_000);
+    private static final ThreadPoolExecutor loginPool = newLoginPool();
+
+    private static final Metrics.Histogram LOGIN = Metrics.histogram("login");
+    private static final Metrics.Counter LOGIN_FAILED = Metrics.counter("login.failed");
+    private static final Metrics.Counter LOGIN_REJECTED = Metrics.counter("login.rejected");
+
+    /**
+     * Loads users.csv into memory the first time it is called, every later call returns right away.
+     * If the file does not exist, it will be created. When a username shows up more than once,
+     * the last line wins (that is how upgraded hashes are stored).
+     */
+    public static void load() {
+        if (loaded) return;
+        synchronized (fileLock) {
+            if (loaded) return;
+            try {
+                new File(CSV_FILE).createNewFile();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            try (BufferedReader reader = new BufferedReader(new FileReader(CSV_FILE))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] data = line.split("\\|");
+                    if (data.length == 2) {
+                        credentials.put(data[0], data[1]);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            loaded = true;
+        }
+    }
+
+    /**
+     * Checks if a username is registered.
+     * @param username The username to look up.
+     * @return true if the user exists.
+     */
+    public static boolean contains(String username) {
+        load();
+        return credentials.containsKey(username);
+    }
+
+    /**
+     * Registers a new user with a PBKDF2 hash of their password and appends them to users.csv.
+     *
+     * @param username The username to register.
+     * @param password The plain text password.
+     * @return false if the username is already taken.
+     */
+    public static boolean register(String username, String password) {
+        load();
+        String hash = PasswordHashing.hashPassword(password);
+        if (credentials.putIfAbsent(username, hash) != null) {
+            return false;
+        }
+        append(username, hash);
+        return true;
+    }
+
+    /**
+     * Verifies a username and password on the login pool and records how long it took.
+     * Users still stored with the old Pig Latin Hash get their hash upgraded after a successful login.
+     *
+     * @param username The username entered by the user.
+     * @param password The password entered by the user.
+     * @return true if the credentials are correct.
+     * @throws RejectedExecutionException if the login pool is saturated.
+     */
+    public static boolean verify(String username, String password) {
+        load();
+        long start = System.nanoTime();
+        Future<Boolean> result;
+        try {
+            result = loginPool.submit(() -> {
+                String stored = credentials.get(username);
+                if (stored == null || !PasswordHashing.verifyPassword(password, stored)) {
+                    return false;
+                }
+                if (!PasswordHashing.isKdfHash(stored)) {
+                    String upgraded = PasswordHashing.hashPassword(password);
+                    if (credentials.replace(username, stored, upgraded)) {
+                        append(username, upgraded);
+                    }
+                }
+                return true;
+            });
+        } catch (RejectedExecutionException e) {
+            LOGIN_REJECTED.increment();
+            throw e;
+        }
+        try {
+            boolean matches = result.get(LOGIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (!matches) LOGIN_FAILED.increment();
+            return matches;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGIN_FAILED.increment();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            result.cancel(true);
+            LOGIN_FAILED.increment();
+            return false;
+        } finally {
+            LOGIN.recordSince(start);
+        }
+    }
+
+    /**
+     * Builds a one-line summary of the login latencies seen in this run (from the "login" histogram of the Metrics).
+     * @return The p50, p95, p99 and max latency in milliseconds, or a note if nobody logged in yet.
+     */
+    public static String latencySummary() {
+        if (LOGIN.getCount() == 0) return "Login latency: no logins recorded";
+        return String.format("Login latency over %d login(s): p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+                LOGIN.getCount(), LOGIN.getP50Millis(), LOGIN.getP95Millis(), LOGIN.getP99Millis(), LOGIN.getMaxMillis());
+    }
+
+    private static void append(String username, String hash) {
+        synchronized (fileLock) {
+            try (FileWriter writer = new FileWriter(CSV_FILE, true)) {
+                writer.append(username).append("|").append(hash).append("\n");
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor newLoginPool() {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(LOGIN_THREADS, LOGIN_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(LOGIN_QUEUE), runnable -> {
+                    Thread thread = new Thread(runnable, "ledger-login-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+}
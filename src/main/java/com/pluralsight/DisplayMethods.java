@@ -13,7 +13,7 @@ public class DisplayMethods {
         System.out.println(ConsoleColors.WHITE_UNDERLINED+ConsoleColors.WHITE_BOLD_BRIGHT+"DISPLAYING ALL OF YOUR RECORDED TRANSACTIONS: "+ConsoleColors.RESET);
         System.out.println(ConsoleColors.WHITE_UNDERLINED+"                    "+ConsoleColors.RESET);
         FileManager.printToReportFile("All Transactions");
-        for (Transactions x:Screen.transactions){
+        for (Transactions x:Screen.ledger.transactions()){
             FileManager.printToReportFile(x);
             x.print();
             counter++;
@@ -29,13 +29,10 @@ public class DisplayMethods {
         System.out.println(ConsoleColors.GREEN_UNDERLINED+ConsoleColors.GREEN_BOLD_BRIGHT+"DISPLAYING ALL OF YOUR RECORDED DEPOSITS: "+ConsoleColors.RESET);
         System.out.println(ConsoleColors.WHITE_UNDERLINED+"                    "+ConsoleColors.RESET);
         FileManager.printToReportFile("Deposits Only");
-        for (Transactions x:Screen.transactions){
-            if(x.isDeposit()){
-                FileManager.printToReportFile(x);
-                x.print();
-                counter++;
-            }
-
+        for (Transactions x:Screen.ledger.deposits()){
+            FileManager.printToReportFile(x);
+            x.print();
+            counter++;
         }
         if (counter==0) System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🫤NO RECORDED DEPOSIT TRANSACTION(S) AVAILABLE🫤"+ConsoleColors.RESET);
     }
@@ -48,13 +45,10 @@ public class DisplayMethods {
         System.out.println(ConsoleColors.RED_UNDERLINED+ConsoleColors.RED_BOLD_BRIGHT+"DISPLAYING ALL OF YOUR RECORDED PAYMENTS: "+ConsoleColors.RESET);
         System.out.println(ConsoleColors.WHITE_UNDERLINED+"                    "+ConsoleColors.RESET);
         FileManager.printToReportFile("Deposits Only");
-        for (Transactions x:Screen.transactions){
-            if(x.isPayment()){
-                FileManager.printToReportFile(x);
-                x.print();
-                counter++;
-            }
-
+        for (Transactions x:Screen.ledger.payments()){
+            FileManager.printToReportFile(x);
+            x.print();
+            counter++;
         }
         if (counter==0) System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🫤NO RECORDED PAYMENT TRANSACTION(S) AVAILABLE🫤"+ConsoleColors.RESET);
 
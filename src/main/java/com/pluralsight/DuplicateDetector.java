@@ -0,0 +1,306 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The DuplicateDetector Class notices transactions that were recorded more than once. Two transactions are suspected
+ * duplicates when they have the same date, time and amount (to the cent) and the same vendor once case, spaces and
+ * punctuation are ignored ("Fresh Mart" and "FRESHMART" are the same vendor here).
+ *
+ * Small ledgers keep every key in a HashMap, with the number of rows that share it. Once there are more than -Dledger.duplicates.exactLimit keys
+ * (1,000,000 by default) the keys move into a Bloom filter sized for four times that many rows at 10 bits each,
+ * a fraction of what the keys themselves take. A Bloom filter can only
+ * say "maybe seen", so every hit is verified against the real rows: right away for a single add, and in one pass at
+ * the end of a bulk load. Since two duplicates have the same date, a single add only looks at the rows of its day,
+ * which the LedgerEngine reads from the partition of that year (see verifyWith), not at the whole ledger.
+ *
+ * When the rows aren't in memory at all, a new transaction is checked against the keys of every row in the ledger,
+ * which the EventLog counts as rows come and go (see count). Each key keeps how many rows share it, so deleting or
+ * editing one of two copies leaves the other one's key. These counts move into a counting Bloom filter past the same
+ * limit, and only its hits read the rows of that day (see hasCopy). A snapshot doesn't keep them, so after a restart
+ * they are counted again from the transaction file the first time they are needed.
+ */
+public class DuplicateDetector {
+
+    private static final int EXACT_LIMIT = Integer.getInteger("ledger.duplicates.exactLimit", 1_000_000);
+    private static final int HASHES = 7;
+    // the keys of the rows in memory, and how many rows share each of them
+    private HashMap<String, Integer> exactKeys = new HashMap<>();
+    private BloomFilter bloom = null;
+    private final LinkedHashSet<Transactions> suspects = new LinkedHashSet<>();
+    private HashSet<String> bulkCandidates = null;
+    private final EventLog log;
+    // the rows of one day, none until a LedgerEngine says where to read them from
+    private volatile Function<LocalDate, List<Transactions>> rowsOn = date -> List.of();
+    // the keys of every row the EventLog has counted, exact up to EXACT_LIMIT keys (both guarded by the EventLog's lock)
+    private HashMap<String, Integer> ledgerKeys = new HashMap<>();
+    private CountingBloomFilter ledgerBloom = null;
+    // false while only the rows since the latest snapshot are counted
+    private boolean ledgerCounted = true;
+
+    /**
+     * @param log The EventLog of the ledger, which counts the keys of its rows.
+     */
+    public DuplicateDetector(EventLog log) {
+        this.log = log;
+    }
+
+    /**
+     * Checks a transaction that is entering the ledger and remembers it.
+     *
+     * @param transaction The transaction.
+     * @return true if it looks like a duplicate of an earlier transaction (during a bulk load the answer
+     * for Bloom filter hits comes from finishBulk instead, and this returns false).
+     */
+    public synchronized boolean check(Transactions transaction) {
+        String key = key(transaction);
+        if (bloom == null) {
+            if (exactKeys.merge(key, 1, Integer::sum) > 1) {
+                suspects.add(transaction);
+                return true;
+            }
+            if (exactKeys.size() > EXACT_LIMIT) switchToBloom();
+            return false;
+        }
+        if (!bloom.add(key)) {
+            return false;
+        }
+        if (bulkCandidates != null) {
+            bulkCandidates.add(key);
+            return false;
+        }
+        // the Bloom filter may be wrong, so look for a real earlier row with the same key
+        if (copyAmong(transaction, rowsOn.apply(transaction.getDate()))) {
+            suspects.add(transaction);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Looks for a copy of a transaction that is about to be added among the rows of the ledger, without keeping
+     * anything. The counted keys answer it, and the rows of its day are only read when the counting Bloom filter says
+     * "maybe".
+     * @param transaction The transaction, not counted by the EventLog yet.
+     * @return true if a row in the ledger has the same key.
+     * @throws IOException if the keys had to be counted again and the transaction file can not be read.
+     */
+    public boolean hasCopy(Transactions transaction) throws IOException {
+        String key = key(transaction);
+        synchronized (log) {
+            if (!ledgerCounted) log.countKeys();
+            if (ledgerBloom == null) return ledgerKeys.containsKey(key);
+            if (!ledgerBloom.mayContain(key)) return false;
+        }
+        return copyAmong(transaction, rowsOn.apply(transaction.getDate()));
+    }
+
+    /**
+     * Counts a row that entered the ledger, or takes one that left it back out. Only the EventLog calls this, with
+     * its lock held.
+     * @param transaction The row.
+     * @param sign 1 for a row that was added, -1 for one that was deleted or replaced by an edit.
+     */
+    void count(Transactions transaction, int sign) {
+        // uncounted rows are counted again from the transaction file anyway
+        if (!ledgerCounted) return;
+        String key = key(transaction);
+        if (ledgerBloom != null) {
+            if (sign > 0) ledgerBloom.add(key);
+            else ledgerBloom.remove(key);
+            return;
+        }
+        ledgerKeys.merge(key, sign, (a, b) -> a + b > 0 ? a + b : null);
+        if (ledgerKeys.size() > EXACT_LIMIT) {
+            ledgerBloom = new CountingBloomFilter(Math.max(ledgerKeys.size() * 4L, EXACT_LIMIT * 4L));
+            for (Map.Entry<String, Integer> e : ledgerKeys.entrySet()) {
+                for (int i = 0; i < e.getValue(); i++) ledgerBloom.add(e.getKey());
+            }
+            ledgerKeys = new HashMap<>();
+        }
+    }
+
+    /**
+     * Forgets the counted keys. Only the EventLog calls this, with its lock held.
+     * @param counted true if every row of the ledger will be counted from here, false if the rows before the
+     * snapshot won't be (they are then counted from the transaction file when hasCopy first needs them).
+     */
+    void resetCounts(boolean counted) {
+        ledgerKeys = new HashMap<>();
+        ledgerBloom = null;
+        ledgerCounted = counted;
+    }
+
+    // another row with the same key, skipping the transaction itself if it is among the rows
+    private static boolean copyAmong(Transactions transaction, List<Transactions> rows) {
+        String key = key(transaction);
+        for (Transactions x : rows) {
+            if (!sameRow(x, transaction) && key(x).equals(key)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sets where the rows of a day are read from when a single transaction is checked.
+     * @param rows Gets the rows of a day (it may return more rows, they are only compared by key).
+     */
+    public synchronized void verifyWith(Function<LocalDate, List<Transactions>> rows) {
+        rowsOn = rows;
+    }
+
+    /**
+     * Starts a bulk load: Bloom filter hits are only collected, and verified all at once by finishBulk.
+     */
+    public synchronized void startBulk() {
+        bulkCandidates = new HashSet<>();
+    }
+
+    /**
+     * Ends a bulk load by verifying the collected Bloom filter hits in one pass over the rows.
+     *
+     * @param rows Every row of the ledger, in the order they were loaded.
+     */
+    public synchronized void finishBulk(List<Transactions> rows) {
+        HashSet<String> candidates = bulkCandidates;
+        bulkCandidates = null;
+        if (candidates == null || candidates.isEmpty()) return;
+        HashMap<String, Integer> seen = new HashMap<>();
+        for (Transactions x : rows) {
+            String key = key(x);
+            if (candidates.contains(key) && seen.merge(key, 1, Integer::sum) > 1) {
+                suspects.add(x);
+            }
+        }
+    }
+
+    /**
+     * Gets the transactions suspected to be duplicates of an earlier transaction, in the order they were found.
+     * @return The suspected duplicates.
+     */
+    public synchronized List<Transactions> suspects() {
+        return new ArrayList<>(suspects);
+    }
+
+    /**
+     * Forgets a transaction that was deleted, or replaced by an edit.
+     * @param transaction The transaction.
+     */
+    public synchronized void forget(Transactions transaction) {
+        suspects.removeIf(x -> sameRow(x, transaction));
+        // a Bloom filter can't forget a key, but its hits are checked against the rows, which no longer have this one
+        if (bloom == null) exactKeys.computeIfPresent(key(transaction), (k, n) -> n > 1 ? n - 1 : null);
+    }
+
+    /**
+     * Forgets every key and suspect.
+     */
+    public synchronized void clear() {
+        exactKeys = new HashMap<>();
+        bloom = null;
+        bulkCandidates = null;
+        suspects.clear();
+    }
+
+    // the same row, even as two objects (an OffHeapLedger makes a new one every time a row is read)
+    private static boolean sameRow(Transactions a, Transactions b) {
+        return a == b || (a.getId() != 0 && a.getId() == b.getId());
+    }
+
+    /**
+     * The key two transactions must share to be suspected duplicates.
+     * @param transaction The transaction.
+     * @return date|time|vendor (letters and digits only, lower case)|amount in cents.
+     */
+    public static String key(Transactions transaction) {
+        return transaction.getDate() + "|" + transaction.getTime().format(Screen.TIME_FORMATTER) + "|"
+                + VendorCanonicalizer.reduce(transaction.getVendor()) + "|" + Math.round(transaction.getAmount() * 100);
+    }
+
+    private void switchToBloom() {
+        bloom = new BloomFilter(Math.max(exactKeys.size() * 4L, EXACT_LIMIT * 4L));
+        for (String key : exactKeys.keySet()) bloom.add(key);
+        exactKeys = new HashMap<>();
+    }
+
+    // the bit (or counter) positions of a key in a filter of a given size
+    private static long[] positions(String key, long size) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        long h2 = Long.rotateLeft(h * 0x9E3779B97F4A7C15L, 31) | 1;
+        long[] positions = new long[HASHES];
+        for (int i = 0; i < HASHES; i++) positions[i] = Math.floorMod(h + i * h2, size);
+        return positions;
+    }
+
+    /**
+     * A Bloom filter with about 1% false positives at its expected size (10 bits and 7 hashes per key).
+     */
+    private static class BloomFilter {
+        private final long[] bits;
+        private final long size;
+
+        BloomFilter(long expectedKeys) {
+            size = Math.max(64, expectedKeys * 10);
+            bits = new long[(int) ((size + 63) / 64)];
+        }
+
+        /**
+         * Adds a key.
+         * @return true if the key may have been added before.
+         */
+        boolean add(String key) {
+            boolean present = true;
+            for (long bit : positions(key, size)) {
+                long mask = 1L << bit;
+                int word = (int) (bit >>> 6);
+                if ((bits[word] & mask) == 0) {
+                    present = false;
+                    bits[word] |= mask;
+                }
+            }
+            return present;
+        }
+    }
+
+    /**
+     * A Bloom filter that can take keys back out, with a small counter in place of each bit (the same 10 counters
+     * and 7 hashes per key). A counter that reaches 255 stays there, since it no longer knows how many keys it holds.
+     */
+    private static class CountingBloomFilter {
+        private final byte[] counters;
+
+        CountingBloomFilter(long expectedKeys) {
+            counters = new byte[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(64, expectedKeys * 10))];
+        }
+
+        void add(String key) {
+            for (long i : positions(key, counters.length)) {
+                if (counters[(int) i] != (byte) 255) counters[(int) i]++;
+            }
+        }
+
+        void remove(String key) {
+            for (long i : positions(key, counters.length)) {
+                if (counters[(int) i] != (byte) 255 && counters[(int) i] != 0) counters[(int) i]--;
+            }
+        }
+
+        /** @return true if the key may be in the filter. */
+        boolean mayContain(String key) {
+            for (long i : positions(key, counters.length)) {
+                if (counters[(int) i] == 0) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,625 @@
+package com.pluralsight;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The EventLog Class keeps a sequenced log of every transaction that enters the ledger and the state derived from it
+ * (balance, row count, monthly and vendor rollups, vendors under their VendorCanonicalizer name).
+ *
+ * The daily net flows of the BalanceSeries, the monthly AmountQuantiles sketches and the BudgetAlerts running totals
+ * are kept in the snapshot too. The DuplicateDetector's count of every row's key is derived here as well, but
+ * it is as big as the ledger, so it is left out of the snapshot and counted again when it is first needed.
+ * Every LedgerEngine has an EventLog of its own, and that state belongs to it, so two open ledgers never share any.
+ *
+ * Every add is written to "AllTransactions/NAMEevents.log" as "offset|csvEnd|type|date|time|description|vendor|amount",
+ * where offset goes up by one for every event and csvEnd is the length of the transaction file once that row is in it.
+ * Rows that show up in the transaction file without an event (older files, or rows written by other programs)
+ * are logged as IMPORT events. Edits and deletes are logged as "offset|id|EDIT|old row|new row" and
+ * "offset|id|DELETE|old row", where id is where the changed row ends in the transaction file: the old row is taken
+ * back out of the derived state, the new one is put in, and the LedgerOverlay remembers the change until settle
+ * writes it into the transaction file. Every few events the derived state is compacted into "AllTransactions/NAMEsnapshot.csv"
+ * together with the offset it covers, so starting up only replays the events logged after the latest snapshot, and
+ * the log is emptied (events it still has from before a snapshot are skipped by their offset).
+ *
+ * The snapshot also keeps a checksum of the end of the transaction file it covers, and the last row of the log is
+ * compared with the row at the end of the file, so a transaction file that was replaced (by a shorter or a longer
+ * one) is noticed and read again from its first row.
+ *
+ * Nothing is printed here: errors are thrown, and the rows and events that could not be read are counted in the
+ * Recovery that recover returns, for the caller to show.
+ */
+public class EventLog {
+
+    /**
+     * What recovering the derived state found.
+     * @param unreadableEvents The number of events in the log that could not be read and were left out.
+     * @param unreadableRows The number of rows of the transaction file that could not be read and were left out.
+     * @param unreadableRules The number of budget rules that could not be read and were skipped (see BudgetAlerts).
+     * @param restarted true if the transaction file was replaced and was read again from its first row.
+     */
+    public record Recovery(long unreadableEvents, long unreadableRows, long unreadableRules, boolean restarted) { }
+
+    public static final String ADD = "ADD";
+    public static final String IMPORT = "IMPORT";
+    public static final String EDIT = "EDIT";
+    public static final String DELETE = "DELETE";
+    // the derived state of snapshots of older versions is missing something, so it is rebuilt (see rederive)
+    private static final int SNAPSHOT_VERSION = 9;
+    private static final int SNAPSHOT_EVERY = Integer.getInteger("ledger.snapshot.every", 1000);
+
+    private final String name;
+    private final LedgerChecksums checksums;
+    private final LedgerOverlay overlay = new LedgerOverlay();
+    private final BalanceSeries series = new BalanceSeries();
+    private final AmountQuantiles quantiles = new AmountQuantiles();
+    private final VendorCanonicalizer vendors = new VendorCanonicalizer();
+    private final BudgetAlerts budgets = new BudgetAlerts(vendors);
+    private final DuplicateDetector duplicates = new DuplicateDetector(this);
+    private long offset = 0;
+    private long csvOffset = 0;
+    // the checksum of the end of the transaction file the snapshot covers, see LedgerPartitions.tailChecksum
+    private long csvChecksum = 0;
+    // the row of the last add or import event, which must still be the row ending at csvOffset
+    private Transactions lastRow = null;
+    private int eventsSinceSnapshot = 0;
+    private long unreadableEvents = 0;
+    private long unreadableRows = 0;
+    private double balance = 0;
+    private long count = 0;
+    private final TreeMap<YearMonth, double[]> monthRollups = new TreeMap<>();
+    private final HashMap<String, double[]> vendorRollups = new HashMap<>();
+
+    /**
+     * Makes an empty EventLog for a user's ledger, recover() fills it in.
+     * @param userName The user's name to identify the user's files.
+     * @param checksums The checksums of the user's transaction file, new rows are checksummed before they are logged.
+     */
+    public EventLog(String userName, LedgerChecksums checksums) {
+        this.name = userName.toLowerCase();
+        this.checksums = checksums;
+    }
+
+    /**
+     * Rebuilds the derived state: loads the latest snapshot, replays only the events after it, then logs any rows
+     * that were added to the transaction file without an event.
+     * If the transaction file does not exist, it will be created.
+     *
+     * @return What was found.
+     * @throws IOException if the transaction file, the snapshot or the log can not be read or written.
+     */
+    public synchronized Recovery recover() throws IOException {
+        int unreadableRules = budgets.load(name);
+        reset();
+        unreadableEvents = 0;
+        unreadableRows = 0;
+        boolean restarted = false;
+        new File(ledgerPath()).createNewFile();
+        boolean stale = readSnapshot();
+        // the snapshot has every event up to its offset, a missing log only means there were none after it
+        new File(logPath()).createNewFile();
+        if (!snapshotMatchesLedger()) {
+            // the transaction file was replaced since the snapshot: start over from its first row
+            reset();
+            new FileWriter(logPath()).close();
+            restarted = true;
+        } else if (stale) {
+            rederive();
+        }
+        FileManager.readLinesFrom(logPath(), 0, (line, end) -> replay(line));
+        if (!lastRowMatchesLedger()) {
+            // the transaction file was replaced since the last logged row
+            reset();
+            new FileWriter(logPath()).close();
+            restarted = true;
+        }
+        importNewRows();
+        // a rebuilt snapshot is written again, so the next start doesn't rebuild it too
+        if (stale) snapshot();
+        return new Recovery(unreadableEvents, unreadableRows, unreadableRules, restarted);
+    }
+
+    /**
+     * Logs a transaction that was just appended to the transaction file.
+     *
+     * @param transaction The transaction that was added.
+     * @param csvEnd The length of the transaction file right after the row was written.
+     * @throws IOException if the event could not be written.
+     */
+    public synchronized void recordAdd(Transactions transaction, long csvEnd) throws IOException {
+        appendEvents(ADD, List.of(transaction), List.of(csvEnd));
+    }
+
+    /**
+     * Logs an edit or a delete of a row that is already in the log.
+     *
+     * @param id Where the row ends in the transaction file.
+     * @param before The row as it is now (its latest edit, if it was edited before).
+     * @param after The new version of the row, null to delete it.
+     * @throws IOException if the event could not be written.
+     */
+    public synchronized void recordChange(long id, Transactions before, Transactions after) throws IOException {
+        String type = after == null ? DELETE : EDIT;
+        String line = (offset + 1) + "|" + id + "|" + type + "|" + FileManager.formatTransaction(before)
+                + (after == null ? "" : "|" + FileManager.formatTransaction(after)) + "\n";
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(logPath(), true))) {
+            writer.write(line);
+        }
+        applyChange(offset + 1, id, before, after, true);
+        eventsSinceSnapshot++;
+        snapshotIfDue();
+    }
+
+    /**
+     * Logs every complete row of the transaction file past the last logged one as an IMPORT event.
+     * Only the bytes after the last logged row are read.
+     *
+     * @return The rows that were imported.
+     * @throws IOException if the transaction file or the log can not be accessed.
+     */
+    public synchronized List<Transactions> importNewRows() throws IOException {
+        List<Transactions> rows = new ArrayList<>();
+        List<Long> ends = new ArrayList<>();
+        long end = FileManager.readLinesFrom(ledgerPath(), csvOffset, (line, lineEnd) -> {
+            try {
+                Transactions row = FileManager.parseTransaction(line);
+                row.setId(lineEnd);
+                rows.add(row);
+                ends.add(lineEnd);
+            } catch (RuntimeException e) {
+                // LedgerChecksums quarantines it the next time the ledger is opened
+                unreadableRows++;
+            }
+        });
+        checksums.catchUp(end);
+        appendEvents(IMPORT, rows, ends);
+        csvOffset = Math.max(csvOffset, end);
+        return rows;
+    }
+
+    /**
+     * Settles the edits and deletes of the LedgerOverlay: the transaction file is written again (to a temporary file
+     * that is then moved in place) without its deleted rows and with its edited rows as their latest version, so the
+     * changes can leave the overlay and the snapshot, which is written right away. The derived state doesn't change,
+     * only where rows end: every row after the first changed one gets a new id, so whatever was built from the old
+     * ids (the partitions, the vendor index, the list of transactions) has to start over.
+     *
+     * @return false if there was nothing to settle.
+     * @throws IOException if the transaction file can not be read or written (it is left as it was then).
+     */
+    public synchronized boolean settle() throws IOException {
+        importNewRows();
+        if (overlay.size() == 0) return false;
+        Path ledger = Path.of(ledgerPath());
+        Path temp = Path.of(ledgerPath() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            FileManager.readLinesFrom(ledgerPath(), 0, csvOffset, (line, lineEnd) -> {
+                LedgerOverlay.Change change = overlay.get(lineEnd);
+                if (change != null && change.deleted()) return;
+                try {
+                    // rows that can't be read are copied as they are, like every row that wasn't changed
+                    writer.write(change == null ? line : FileManager.formatTransaction(change.replacement()));
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        long end = Files.size(temp);
+        // a row that is only partly written is kept as it is, for LedgerChecksums to look at
+        try (FileChannel from = FileChannel.open(ledger, StandardOpenOption.READ);
+             FileChannel to = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long position = csvOffset;
+            while (position < from.size()) position += from.transferTo(position, from.size() - position, to);
+            to.force(true);
+        }
+        Files.move(temp, ledger, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        csvOffset = end;
+        lastRow = null;
+        overlay.clear();
+        checksums.restart(end);
+        snapshot();
+        return true;
+    }
+
+    /**
+     * Writes a snapshot of the derived state and the offset it covers. The file is written to a temporary
+     * file first and then moved in place, so a crash never leaves a half written snapshot behind.
+     * @throws IOException if the snapshot could not be written (the log still has every event then).
+     */
+    public synchronized void snapshot() throws IOException {
+        Path target = Path.of(snapshotPath());
+        Path temp = Path.of(snapshotPath() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            writer.write("version|" + SNAPSHOT_VERSION + "\n");
+            writer.write("offset|" + offset + "\n");
+            writer.write("csvOffset|" + csvOffset + "\n");
+            writer.write("csvChecksum|" + LedgerPartitions.tailChecksum(Path.of(ledgerPath()), csvOffset) + "\n");
+            writer.write("balance|" + balance + "\n");
+            writer.write("count|" + count + "\n");
+            for (Map.Entry<YearMonth, double[]> e : monthRollups.entrySet()) {
+                double[] r = e.getValue();
+                writer.write("month|" + e.getKey() + "|" + r[0] + "|" + r[1] + "|" + (long) r[2] + "\n");
+            }
+            for (Map.Entry<String, double[]> e : vendorRollups.entrySet()) {
+                double[] r = e.getValue();
+                writer.write("vendor|" + e.getKey() + "|" + r[0] + "|" + (long) r[1] + "\n");
+            }
+            StringBuilder days = new StringBuilder();
+            series.forEachDay((day, flow) -> days.append("day|").append(day).append('|').append(flow).append('\n'));
+            writer.write(days.toString());
+            StringBuilder sketches = new StringBuilder();
+            quantiles.forEachBucket((month, bucket) -> sketches.append("kll|").append(month).append('|').append(bucket).append('\n'));
+            for (YearMonth month : quantiles.staleMonths()) sketches.append("kllStale|").append(month).append('\n');
+            writer.write(sketches.toString());
+            writer.write("budgets|" + budgets.signature() + "\n");
+            StringBuilder totals = new StringBuilder();
+            budgets.forEachTotal(total -> totals.append("budget|").append(total).append('\n'));
+            writer.write(totals.toString());
+            StringBuilder changes = new StringBuilder();
+            overlay.forEachChange(change -> changes.append("change|").append(change).append('\n'));
+            writer.write(changes.toString());
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        eventsSinceSnapshot = 0;
+        // every event so far is in the snapshot, so the log only has to keep the ones after it
+        new FileWriter(logPath()).close();
+    }
+
+    /** @return The sum of every transaction amount (the ledger value). */
+    public synchronized double balance() {
+        return balance;
+    }
+
+    /** @return The number of transactions in the ledger. */
+    public synchronized long count() {
+        return count;
+    }
+
+    /** @return The edits and deletes of the ledger. */
+    public LedgerOverlay overlay() {
+        return overlay;
+    }
+
+    /** @return The daily net flows of the ledger. */
+    public BalanceSeries balanceSeries() {
+        return series;
+    }
+
+    /** @return The monthly amount quantiles of the ledger. */
+    public AmountQuantiles quantiles() {
+        return quantiles;
+    }
+
+    /** @return The canonical vendors of the ledger. */
+    public VendorCanonicalizer vendors() {
+        return vendors;
+    }
+
+    /** @return The budget rules of the ledger's user and their running totals. */
+    public BudgetAlerts budgets() {
+        return budgets;
+    }
+
+    /** @return The duplicate keys of the ledger's rows. */
+    public DuplicateDetector duplicates() {
+        return duplicates;
+    }
+
+    /** @return The offset of the last event applied. */
+    public synchronized long offset() {
+        return offset;
+    }
+
+    /** @return The length of the transaction file covered by the log. */
+    public synchronized long csvOffset() {
+        return csvOffset;
+    }
+
+    /**
+     * Gets the totals for one month.
+     * @param month The month.
+     * @return The deposits total, the payments total and the number of transactions, all zero if there are none.
+     */
+    public synchronized double[] monthRollup(YearMonth month) {
+        double[] r = monthRollups.get(month);
+        return r == null ? new double[3] : r.clone();
+    }
+
+    /**
+     * Gets the totals for one vendor (under any of its spellings).
+     * @param vendor The vendor name.
+     * @return The sum of the amounts and the number of transactions, both zero if there are none.
+     */
+    public synchronized double[] vendorRollup(String vendor) {
+        VendorCanonicalizer.Vendor canonical = vendors.find(vendor);
+        double[] r = canonical == null ? null : vendorRollups.get(canonical.name());
+        return r == null ? new double[2] : r.clone();
+    }
+
+    private void appendEvents(String type, List<Transactions> rows, List<Long> csvEnds) throws IOException {
+        if (rows.isEmpty()) return;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rows.size(); i++) {
+            sb.append(offset + i + 1).append('|').append(csvEnds.get(i)).append('|').append(type).append('|')
+                    .append(FileManager.formatTransaction(rows.get(i))).append('\n');
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(logPath(), true))) {
+            writer.write(sb.toString());
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            apply(offset + 1, csvEnds.get(i), rows.get(i), type);
+        }
+        eventsSinceSnapshot += rows.size();
+        snapshotIfDue();
+    }
+
+    /**
+     * Builds the amount quantile sketches of the stale months of a range again, from the rows of those months as they
+     * are now. Rows past the last logged one are left out, they are added when they are imported.
+     *
+     * @param partitions The partitions of the transaction file, which read the rows with their edits and deletes.
+     * @param from The first month.
+     * @param to The last month.
+     * @throws IOException if the rows can not be read (the months stay stale then).
+     */
+    public synchronized void refreshQuantiles(LedgerPartitions partitions, YearMonth from, YearMonth to) throws IOException {
+        refresh(partitions, quantiles.staleMonths(from, to));
+    }
+
+    /**
+     * Builds the amount quantile sketches of every stale month again (see refreshQuantiles).
+     * @param partitions The partitions of the transaction file.
+     * @throws IOException if the rows can not be read (the months stay stale then).
+     */
+    public synchronized void refreshQuantiles(LedgerPartitions partitions) throws IOException {
+        refresh(partitions, quantiles.staleMonths());
+    }
+
+    private void refresh(LedgerPartitions partitions, Iterable<YearMonth> months) throws IOException {
+        for (YearMonth month : months) {
+            quantiles.clearMonth(month);
+            long logged = csvOffset;
+            partitions.forEach(month.atDay(1), month.atEndOfMonth(), x -> {
+                if (x.getId() <= logged) quantiles.add(x.getDate(), x.getAmount());
+            });
+            quantiles.rebuilt(month);
+        }
+    }
+
+    // the event that was just logged is kept either way, so a snapshot that can't be written now doesn't fail it: it
+    // is tried again after the next event, and LedgerEngine.close reports it if it still fails then
+    private void snapshotIfDue() {
+        if (eventsSinceSnapshot < SNAPSHOT_EVERY) return;
+        try {
+            snapshot();
+        } catch (IOException e) {
+            eventsSinceSnapshot = SNAPSHOT_EVERY - 1;
+        }
+    }
+
+    private void replay(String line) {
+        String[] tokens = line.split("\\|", 4);
+        try {
+            long eventOffset = Long.parseLong(tokens[0]);
+            if (eventOffset <= offset) return;
+            long csvEnd = Long.parseLong(tokens[1]);
+            switch (tokens[2]) {
+                case DELETE -> applyChange(eventOffset, csvEnd, FileManager.parseTransaction(tokens[3]), null, false);
+                case EDIT -> {
+                    // the old row is the first five fields, the new row the rest
+                    int split = -1;
+                    for (int i = 0; i < 5; i++) split = tokens[3].indexOf('|', split + 1);
+                    applyChange(eventOffset, csvEnd, FileManager.parseTransaction(tokens[3].substring(0, split)),
+                            FileManager.parseTransaction(tokens[3].substring(split + 1)), false);
+                }
+                default -> apply(eventOffset, csvEnd, FileManager.parseTransaction(tokens[3]), null);
+            }
+            eventsSinceSnapshot++;
+        } catch (RuntimeException e) {
+            unreadableEvents++;
+        }
+    }
+
+    /**
+     * Applies one event to the derived state.
+     * @param type ADD or IMPORT for a new event, null for one being replayed.
+     */
+    private void apply(long eventOffset, long csvEnd, Transactions transaction, String type) {
+        offset = eventOffset;
+        if (csvEnd >= csvOffset) lastRow = transaction;
+        csvOffset = Math.max(csvOffset, csvEnd);
+        add(transaction, 1);
+        quantiles.add(transaction.getDate(), transaction.getAmount());
+        budgets.record(transaction, type != null, IMPORT.equals(type));
+    }
+
+    /**
+     * Applies an edit or a delete to the derived state. The amount quantile sketches can't forget a value, so the
+     * month of the old row is marked stale and built again later (see refreshQuantiles).
+     * @param live false for an event being replayed.
+     */
+    private void applyChange(long eventOffset, long id, Transactions before, Transactions after, boolean live) {
+        offset = eventOffset;
+        overlay.put(id, before, after);
+        add(before, -1);
+        quantiles.markStale(YearMonth.from(before.getDate()));
+        budgets.unrecord(before);
+        if (after == null) return;
+        add(after, 1);
+        quantiles.add(after.getDate(), after.getAmount());
+        budgets.record(after, live, false);
+    }
+
+    // adds a row to the balance, the rollups and the daily flows, or takes it out of them with a sign of -1
+    private void add(Transactions transaction, int sign) {
+        double amount = transaction.getAmount();
+        balance += sign * amount;
+        count += sign;
+        double[] month = monthRollups.computeIfAbsent(YearMonth.from(transaction.getDate()), k -> new double[3]);
+        month[amount >= 0 ? 0 : 1] += sign * amount;
+        month[2] += sign;
+        double[] vendor = vendorRollups.computeIfAbsent(vendors.name(transaction.getVendor()), k -> new double[2]);
+        vendor[0] += sign * amount;
+        vendor[1] += sign;
+        series.add(transaction.getDate(), sign * amount);
+        duplicates.count(transaction, sign);
+    }
+
+    /**
+     * Reads the latest snapshot.
+     * @return true if its derived state is out of date and has to be rebuilt (see rederive).
+     */
+    private boolean readSnapshot() throws IOException {
+        if (!new File(snapshotPath()).exists()) return false;
+        try (BufferedReader reader = new BufferedReader(new FileReader(snapshotPath()))) {
+            String line;
+            int version = 1;
+            String signature = null;
+            while ((line = reader.readLine()) != null) {
+                String[] t = line.split("\\|");
+                switch (t[0]) {
+                    case "version" -> version = Integer.parseInt(t[1]);
+                    case "offset" -> offset = Long.parseLong(t[1]);
+                    case "csvOffset" -> csvOffset = Long.parseLong(t[1]);
+                    case "csvChecksum" -> csvChecksum = Long.parseLong(t[1]);
+                    case "balance" -> balance = Double.parseDouble(t[1]);
+                    case "count" -> count = Long.parseLong(t[1]);
+                    case "month" -> monthRollups.put(YearMonth.parse(t[1]),
+                            new double[]{Double.parseDouble(t[2]), Double.parseDouble(t[3]), Long.parseLong(t[4])});
+                    case "vendor" -> vendorRollups.merge(vendors.name(t[1]), new double[]{Double.parseDouble(t[2]), Long.parseLong(t[3])},
+                            (a, b) -> new double[]{a[0] + b[0], a[1] + b[1]});
+                    case "day" -> series.add(LocalDate.ofEpochDay(Long.parseLong(t[1])), Double.parseDouble(t[2]));
+                    case "kll" -> quantiles.restoreBucket(YearMonth.parse(t[1]), t[2], t[3]);
+                    case "kllStale" -> quantiles.markStale(YearMonth.parse(t[1]));
+                    case "budgets" -> signature = t.length > 1 ? t[1] : "";
+                    case "budget" -> budgets.restoreTotal(t[1], t[2], LocalDate.parse(t[3]), Double.parseDouble(t[4]));
+                    case "change" -> overlay.restoreChange(line.substring("change|".length()));
+                    default -> { }
+                }
+            }
+            // the duplicate keys of the rows it covers aren't in it
+            if (csvOffset > 0) duplicates.resetCounts(false);
+            // totals for rules that were added since the snapshot are missing too
+            return version != SNAPSHOT_VERSION || !budgets.signature().equals(signature);
+        } catch (RuntimeException e) {
+            // a snapshot we can't read is ignored, and the transaction file is read again from its first row
+            reset();
+            return false;
+        }
+    }
+
+    /**
+     * Rebuilds the derived state of a snapshot from the rows it covers. The events before the snapshot are no longer
+     * in the log, so its offsets and the edits and deletes in the LedgerOverlay are kept, and every row is counted as
+     * its latest version.
+     */
+    private void rederive() throws IOException {
+        clearDerived();
+        FileManager.readLinesFrom(ledgerPath(), 0, csvOffset, (line, end) -> {
+            Transactions row;
+            try {
+                row = FileManager.parseTransaction(line);
+            } catch (RuntimeException e) {
+                unreadableRows++;
+                return;
+            }
+            row.setId(end);
+            row = overlay.apply(row);
+            if (row == null) return;
+            add(row, 1);
+            quantiles.add(row.getDate(), row.getAmount());
+            budgets.record(row, false, false);
+        });
+    }
+
+    /**
+     * Counts the duplicate keys of every row of the ledger again, for the DuplicateDetector, when a snapshot left out
+     * the keys of the rows it covers.
+     * @throws IOException if the transaction file can not be read.
+     */
+    synchronized void countKeys() throws IOException {
+        duplicates.resetCounts(true);
+        FileManager.readLinesFrom(ledgerPath(), 0, csvOffset, (line, end) -> {
+            Transactions row;
+            try {
+                row = FileManager.parseTransaction(line);
+            } catch (RuntimeException e) {
+                return;
+            }
+            row.setId(end);
+            row = overlay.apply(row);
+            if (row != null) duplicates.count(row, 1);
+        });
+    }
+
+    // the end of the transaction file is still the one the snapshot covers
+    private boolean snapshotMatchesLedger() throws IOException {
+        if (csvOffset == 0) return true;
+        return new File(ledgerPath()).length() >= csvOffset
+                && LedgerPartitions.tailChecksum(Path.of(ledgerPath()), csvOffset) == csvChecksum;
+    }
+
+    // the row ending at csvOffset is still the last row that was logged
+    private boolean lastRowMatchesLedger() throws IOException {
+        if (lastRow == null) return true;
+        String line = FileManager.readLineEndingAt(ledgerPath(), csvOffset);
+        try {
+            return line != null && FileManager.formatTransaction(FileManager.parseTransaction(line)).equals(FileManager.formatTransaction(lastRow));
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private void reset() {
+        offset = 0;
+        csvOffset = 0;
+        csvChecksum = 0;
+        lastRow = null;
+        eventsSinceSnapshot = 0;
+        overlay.clear();
+        clearDerived();
+    }
+
+    private void clearDerived() {
+        balance = 0;
+        count = 0;
+        monthRollups.clear();
+        vendorRollups.clear();
+        series.clear();
+        duplicates.resetCounts(true);
+        quantiles.clear();
+        budgets.clearTotals();
+    }
+
+    private String ledgerPath() {
+        return "AllTransactions/" + name + Screen.FILE_NAME;
+    }
+
+    private String logPath() {
+        return "AllTransactions/" + name + "events.log";
+    }
+
+    private String snapshotPath() {
+        return "AllTransactions/" + name + "snapshot.csv";
+    }
+}
@@ -0,0 +1,227 @@
+package com.pluralsight;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * The ExternalSort Class sorts more items than fit in memory. Items are collected into runs of at most runSize items;
+ * each full run is sorted and written to a temporary file in a compact binary form. Reading the result merges every
+ * run at once (a k-way merge with a priority queue holding the next item of each run). When everything fits in one
+ * run nothing is written to disk at all. memoryRows tells how many items can be sorted in memory right now, which
+ * callers use both to pick between a plain in-memory sort and an ExternalSort, and as the run size.
+ *
+ * <pre>
+ * try (ExternalSort&lt;Row&gt; sort = new ExternalSort&lt;&gt;(order, codec, 1_000_000)) {
+ *     for (Row row : rows) sort.add(row);
+ *     Iterator&lt;Row&gt; sorted = sort.sorted();
+ * }
+ * </pre>
+ *
+ * @param <T> The type of the items.
+ */
+public class ExternalSort<T> implements AutoCloseable {
+
+    /** The default number of items per run, it can be tuned with -Dledger.sort.runRows. */
+    public static final int RUN_ROWS = Integer.getInteger("ledger.sort.runRows", 1_000_000);
+    private static final int BUFFER_BYTES = 1 << 20;
+    // -Dledger.sort.memoryRows fixes the in-memory limit instead of working it out from the free heap
+    private static final int MEMORY_ROWS = Integer.getInteger("ledger.sort.memoryRows", -1);
+    private static final int MIN_MEMORY_ROWS = 10_000;
+
+    /**
+     * Writes and reads items to and from a run file.
+     * @param <T> The type of the items.
+     */
+    public interface Codec<T> {
+        void write(DataOutput out, T item) throws IOException;
+
+        T read(DataInput in) throws IOException;
+
+        /**
+         * Writes a string as its length and UTF-8 bytes. Unlike writeUTF, which stops at 64 KB, any length works.
+         */
+        static void writeString(DataOutput out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        /** Reads a string written by writeString. */
+        static String readString(DataInput in) throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private final Comparator<T> order;
+    private final Codec<T> codec;
+    private final int runSize;
+    private final List<File> runs = new ArrayList<>();
+    private final List<DataInputStream> readers = new ArrayList<>();
+    private ArrayList<T> buffer = new ArrayList<>();
+    private long size = 0;
+
+    /**
+     * Makes an empty sort.
+     * @param order The order to sort the items in.
+     * @param codec How items are written to the run files.
+     * @param runSize The most items kept in memory before a run is written to disk.
+     */
+    public ExternalSort(Comparator<T> order, Codec<T> codec, int runSize) {
+        this.order = order;
+        this.codec = codec;
+        this.runSize = Math.max(1, runSize);
+    }
+
+    /**
+     * Works out how many items can be sorted in memory: a quarter of the heap that is still free, at bytesPerItem each.
+     *
+     * @param bytesPerItem The memory an item takes once it is read back from a run.
+     * @return The most items to sort in memory (at least 10,000).
+     */
+    public static int memoryRows(long bytesPerItem) {
+        if (MEMORY_ROWS > 0) return MEMORY_ROWS;
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        return (int) Math.max(MIN_MEMORY_ROWS, Math.min(Integer.MAX_VALUE - 8, free / 4 / Math.max(1, bytesPerItem)));
+    }
+
+    /**
+     * Adds an item, writing a run to disk if memory is full.
+     * @param item The item.
+     * @throws IOException if a run could not be written.
+     */
+    public void add(T item) throws IOException {
+        buffer.add(item);
+        size++;
+        if (buffer.size() >= runSize) spill();
+    }
+
+    /** @return The number of items added. */
+    public long size() {
+        return size;
+    }
+
+    /** @return The number of runs written to disk so far. */
+    public int spilledRuns() {
+        return runs.size();
+    }
+
+    /**
+     * Gets the items in order. Call it once, after every item was added.
+     * @return An iterator over the sorted items (it throws UncheckedIOException if a run can't be read).
+     * @throws IOException if the last run could not be written or the runs could not be opened.
+     */
+    public Iterator<T> sorted() throws IOException {
+        if (runs.isEmpty()) {
+            sortBuffer();
+            return buffer.iterator();
+        }
+        if (!buffer.isEmpty()) spill();
+        PriorityQueue<Head<T>> heads = new PriorityQueue<>((a, b) -> order.compare(a.item, b.item));
+        for (File run : runs) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), BUFFER_BYTES / runs.size() + 8192));
+            readers.add(in);
+            Head<T> head = new Head<>(in);
+            if (head.advance(codec)) heads.add(head);
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                Head<T> head = heads.poll();
+                if (head == null) throw new NoSuchElementException();
+                T item = head.item;
+                try {
+                    if (head.advance(codec)) heads.add(head);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return item;
+            }
+        };
+    }
+
+    /**
+     * Deletes the run files.
+     */
+    @Override
+    public void close() {
+        for (DataInputStream in : readers) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // the file is deleted next anyway
+            }
+        }
+        for (File run : runs) run.delete();
+        runs.clear();
+        buffer = new ArrayList<>();
+    }
+
+    private void spill() throws IOException {
+        sortBuffer();
+        File run = File.createTempFile("ledger-sort-", ".run");
+        run.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), BUFFER_BYTES))) {
+            out.writeInt(buffer.size());
+            for (T item : buffer) codec.write(out, item);
+        }
+        runs.add(run);
+        buffer = new ArrayList<>(Math.min(runSize, 1 << 16));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void sortBuffer() {
+        // a run is sorted on every core, it's the longest step of a spill
+        T[] items = (T[]) buffer.toArray();
+        Arrays.parallelSort(items, order);
+        buffer = new ArrayList<>(Arrays.asList(items));
+    }
+
+    // the next item of a run
+    private static class Head<T> {
+        final DataInputStream in;
+        int remaining = -1;
+        T item;
+
+        Head(DataInputStream in) {
+            this.in = in;
+        }
+
+        boolean advance(Codec<T> codec) throws IOException {
+            if (remaining < 0) remaining = in.readInt();
+            if (remaining == 0) return false;
+            try {
+                item = codec.read(in);
+            } catch (EOFException e) {
+                throw new IOException("A sort run file was cut short", e);
+            }
+            remaining--;
+            return true;
+        }
+    }
+}
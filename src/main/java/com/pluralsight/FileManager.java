@@ -1,64 +1,198 @@
 package com.pluralsight;
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Scanner;
 import java.util.*;
+import java.util.function.BiConsumer;
 /**
  * The FileManager Class contains all the methods will be used Read AND Write from/to files.
  */
 public class FileManager {
 
+    private static final Metrics.Counter LOAD_ERRORS = Metrics.counter("ledger.load.errors");
+    private static final Metrics.Histogram REPORT_FILE_WRITE = Metrics.histogram("reportFile.write");
+    private static final Metrics.Counter REPORT_FILE_ERRORS = Metrics.counter("reportFile.errors");
+    private static final String REPORT_FILE = "Reports/Report.txt";
+    private static boolean reportFileWarned = false;
+
     /**
-     * Loads transaction data from a file and populates the list of transactions.
-     *
-     * This method reads transaction data from a file with the specified file name and user's name, located
-     * in the "AllTransactions" directory. It parses each line of the file to create Transaction objects and
-     * adds them to the list of transactions in the "Screen" class.
+     * Loads the logged-in user's transactions the first time they are needed. Starting up only needs the balance,
+     * which comes from the EventLog, so the rows themselves are read when a ledger or report screen is opened.
      *
-     * If the file does not exist, it creates an empty file and informs the user.
-     *
-     * @param fileName The name of the file containing transaction data.
-     * @param name The user's name to identify the user's transaction file.
+     * If the transaction file does not exist, it creates an empty file and informs the user.
      */
-    public static void loadTransactions(String fileName, String name) {
+    public static void ensureTransactionsLoaded() {
+        if (Screen.ledger.isLoaded()) return;
         try {
-            File myFile = new File("AllTransactions/"+(name+fileName).toLowerCase());
+            File myFile = new File("AllTransactions/"+(Screen.NAME+Screen.FILE_NAME).toLowerCase());
             if (myFile.createNewFile()){
                 System.out.println("You have no transaction(s) on record!");
             }else{
                 System.out.println("Loading your transaction(s)!");
             }
         } catch (IOException e) {
+            LOAD_ERRORS.increment();
             e.printStackTrace();
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader( "AllTransactions/"+((name+fileName).toLowerCase())))){
+        try {
+            Screen.ledger.load();
+        } catch (IOException e) {
+            LOAD_ERRORS.increment();
+            System.err.print(ConsoleColors.RED_BOLD_BRIGHT+"Something went wrong while loading your transactions! please try again"+ConsoleColors.RESET);
+        }
+    }
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] tokens = line.split("\\|");
-                LocalDate date = LocalDate.parse(tokens[0]);
-                LocalTime time = LocalTime.parse(tokens[1]);
-                String description = tokens[2];
-                String vendor = tokens[3];
-                double amount = Double.parseDouble(tokens[4]);
-                Transactions transaction = new Transactions(description,vendor,date, time, amount);
-                Screen.transactions.add(transaction);
+    /**
+     * Reads the complete lines of a file starting at a byte offset. A last line that is not finished
+     * with a line break yet is left alone, so it can be read once the rest of it has been written.
+     *
+     * @param path The file to read.
+     * @param offset The byte offset to start reading at (must be the start of a line).
+     * @param consumer Gets every line (without the line break) and the byte offset right after it.
+     * @return The byte offset after the last complete line.
+     * @throws IOException if the file can not be read.
+     */
+    public static long readLinesFrom(String path, long offset, BiConsumer<String, Long> consumer) throws IOException {
+        return readLinesFrom(path, offset, Long.MAX_VALUE, consumer);
+    }
 
+    /**
+     * Reads the complete lines of a file between two byte offsets.
+     *
+     * @param path The file to read.
+     * @param offset The byte offset to start reading at (must be the start of a line).
+     * @param limit The byte offset to stop reading at (must be the end of a line, or past the end of the file).
+     * @param consumer Gets every line (without the line break) and the byte offset right after it.
+     * @return The byte offset after the last complete line.
+     * @throws IOException if the file can not be read.
+     */
+    public static long readLinesFrom(String path, long offset, long limit, BiConsumer<String, Long> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            channel.position(offset);
+            InputStream in = Channels.newInputStream(channel);
+            // lines are cut straight out of a big chunk; a line that runs past the chunk is moved to its start
+            byte[] chunk = new byte[1 << 16];
+            int start = 0;
+            int end = 0;
+            long chunkOffset = offset;
+            while (chunkOffset + end < limit) {
+                if (end == chunk.length && start == 0) {
+                    chunk = Arrays.copyOf(chunk, chunk.length * 2);
+                } else if (end == chunk.length) {
+                    System.arraycopy(chunk, start, chunk, 0, end - start);
+                    chunkOffset += start;
+                    end -= start;
+                    start = 0;
+                }
+                int read = in.read(chunk, end, (int) Math.min(chunk.length - end, limit - chunkOffset - end));
+                if (read == -1) break;
+                int scan = end;
+                end += read;
+                for (int i = scan; i < end; i++) {
+                    if (chunk[i] != '\n') continue;
+                    int length = i - start;
+                    if (length > 0 && chunk[i - 1] == '\r') length--;
+                    offset = chunkOffset + i + 1;
+                    consumer.accept(new String(chunk, start, length, StandardCharsets.UTF_8), offset);
+                    start = i + 1;
+                }
             }
+            return offset;
+        }
+    }
 
-        } catch (IOException e) {
-            System.err.print(ConsoleColors.RED_BOLD_BRIGHT+"Something went wrong while loading your transactions! please try again"+ConsoleColors.RESET);
+    /**
+     * Reads the line of a file that ends at a byte offset.
+     *
+     * @param path The file to read.
+     * @param end The byte offset right after the line's line break.
+     * @return The line (without the line break), or null if no line ends there.
+     * @throws IOException if the file can not be read.
+     */
+    public static String readLineEndingAt(String path, long end) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            if (end <= 0 || end > channel.size()) return null;
+            // read backwards from the line break until the one before it, in bigger and bigger steps
+            for (int size = 4096; ; size *= 2) {
+                long from = Math.max(0, end - size);
+                ByteBuffer buffer = ByteBuffer.allocate((int) (end - from));
+                while (buffer.hasRemaining() && channel.read(buffer, from + buffer.position()) > 0) { }
+                byte[] bytes = buffer.array();
+                if (bytes[bytes.length - 1] != '\n') return null;
+                int i = bytes.length - 2;
+                while (i >= 0 && bytes[i] != '\n') i--;
+                if (i < 0 && from > 0) continue;
+                int length = bytes.length - 2 - i;
+                if (length > 0 && bytes[bytes.length - 2] == '\r') length--;
+                return new String(bytes, i + 1, length, StandardCharsets.UTF_8);
+            }
         }
+    }
+
+    /**
+     * Parses one line of a transaction file (date|time|description|vendor|amount).
+     *
+     * @param line The line from the file.
+     * @return The transaction for that line.
+     */
+    public static Transactions parseTransaction(String line) {
+        String[] tokens = line.split("\\|");
+        LocalDate date = LocalDate.parse(tokens[0]);
+        LocalTime time = LocalTime.parse(tokens[1]);
+        String description = tokens[2];
+        String vendor = tokens[3];
+        double amount = Double.parseDouble(tokens[4]);
+        return new Transactions(description,vendor,date, time, amount);
+    }
 
+    /**
+     * Formats a transaction the way it is stored in the transaction file (date|time|description|vendor|amount).
+     *
+     * @param transaction The transaction to format.
+     * @return The line, without the line break.
+     */
+    public static String formatTransaction(Transactions transaction) {
+        return transaction.getDate()+ "|" + transaction.getTime().format(Screen.TIME_FORMATTER) + "|" + transaction.getDescription() + "|" + transaction.getVendor() + "|" + transaction.getAmount();
+    }
 
+    /**
+     * Checks that a piece of text can be stored as a field of a transaction file.
+     * @param text The description or vendor.
+     * @return false if it holds the "|" that separates the fields or a line break, which would break the row.
+     */
+    public static boolean isWritableText(String text) {
+        return text != null && text.indexOf('|') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0;
+    }
+
+    /**
+     * Checks that a transaction can be written as one row of a transaction file.
+     * @param transaction The transaction.
+     * @throws IllegalArgumentException if its description or vendor can't be stored (see isWritableText), or its
+     * amount is not a finite number.
+     */
+    public static void checkWritable(Transactions transaction) {
+        if (!isWritableText(transaction.getDescription())) {
+            throw new IllegalArgumentException("the description can't contain | or a line break");
+        }
+        if (!isWritableText(transaction.getVendor())) {
+            throw new IllegalArgumentException("the vendor can't contain | or a line break");
+        }
+        if (!Double.isFinite(transaction.getAmount())) {
+            throw new IllegalArgumentException("the amount must be a number");
+        }
     }
 
     /**
@@ -108,16 +242,16 @@ public class FileManager {
         if (isDeposit && amount<0) amount*=-1;
         try{
             Transactions transaction = new Transactions(description, vendor, date, time, isDeposit?amount:amount*-1);
-            Screen.transactions.add(transaction);
-            BufferedWriter writer = new BufferedWriter(new FileWriter("AllTransactions/"+(name+Screen.FILE_NAME).toLowerCase(), true));
-            String outputLine = transaction.getDate()+ "|" + transaction.getTime() + "|" + transaction.getDescription() + "|" + transaction.getVendor() + "|" + transaction.getAmount() + "\n";
-            writer.write(outputLine);
-            writer.close();
+            LedgerEngine.AppendResult result = Screen.ledger.append(transaction);
             System.out.println(ConsoleColors.WHITE_BOLD_BRIGHT+"PLEASE WAIT! ADDING TRANSACTION TO THE LEDGER!"+ConsoleColors.RESET+"\n");
             Progress.dance();
             System.out.println("\n");
             transaction.printSlow();
             System.out.println(transaction.getAmount()>=0?ConsoleColors.GREEN_BOLD_BRIGHT+"YOUR TRANSACTION WAS SECURELY RECORDED!" +ConsoleColors.RESET:ConsoleColors.RED_BOLD_BRIGHT+"YOUR TRANSACTION WAS SECURELY RECORDED!" +ConsoleColors.RESET);
+            if (result.duplicate()) {
+                System.out.println(ConsoleColors.YELLOW_BOLD_BRIGHT+"⚠️HEADS UP! THIS LOOKS LIKE A DUPLICATE OF A TRANSACTION ALREADY IN YOUR LEDGER (SEE REPORTS > SUSPECTED DUPLICATES)⚠️"+ConsoleColors.RESET);
+            }
+            BudgetAlerts.printAlerts(result.alerts());
         }
         catch(IOException e){
             System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"TRANSACTION WAS NOT RECORDER, TRY AGAIN!" + ConsoleColors.RESET);
@@ -126,8 +260,10 @@ public class FileManager {
     }
 
     public static void printToReportFile(String reportName){
-        try{
-            BufferedWriter writer = new BufferedWriter(new FileWriter("Reports/Report.txt",true));
+        LedgerEvents.ReportFileWrite event = new LedgerEvents.ReportFileWrite();
+        event.begin();
+        long start = System.nanoTime();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(REPORT_FILE, true))) {
             String extraLine = "\n";
             String outputLine = LocalDate.now() +" @ "+LocalTime.now()+" " +reportName+" For "+Screen.NAME.toUpperCase() +": "+ "\n";
             String headings="""
@@ -139,17 +275,22 @@ public class FileManager {
             writer.write(extraLine);
             writer.write(outputLine);
             writer.write(headings);
-            writer.close();
+            event.characters = 3 * extraLine.length() + outputLine.length() + headings.length();
         }
         catch(IOException e){
-            System.out.print(true);
+            reportFileFailed(e);
         }
+        REPORT_FILE_WRITE.recordSince(start);
+        event.kind = "heading";
+        event.commit();
 
     }
 
     public static void printToReportFile(Transactions transaction){
-        try{
-            BufferedWriter writer = new BufferedWriter(new FileWriter("Reports/Report.txt",true));
+        LedgerEvents.ReportFileWrite event = new LedgerEvents.ReportFileWrite();
+        event.begin();
+        long start = System.nanoTime();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(REPORT_FILE, true))) {
             String formattedDate = String.format("%-10.10s", transaction.getDate());
             String formattedDesc = String.format("%-25.25s",transaction.getDescription());
             String formattedVendor = String.format("%-20.20s",transaction.getVendor());
@@ -158,43 +299,51 @@ public class FileManager {
             formattedPrice = String.format("$%8.8s", formattedPrice);
             String output = String.format(" \n |%s|%s|%s|%s|%s| \n", formattedDate,formattedTime,formattedDesc,formattedVendor,formattedPrice);
             writer.write(output);
-            writer.close();
+            event.characters = output.length();
         }
         catch(IOException e){
-            System.out.print(true);
+            reportFileFailed(e);
         }
+        REPORT_FILE_WRITE.recordSince(start);
+        event.kind = "row";
+        event.commit();
 
     }
 
     public static void concludingReport(){
-        try{
-            BufferedWriter writer = new BufferedWriter(new FileWriter("Reports/Report.txt", true));
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(REPORT_FILE, true))) {
             String extraLine = "\n";
             String outputLine ="******************************---"+ "END OF SESSION FOR " +Screen.NAME.toUpperCase()+"---******************************";
             writer.write(extraLine);
             writer.write(extraLine);
             writer.write(extraLine);
+            writer.write(CredentialStore.latencySummary());
+            writer.write(extraLine);
             writer.write(outputLine);
-            writer.close();
         }
         catch(IOException e){
-            System.out.print(true);
+            reportFileFailed(e);
         }
 
     }
 
     public static void clearReportFile(){
-        try{
-            BufferedWriter writer = new BufferedWriter(new FileWriter("Reports/Report.txt"));
-            String outputLine = "";
-            writer.write(outputLine);
-            writer.close();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(REPORT_FILE))) {
+            writer.write("");
         }
         catch(IOException e){
-            System.out.print(true);
+            reportFileFailed(e);
         }
 
     }
 
+    // the reports still show on the screen, so a report file that can't be written is only pointed out once
+    private static void reportFileFailed(IOException e){
+        REPORT_FILE_ERRORS.increment();
+        if (reportFileWarned) return;
+        reportFileWarned = true;
+        System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🚨COULD NOT WRITE TO "+REPORT_FILE+" ("+e.getMessage()+"), YOUR REPORTS ARE ONLY SHOWN ON THE SCREEN🚨"+ConsoleColors.RESET);
+    }
+
 
 }
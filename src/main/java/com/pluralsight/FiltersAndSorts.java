@@ -1,13 +1,20 @@
 package com.pluralsight;
 
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Scanner;
+import java.util.function.Consumer;
 
 /**
- * The FilterAndSorts Class contains all the methods will be used to Filter And Sort transactions.
+ * The FilterAndSorts Class contains all the methods will be used to display the Filtered And Sorted transactions.
+ * The filtering and sorting itself is done by the LedgerEngine (Screen.ledger); these methods ask for the
+ * criteria, print the results and write them to the report file.
  */
 public class FiltersAndSorts {
 
@@ -19,14 +26,11 @@ public class FiltersAndSorts {
         System.out.println(ConsoleColors.WHITE_UNDERLINED+ConsoleColors.WHITE_BOLD_BRIGHT+"DISPLAYING TRANSACTION REPORT OF ALL TRANSACTION(S) MONTH TO DATE: "+ConsoleColors.RESET);
         System.out.println(ConsoleColors.WHITE_UNDERLINED+"                    "+ConsoleColors.RESET);
 
-        LocalDate firstOfMonth= LocalDate.of(LocalDate.now().getYear(), LocalDate.now().getMonthValue(), 1);
         FileManager.printToReportFile("Month To Date Transactions");
-        for (Transactions x:Screen.transactions){
-            if (x.getDate().isAfter(firstOfMonth.minusDays(1))&&(x.getDate().isBefore(LocalDate.now().plusDays(1)))) {
-                FileManager.printToReportFile(x);
-                x.print();
-                counter++;
-            }
+        for (Transactions x:Screen.ledger.monthToDate()){
+            FileManager.printToReportFile(x);
+            x.print();
+            counter++;
         }
         if (counter==0) System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🫤NO TRANSACTION REPORT AVAILABLE🫤"+ConsoleColors.RESET);
 
@@ -39,17 +43,11 @@ public class FiltersAndSorts {
         int counter = 0;
         System.out.println(ConsoleColors.WHITE_UNDERLINED+ConsoleColors.WHITE_BOLD_BRIGHT+"DISPLAYING TRANSACTION REPORT OF ALL TRANSACTION(S) MADE LAST MONTH: "+ConsoleColors.RESET);
         System.out.println(ConsoleColors.WHITE_UNDERLINED+"                    "+ConsoleColors.RESET);
-        LocalDate today = LocalDate.now();
-        LocalDate prevMonth = today.minusMonths(1);
         FileManager.printToReportFile("Previous Month Transactions");
-        for (Transactions x:Screen.transactions){
-            if(x.getDate().isAfter(prevMonth.withDayOfMonth(1).minusDays(1)) &&
-                    x.getDate().isBefore(x.getDate().withDayOfMonth(1).minusDays(1)))
-            {
-                FileManager.printToReportFile(x);
-                x.print();
-                counter++;
-            }
+        for (Transactions x:Screen.ledger.previousMonth()){
+            FileManager.printToReportFile(x);
+            x.print();
+            counter++;
         }
         if (counter==0) System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🫤NO TRANSACTION REPORT AVAILABLE🫤"+ConsoleColors.RESET);
     }
@@ -62,12 +60,10 @@ public class FiltersAndSorts {
         System.out.println(ConsoleColors.WHITE_UNDERLINED+ConsoleColors.WHITE_BOLD_BRIGHT+"DISPLAYING TRANSACTION REPORT OF ALL TRANSACTION(S) MADE YEAR TO DATE: "+ConsoleColors.RESET);
         System.out.println(ConsoleColors.WHITE_UNDERLINED+"                    "+ConsoleColors.RESET);
         FileManager.printToReportFile("Year To Date Transactions");
-        for (Transactions x:Screen.transactions){
-            if ((x.getDate().getYear())==LocalDate.now().getYear() && x.getDate().isBefore(LocalDate.now().plusDays(1))) {
-                FileManager.printToReportFile(x);
-                x.print();
-                counter++;
-            }
+        for (Transactions x:Screen.ledger.yearToDate()){
+            FileManager.printToReportFile(x);
+            x.print();
+            counter++;
         }
         if (counter==0) System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🫤NO TRANSACTION REPORT AVAILABLE🫤"+ConsoleColors.RESET);
     }
@@ -79,16 +75,11 @@ public class FiltersAndSorts {
         int counter = 0;
         System.out.println(ConsoleColors.WHITE_UNDERLINED+ConsoleColors.WHITE_BOLD_BRIGHT+"DISPLAYING TRANSACTION REPORT OF ALL TRANSACTION(S) MADE PREVIOUS YEAR: "+ConsoleColors.RESET);
         System.out.println(ConsoleColors.WHITE_UNDERLINED+"                    "+ConsoleColors.RESET);
-
-        LocalDate today = LocalDate.now();
-        LocalDate prevYear = today.minusMonths(12);
         FileManager.printToReportFile("Previous Year Transactions");
-        for (Transactions x:Screen.transactions){
-            if (x.getDate().getYear() == prevYear.getYear()) {
-                FileManager.printToReportFile(x);
-                x.print();
-                counter++;
-            }
+        for (Transactions x:Screen.ledger.previousYear()){
+            FileManager.printToReportFile(x);
+            x.print();
+            counter++;
         }
         if (counter==0) System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🫤NO TRANSACTION REPORT AVAILABLE🫤"+ConsoleColors.RESET);
 
@@ -101,21 +92,23 @@ public class FiltersAndSorts {
 
         Scanner input = new Scanner(System.in);
         System.out.print("Please Enter the name of the VENDOR for transactions:👉🏽");
-        String vendor = input.next();
-        input.nextLine();
+        // vendor names can have spaces ("Fresh Mart"), so the whole line is read
+        String vendor = input.nextLine().trim();
 
         int counter = 0;
         System.out.println(ConsoleColors.WHITE_UNDERLINED+ConsoleColors.WHITE_BOLD_BRIGHT+"DISPLAYING TRANSACTION REPORT OF ALL TRANSACTION(S) FOR "+vendor.toUpperCase()+": "+ConsoleColors.RESET);
         System.out.println(ConsoleColors.WHITE_UNDERLINED+"                    "+ConsoleColors.RESET);
         FileManager.printToReportFile("Transactions For "+vendor.toUpperCase() );
-        for (Transactions x:Screen.transactions){
-            if (x.getVendor().equalsIgnoreCase(vendor)){
-                FileManager.printToReportFile(x);
-                x.print();
-                counter++;
-            }
+        for (Transactions x:Screen.ledger.byVendor(vendor)){
+            FileManager.printToReportFile(x);
+            x.print();
+            counter++;
+        }
+        if (counter==0) {
+            System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🫤NO TRANSACTION REPORT AVAILABLE FOR:" +vendor+ConsoleColors.RESET);
+            List<String> suggestions = Screen.ledger.suggestVendors(vendor, 3);
+            if (!suggestions.isEmpty()) System.out.println(ConsoleColors.YELLOW_BOLD_BRIGHT+"🤔DID YOU MEAN: "+String.join(", ", suggestions)+"?"+ConsoleColors.RESET);
         }
-        if (counter==0) System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🫤NO TRANSACTION REPORT AVAILABLE FOR:" +vendor+ConsoleColors.RESET);
 
     }
 
@@ -128,35 +121,13 @@ public class FiltersAndSorts {
      */
     public static void customSearch(){
         //https://salesforce.stackexchange.com/questions/8456/how-to-get-the-smallest-earliest-possible-date-value
-        ArrayList<Transactions> ListToBeSorted = new ArrayList<Transactions>();
         Scanner scanner = new Scanner(System.in);
 
         String earliestDateInJava = "1700-01-01";
         String latestDateInJava = "4000-12-31";
 
-        LocalDate startDate;
-        while (true){
-            try {
-                System.out.print(ConsoleColors.WHITE_BOLD_BRIGHT+"Please Enter the start date for your search (yyyy-MM-dd):👉🏽 "+ConsoleColors.RESET);
-                String startDateInput = scanner.nextLine();
-                startDate = startDateInput.isEmpty() ? LocalDate.parse(earliestDateInJava, Screen.DATE_FORMATTER) : LocalDate.parse(startDateInput, Screen.DATE_FORMATTER);
-                break;
-            } catch (Exception e) {
-                System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🚨⚠️INVALID entry, Please enter a VALID DATE to continue.⚠️🚨"+ConsoleColors.RESET);
-            }
-        }
-
-        LocalDate endDate;
-        while (true){
-            try {
-                System.out.print(ConsoleColors.WHITE_BOLD_BRIGHT+"Please Enter the end date for your search (yyyy-MM-dd):👉🏽 "+ConsoleColors.RESET);
-                String endDateInput = scanner.nextLine();
-                endDate = endDateInput.isEmpty()?LocalDate.parse(latestDateInJava, Screen.DATE_FORMATTER):LocalDate.parse(endDateInput, Screen.DATE_FORMATTER);
-                break;
-            } catch (Exception e) {
-                System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🚨⚠️INVALID entry, Please enter a VALID DATE to continue.⚠️🚨"+ConsoleColors.RESET);
-            }
-        }
+        LocalDate startDate = promptDate(scanner, "start", earliestDateInJava);
+        LocalDate endDate = promptDate(scanner, "end", latestDateInJava);
 
         System.out.print(ConsoleColors.WHITE_BOLD_BRIGHT+"Please Enter PART OR WHOLE of description/item name for your search:👉🏽 "+ConsoleColors.RESET);
         String description = scanner.nextLine().toLowerCase();
@@ -191,78 +162,233 @@ public class FiltersAndSorts {
             }
         }
 
-        for (Transactions x:Screen.transactions){
-            double xamount = x.getAmount();
-            LocalDate xdate = x.getDate();
-            String xdescription = x.getDescription().toLowerCase();
-            String xvendor = x.getVendor().toLowerCase();
-
-            if (    xdate.isAfter(startDate) &&
-                    xdate.isBefore(endDate) &&
-                    xamount>=minAmount &&
-                    xamount<=maxAmount &&
-                    xdescription.contains(description) &&
-                    xvendor.contains(vendor)){
-                ListToBeSorted.add(x);
+        String title;
+        Comparator<Transactions> order;
+        switch (Menus.sortMenu()) {
+            case "1" -> {
+                title = "Custom Search Transactions Sorted By Date";
+                order = LedgerEngine.DATE_ORDER;
+            }
+            case "2" -> {
+                title = "Custom Search Transactions Sorted By Price";
+                order = LedgerEngine.PRICE_ORDER;
+            }
+            case "3" -> {
+                title = "Custom Search Transactions Sorted Alphabetically";
+                order = LedgerEngine.VENDOR_ORDER;
+            }
+            default -> {
+                System.out.println("PRINTING YOUR SEARCH REPORT NOW!");
+                title = "Custom Search Transactions NOT Sorted";
+                order = null;
             }
         }
-        Menus.sortMenu(ListToBeSorted);
+        FileManager.printToReportFile(title);
+        Consumer<Transactions> print = x -> {
+            FileManager.printToReportFile(x);
+            x.print();
+        };
+        // the order is known before the search runs, so matching rows are printed or sorted as they are found
+        if (order == null) {
+            Screen.ledger.search(startDate, endDate, description, vendor, minAmount, maxAmount, print);
+            return;
+        }
+        try {
+            Screen.ledger.searchSorted(startDate, endDate, description, vendor, minAmount, maxAmount, order, print);
+        } catch (IOException e) {
+            System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🫤COULD NOT SORT YOUR SEARCH: "+e.getMessage()+ConsoleColors.RESET);
+        }
     }
 
 
     /**
-     * Sorts a list of transactions by their absolute USD amount (price).
-     * The sorted transactions are then printed to the console.
-     * @param listToBeShorted list of transactions that fit the criteria that User entered.
+     * Asks the user for a date until a valid one (or nothing) is entered.
+     * @param scanner The Scanner object to read user input.
+     * @param which "start" or "end", used in the prompt.
+     * @param defaultDate The date to use when the user enters nothing (yyyy-MM-dd).
+     * @return The date entered.
      */
-    public static void sortByPrice(ArrayList listToBeShorted){
-        ArrayList<Transactions> sortedList = new ArrayList<>(listToBeShorted);
-        Comparator<Transactions> amountComparator = Comparator.comparingDouble(obj -> Math.abs(obj.getAmount()));
-        sortedList.sort(amountComparator);
-        FileManager.printToReportFile("Custom Search Transactions Sorted By Price");
-        for (Transactions x : sortedList) {
-            FileManager.printToReportFile(x);
-            x.print();
+    public static LocalDate promptDate(Scanner scanner, String which, String defaultDate){
+        while (true){
+            try {
+                System.out.print(ConsoleColors.WHITE_BOLD_BRIGHT+"Please Enter the "+which+" date for your search (yyyy-MM-dd):👉🏽 "+ConsoleColors.RESET);
+                String dateInput = scanner.nextLine();
+                return dateInput.isEmpty() ? LocalDate.parse(defaultDate, Screen.DATE_FORMATTER) : LocalDate.parse(dateInput, Screen.DATE_FORMATTER);
+            } catch (Exception e) {
+                System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🚨⚠️INVALID entry, Please enter a VALID DATE to continue.⚠️🚨"+ConsoleColors.RESET);
+            }
         }
     }
 
     /**
-     * Sorts a list of transactions by their date, displaying the latest transactions first.
-     * The sorted transactions are then printed to the console.
-     * @param listToBeSorted list of transactions that fit the criteria that User entered.
+     * Displays the top vendors by spend and by number of transactions for a date range the user enters.
+     * Leaving a date empty means no limit on that side.
      */
-    public static void sortByDate(ArrayList<Transactions> listToBeSorted) {
-        ArrayList<Transactions> sortedList = new ArrayList<>(listToBeSorted);
-        Comparator<Transactions> dateComparator = Comparator.comparing(Transactions::getDate);
-        Collections.sort(sortedList, dateComparator.reversed());//reversing will show latest transaction first
-        FileManager.printToReportFile("Custom Search Transactions Sorted By Date");
-        for (Transactions x : sortedList) {
-            FileManager.printToReportFile(x);
-            x.print();
+    public static void getTopVendors(){
+        Scanner scanner = new Scanner(System.in);
+        LocalDate startDate = promptDate(scanner, "start", "1700-01-01");
+        LocalDate endDate = promptDate(scanner, "end", "4000-12-31");
+
+        VendorAnalytics.Result result = Screen.ledger.topVendors(startDate, endDate, 10);
+        System.out.println(ConsoleColors.WHITE_UNDERLINED+ConsoleColors.WHITE_BOLD_BRIGHT+"DISPLAYING TOP VENDORS FROM "+startDate+" TO "+endDate+": "+ConsoleColors.RESET);
+        if (result.byFrequency().isEmpty()) {
+            System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🫤NO TRANSACTION REPORT AVAILABLE🫤"+ConsoleColors.RESET);
+            return;
+        }
+        System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"💸TOP VENDORS BY SPEND:"+ConsoleColors.RESET);
+        for (SpaceSaving.Counter c : result.bySpend()) {
+            System.out.printf("%-20.20s $%12.2f%n", c.key(), c.weight());
+        }
+        System.out.println(ConsoleColors.BLUE_BOLD_BRIGHT+"🔁TOP VENDORS BY NUMBER OF TRANSACTIONS:"+ConsoleColors.RESET);
+        for (SpaceSaving.Counter c : result.byFrequency()) {
+            System.out.printf("%-20.20s %13d%n", c.key(), (long) c.weight());
+        }
+        if (!result.exact()) {
+            System.out.println("(There are more vendors than the report keeps track of, numbers may be slightly high.)");
         }
     }
 
     /**
-     * Sorts a list of transactions alphabetically by vendor name.
-     * The sorted transactions are then printed to the console.
-     * @param listToBeSorted list of transactions that fit the criteria that User entered.
+     * Displays how the ledger balance evolved over a date range the user enters, per day, week or month,
+     * or downsampled to a number of points. The ledger rows don't need to be loaded for this report.
      */
-    public static void sortByVendor(ArrayList<Transactions> listToBeSorted) {
-        ArrayList<Transactions> sortedList = new ArrayList<>(listToBeSorted);
-        Comparator<Transactions> vendorComparator = Comparator.comparing(Transactions::getVendor);
-        sortedList.sort(vendorComparator);// sorting alphabetically
-        FileManager.printToReportFile("Custom Search Transactions Sorted Alphabetically");
-        for (Transactions x: sortedList) {
-            FileManager.printToReportFile(x);
-            x.print();
+    public static void getBalanceTrend(){
+        Scanner scanner = new Scanner(System.in);
+        LocalDate startDate = promptDate(scanner, "start", "1700-01-01");
+        LocalDate endDate = promptDate(scanner, "end", "4000-12-31");
+        System.out.print(ConsoleColors.WHITE_BOLD_BRIGHT+"Show the trend by ( D )ay, ( W )eek, ( M )onth, or enter a NUMBER of points:👉🏽 "+ConsoleColors.RESET);
+        String view = scanner.nextLine().trim();
+
+        List<BalanceSeries.Point> points = Screen.ledger.balanceTrend(startDate, endDate, view);
+        System.out.println(ConsoleColors.WHITE_UNDERLINED+ConsoleColors.WHITE_BOLD_BRIGHT+"DISPLAYING YOUR BALANCE TREND FROM "+startDate+" TO "+endDate+": "+ConsoleColors.RESET);
+        if (points.isEmpty()) {
+            System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🫤NO TRANSACTION REPORT AVAILABLE🫤"+ConsoleColors.RESET);
+            return;
+        }
+        double max = points.stream().mapToDouble(p -> Math.abs(p.closingBalance())).max().orElse(1);
+        for (BalanceSeries.Point p : points) {
+            int bar = max == 0 ? 0 : (int) Math.round(Math.abs(p.closingBalance()) / max * 40);
+            String color = p.closingBalance() >= 0 ? ConsoleColors.GREEN_BOLD_BRIGHT : ConsoleColors.RED_BOLD_BRIGHT;
+            System.out.printf("%s  %12.2f  %s%12.2f %s%s%n", p.date(), p.netFlow(), color, p.closingBalance(), "█".repeat(bar), ConsoleColors.RESET);
+        }
+    }
+
+    /**
+     * Displays the median, p90, p95 and p99 amount of deposits and payments for each month of a range the user
+     * enters, and for the whole range. The numbers come from the monthly quantile sketches, not from the rows.
+     */
+    public static void getAmountQuantiles(){
+        Scanner scanner = new Scanner(System.in);
+        YearMonth from = promptMonth(scanner, "start", YearMonth.of(1700, 1));
+        YearMonth to = promptMonth(scanner, "end", YearMonth.of(4000, 12));
+
+        System.out.println(ConsoleColors.WHITE_UNDERLINED+ConsoleColors.WHITE_BOLD_BRIGHT+"DISPLAYING AMOUNT QUANTILES FROM "+from+" TO "+to+": "+ConsoleColors.RESET);
+        System.out.println("MONTH      TYPE      COUNT       MEDIAN          P90          P95          P99");
+        List<LedgerEngine.QuantileRow> rows = Screen.ledger.quantiles(from, to);
+        if (rows.isEmpty()) {
+            System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🫤NO TRANSACTION REPORT AVAILABLE🫤"+ConsoleColors.RESET);
+            return;
+        }
+        String[] types = {ConsoleColors.GREEN_BOLD_BRIGHT+"DEPOSITS"+ConsoleColors.RESET, ConsoleColors.RED_BOLD_BRIGHT+"PAYMENTS"+ConsoleColors.RESET};
+        for (LedgerEngine.QuantileRow row : rows) {
+            QuantileSketch sketch = row.sketch();
+            System.out.printf("%-10s %s %6d %12.2f %12.2f %12.2f %12.2f%n", row.month() == null ? "ALL" : row.month(), types[row.side()], sketch.count(),
+                    sketch.quantile(0.5), sketch.quantile(0.9), sketch.quantile(0.95), sketch.quantile(0.99));
+        }
+    }
+
+    /**
+     * Asks the user for a month until a valid one (or nothing) is entered.
+     * @param scanner The Scanner object to read user input.
+     * @param which "start" or "end", used in the prompt.
+     * @param defaultMonth The month to use when the user enters nothing.
+     * @return The month entered.
+     */
+    public static YearMonth promptMonth(Scanner scanner, String which, YearMonth defaultMonth){
+        while (true){
+            try {
+                System.out.print(ConsoleColors.WHITE_BOLD_BRIGHT+"Please Enter the "+which+" month for your report (yyyy-MM):👉🏽 "+ConsoleColors.RESET);
+                String monthInput = scanner.nextLine();
+                return monthInput.isEmpty() ? defaultMonth : YearMonth.parse(monthInput);
+            } catch (Exception e) {
+                System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🚨⚠️INVALID entry, Please enter a VALID MONTH to continue.⚠️🚨"+ConsoleColors.RESET);
+            }
         }
     }
 
-    public static void noSort(ArrayList<Transactions> listToBeSorted){
-        FileManager.printToReportFile("Custom Search Transactions NOT Sorted");
-        for (Transactions x: listToBeSorted) {
+    /**
+     * Displays the transactions suspected to be duplicates of an earlier transaction
+     * (same date, time, amount and vendor, ignoring case, spaces and punctuation in the vendor).
+     */
+    public static void getSuspectedDuplicates(){
+        int counter = 0;
+        System.out.println(ConsoleColors.WHITE_UNDERLINED+ConsoleColors.WHITE_BOLD_BRIGHT+"DISPLAYING TRANSACTION(S) THAT LOOK LIKE DUPLICATES: "+ConsoleColors.RESET);
+        System.out.println(ConsoleColors.WHITE_UNDERLINED+"                    "+ConsoleColors.RESET);
+        FileManager.printToReportFile("Suspected Duplicate Transactions");
+        for (Transactions x:Screen.ledger.duplicates()){
             FileManager.printToReportFile(x);
             x.print();
+            counter++;
+        }
+        if (counter==0) System.out.println(ConsoleColors.GREEN_BOLD_BRIGHT+"👍NO DUPLICATE TRANSACTION(S) FOUND👍"+ConsoleColors.RESET);
+    }
+
+    /**
+     * Displays the payments and deposits that repeat on a schedule (subscriptions, rent, pay checks...),
+     * with the date and amount each one is expected at next.
+     */
+    public static void getRecurringPayments(){
+        List<RecurringDetector.Series> found = Screen.ledger.recurring();
+        System.out.println(ConsoleColors.WHITE_UNDERLINED+ConsoleColors.WHITE_BOLD_BRIGHT+"DISPLAYING RECURRING TRANSACTIONS: "+ConsoleColors.RESET);
+        if (found.isEmpty()) {
+            System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🫤NO RECURRING TRANSACTIONS FOUND🫤"+ConsoleColors.RESET);
+            return;
+        }
+        System.out.println("VENDOR                CADENCE    TIMES       AMOUNT  LAST DATE   NEXT EXPECTED");
+        for (RecurringDetector.Series s : found){
+            System.out.printf("%s%-20s  %-9s %6d %12.2f  %s  %s%s%n", s.typicalAmount()<0?ConsoleColors.RED_BOLD_BRIGHT:ConsoleColors.GREEN_BOLD_BRIGHT,
+                    s.vendor(), s.cadence(), s.occurrences(), s.typicalAmount(), s.lastDate(), s.nextDate(), ConsoleColors.RESET);
+        }
+    }
+
+    /**
+     * Reconciles the ledger against a bank statement file the user enters, writes the matched, ledger-only and
+     * statement-only rows to files in the Reports folder, and displays the first unmatched rows of each side.
+     */
+    public static void getReconciliation(){
+        Scanner scanner = new Scanner(System.in);
+        System.out.print(ConsoleColors.WHITE_BOLD_BRIGHT+"Please Enter the path of your BANK STATEMENT file:👉🏽 "+ConsoleColors.RESET);
+        String statement = scanner.nextLine().trim();
+        System.out.print(ConsoleColors.WHITE_BOLD_BRIGHT+"How many DAYS apart may matching dates be? (Enter for 3):👉🏽 "+ConsoleColors.RESET);
+        String days = scanner.nextLine().trim();
+        System.out.print(ConsoleColors.WHITE_BOLD_BRIGHT+"How many CENTS apart may matching amounts be? (Enter for 0):👉🏽 "+ConsoleColors.RESET);
+        String cents = scanner.nextLine().trim();
+
+        String prefix = "Reports/"+Screen.NAME.toLowerCase()+"-reconcile-";
+        Reconciler.Summary summary;
+        try {
+            summary = Screen.ledger.reconcile(statement, days.isEmpty()?3:Integer.parseInt(days), cents.isEmpty()?0:Long.parseLong(cents), prefix);
+        } catch (IOException e) {
+            System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🫤COULD NOT RECONCILE: "+e.getMessage()+ConsoleColors.RESET);
+            return;
+        }
+        System.out.println(ConsoleColors.WHITE_UNDERLINED+ConsoleColors.WHITE_BOLD_BRIGHT+"DISPLAYING RECONCILIATION AGAINST "+statement+": "+ConsoleColors.RESET);
+        System.out.println(ConsoleColors.GREEN_BOLD_BRIGHT+"✅MATCHED: "+summary.matched()+ConsoleColors.RESET);
+        System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"📘ONLY IN YOUR LEDGER: "+summary.ledgerOnly()+ConsoleColors.RESET);
+        printFirstLines(prefix+"ledger-only.csv", 10);
+        System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🏦ONLY IN THE STATEMENT: "+summary.statementOnly()+ConsoleColors.RESET);
+        printFirstLines(prefix+"statement-only.csv", 10);
+        System.out.println("(Every row is in "+prefix+"matched.csv, "+prefix+"ledger-only.csv and "+prefix+"statement-only.csv.)");
+    }
+
+    private static void printFirstLines(String path, int count){
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+            for (int i = 0; i < count && (line = reader.readLine()) != null; i++) {
+                System.out.println("   "+line);
+            }
+        } catch (IOException e) {
+            System.out.println("   (could not read "+path+")");
         }
     }
 
@@ -0,0 +1,348 @@
+package com.pluralsight;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * The LedgerChecksums Class keeps a CRC32C checksum of every row of a user's transaction file in
+ * "AllTransactions/NAMEtransactions.crc", as 12 byte entries of the offset where the row ends and the checksum of its
+ * bytes (without the line break). Rows are checksummed as soon as they are written or imported, before the EventLog
+ * logs them, so the end of the last entry is a checkpoint: everything before it was complete and checked.
+ *
+ * Opening a ledger only checks the last row before the checkpoint and the rows after it. A last row without a line
+ * break after the checkpoint was torn by a crash in the middle of a write, even if what is left of it still reads
+ * as a row (an amount of -1500.0 cut to -15 does); it is moved to "AllTransactions/NAMEquarantine.csv" and cut off
+ * the transaction file, so the next row isn't glued onto it. Only when there were no checksums yet, or they had to be
+ * made again, is a readable last row taken as one written without its line break (by hand, or by another program):
+ * the line break is added and the row is kept. Rows after the checkpoint that can't be read are copied to the
+ * quarantine file too (they are left in the file, and skipped when the ledger is read). verify() checks every row.
+ */
+public class LedgerChecksums {
+
+    private static final int ENTRY_BYTES = Long.BYTES + Integer.BYTES;
+
+    private static final Metrics.Counter QUARANTINED = Metrics.counter("ledger.recovery.quarantined");
+    private static final Metrics.Histogram RECOVER = Metrics.histogram("ledger.recovery");
+
+    private final String name;
+    // the end of the last checksummed row
+    private long checkpoint = 0;
+    // true if the checksums were made again from the rows when the ledger was opened
+    private boolean rebuilt = false;
+
+    /**
+     * What opening a ledger found.
+     * @param rowsChecked The number of rows that were checked.
+     * @param quarantined The number of rows copied to the quarantine file.
+     * @param truncatedBytes The number of bytes of a torn last row cut off the transaction file.
+     * @param rebuilt true if the checksums didn't match the transaction file and were made again from its rows.
+     */
+    public record Recovery(long rowsChecked, int quarantined, long truncatedBytes, boolean rebuilt) { }
+
+    /**
+     * A row whose checksum doesn't match, found by verify().
+     * @param end Where the row ends in the transaction file.
+     * @param line The row as it is now.
+     */
+    public record Corrupt(long end, String line) { }
+
+    /**
+     * @param userName The user's name to identify the user's files.
+     */
+    public LedgerChecksums(String userName) {
+        this.name = userName.toLowerCase();
+    }
+
+    /**
+     * Checks the transaction file after the last checkpoint, and quarantines a torn last row. Must be called before
+     * the EventLog reads the file.
+     *
+     * @return What was found.
+     * @throws IOException if a file can not be read or written.
+     */
+    public synchronized Recovery recover() throws IOException {
+        long start = System.nanoTime();
+        new File(ledgerPath()).createNewFile();
+        rebuilt = false;
+        checkpoint = 0;
+        boolean checksummed = false;
+        try (FileChannel sums = FileChannel.open(Path.of(sumsPath()), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileChannel ledger = FileChannel.open(Path.of(ledgerPath()), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // an entry that was only partly written is dropped, its row is checksummed again below
+            long entries = sums.size() / ENTRY_BYTES;
+            sums.truncate(entries * ENTRY_BYTES);
+            if (entries > 0) {
+                ByteBuffer last = ByteBuffer.allocate(2 * ENTRY_BYTES);
+                long from = Math.max(0, entries - 2) * ENTRY_BYTES;
+                sums.read(last, from);
+                last.flip();
+                long rowStart = entries > 1 ? last.getLong() : 0;
+                if (entries > 1) last.getInt();
+                long rowEnd = last.getLong();
+                int crc = last.getInt();
+                if (rowEnd > ledger.size() || crc(ledger, rowStart, rowEnd - 1) != crc) {
+                    // the file was replaced or edited by hand, the checksums are made again from its rows
+                    sums.truncate(0);
+                    rebuilt = true;
+                } else {
+                    checkpoint = rowEnd;
+                    checksummed = true;
+                }
+            }
+        }
+        Recovery tail = checkTail(checksummed);
+        RECOVER.recordSince(start);
+        return new Recovery(tail.rowsChecked(), tail.quarantined(), tail.truncatedBytes(), rebuilt);
+    }
+
+    /**
+     * Checksums the complete rows of the transaction file between the checkpoint and an offset. Called right after
+     * rows are appended or found, before the EventLog logs them.
+     *
+     * @param end Where the last row to checksum ends.
+     * @throws IOException if a file can not be read or written.
+     */
+    public synchronized void catchUp(long end) throws IOException {
+        if (end <= checkpoint) return;
+        try (Entries entries = new Entries()) {
+            readRows(checkpoint, end, (rowEnd, crc, bytes, length) -> entries.add(rowEnd, crc));
+        }
+    }
+
+    /**
+     * Checksums every row of the transaction file again, after it was written again (see EventLog.settle).
+     *
+     * @param end Where the last complete row ends.
+     * @throws IOException if a file can not be read or written.
+     */
+    public synchronized void restart(long end) throws IOException {
+        new FileWriter(sumsPath()).close();
+        checkpoint = 0;
+        rebuilt = false;
+        catchUp(end);
+    }
+
+    /**
+     * Checks the checksum of every row of the transaction file.
+     * @return The rows that don't match their checksum.
+     * @throws IOException if a file can not be read.
+     */
+    public synchronized List<Corrupt> verify() throws IOException {
+        return verify(checkpoint);
+    }
+
+    /**
+     * Tells if the rows of the transaction file up to an offset can be trusted to be the rows that were checksummed,
+     * for files kept next to it (see LedgerIndex): they were checksummed as they were written, and the last of them
+     * still matched when the ledger was opened. Nothing is read, so a row changed by hand before it is only found by
+     * verify().
+     *
+     * @param end Where the last row ends.
+     * @return true if every row up to end was checksummed, false if not, or if the checksums were made again from
+     * the rows when the ledger was opened (then they can't tell).
+     */
+    public synchronized boolean rowsMatch(long end) {
+        return !rebuilt && end <= checkpoint;
+    }
+
+    private List<Corrupt> verify(long end) throws IOException {
+        List<Corrupt> corrupt = new ArrayList<>();
+        boolean[] lost = new boolean[1];
+        // the entries are read along with the rows, a few thousand at a time
+        try (DataInputStream entries = new DataInputStream(new BufferedInputStream(Files.newInputStream(Path.of(sumsPath())), 4096 * ENTRY_BYTES))) {
+            long[] left = {Files.size(Path.of(sumsPath())) / ENTRY_BYTES};
+            readRows(0, end, (rowEnd, crc, bytes, length) -> {
+                if (lost[0]) return;
+                long expectedEnd = -1;
+                int expected = 0;
+                if (left[0] > 0) {
+                    left[0]--;
+                    expectedEnd = entries.readLong();
+                    expected = entries.readInt();
+                }
+                if (expectedEnd != rowEnd || expected != (int) crc) {
+                    corrupt.add(new Corrupt(rowEnd, new String(bytes, 0, length, StandardCharsets.UTF_8)));
+                    // once a row changed length the rows after it can't be lined up with their checksums
+                    lost[0] = expectedEnd != rowEnd;
+                }
+            });
+        }
+        return corrupt;
+    }
+
+    /** @return The end of the last checksummed row. */
+    public synchronized long checkpoint() {
+        return checkpoint;
+    }
+
+    // checksummed is true if the checksum file matched the transaction file, so every row this application wrote has
+    // its line break and an unterminated last row can only have been torn
+    private Recovery checkTail(boolean checksummed) throws IOException {
+        List<String> quarantine = new ArrayList<>();
+        long[] rows = new long[1];
+        long complete;
+        try (Entries entries = new Entries()) {
+            complete = readRows(checkpoint, Long.MAX_VALUE, (rowEnd, crc, bytes, length) -> {
+                entries.add(rowEnd, crc);
+                rows[0]++;
+                String line = new String(bytes, 0, length, StandardCharsets.UTF_8);
+                try {
+                    FileManager.parseTransaction(line);
+                } catch (RuntimeException e) {
+                    quarantine.add("unreadable|" + (rowEnd - length - 1) + "|" + line);
+                }
+            });
+        }
+        long truncated = 0;
+        boolean kept = false;
+        try (FileChannel ledger = FileChannel.open(Path.of(ledgerPath()), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long tail = ledger.size() - complete;
+            if (tail > 0) {
+                ByteBuffer torn = ByteBuffer.allocate((int) Math.min(tail, 1 << 20));
+                ledger.read(torn, complete);
+                String fragment = new String(torn.array(), 0, torn.position(), StandardCharsets.UTF_8);
+                if (!checksummed && torn.position() == tail && readable(fragment)) {
+                    ledger.write(ByteBuffer.wrap(new byte[]{'\n'}), ledger.size());
+                    kept = true;
+                } else {
+                    quarantine.add("torn|" + complete + "|" + fragment);
+                    ledger.truncate(complete);
+                    truncated = tail;
+                }
+                ledger.force(true);
+            }
+        }
+        if (kept) {
+            try (Entries entries = new Entries()) {
+                readRows(complete, Long.MAX_VALUE, (rowEnd, crc, bytes, length) -> {
+                    entries.add(rowEnd, crc);
+                    rows[0]++;
+                });
+            }
+        }
+        if (!quarantine.isEmpty()) {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(quarantinePath(), true))) {
+                String now = LocalDateTime.now().withNano(0).toString();
+                for (String line : quarantine) writer.write(now + "|" + line + "\n");
+            }
+            QUARANTINED.add(quarantine.size());
+        }
+        return new Recovery(rows[0], quarantine.size(), truncated, false);
+    }
+
+    private static boolean readable(String line) {
+        try {
+            FileManager.parseTransaction(line);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private interface RowConsumer {
+        void accept(long rowEnd, long crc, byte[] bytes, int length) throws IOException;
+    }
+
+    // appends entries to the checksum file a few thousand at a time, and moves the checkpoint along
+    private class Entries implements AutoCloseable {
+        private final FileChannel sums;
+        private final ByteBuffer buffer = ByteBuffer.allocate(4096 * ENTRY_BYTES);
+        private long last = -1;
+
+        Entries() throws IOException {
+            sums = FileChannel.open(Path.of(sumsPath()), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        void add(long rowEnd, long crc) throws IOException {
+            buffer.putLong(rowEnd);
+            buffer.putInt((int) crc);
+            last = rowEnd;
+            if (!buffer.hasRemaining()) flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) sums.write(buffer);
+            buffer.clear();
+            if (last >= 0) checkpoint = last;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                sums.close();
+            }
+        }
+    }
+
+    // reads the complete rows between two offsets, and returns the offset after the last one
+    private long readRows(long from, long to, RowConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(ledgerPath()), StandardOpenOption.READ)) {
+            channel.position(from);
+            InputStream in = Channels.newInputStream(channel);
+            CRC32C crc = new CRC32C();
+            byte[] chunk = new byte[1 << 16];
+            byte[] row = new byte[256];
+            int length = 0;
+            long offset = from;
+            long end = from;
+            int read;
+            while (offset < to && (read = in.read(chunk, 0, (int) Math.min(chunk.length, to - offset))) > 0) {
+                for (int i = 0; i < read; i++) {
+                    offset++;
+                    if (chunk[i] != '\n') {
+                        if (length == row.length) row = Arrays.copyOf(row, row.length * 2);
+                        row[length++] = chunk[i];
+                        continue;
+                    }
+                    crc.reset();
+                    crc.update(row, 0, length);
+                    consumer.accept(offset, crc.getValue(), row, length);
+                    end = offset;
+                    length = 0;
+                }
+            }
+            return end;
+        }
+    }
+
+    private static long crc(FileChannel channel, long from, long to) throws IOException {
+        if (from < 0 || to < from) return Long.MIN_VALUE;
+        ByteBuffer bytes = ByteBuffer.allocate((int) (to - from));
+        while (bytes.hasRemaining() && channel.read(bytes, from + bytes.position()) > 0) { }
+        CRC32C crc = new CRC32C();
+        crc.update(bytes.array(), 0, bytes.position());
+        return (int) crc.getValue();
+    }
+
+    private String ledgerPath() {
+        return "AllTransactions/" + name + Screen.FILE_NAME;
+    }
+
+    private String sumsPath() {
+        return "AllTransactions/" + name + "transactions.crc";
+    }
+
+    private String quarantinePath() {
+        return "AllTransactions/" + name + "quarantine.csv";
+    }
+}
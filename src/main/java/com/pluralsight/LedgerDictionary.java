@@ -0,0 +1,78 @@
+package com.pluralsight;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * The LedgerDictionary Class keeps one copy of every distinct vendor and description in the list of transactions.
+ * Every row read from the transaction file gets its own Strings from split(), although a ledger only has a few
+ * thousand vendors and descriptions; the rows are given the dictionary's copy instead as they enter the list
+ * (LedgerEngine.addToLedger), and the rest are left to the garbage collector. Every LedgerEngine has its own.
+ *
+ * Since every row in the list shares its vendor with every other row of that spelling, a report can decide which
+ * spellings it wants once and then match the rows by reference (see vendorsMatching).
+ */
+public class LedgerDictionary {
+
+    // a String is a 24 byte object and a byte[] with a 16 byte header, padded to 8 bytes (compressed oops, Latin-1)
+    private static final int STRING_BYTES = 24;
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    private final HashMap<String, String> vendors = new HashMap<>();
+    private final HashMap<String, String> descriptions = new HashMap<>();
+    private long bytesSaved = 0;
+
+    /**
+     * Gives a transaction the dictionary's copy of its vendor and description, adding them if they are new.
+     * @param transaction The transaction entering the list of transactions.
+     */
+    public synchronized void intern(Transactions transaction) {
+        transaction.setVendor(intern(vendors, transaction.getVendor()));
+        transaction.setDescription(intern(descriptions, transaction.getDescription()));
+    }
+
+    /**
+     * Gets the vendor spellings that match a test, as a set that compares by reference. Only the dictionary's
+     * spellings are tested, not every row, and a row is then matched with contains(row.getVendor()).
+     *
+     * @param test The test for a vendor spelling.
+     * @return The dictionary's copies of the matching spellings.
+     */
+    public synchronized Set<String> vendorsMatching(Predicate<String> test) {
+        Set<String> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (String vendor : vendors.values()) {
+            if (test.test(vendor)) found.add(vendor);
+        }
+        return found;
+    }
+
+    /** @return The number of distinct vendors and descriptions. */
+    public synchronized long size() {
+        return vendors.size() + descriptions.size();
+    }
+
+    /** @return About how many bytes of duplicate Strings the rows no longer hold on to. */
+    public synchronized long bytesSaved() {
+        return bytesSaved;
+    }
+
+    /**
+     * Forgets every string (used when the list of transactions is emptied).
+     */
+    public synchronized void clear() {
+        vendors.clear();
+        descriptions.clear();
+        bytesSaved = 0;
+    }
+
+    private String intern(HashMap<String, String> pool, String value) {
+        if (value == null) return null;
+        String shared = pool.putIfAbsent(value, value);
+        if (shared == null) return value;
+        if (shared != value) bytesSaved += STRING_BYTES + ((ARRAY_HEADER_BYTES + value.length() + 7) & ~7);
+        return shared;
+    }
+}
@@ -0,0 +1,998 @@
+package com.pluralsight;
+
+import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * The LedgerEngine Class is the ledger without a terminal: it loads, appends, queries, aggregates, sorts and exports
+ * transactions and hands back the results, without printing, prompting, coloring or pausing. The console menus
+ * (FiltersAndSorts, DisplayMethods, FileManager.addTransaction) and BatchMode are clients of it, and it can be
+ * embedded in other programs or benchmarked on its own.
+ *
+ * <pre>
+ * LedgerEngine ledger = LedgerEngine.open("hamza");
+ * ledger.append(new Transactions("Coffee", "Starbucks", LocalDate.now(), LocalTime.now(), -3.50));
+ * List&lt;Transactions&gt; found = ledger.search(from, to, "", "starbucks", -50, 0);
+ * ledger.close();
+ * </pre>
+ *
+ * Each LedgerEngine keeps the state of its own ledger (the list of transactions, its EventLog with the overlay, the
+ * duplicate keys and the canonical vendors, the checksums, partitions and vendor index), so several ledgers can be
+ * open side by side and opening one never changes what another reads. A ledger should only be open once at a time,
+ * since both would write its files. Queries that need the rows read the transaction file the first time, and throw
+ * an UncheckedIOException if it can't be read. Reports over a date range don't need that: until the rows are read
+ * they only read the LedgerPartitions of the years they cover.
+ *
+ * Transactions are named by their id (Transactions.getId()) for edits and deletes, which are logged without
+ * rewriting the transaction file (see LedgerOverlay). A background thread compacts the partitions they leave dead
+ * rows in, and moves the rows appended since into the partitions once there are a lot of them. Once there are
+ * -Dledger.overlay.settleChanges (1000) changes, closing the ledger writes them into the transaction file (see
+ * EventLog.settle), which gives the rows after the first changed one new ids.
+ */
+public class LedgerEngine implements AutoCloseable {
+
+    /** Orders transactions by their absolute USD amount (price). */
+    public static final Comparator<Transactions> PRICE_ORDER = Comparator.comparingDouble(obj -> Math.abs(obj.getAmount()));
+    /** Orders transactions by date, reversed so the latest transactions come first. */
+    public static final Comparator<Transactions> DATE_ORDER = Comparator.comparing(Transactions::getDate).reversed();
+    /** Orders transactions alphabetically by vendor name. */
+    public static final Comparator<Transactions> VENDOR_ORDER = Comparator.comparing(Transactions::getVendor);
+
+    /**
+     * What happened to an appended transaction.
+     * @param transaction The transaction.
+     * @param duplicate true if it looks like a duplicate of an earlier transaction (it is recorded anyway).
+     * @param alerts The budget alerts it set off.
+     */
+    public record AppendResult(Transactions transaction, boolean duplicate, List<String> alerts) { }
+
+    /**
+     * The amount quantiles of deposits or payments over a month, or over a whole range.
+     * @param month The month, or null for the whole range.
+     * @param side AmountQuantiles.DEPOSITS or AmountQuantiles.PAYMENTS.
+     * @param sketch The quantiles.
+     */
+    public record QuantileRow(YearMonth month, int side, QuantileSketch sketch) { }
+
+    // how long each report takes to work out, see Metrics
+    private static final Metrics.Histogram MONTH_TO_DATE = Metrics.histogram("report.monthToDate");
+    private static final Metrics.Histogram PREV_MONTH = Metrics.histogram("report.prevMonth");
+    private static final Metrics.Histogram YEAR_TO_DATE = Metrics.histogram("report.yearToDate");
+    private static final Metrics.Histogram PREV_YEAR = Metrics.histogram("report.prevYear");
+    private static final Metrics.Histogram VENDOR = Metrics.histogram("report.vendor");
+    private static final Metrics.Histogram SEARCH = Metrics.histogram("report.search");
+    private static final Metrics.Histogram TOP_VENDORS = Metrics.histogram("report.topVendors");
+    private static final Metrics.Histogram BALANCE_TREND = Metrics.histogram("report.balanceTrend");
+    private static final Metrics.Histogram QUANTILES = Metrics.histogram("report.quantiles");
+    private static final Metrics.Histogram DUPLICATES = Metrics.histogram("report.duplicates");
+    private static final Metrics.Histogram RECURRING = Metrics.histogram("report.recurring");
+    private static final Metrics.Histogram RECONCILE = Metrics.histogram("report.reconcile");
+    // an external sort hands rows out while it merges, so this one includes what is done with the rows
+    private static final Metrics.Histogram SORT = Metrics.histogram("report.sort");
+    private static final Metrics.Histogram LOAD = Metrics.histogram("ledger.load");
+    private static final Metrics.Counter LOADED_ROWS = Metrics.counter("ledger.load.rows");
+    private static final Metrics.Counter LOAD_ERRORS = Metrics.counter("ledger.load.errors");
+    private static final Metrics.Histogram ADD = Metrics.histogram("ledger.add");
+    private static final Metrics.Histogram CHANGE = Metrics.histogram("ledger.change");
+    // the changes are written into the transaction file when the ledger is closed once there are this many of them
+    private static final int SETTLE_CHANGES = Integer.getInteger("ledger.overlay.settleChanges", 1000);
+
+    // the ledgers that are open, the gauges add them all up
+    private static final Set<LedgerEngine> OPEN = ConcurrentHashMap.newKeySet();
+    private static final Metrics.Gauge ROWS = Metrics.gauge("ledger.rows", () -> sumOpen(e -> e.list.size()));
+    private static final Metrics.Gauge DICTIONARY_STRINGS = Metrics.gauge("ledger.dictionary.strings", () -> sumOpen(e -> e.dictionary.size()));
+    private static final Metrics.Gauge DICTIONARY_BYTES_SAVED = Metrics.gauge("ledger.dictionary.bytesSaved", () -> sumOpen(e -> e.dictionary.bytesSaved()));
+    private static final Metrics.Gauge OFF_HEAP_BYTES = Metrics.gauge("ledger.offheap.bytes", () -> sumOpen(e -> e.list instanceof OffHeapLedger o ? o.mappedBytes() : 0));
+    private static final Metrics.Gauge OFF_HEAP_STRINGS = Metrics.gauge("ledger.offheap.strings", () -> sumOpen(e -> e.list instanceof OffHeapLedger o ? o.strings() : 0));
+
+    // about what a transaction read from a file or a sort run takes on the heap
+    private static final long BYTES_PER_TRANSACTION = 256;
+    // what a Sequenced in a sort's buffer takes besides its transaction (the object, and a reference to it)
+    private static final long BYTES_PER_SEQUENCED = 32;
+
+    // a transaction and its place in the list being sorted, so equal transactions keep their order
+    private record Sequenced(long sequence, Transactions transaction) { }
+
+    private static final ExternalSort.Codec<Sequenced> SEQUENCED_CODEC = new ExternalSort.Codec<>() {
+        @Override
+        public void write(DataOutput out, Sequenced item) throws IOException {
+            Transactions x = item.transaction();
+            out.writeLong(item.sequence());
+            out.writeLong(x.getDate().toEpochDay());
+            out.writeInt(x.getTime().toSecondOfDay());
+            ExternalSort.Codec.writeString(out, x.getDescription());
+            ExternalSort.Codec.writeString(out, x.getVendor());
+            out.writeDouble(x.getAmount());
+        }
+
+        @Override
+        public Sequenced read(DataInput in) throws IOException {
+            long sequence = in.readLong();
+            LocalDate date = LocalDate.ofEpochDay(in.readLong());
+            LocalTime time = LocalTime.ofSecondOfDay(in.readInt());
+            String description = ExternalSort.Codec.readString(in);
+            String vendor = ExternalSort.Codec.readString(in);
+            return new Sequenced(sequence, new Transactions(description, vendor, date, time, in.readDouble()));
+        }
+    };
+
+    private final String user;
+    private final String name;
+    private final String path;
+    private final LedgerChecksums checksums;
+    private final EventLog log;
+    private final LedgerPartitions partitions;
+    private final LedgerIndex index;
+    private final LedgerDictionary dictionary = new LedgerDictionary();
+    private final LedgerFollower follower = new LedgerFollower(this);
+    // the rows, once they were read (kept off the heap with -Dledger.storage=offheap, see OffHeapLedger)
+    private final List<Transactions> list = OffHeapLedger.ENABLED ? new OffHeapLedger() : new ArrayList<>();
+    private volatile boolean loaded = false;
+    private LedgerChecksums.Recovery recovery;
+    private EventLog.Recovery events;
+    // released by every append, edit and delete, the compactor thread is started by the first one
+    private final Semaphore compactWanted = new Semaphore(0);
+    private Thread compactor;
+
+    private LedgerEngine(String user) {
+        this.user = user;
+        this.name = user.toLowerCase();
+        this.path = "AllTransactions/" + name + Screen.FILE_NAME;
+        this.checksums = new LedgerChecksums(name);
+        this.log = new EventLog(name, checksums);
+        this.partitions = new LedgerPartitions(name, log.overlay());
+        this.index = new LedgerIndex(name, log.overlay(), log.vendors(), checksums);
+        log.duplicates().verifyWith(this::rowsOn);
+    }
+
+    /**
+     * Opens a user's ledger: the rows written since the last checkpoint are checked (see LedgerChecksums), the balance
+     * and summaries are restored from the EventLog right away, the vendor index is mapped if it is still valid (see
+     * LedgerIndex), and the rows are read when a query first needs them.
+     * Ledgers that are already open are left as they are.
+     *
+     * @param user The user's name.
+     * @return The ledger.
+     * @throws IOException if the balance and summaries could not be restored (see EventLog.recover).
+     */
+    public static LedgerEngine open(String user) throws IOException {
+        LedgerEngine engine = new LedgerEngine(user);
+        try {
+            engine.recovery = engine.checksums.recover();
+        } catch (IOException e) {
+            // the ledger still opens, its rows are checked the next time
+            engine.recovery = null;
+        }
+        engine.events = engine.log.recover();
+        try {
+            engine.index.open();
+        } catch (IOException e) {
+            // the index is built again when it is first needed
+        }
+        OPEN.add(engine);
+        return engine;
+    }
+
+    /** @return What was checked and quarantined when the ledger was opened, null if the checks could not be done. */
+    public LedgerChecksums.Recovery recovery() {
+        return recovery;
+    }
+
+    /** @return The rows and events the EventLog could not read when the ledger was opened. */
+    public EventLog.Recovery events() {
+        return events;
+    }
+
+    /**
+     * Checks every row of the transaction file against its checksum.
+     * @return The rows that don't match.
+     * @throws IOException if a file can not be read.
+     */
+    public List<LedgerChecksums.Corrupt> verify() throws IOException {
+        return checksums.verify();
+    }
+
+    /** @return The name of the user whose ledger this is. */
+    public String user() {
+        return user;
+    }
+
+    /**
+     * Reads the transaction file into memory now, instead of on the first query that needs it.
+     * @throws IOException if the file can not be read.
+     */
+    public void load() throws IOException {
+        if (!loaded) readTransactions();
+    }
+
+    /**
+     * Forgets the rows read so far, so the next query that needs them reads them from the transaction file again.
+     */
+    public void unload() {
+        synchronized (log) {
+            list.clear();
+            log.duplicates().clear();
+            dictionary.clear();
+            follower.clearPending();
+            loaded = false;
+        }
+    }
+
+    /** @return true once the rows were read into memory (see load). */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return The LedgerFollower that picks up rows other programs append to the transaction file, once it is
+     * started.
+     */
+    public LedgerFollower follower() {
+        return follower;
+    }
+
+    /**
+     * Gets the budget alerts raised since the last call that append didn't return: those set off by edits, and by
+     * rows the LedgerFollower picked up.
+     * @return The alert messages, oldest first.
+     */
+    public List<String> takeAlerts() {
+        return log.budgets().takeAlerts();
+    }
+
+    /** @return Every transaction, in ledger order (the list can't be changed). */
+    public List<Transactions> transactions() {
+        return Collections.unmodifiableList(rows());
+    }
+
+    /** @return The deposits, in ledger order. */
+    public List<Transactions> deposits() {
+        return rows().stream().filter(Transactions::isDeposit).toList();
+    }
+
+    /** @return The payments, in ledger order. */
+    public List<Transactions> payments() {
+        return rows().stream().filter(Transactions::isPayment).toList();
+    }
+
+    /** @return The balance of the ledger, kept up to date by the EventLog (the rows don't need to be read). */
+    public double balance() {
+        return log.balance();
+    }
+
+    /**
+     * Records a transaction: it is appended to the transaction file, logged in the EventLog and added to the list of
+     * transactions if that was read. Otherwise the list is left alone (the row is in it once it is read) and only the
+     * rows of the transaction's day are read to check it for duplicates.
+     *
+     * @param transaction The transaction to record.
+     * @return Whether it looks like a duplicate (it is recorded anyway), and the budget alerts it set off.
+     * @throws IOException if the transaction could not be written.
+     * @throws IllegalArgumentException if the transaction can't be stored, see FileManager.checkWritable.
+     */
+    public AppendResult append(Transactions transaction) throws IOException {
+        FileManager.checkWritable(transaction);
+        LedgerEvents.Append event = new LedgerEvents.Append();
+        event.begin();
+        long start = System.nanoTime();
+        File ledger = new File(path);
+        boolean wasLoaded;
+        boolean earlierCopy = false;
+        // the LedgerFollower must not pick up our own row as an outside import
+        synchronized (log) {
+            // once the rows are being read, everything past the point they are read to must be added here
+            wasLoaded = loaded;
+            if (!wasLoaded) earlierCopy = log.duplicates().hasCopy(transaction);
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(ledger, true))) {
+                writer.write(FileManager.formatTransaction(transaction) + "\n");
+            }
+            checksums.catchUp(ledger.length());
+            transaction.setId(ledger.length());
+            log.recordAdd(transaction, ledger.length());
+        }
+        boolean duplicate = wasLoaded ? addToLedger(transaction) : earlierCopy;
+        ADD.recordSince(start);
+        event.user = name;
+        event.vendor = transaction.getVendor();
+        event.amount = transaction.getAmount();
+        event.duplicate = duplicate;
+        event.commit();
+        wakeCompactor();
+        return new AppendResult(transaction, duplicate, log.budgets().takeAlerts());
+    }
+
+    /**
+     * Replaces a transaction with a new version of it. Only the change is written, see change.
+     *
+     * @param id The transaction's id.
+     * @param replacement The new version of the transaction.
+     * @return The transaction as it was before.
+     * @throws IOException if the change could not be written.
+     * @throws IllegalArgumentException if there is no such transaction.
+     */
+    public Transactions edit(long id, Transactions replacement) throws IOException {
+        Transactions before = change(id, replacement);
+        wakeCompactor();
+        return before;
+    }
+
+    /**
+     * Deletes a transaction. Only a tombstone is written, see change.
+     *
+     * @param id The transaction's id.
+     * @return The transaction that was deleted.
+     * @throws IOException if the change could not be written.
+     * @throws IllegalArgumentException if there is no such transaction.
+     */
+    public Transactions delete(long id) throws IOException {
+        Transactions before = change(id, null);
+        wakeCompactor();
+        return before;
+    }
+
+    /**
+     * Edits or deletes a row of the transaction file. The file itself is left as it is: the change is logged in the
+     * EventLog, which keeps it in the LedgerOverlay, so it costs one short write however big the ledger is. The list of
+     * transactions is updated too, if it was read.
+     *
+     * @throws IllegalArgumentException if there is no such row, it was deleted already, or the replacement can't be
+     * stored (see FileManager.checkWritable).
+     */
+    private Transactions change(long id, Transactions replacement) throws IOException {
+        if (replacement != null) FileManager.checkWritable(replacement);
+        long start = System.nanoTime();
+        Transactions before;
+        synchronized (log) {
+            LedgerOverlay.Change change = log.overlay().get(id);
+            if (change != null && change.deleted()) {
+                throw new IllegalArgumentException("row " + id + " was deleted");
+            }
+            if (change != null) {
+                before = change.replacement();
+            } else {
+                // only rows the EventLog has seen can be changed, so their totals can be taken back out
+                String line = id <= log.csvOffset() ? FileManager.readLineEndingAt(path, id) : null;
+                if (line == null) throw new IllegalArgumentException("no row ends at " + id);
+                try {
+                    before = FileManager.parseTransaction(line);
+                } catch (RuntimeException e) {
+                    throw new IllegalArgumentException("row " + id + " can not be read");
+                }
+                before.setId(id);
+            }
+            log.recordChange(id, before, replacement);
+        }
+        if (loaded) {
+            int index = indexOf(id);
+            if (index >= 0) {
+                log.duplicates().forget(list.get(index));
+                if (replacement == null) {
+                    list.remove(index);
+                } else {
+                    if (!OffHeapLedger.ENABLED) dictionary.intern(replacement);
+                    list.set(index, replacement);
+                    log.duplicates().check(replacement);
+                }
+            }
+        }
+        CHANGE.recordSince(start);
+        return before;
+    }
+
+    // the place of a row in the list of transactions, which is in id order except for rows that arrived late
+    private int indexOf(long id) {
+        int low = 0;
+        int high = list.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = list.get(mid).getId();
+            if (midId < id) low = mid + 1;
+            else if (midId > id) high = mid - 1;
+            else return mid;
+        }
+        for (int i = list.size() - 1; i >= 0; i--) {
+            if (list.get(i).getId() == id) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Drops every dead row (left by edits and deletes) from the partitions now, instead of waiting for the
+     * background compaction, and builds the amount quantiles of the months they were in again.
+     * @return The number of dead rows dropped.
+     * @throws IOException if a partition can not be read or written.
+     */
+    public long compact() throws IOException {
+        long dropped = partitions.compact(true);
+        log.refreshQuantiles(partitions);
+        return dropped;
+    }
+
+    // seals the tail of the transaction file if it has grown big, compacts the partitions whose share of dead rows got
+    // too big and builds the stale amount quantiles again, on a daemon thread so neither changes nor reads wait for it
+    private synchronized void wakeCompactor() {
+        if (compactor == null) {
+            compactor = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        compactWanted.acquire();
+                        compactWanted.drainPermits();
+                        partitions.sealIfLarge();
+                        partitions.compact(false);
+                        log.refreshQuantiles(partitions);
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (IOException e) {
+                        // the partitions and stale months are left as they were, the next change tries again
+                    }
+                }
+            }, "ledger-compactor");
+            compactor.setDaemon(true);
+            compactor.start();
+        }
+        compactWanted.release();
+    }
+
+    /**
+     * Finds all transactions for the current month, up to and including today.
+     * @return The matching transactions in ledger order.
+     */
+    public ArrayList<Transactions> monthToDate() {
+        LocalDate today = LocalDate.now();
+        return report("monthToDate", MONTH_TO_DATE, () -> scan(today.withDayOfMonth(1), today),
+                LedgerPartitions.Scan::rowsScanned, scan -> scan.found().size()).found();
+    }
+
+    /**
+     * Finds all transactions made in the previous calendar month.
+     * @return The matching transactions in ledger order.
+     */
+    public ArrayList<Transactions> previousMonth() {
+        LocalDate firstOfPrevMonth = LocalDate.now().minusMonths(1).withDayOfMonth(1);
+        return report("prevMonth", PREV_MONTH, () -> scan(firstOfPrevMonth, firstOfPrevMonth.plusMonths(1).minusDays(1)),
+                LedgerPartitions.Scan::rowsScanned, scan -> scan.found().size()).found();
+    }
+
+    /**
+     * Finds all transactions for the current year, up to and including today.
+     * @return The matching transactions in ledger order.
+     */
+    public ArrayList<Transactions> yearToDate() {
+        LocalDate today = LocalDate.now();
+        return report("yearToDate", YEAR_TO_DATE, () -> scan(today.withDayOfYear(1), today),
+                LedgerPartitions.Scan::rowsScanned, scan -> scan.found().size()).found();
+    }
+
+    /**
+     * Finds all transactions made in the previous calendar year.
+     * @return The matching transactions in ledger order.
+     */
+    public ArrayList<Transactions> previousYear() {
+        LocalDate firstOfPrevYear = LocalDate.now().minusYears(1).withDayOfYear(1);
+        return report("prevYear", PREV_YEAR, () -> scan(firstOfPrevYear, firstOfPrevYear.plusYears(1).minusDays(1)),
+                LedgerPartitions.Scan::rowsScanned, scan -> scan.found().size()).found();
+    }
+
+    /**
+     * Finds all transactions whose date falls between two dates.
+     * @param from The first date to include.
+     * @param to The last date to include.
+     * @return The matching transactions in ledger order.
+     */
+    public ArrayList<Transactions> between(LocalDate from, LocalDate to) {
+        return scan(from, to).found();
+    }
+
+    // the rows in memory if they were read, otherwise only the partitions of the years in the range
+    private LedgerPartitions.Scan scan(LocalDate from, LocalDate to) {
+        if (!loaded) {
+            try {
+                return partitions.read(from, to);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        ArrayList<Transactions> found = new ArrayList<>();
+        LedgerPartitions.Scan scan = forEachBetween(from, to, found::add);
+        return new LedgerPartitions.Scan(found, scan.rowsScanned(), scan.plan());
+    }
+
+    // the same rows as scan, handed out one at a time (not in ledger order if they are read from the partitions)
+    private LedgerPartitions.Scan forEachBetween(LocalDate from, LocalDate to, Consumer<Transactions> action) {
+        if (loaded && list instanceof OffHeapLedger offHeap) {
+            offHeap.forEachBetween(from, to, action);
+            return new LedgerPartitions.Scan(new ArrayList<>(), offHeap.size(), "off-heap scan");
+        }
+        if (loaded) {
+            for (Transactions x : list) {
+                if (!x.getDate().isBefore(from) && !x.getDate().isAfter(to)) {
+                    action.accept(x);
+                }
+            }
+            return new LedgerPartitions.Scan(new ArrayList<>(), list.size(), "full scan");
+        }
+        try {
+            return partitions.forEach(from, to, action);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Finds all transactions for a vendor, under any spelling the VendorCanonicalizer counts as that vendor.
+     * @param vendor The name of the vendor.
+     * @return The matching transactions in ledger order.
+     */
+    public ArrayList<Transactions> byVendor(String vendor) {
+        if (!loaded) {
+            // the rows aren't read for this, the vendor index knows where each vendor's rows are
+            return report("vendor", VENDOR, () -> {
+                try {
+                    return index.byVendor(vendor);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, LedgerPartitions.Scan::rowsScanned, scan -> scan.found().size()).found();
+        }
+        List<Transactions> rows = rows();
+        VendorCanonicalizer vendors = log.vendors();
+        return report("vendor", VENDOR, () -> {
+            ArrayList<Transactions> found = new ArrayList<>();
+            VendorCanonicalizer.Vendor canonical = vendors.find(vendor);
+            if (canonical == null) return found;
+            if (rows instanceof OffHeapLedger offHeap) {
+                return offHeap.byVendor(v -> vendors.canonical(v).id() == canonical.id());
+            }
+            // the rows share their vendors through the LedgerDictionary, so only the distinct spellings are
+            // canonicalized and every row is matched by reference
+            Set<String> spellings = dictionary.vendorsMatching(v -> vendors.canonical(v).id() == canonical.id());
+            for (Transactions x : rows) {
+                if (spellings.contains(x.getVendor())) {
+                    found.add(x);
+                }
+            }
+            return found;
+        }, found -> rows.size(), List::size);
+    }
+
+    /**
+     * Suggests known vendors for a name that matched nothing.
+     * @param vendor The name that was looked for.
+     * @param max The most suggestions to return.
+     * @return The closest known vendor names, closest first.
+     */
+    public List<String> suggestVendors(String vendor, int max) {
+        try {
+            if (!loaded) index.registerVendors();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return log.vendors().suggest(vendor, max);
+    }
+
+    /**
+     * Finds the transactions that match every custom search criteria. Dates are exclusive, text is matched
+     * as a lower case "contains", and amounts are inclusive.
+     * @param startDate Only transactions after this date are returned.
+     * @param endDate Only transactions before this date are returned.
+     * @param description Part or whole of the description (lower case), empty for any.
+     * @param vendor Part or whole of the vendor name (lower case), empty for any.
+     * @param minAmount The smallest USD amount.
+     * @param maxAmount The largest USD amount.
+     * @return The matching transactions in ledger order.
+     */
+    public ArrayList<Transactions> search(LocalDate startDate, LocalDate endDate, String description, String vendor, double minAmount, double maxAmount) {
+        ArrayList<Transactions> found = new ArrayList<Transactions>();
+        search(startDate, endDate, description, vendor, minAmount, maxAmount, found::add);
+        return found;
+    }
+
+    /**
+     * Goes through the transactions that match every custom search criteria (see search) in an order, without
+     * collecting them first: matching rows go from the scan straight into an ExternalSort, which sorts them in
+     * memory if they fit and writes sorted runs to temporary files otherwise. Transactions that are equal in the
+     * order come in ledger order.
+     *
+     * @param order The order to go through them in.
+     * @param action Gets every matching transaction, in order.
+     * @return The number of matching transactions.
+     * @throws IOException if a temporary run could not be written or read.
+     */
+    public long searchSorted(LocalDate startDate, LocalDate endDate, String description, String vendor, double minAmount, double maxAmount,
+                             Comparator<Transactions> order, Consumer<Transactions> action) throws IOException {
+        long start = System.nanoTime();
+        // rows that are in memory already only add their Sequenced to the sort, rows read from the partitions are new
+        boolean inMemory = loaded && !(list instanceof OffHeapLedger);
+        int memoryRows = ExternalSort.memoryRows(inMemory ? BYTES_PER_SEQUENCED : BYTES_PER_SEQUENCED + BYTES_PER_TRANSACTION);
+        try (ExternalSort<Sequenced> sort = new ExternalSort<>(sequenced(order), SEQUENCED_CODEC, memoryRows)) {
+            search(startDate, endDate, description, vendor, minAmount, maxAmount, x -> {
+                try {
+                    // a row's id is where it ends in the transaction file, so it keeps equal rows in ledger order
+                    sort.add(new Sequenced(x.getId(), x));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            Iterator<Sequenced> sorted = sort.sorted();
+            while (sorted.hasNext()) action.accept(sorted.next().transaction());
+            return sort.size();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            SORT.recordSince(start);
+        }
+    }
+
+    /**
+     * Goes through the transactions that match every custom search criteria (see search) without collecting them,
+     * in the order the scan finds them.
+     *
+     * @param action Gets every matching transaction.
+     */
+    public void search(LocalDate startDate, LocalDate endDate, String description, String vendor, double minAmount, double maxAmount,
+                       Consumer<Transactions> action) {
+        LedgerEvents.Search event = new LedgerEvents.Search();
+        event.begin();
+        long start = System.nanoTime();
+        long[] emitted = new long[1];
+        // the dates of the search are left out, the scan includes them
+        LedgerPartitions.Scan scan = forEachBetween(startDate, endDate, x -> {
+            double xamount = x.getAmount();
+            LocalDate xdate = x.getDate();
+            String xdescription = x.getDescription().toLowerCase();
+            String xvendor = x.getVendor().toLowerCase();
+
+            if (    xdate.isAfter(startDate) &&
+                    xdate.isBefore(endDate) &&
+                    xamount>=minAmount &&
+                    xamount<=maxAmount &&
+                    xdescription.contains(description) &&
+                    xvendor.contains(vendor)){
+                action.accept(x);
+                emitted[0]++;
+            }
+        });
+        SEARCH.recordSince(start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.criteria = "from=" + startDate + " to=" + endDate + " desc=" + description + " vendor=" + vendor + " min=" + minAmount + " max=" + maxAmount;
+            event.plan = scan.plan();
+            event.rowsScanned = scan.rowsScanned();
+            event.rowsEmitted = emitted[0];
+            event.commit();
+        }
+    }
+
+    /**
+     * Goes through a list of transactions in an order. The transactions are in memory already, so a sorted copy of
+     * the list only adds a reference for each; searches too big for that go through searchSorted instead.
+     * Transactions that are equal in the order keep their order from the list.
+     *
+     * @param list The transactions.
+     * @param order The order to go through them in.
+     * @param action Gets every transaction, in order.
+     */
+    public static void forEachSorted(List<Transactions> list, Comparator<Transactions> order, Consumer<Transactions> action) {
+        long start = System.nanoTime();
+        try {
+            ArrayList<Transactions> sortedList = new ArrayList<>(list);
+            sortedList.sort(order);
+            sortedList.forEach(action);
+        } finally {
+            SORT.recordSince(start);
+        }
+    }
+
+    // an order, then the sequence for transactions that are equal in it
+    private static Comparator<Sequenced> sequenced(Comparator<Transactions> order) {
+        return (a, b) -> {
+            int c = order.compare(a.transaction(), b.transaction());
+            return c != 0 ? c : Long.compare(a.sequence(), b.sequence());
+        };
+    }
+
+    /**
+     * Finds the top vendors by spend and by number of transactions.
+     * @param from The first date to include.
+     * @param to The last date to include.
+     * @param n How many vendors to return in each list.
+     * @return The top vendors.
+     */
+    public VendorAnalytics.Result topVendors(LocalDate from, LocalDate to, int n) {
+        long[] scanned = new long[1];
+        return report("topVendors", TOP_VENDORS, () -> {
+            if (loaded) {
+                List<Transactions> rows = rows();
+                scanned[0] = rows.size();
+                return VendorAnalytics.topVendors(rows, from, to, n, log.vendors());
+            }
+            // a tally per partition, so only one partition's rows are read at a time and none are kept
+            List<VendorAnalytics.Tally> tallies = new ArrayList<>();
+            try {
+                scanned[0] = partitions.forEachPart(from, to, () -> {
+                    VendorAnalytics.Tally tally = new VendorAnalytics.Tally(from, to, log.vendors());
+                    tallies.add(tally);
+                    return tally;
+                }).rowsScanned();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return VendorAnalytics.topVendors(tallies, n);
+        }, result -> scanned[0], result -> result.bySpend().size() + result.byFrequency().size());
+    }
+
+    /**
+     * Gets a view of the balance trend. The rows don't need to be read for it.
+     * @param from The first day.
+     * @param to The last day.
+     * @param view "D" (daily), "W" (weekly), "M" (monthly) or a number of points to downsample to.
+     * @return The points of the view.
+     */
+    public List<BalanceSeries.Point> balanceTrend(LocalDate from, LocalDate to, String view) {
+        BalanceSeries series = log.balanceSeries();
+        return report("balanceTrend", BALANCE_TREND, () -> switch (view.toUpperCase()) {
+            case "D", "" -> series.daily(from, to);
+            case "W" -> series.weekly(from, to);
+            case "M" -> series.monthly(from, to);
+            default -> series.downsample(from, to, Integer.parseInt(view));
+        }, points -> 0, List::size);
+    }
+
+    /**
+     * Gets the amount quantiles of deposits and payments for each month of a range, then for the whole range
+     * (with a null month). Sides with no transactions are left out. The rows don't need to be read for it, except for
+     * months an edit or a delete left stale that the background compaction hasn't built again yet.
+     * @param from The first month.
+     * @param to The last month.
+     * @return The quantiles, month by month.
+     */
+    public List<QuantileRow> quantiles(YearMonth from, YearMonth to) {
+        return report("quantiles", QUANTILES, () -> {
+            try {
+                log.refreshQuantiles(partitions, from, to);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            List<QuantileRow> found = new ArrayList<>();
+            for (YearMonth month : log.quantiles().months(from, to)) {
+                addQuantiles(found, month, month, month);
+            }
+            addQuantiles(found, null, from, to);
+            return found;
+        }, found -> 0, List::size);
+    }
+
+    private void addQuantiles(List<QuantileRow> found, YearMonth label, YearMonth from, YearMonth to) {
+        for (int side : new int[]{AmountQuantiles.DEPOSITS, AmountQuantiles.PAYMENTS}) {
+            QuantileSketch sketch = log.quantiles().range(from, to, side);
+            if (sketch.count() > 0) found.add(new QuantileRow(label, side, sketch));
+        }
+    }
+
+    /**
+     * Gets the transactions that look like duplicates of an earlier transaction.
+     * @return The suspected duplicates, in ledger order.
+     */
+    public List<Transactions> duplicates() {
+        List<Transactions> rows = rows();
+        return report("duplicates", DUPLICATES, log.duplicates()::suspects, found -> rows.size(), List::size);
+    }
+
+    /**
+     * Finds the payments and deposits that repeat on a schedule.
+     * @return The recurring series, by the date the next one is expected.
+     */
+    public List<RecurringDetector.Series> recurring() {
+        List<Transactions> rows = rows();
+        return report("recurring", RECURRING, () -> RecurringDetector.detect(rows, log.vendors()), found -> rows.size(), List::size);
+    }
+
+    /**
+     * Reconciles the ledger against a bank statement, see Reconciler.
+     *
+     * @param statementPath The bank statement file.
+     * @param dayTolerance How many days apart a match's dates may be.
+     * @param centTolerance How many cents apart a match's amounts may be.
+     * @param outputPrefix Where to write the three result files (for example "Reports/reconcile-").
+     * @return How many rows ended up in each file.
+     * @throws IOException if a file can not be read or written.
+     */
+    public Reconciler.Summary reconcile(String statementPath, int dayTolerance, long centTolerance, String outputPrefix) throws IOException {
+        try {
+            return report("reconcile", RECONCILE, () -> {
+                try {
+                    return Reconciler.reconcile(path, log.overlay(), statementPath,
+                            dayTolerance, centTolerance, outputPrefix);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, summary -> 2 * summary.matched() + summary.ledgerOnly() + summary.statementOnly(),
+                    summary -> summary.matched() + summary.ledgerOnly() + summary.statementOnly());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes every transaction to a file, in the transaction file format.
+     * @param file The file to write (it is replaced).
+     * @return The number of transactions written.
+     * @throws IOException if the file can not be written.
+     */
+    public int export(String file) throws IOException {
+        List<Transactions> rows = rows();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            for (Transactions x : rows) {
+                writer.write(FileManager.formatTransaction(x));
+                writer.newLine();
+            }
+        }
+        return rows.size();
+    }
+
+    /**
+     * Gets the year partitions of the ledger, after moving every row of the transaction file into one.
+     * @return The partitions, by date.
+     * @throws IOException if a partition can not be read or written.
+     */
+    public List<LedgerPartitions.Segment> partitions() throws IOException {
+        partitions.seal();
+        return partitions.segments();
+    }
+
+    /**
+     * Stops the compactor thread and the LedgerFollower, settles the edits and deletes if there are a lot of them,
+     * writes an EventLog snapshot, indexes the new rows, and moves them into the year partitions if there are a lot of
+     * them, so the next open starts from here.
+     * @throws IOException if the snapshot could not be written (the next open replays the log instead).
+     */
+    @Override
+    public void close() throws IOException {
+        OPEN.remove(this);
+        follower.stop();
+        synchronized (this) {
+            if (compactor != null) compactor.interrupt();
+            compactor = null;
+        }
+        if (log.overlay().size() >= SETTLE_CHANGES) {
+            try {
+                settle();
+            } catch (IOException e) {
+                // the transaction file is left as it was, and the changes stay in the overlay until a later close
+            }
+        }
+        log.snapshot();
+        try {
+            index.refresh();
+            partitions.sealIfLarge();
+        } catch (IOException e) {
+            // the rows are still in the transaction file, they are moved on a later close
+        }
+    }
+
+    // writes the changes into the transaction file; what was built from the old ids is dropped first, so it is built
+    // again even if the rewrite fails half way
+    private void settle() throws IOException {
+        unload();
+        index.startOver();
+        partitions.startOver();
+        log.settle();
+    }
+
+    // the rows of one day, from the partition of its year (used to check a transaction for duplicates)
+    private List<Transactions> rowsOn(LocalDate date) {
+        try {
+            return partitions.read(date, date).found();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Transactions> rows() {
+        try {
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return list;
+    }
+
+    // reads the transaction file into the list of transactions
+    private void readTransactions() throws IOException {
+        LedgerEvents.Load event = new LedgerEvents.Load();
+        event.begin();
+        long start = System.nanoTime();
+        int before = list.size();
+        long limit;
+        synchronized (log) {
+            // rows past this point reach the list through the LedgerFollower, so nothing is added twice
+            log.importNewRows();
+            limit = log.csvOffset();
+            follower.clearPending();
+            loaded = true;
+        }
+        DuplicateDetector duplicates = log.duplicates();
+        LedgerOverlay overlay = log.overlay();
+        duplicates.startBulk();
+        FileManager.readLinesFrom(path, 0, limit, (line, end) -> {
+            try {
+                Transactions transaction = FileManager.parseTransaction(line);
+                transaction.setId(end);
+                // edited rows are read as their latest version, deleted ones are left out
+                transaction = overlay.apply(transaction);
+                if (transaction != null) addToLedger(transaction);
+            } catch (RuntimeException e) {
+                // one bad row doesn't stop the rest of the ledger from loading (LedgerChecksums quarantines it)
+                LOAD_ERRORS.increment();
+            }
+        });
+        duplicates.finishBulk(list);
+        LOADED_ROWS.add(list.size() - before);
+        LOAD.recordSince(start);
+        event.user = name;
+        event.rows = list.size() - before;
+        event.bytes = limit;
+        event.commit();
+    }
+
+    /**
+     * Adds a transaction to the list of transactions. Every row that enters the list goes through here, shares its
+     * vendor and description through the LedgerDictionary, and is checked by the DuplicateDetector on its way in.
+     *
+     * @param transaction The transaction to add.
+     * @return true if the transaction looks like a duplicate of an earlier one.
+     */
+    boolean addToLedger(Transactions transaction) {
+        // an OffHeapLedger keeps its own copy of each string
+        if (!OffHeapLedger.ENABLED) dictionary.intern(transaction);
+        boolean duplicate = log.duplicates().check(transaction);
+        list.add(transaction);
+        return duplicate;
+    }
+
+    /** @return The EventLog of the ledger (used by the LedgerFollower). */
+    EventLog log() {
+        return log;
+    }
+
+    // adds up a number over every open ledger, for the gauges
+    private static long sumOpen(ToLongFunction<LedgerEngine> value) {
+        long sum = 0;
+        for (LedgerEngine engine : OPEN) sum += value.applyAsLong(engine);
+        return sum;
+    }
+
+    // times a report for the Metrics and records it for the flight recorder, see LedgerEvents
+    private static <T> T report(String type, Metrics.Histogram histogram, Supplier<T> work, ToLongFunction<T> rowsScanned, ToLongFunction<T> rowsEmitted) {
+        LedgerEvents.Report event = new LedgerEvents.Report();
+        event.begin();
+        T result = histogram.time(work);
+        event.end();
+        if (event.shouldCommit()) {
+            event.type = type;
+            event.rowsScanned = rowsScanned.applyAsLong(result);
+            event.rowsEmitted = rowsEmitted.applyAsLong(result);
+            event.commit();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,120 @@
+package com.pluralsight;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The LedgerEvents Class holds the Java Flight Recorder events of the ledger, so a recording shows ledger work
+ * next to the GC, I/O and thread events of the JVM. They cost next to nothing when no recording is running.
+ * src/main/resources/ledger.jfc is a recording template that turns them all on:
+ *
+ * <pre>
+ * java -XX:StartFlightRecording:settings=default,settings=src/main/resources/ledger.jfc,filename=ledger.jfr com.pluralsight.Screen
+ * jfr print --categories Ledger ledger.jfr
+ * </pre>
+ */
+public class LedgerEvents {
+
+    /**
+     * The transaction file was read into the list of transactions.
+     */
+    @Name("com.pluralsight.ledger.Load")
+    @Label("Ledger Load")
+    @Category("Ledger")
+    @Description("The transaction file was read into memory")
+    public static class Load extends Event {
+        @Label("User")
+        public String user;
+
+        @Label("Rows")
+        public long rows;
+
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+    }
+
+    /**
+     * A transaction was appended to the transaction file.
+     */
+    @Name("com.pluralsight.ledger.Append")
+    @Label("Transaction Append")
+    @Category("Ledger")
+    @Description("A transaction was written to the transaction file and the event log")
+    public static class Append extends Event {
+        @Label("User")
+        public String user;
+
+        @Label("Vendor")
+        public String vendor;
+
+        @Label("Amount")
+        public double amount;
+
+        @Label("Duplicate")
+        public boolean duplicate;
+    }
+
+    /**
+     * A report was worked out.
+     */
+    @Name("com.pluralsight.ledger.Report")
+    @Label("Report")
+    @Category("Ledger")
+    @Description("A report was worked out (printing it is not included)")
+    public static class Report extends Event {
+        @Label("Report Type")
+        public String type;
+
+        @Label("Rows Scanned")
+        @Description("0 for reports worked out from the EventLog summaries instead of the rows")
+        public long rowsScanned;
+
+        @Label("Rows Emitted")
+        public long rowsEmitted;
+    }
+
+    /**
+     * A custom search was run.
+     */
+    @Name("com.pluralsight.ledger.Search")
+    @Label("Custom Search")
+    @Category("Ledger")
+    @Description("A custom search was run over the transactions")
+    public static class Search extends Event {
+        @Label("Criteria")
+        public String criteria;
+
+        @Label("Plan")
+        @Description("How the matching rows were found")
+        public String plan;
+
+        @Label("Rows Scanned")
+        public long rowsScanned;
+
+        @Label("Rows Emitted")
+        public long rowsEmitted;
+    }
+
+    /**
+     * Something was written to the report file. There is one for every row, so they have no stack trace.
+     */
+    @Name("com.pluralsight.ledger.ReportFileWrite")
+    @Label("Report File Write")
+    @Category("Ledger")
+    @Description("A heading or a row was written to Reports/Report.txt")
+    @StackTrace(false)
+    public static class ReportFileWrite extends Event {
+        @Label("Written")
+        @Description("\"heading\" or \"row\"")
+        public String kind;
+
+        @Label("Characters")
+        public long characters;
+    }
+}
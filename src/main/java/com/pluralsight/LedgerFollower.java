@@ -0,0 +1,133 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The LedgerFollower Class watches a ledger's transaction file for rows appended by other programs while the
+ * application is running. Only the bytes after the last row the EventLog has seen are parsed, and a last row that
+ * is only partly written is left until its line break shows up. Every LedgerEngine has one (see LedgerEngine.follower).
+ *
+ * New rows are logged (which keeps the balance and rollups up to date right away) on a background thread, and handed
+ * to the list of transactions on the main thread by drain(), so the menus never see the list change under them.
+ * Following can be turned off with -Dledger.follow=false.
+ */
+public class LedgerFollower {
+
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("ledger.follow", "true"));
+    private final LedgerEngine ledger;
+    private final ConcurrentLinkedQueue<Transactions> pending = new ConcurrentLinkedQueue<>();
+    private Thread follower;
+    private WatchService watcher;
+
+    /**
+     * @param ledger The ledger to follow.
+     */
+    LedgerFollower(LedgerEngine ledger) {
+        this.ledger = ledger;
+    }
+
+    /**
+     * Starts watching the transaction file on a daemon thread, if following is enabled.
+     */
+    public synchronized void start() {
+        if (!ENABLED || follower != null) return;
+        Path directory = Path.of("AllTransactions");
+        String fileName = (ledger.user() + Screen.FILE_NAME).toLowerCase();
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+        } catch (IOException e) {
+            System.err.println("Could not watch your transaction file for new rows: " + e.getMessage());
+            return;
+        }
+        follower = new Thread(() -> follow(fileName), "ledger-follower");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    /**
+     * Stops watching the transaction file.
+     */
+    public synchronized void stop() {
+        if (follower == null) return;
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            // nothing left to do, the thread exits either way
+        }
+        follower.interrupt();
+        follower = null;
+    }
+
+    /**
+     * Moves the rows picked up since the last call into the list of transactions. Must be called from the thread
+     * that uses the list (the menus call it every time they are shown).
+     *
+     * @return The number of new rows.
+     */
+    public int drain() {
+        BudgetAlerts.printAlerts(ledger.takeAlerts());
+        if (!ledger.isLoaded()) {
+            // the rows will be read from the file when the list is loaded
+            return 0;
+        }
+        int count = 0;
+        Transactions transaction;
+        while ((transaction = pending.poll()) != null) {
+            // a row can be edited or deleted before it is drained
+            transaction = ledger.log().overlay().apply(transaction);
+            if (transaction == null) continue;
+            ledger.addToLedger(transaction);
+            count++;
+        }
+        if (count > 0) {
+            System.out.println(ConsoleColors.BLUE_BOLD_BRIGHT + "📥" + count + " NEW TRANSACTION(S) ARRIVED IN YOUR LEDGER!" + ConsoleColors.RESET);
+        }
+        return count;
+    }
+
+    /**
+     * Forgets the rows waiting to be drained. Called (holding the EventLog lock) when the list of transactions is read
+     * from the file, since the file already has them.
+     */
+    void clearPending() {
+        pending.clear();
+    }
+
+    private void follow(String fileName) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                // the timeout is a fallback for file systems where the watch service only polls
+                WatchKey key = watcher.poll(2, TimeUnit.SECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+                pickUpNewRows();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Could not read new rows from " + fileName + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void pickUpNewRows() throws IOException {
+        EventLog log = ledger.log();
+        synchronized (log) {
+            List<Transactions> rows = log.importNewRows();
+            if (ledger.isLoaded()) {
+                pending.addAll(rows);
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The LedgerGenerator Class writes made-up ledgers of any size in the transaction file format
+ * (date|time|description|vendor|amount), for benchmarks and stress tests.
+ *
+ * <pre>
+ * java com.pluralsight.Screen --generate AllTransactions/bigtransactions.csv 10000000 [--seed 42] [--vendors 5000]
+ * </pre>
+ *
+ * The rows are in date order and look like a real ledger: vendors are picked with a Zipf distribution (a few vendors
+ * get most of the transactions), every vendor belongs to a category with its own descriptions and typical amount
+ * (amounts are log-normal around it), about 1 row in 15 is a deposit, and more is spent in December and on weekends
+ * than in January or mid-week.
+ *
+ * The same seed always gives the same file (for one VERSION of the generator). Rows are made in chunks of 256k, each
+ * from its own random generator derived from the seed and the chunk number, so chunks are built in parallel and
+ * written in order without changing the result.
+ */
+public class LedgerGenerator {
+
+    /** Goes up whenever a change makes the same seed give different rows, so files made before can be told apart. */
+    public static final int VERSION = 1;
+
+    private static final int CHUNK_ROWS = 1 << 18;
+    private static final double ZIPF_EXPONENT = 1.1;
+    private static final double DEPOSIT_SHARE = 1.0 / 15;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2000, 1, 1);
+
+    private static final String[] PREFIXES = {"Fresh", "Quick", "Blue", "Golden", "Sun", "Metro", "Green", "Urban", "Corner",
+            "Royal", "Happy", "Silver", "North", "Lucky", "Prime", "Star", "River", "Maple", "Pioneer", "Summit"};
+
+    /**
+     * A kind of vendor, with what its transactions are for and how much they usually are.
+     */
+    private record Category(String suffix, String[] descriptions, double medianAmount, double spread) { }
+
+    private static final Category[] CATEGORIES = {
+            new Category("Mart", new String[]{"Groceries", "Weekly shop", "Snacks"}, 55, 0.6),
+            new Category("Gas", new String[]{"Fuel", "Gas", "Car wash"}, 45, 0.4),
+            new Category("Cafe", new String[]{"Coffee", "Breakfast", "Latte"}, 6, 0.5),
+            new Category("Diner", new String[]{"Lunch", "Dinner", "Take out"}, 22, 0.6),
+            new Category("Pharmacy", new String[]{"Prescription", "Vitamins", "First aid"}, 18, 0.7),
+            new Category("Books", new String[]{"Books", "Magazines", "Stationery"}, 25, 0.6),
+            new Category("Electric", new String[]{"Electric bill", "Utilities"}, 120, 0.3),
+            new Category("Telecom", new String[]{"Phone bill", "Internet"}, 75, 0.2),
+            new Category("Cinema", new String[]{"Movie tickets", "Popcorn"}, 28, 0.4),
+            new Category("Outfitters", new String[]{"Clothes", "Shoes", "Jacket"}, 70, 0.8),
+            new Category("Hardware", new String[]{"Tools", "Paint", "Garden"}, 40, 0.9),
+            new Category("Properties", new String[]{"Rent"}, 1500, 0.1),
+    };
+    private static final String[] EMPLOYERS = {"Acme Corp", "Globex", "Initech", "Umbrella Inc", "Stark Industries"};
+    private static final String[] DEPOSIT_DESCRIPTIONS = {"Paycheck", "Bonus", "Refund", "Transfer in"};
+
+    private final long rows;
+    private final long seed;
+    private final String[] vendors;
+    private final int[] vendorCategory;
+    private final double[] vendorCdf;
+    private final String[] dayText;
+    private final double[] dayCdf;
+
+    /**
+     * Prepares a generator.
+     *
+     * @param rows The number of rows to write.
+     * @param seed The seed, the same seed always gives the same rows.
+     * @param vendorCount The number of different payment vendors.
+     */
+    public LedgerGenerator(long rows, long seed, int vendorCount) {
+        this.rows = rows;
+        this.seed = seed;
+        SplittableRandom random = new SplittableRandom(seed);
+        vendors = new String[vendorCount];
+        vendorCategory = new int[vendorCount];
+        vendorCdf = new double[vendorCount];
+        // every prefix and category pair once, shuffled, then random pairs with a store number
+        int[] pairs = new int[PREFIXES.length * CATEGORIES.length];
+        for (int i = 0; i < pairs.length; i++) pairs[i] = i;
+        for (int i = pairs.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = pairs[i];
+            pairs[i] = pairs[j];
+            pairs[j] = swap;
+        }
+        double total = 0;
+        for (int i = 0; i < vendorCount; i++) {
+            int pair = i < pairs.length ? pairs[i] : random.nextInt(pairs.length);
+            vendorCategory[i] = pair % CATEGORIES.length;
+            String name = PREFIXES[pair / CATEGORIES.length] + " " + CATEGORIES[vendorCategory[i]].suffix();
+            vendors[i] = i < pairs.length ? name : name + " #" + (i + 1);
+            total += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+            vendorCdf[i] = total;
+        }
+        for (int i = 0; i < vendorCount; i++) vendorCdf[i] /= total;
+
+        // about 40 rows a day, between one and forty years
+        int days = (int) Math.max(365, Math.min(365L * 40, rows / 40));
+        dayText = new String[days];
+        dayCdf = new double[days];
+        total = 0;
+        for (int d = 0; d < days; d++) {
+            LocalDate date = FIRST_DAY.plusDays(d);
+            dayText[d] = date.toString();
+            total += seasonalWeight(date);
+            dayCdf[d] = total;
+        }
+        for (int d = 0; d < days; d++) dayCdf[d] /= total;
+    }
+
+    /**
+     * Runs the generator from the command line.
+     *
+     * @param args "--generate FILE ROWS [--seed N] [--vendors N]".
+     * @return The exit code, 0 if the file was written.
+     */
+    public static int run(String[] args) {
+        String file = null;
+        long rows = -1;
+        long seed = 42;
+        int vendors = 5000;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--seed") && i + 1 < args.length) {
+                    seed = Long.parseLong(args[++i]);
+                } else if (args[i].equals("--vendors") && i + 1 < args.length) {
+                    vendors = Integer.parseInt(args[++i]);
+                } else if (file == null) {
+                    file = args[i];
+                } else {
+                    rows = Long.parseLong(args[i].replace("_", ""));
+                }
+            }
+            if (file == null || rows < 0 || vendors < 1) {
+                System.err.println("usage: --generate FILE ROWS [--seed N] [--vendors N]");
+                return 1;
+            }
+            long start = System.nanoTime();
+            new LedgerGenerator(rows, seed, vendors).write(Path.of(file));
+            System.out.printf("Wrote %d rows to %s in %.1f s%n", rows, file, (System.nanoTime() - start) / 1e9);
+            return 0;
+        } catch (NumberFormatException e) {
+            System.err.println("usage: --generate FILE ROWS [--seed N] [--vendors N]");
+            return 1;
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Could not write the ledger: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Writes the rows to a file, replacing it if it exists. Chunks are built on every core and written in order.
+     *
+     * @param file The file to write.
+     * @throws IOException if the file can not be written.
+     * @throws InterruptedException if the thread is interrupted while waiting for a chunk.
+     */
+    public void write(Path file) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long chunks = (rows + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // a few chunks ahead of the writer at most, so memory stays bounded whatever the row count
+            ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<>();
+            long next = 0;
+            while (next < chunks || !inFlight.isEmpty()) {
+                while (next < chunks && inFlight.size() < threads * 2) {
+                    long chunk = next++;
+                    inFlight.add(pool.submit(() -> chunk(chunk)));
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(inFlight.poll().get());
+                while (buffer.hasRemaining()) channel.write(buffer);
+            }
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Builds the rows of one chunk.
+     *
+     * @param chunk The chunk number.
+     * @return The rows, as they are written to the file.
+     */
+    private byte[] chunk(long chunk) {
+        SplittableRandom random = new SplittableRandom(seed ^ (0x9E3779B97F4A7C15L * (chunk + 1)));
+        long first = chunk * CHUNK_ROWS;
+        long last = Math.min(rows, first + CHUNK_ROWS);
+        StringBuilder sb = new StringBuilder((int) (last - first) * 56);
+        int day = 0;
+        for (long row = first; row < last; row++) {
+            // the row's place in the file picks its day, so the whole file is in date order
+            double position = (row + 0.5) / rows;
+            day = Math.max(day, search(dayCdf, position));
+            double dayStart = day == 0 ? 0 : dayCdf[day - 1];
+            double withinDay = (position - dayStart) / (dayCdf[day] - dayStart);
+            int second = (int) Math.min(86399, Math.max(0, withinDay * 86400));
+            sb.append(dayText[day]).append('|');
+            appendTwoDigits(sb, second / 3600).append(':');
+            appendTwoDigits(sb, second / 60 % 60).append(':');
+            appendTwoDigits(sb, second % 60).append('|');
+            double cents;
+            if (random.nextDouble() < DEPOSIT_SHARE) {
+                sb.append(DEPOSIT_DESCRIPTIONS[random.nextInt(DEPOSIT_DESCRIPTIONS.length)]).append('|')
+                        .append(EMPLOYERS[random.nextInt(EMPLOYERS.length)]).append('|');
+                cents = Math.round(2500 * 100 * Math.exp(0.5 * gaussian(random)));
+            } else {
+                int vendor = search(vendorCdf, random.nextDouble());
+                Category category = CATEGORIES[vendorCategory[vendor]];
+                sb.append(category.descriptions()[random.nextInt(category.descriptions().length)]).append('|')
+                        .append(vendors[vendor]).append('|');
+                cents = -Math.max(1, Math.round(category.medianAmount() * 100 * Math.exp(category.spread() * gaussian(random))));
+            }
+            // the same amount text the application writes
+            sb.append(cents / 100).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static double seasonalWeight(LocalDate date) {
+        double weight = switch (date.getMonthValue()) {
+            case 12 -> 1.4;
+            case 11 -> 1.15;
+            case 1, 2 -> 0.85;
+            case 7, 8 -> 1.1;
+            default -> 1.0;
+        };
+        DayOfWeek day = date.getDayOfWeek();
+        if (day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY) weight *= 1.25;
+        return weight;
+    }
+
+    private static int search(double[] cdf, double value) {
+        int index = Arrays.binarySearch(cdf, value);
+        return Math.min(cdf.length - 1, index >= 0 ? index : -index - 1);
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        // Box-Muller, SplittableRandom has no nextGaussian on Java 17
+        double u = 1 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder sb, int value) {
+        if (value < 10) sb.append('0');
+        return sb.append(value);
+    }
+}
@@ -0,0 +1,380 @@
+package com.pluralsight;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The LedgerIndex Class keeps a vendor index of a user's transaction file on disk, so a vendor report doesn't have to
+ * read (and canonicalize) every row first, on every launch.
+ *
+ * "AllTransactions/NAMEtransactions.idx" has a header and one 16 byte entry per row, in file order: where the row
+ * ends, its length (with its line break) and the id of its vendor spelling. "AllTransactions/NAMEtransactions.keys"
+ * lists the spellings, one per line as "group|spelling" (the first spelling seen of every name that reduces to the
+ * same text, see VendorCanonicalizer.reduce), where group is the first spelling of the same canonical vendor; so a
+ * vendor report for a spelling in the index doesn't need the VendorCanonicalizer at all. The header is tagged with how much of the transaction file is indexed and the
+ * checksum of the bytes before that, so when the ledger is opened a valid index is memory-mapped as it is, and only
+ * the rows after it are indexed (a transaction file that was replaced is indexed again from its first row).
+ *
+ * The checksum only covers the end of the indexed bytes, so the header also keeps the time the transaction file was
+ * last modified when it was indexed, and whether its rows were covered by LedgerChecksums when the index was built.
+ * A file modified since that is longer, and still has the same checksum at the indexed end, was only appended to:
+ * the index is used, and the new rows are indexed by the next refresh. A file modified in place is trusted if the
+ * indexed rows end before the LedgerChecksums checkpoint (they were checksummed as they were written, and the last
+ * of them was checked when the ledger was opened); otherwise the index starts over. Neither reads the rows, so a row
+ * changed by hand in the middle of the file, to one of the same length, is only found by LedgerChecksums.verify.
+ *
+ * <pre>
+ * header: MAGIC, version, indexedEnd, checksum, rows, keysBytes, modified, verified (64 bytes)
+ * entry:  rowEnd (long), length (int), key (int)
+ * </pre>
+ *
+ * The entries are written before the header that counts them, so a crash leaves the old index as it was.
+ */
+public class LedgerIndex {
+
+    private static final int MAGIC = 0x4C494458;
+    private static final int VERSION = 4;
+    private static final int HEADER_BYTES = 64;
+    // where the modified time is in the header
+    private static final int MODIFIED_AT = 40;
+    private static final int ENTRY_BYTES = 16;
+    // entries per mapped region, a single mapping can't go past 2 GiB
+    private static final int CHUNK_ENTRIES = (1 << 30) / ENTRY_BYTES;
+
+    private static final Metrics.Histogram REFRESH = Metrics.histogram("ledger.index.refresh");
+    private static final Metrics.Counter INDEXED_ROWS = Metrics.counter("ledger.index.rowsIndexed");
+    private static final Metrics.Counter REBUILDS = Metrics.counter("ledger.index.rebuilds");
+
+    private final Path ledger;
+    private final Path entriesPath;
+    private final Path keysPath;
+    private final LedgerOverlay overlay;
+    private final VendorCanonicalizer vendors;
+    private final LedgerChecksums checksums;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    // the spellings and their groups by key id, and the key id of every reduced spelling
+    private final List<String> keys = new ArrayList<>();
+    private final List<Integer> groups = new ArrayList<>();
+    private final HashMap<String, Integer> keyIds = new HashMap<>();
+    // the group of every canonical vendor of this run, filled in when a spelling needs the VendorCanonicalizer
+    private final HashMap<Integer, Integer> vendorGroups = new HashMap<>();
+    private boolean registered;
+    private boolean opened;
+    private long indexedEnd;
+    private long checksum;
+    private long rows;
+    private long keysBytes;
+    private long modified;
+    private boolean verified;
+
+    /**
+     * @param name The user's name to identify the user's files (lower case).
+     * @param overlay The edits and deletes of the user's ledger.
+     * @param vendors The canonical vendors of the user's ledger.
+     * @param checksums The checksums of the user's transaction file.
+     */
+    public LedgerIndex(String name, LedgerOverlay overlay, VendorCanonicalizer vendors, LedgerChecksums checksums) {
+        this.ledger = Path.of("AllTransactions/" + name + Screen.FILE_NAME);
+        this.entriesPath = Path.of("AllTransactions/" + name + "transactions.idx");
+        this.keysPath = Path.of("AllTransactions/" + name + "transactions.keys");
+        this.overlay = overlay;
+        this.vendors = vendors;
+        this.checksums = checksums;
+    }
+
+    /**
+     * Reads the index header and maps the entries, if the index still matches the transaction file. Otherwise the
+     * index is started over, and built by the next refresh().
+     *
+     * @throws IOException if a file can not be read.
+     */
+    public synchronized void open() throws IOException {
+        opened = true;
+        reset();
+        if (!Files.exists(entriesPath) || Files.size(entriesPath) < HEADER_BYTES) return;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        try (FileChannel channel = FileChannel.open(entriesPath, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) { }
+        }
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) return;
+        long end = header.getLong();
+        long sum = header.getLong();
+        long count = header.getLong();
+        long bytes = header.getLong();
+        long time = header.getLong();
+        boolean matched = header.getLong() != 0;
+        long length = new File(ledger.toString()).length();
+        if (length < end || LedgerPartitions.tailChecksum(ledger, end) != sum
+                || Files.size(entriesPath) < HEADER_BYTES + count * ENTRY_BYTES
+                || !Files.exists(keysPath) || Files.size(keysPath) < bytes) {
+            REBUILDS.increment();
+            return;
+        }
+        long now = Files.getLastModifiedTime(ledger).toMillis();
+        if (now != time) {
+            // the file was written to since it was indexed: appended to if it is longer (its tail still matches),
+            // maybe by hand if it isn't
+            if (length == end && (!matched || !checksums.rowsMatch(end))) {
+                REBUILDS.increment();
+                return;
+            }
+            time = now;
+            ByteBuffer stamp = ByteBuffer.allocate(Long.BYTES).putLong(time);
+            try (FileChannel channel = FileChannel.open(entriesPath, StandardOpenOption.WRITE)) {
+                write(channel, stamp, MODIFIED_AT);
+            }
+        }
+        byte[] keyBytes = new byte[(int) bytes];
+        try (FileChannel channel = FileChannel.open(keysPath, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(keyBytes);
+            while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) { }
+        }
+        int start = 0;
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (keyBytes[i] != '\n') continue;
+            String line = new String(keyBytes, start, i - start, StandardCharsets.UTF_8);
+            int bar = line.indexOf('|');
+            addKey(line.substring(bar + 1), Integer.parseInt(line.substring(0, bar)));
+            start = i + 1;
+        }
+        indexedEnd = end;
+        checksum = sum;
+        rows = count;
+        keysBytes = bytes;
+        modified = time;
+        verified = matched;
+        map();
+    }
+
+    /**
+     * Drops the index, after the transaction file was written again and its rows got new ids (see EventLog.settle).
+     * The next refresh builds it again from the first row.
+     * @throws IOException if a file can not be deleted.
+     */
+    public synchronized void startOver() throws IOException {
+        opened = true;
+        reset();
+        Files.deleteIfExists(entriesPath);
+        Files.deleteIfExists(keysPath);
+    }
+
+    /**
+     * Indexes the rows of the transaction file written since the last refresh.
+     * @throws IOException if a file can not be read or written.
+     */
+    public synchronized void refresh() throws IOException {
+        if (!opened) open();
+        long length = new File(ledger.toString()).length();
+        if (length < indexedEnd || LedgerPartitions.tailChecksum(ledger, indexedEnd) != checksum) {
+            // the transaction file was replaced since it was indexed
+            REBUILDS.increment();
+            reset();
+        }
+        if (length == indexedEnd && Files.exists(entriesPath)) return;
+        long start = System.nanoTime();
+        // taken before the rows are read, so a row written while they are read makes the next open check them
+        long time = Files.getLastModifiedTime(ledger).toMillis();
+        ByteBuffer entries = ByteBuffer.allocate(4096 * ENTRY_BYTES);
+        StringBuilder newKeys = new StringBuilder();
+        long[] added = new long[1];
+        try (FileChannel channel = FileChannel.open(entriesPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long[] position = {HEADER_BYTES + rows * ENTRY_BYTES};
+            long[] rowStart = {indexedEnd};
+            long end = FileManager.readLinesFrom(ledger.toString(), indexedEnd, (line, lineEnd) -> {
+                long rowLength = lineEnd - rowStart[0];
+                rowStart[0] = lineEnd;
+                // only the vendor is needed here, rows that can't be read are left out when they are looked up
+                String[] fields = line.split("\\|");
+                if (fields.length != 5) return;
+                String reduced = VendorCanonicalizer.reduce(fields[3]);
+                Integer key = keyIds.get(reduced);
+                if (key == null) {
+                    // a new spelling joins the group of its canonical vendor, or starts one
+                    registerKeys();
+                    int newKey = keys.size();
+                    int group = vendorGroups.computeIfAbsent(vendors.canonical(fields[3]).id(), id -> newKey);
+                    key = addKey(fields[3], group);
+                    newKeys.append(group).append('|').append(fields[3]).append('\n');
+                }
+                entries.putLong(lineEnd);
+                entries.putInt((int) rowLength);
+                entries.putInt(key);
+                added[0]++;
+                if (!entries.hasRemaining()) {
+                    try {
+                        position[0] = write(channel, entries, position[0]);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+            write(channel, entries, position[0]);
+            byte[] keyBytes = newKeys.toString().getBytes(StandardCharsets.UTF_8);
+            try (FileChannel keysChannel = FileChannel.open(keysPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                keysChannel.truncate(keysBytes);
+                write(keysChannel, ByteBuffer.allocate(keyBytes.length).put(keyBytes), keysBytes);
+                keysChannel.force(false);
+            }
+            channel.force(false);
+            indexedEnd = end;
+            checksum = LedgerPartitions.tailChecksum(ledger, end);
+            rows += added[0];
+            keysBytes += keyBytes.length;
+            modified = time;
+            // checked once when the index is built from the first row, the rows added later were checksummed as written
+            if (rows == added[0]) verified = checksums.rowsMatch(end);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(indexedEnd).putLong(checksum).putLong(rows).putLong(keysBytes).putLong(modified).putLong(verified ? 1 : 0);
+            header.position(HEADER_BYTES);
+            write(channel, header, 0);
+            channel.force(false);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        map();
+        INDEXED_ROWS.add(added[0]);
+        REFRESH.recordSince(start);
+    }
+
+    /**
+     * Finds all transactions for a vendor, under any spelling the VendorCanonicalizer counts as that vendor, reading
+     * only their rows from the transaction file.
+     *
+     * @param vendor The name of the vendor.
+     * @return The rows in ledger order, how many index entries were scanned to find them, and the plan.
+     * @throws IOException if a file can not be read or written.
+     */
+    public synchronized LedgerPartitions.Scan byVendor(String vendor) throws IOException {
+        refresh();
+        ArrayList<Transactions> found = new ArrayList<>();
+        Integer key = keyIds.get(VendorCanonicalizer.reduce(vendor));
+        Integer group = key == null ? null : groups.get(key);
+        if (group == null) {
+            // a spelling that isn't in the index is matched by the VendorCanonicalizer
+            registerKeys();
+            VendorCanonicalizer.Vendor canonical = vendors.find(vendor);
+            group = canonical == null ? null : vendorGroups.get(canonical.id());
+        }
+        boolean[] wanted = new boolean[keys.size()];
+        int spellings = 0;
+        for (int k = 0; k < keys.size() && group != null; k++) {
+            wanted[k] = groups.get(k).equals(group);
+            if (wanted[k]) spellings++;
+        }
+        try (FileChannel channel = FileChannel.open(ledger, StandardOpenOption.READ)) {
+            for (long i = 0; i < rows; i++) {
+                MappedByteBuffer chunk = chunks.get((int) (i / CHUNK_ENTRIES));
+                int at = (int) (i % CHUNK_ENTRIES) * ENTRY_BYTES;
+                if (!wanted[chunk.getInt(at + 12)]) continue;
+                long rowEnd = chunk.getLong(at);
+                // the row's own copy is dead if it was edited or deleted, its edit is added below
+                if (overlay.changed(rowEnd)) continue;
+                int length = chunk.getInt(at + 8);
+                ByteBuffer row = ByteBuffer.allocate(length);
+                while (row.hasRemaining() && channel.read(row, rowEnd - length + row.position()) > 0) { }
+                int text = length - 1;
+                if (text > 0 && row.get(text - 1) == '\r') text--;
+                try {
+                    Transactions x = FileManager.parseTransaction(new String(row.array(), 0, text, StandardCharsets.UTF_8));
+                    x.setId(rowEnd);
+                    found.add(x);
+                } catch (RuntimeException e) {
+                    // an unreadable row is left out, the same as the EventLog does
+                }
+            }
+        }
+        // edits can have spellings that were never written to the transaction file
+        VendorCanonicalizer.Vendor canonical = null;
+        for (Transactions x : overlay.replacements(LocalDate.MIN, LocalDate.MAX)) {
+            Integer editKey = keyIds.get(VendorCanonicalizer.reduce(x.getVendor()));
+            if (editKey != null) {
+                if (groups.get(editKey).equals(group)) found.add(x);
+                continue;
+            }
+            if (canonical == null) canonical = vendors.find(vendor);
+            if (canonical != null && vendors.canonical(x.getVendor()).id() == canonical.id()) found.add(x);
+        }
+        found.sort(Comparator.comparingLong(Transactions::getId));
+        return new LedgerPartitions.Scan(found, rows, "vendor index (" + spellings + "/" + keys.size() + " spellings)");
+    }
+
+    /**
+     * Makes every vendor spelling in the index known to the VendorCanonicalizer, without reading the rows.
+     * @throws IOException if a file can not be read or written.
+     */
+    public synchronized void registerVendors() throws IOException {
+        refresh();
+        registerKeys();
+    }
+
+    /** @return The number of rows indexed. */
+    public synchronized long rows() {
+        return rows;
+    }
+
+    private int addKey(String spelling, int group) {
+        int key = keys.size();
+        keys.add(spelling);
+        groups.add(group);
+        keyIds.put(VendorCanonicalizer.reduce(spelling), key);
+        return key;
+    }
+
+    // runs the spellings read from the index through the VendorCanonicalizer, once, to learn the group of each vendor
+    private void registerKeys() {
+        if (registered) return;
+        registered = true;
+        for (int k = 0; k < keys.size(); k++) {
+            vendorGroups.putIfAbsent(vendors.canonical(keys.get(k)).id(), groups.get(k));
+        }
+    }
+
+    // maps the entries read only, in regions of up to 1 GiB
+    private void map() throws IOException {
+        chunks.clear();
+        if (rows == 0) return;
+        try (FileChannel channel = FileChannel.open(entriesPath, StandardOpenOption.READ)) {
+            for (long first = 0; first < rows; first += CHUNK_ENTRIES) {
+                long count = Math.min(CHUNK_ENTRIES, rows - first);
+                chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + first * ENTRY_BYTES, count * ENTRY_BYTES));
+            }
+        }
+    }
+
+    private void reset() {
+        chunks.clear();
+        keys.clear();
+        groups.clear();
+        keyIds.clear();
+        vendorGroups.clear();
+        registered = false;
+        indexedEnd = 0;
+        checksum = 0;
+        rows = 0;
+        keysBytes = 0;
+        modified = 0;
+        verified = false;
+    }
+
+    // writes a buffer (from its start up to its position) at a place in a file, and returns the place after it
+    private static long write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) position += channel.write(buffer, position);
+        buffer.clear();
+        return position;
+    }
+}
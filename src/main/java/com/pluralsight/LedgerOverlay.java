@@ -0,0 +1,163 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * The LedgerOverlay Class holds the edits and deletes made to rows of the transaction file. The transaction file is
+ * never rewritten: an edit or a delete is one EDIT or DELETE event in the EventLog, which puts the row's new version
+ * (or a tombstone) in here, and every read of the rows goes through apply() to see the ledger as it is now.
+ *
+ * Rows are named by their id, where they end in the transaction file, which never changes since the file is only
+ * appended to. Every change also remembers the year the row was first written in, which is the year partition its
+ * dead copy sits in until LedgerPartitions compacts it away.
+ *
+ * Looking a row up (apply, changed, get) takes no lock, since every read of the rows does it once per row. The edited
+ * rows are also kept by their new date and the changed ids by their year, so replacements and deadRows only look at
+ * the changes they are asked about.
+ *
+ * Like the BalanceSeries, it is fed by the EventLog and kept in the EventLog snapshot. It only holds the changes that
+ * aren't settled yet: once there are a lot of them, EventLog.settle writes them into the transaction file itself and
+ * they leave the overlay.
+ */
+public class LedgerOverlay {
+
+    /**
+     * The latest change to a row.
+     * @param id Where the row ends in the transaction file.
+     * @param year The year of the row as it was first written.
+     * @param replacement The row as it is now, null if it was deleted.
+     */
+    public record Change(long id, int year, Transactions replacement) {
+        /** @return true if the row was deleted. */
+        public boolean deleted() {
+            return replacement == null;
+        }
+    }
+
+    // written with the lock held, read without it
+    private final ConcurrentHashMap<Long, Change> changes = new ConcurrentHashMap<>();
+    // the edited rows by their new date, and the changed ids by the year they were first written in
+    private final TreeMap<LocalDate, Map<Long, Transactions>> byDate = new TreeMap<>();
+    private final HashMap<Integer, TreeSet<Long>> byYear = new HashMap<>();
+
+    /**
+     * Records a change to a row, replacing any earlier change to it.
+     * @param id The row's id.
+     * @param before The row before this change.
+     * @param replacement The row after it, null for a delete.
+     */
+    public synchronized void put(long id, Transactions before, Transactions replacement) {
+        Change earlier = changes.get(id);
+        int year = earlier != null ? earlier.year() : before.getDate().getYear();
+        if (replacement != null) replacement.setId(id);
+        put(new Change(id, year, replacement));
+    }
+
+    private void put(Change change) {
+        Change earlier = changes.put(change.id(), change);
+        if (earlier != null && !earlier.deleted()) {
+            Map<Long, Transactions> day = byDate.get(earlier.replacement().getDate());
+            day.remove(change.id());
+            if (day.isEmpty()) byDate.remove(earlier.replacement().getDate());
+        }
+        if (!change.deleted()) byDate.computeIfAbsent(change.replacement().getDate(), d -> new HashMap<>()).put(change.id(), change.replacement());
+        byYear.computeIfAbsent(change.year(), y -> new TreeSet<>()).add(change.id());
+    }
+
+    /**
+     * @param id A row's id.
+     * @return The latest change to the row, null if it was never changed.
+     */
+    public Change get(long id) {
+        return changes.get(id);
+    }
+
+    /**
+     * @param id A row's id.
+     * @return true if the row was edited or deleted, so its copy in the transaction file is dead.
+     */
+    public boolean changed(long id) {
+        return !changes.isEmpty() && changes.containsKey(id);
+    }
+
+    /**
+     * Gets a row read from the transaction file (or a partition) as it is now.
+     * @param row The row as it was written, with its id set.
+     * @return The row itself, its latest edit, or null if it was deleted.
+     */
+    public Transactions apply(Transactions row) {
+        if (changes.isEmpty()) return row;
+        Change change = changes.get(row.getId());
+        return change == null ? row : change.replacement();
+    }
+
+    /**
+     * Gets the edited rows whose new date falls in a range (their old copies are left out of reads, wherever they are).
+     * @param from The first date to include.
+     * @param to The last date to include.
+     * @return The edited rows, in no particular order.
+     */
+    public synchronized List<Transactions> replacements(LocalDate from, LocalDate to) {
+        List<Transactions> found = new ArrayList<>();
+        if (from.isAfter(to)) return found;
+        for (Map<Long, Transactions> day : byDate.subMap(from, true, to, true).values()) found.addAll(day.values());
+        return found;
+    }
+
+    /**
+     * Counts the dead rows of a year: rows first written in that year that were changed since.
+     * @param year The year.
+     * @param sealedEnd Only rows that end before this offset are counted.
+     * @return The number of dead rows.
+     */
+    public synchronized long deadRows(int year, long sealedEnd) {
+        TreeSet<Long> ids = byYear.get(year);
+        // only the rows of the tail end past sealedEnd, so this only looks at a few
+        return ids == null ? 0 : ids.size() - ids.tailSet(sealedEnd, false).size();
+    }
+
+    /** @return The number of rows that were changed. */
+    public int size() {
+        return changes.size();
+    }
+
+    /**
+     * Forgets every change.
+     */
+    public synchronized void clear() {
+        changes.clear();
+        byDate.clear();
+        byYear.clear();
+    }
+
+    /**
+     * Goes through every change (used to write the EventLog snapshot).
+     * @param consumer Gets every change as "id|year|row", with an empty row for a delete.
+     */
+    public synchronized void forEachChange(Consumer<String> consumer) {
+        for (Map.Entry<Long, Change> e : changes.entrySet()) {
+            Transactions x = e.getValue().replacement();
+            consumer.accept(e.getKey() + "|" + e.getValue().year() + "|" + (x == null ? "" : FileManager.formatTransaction(x)));
+        }
+    }
+
+    /**
+     * Restores a change written by forEachChange.
+     * @param change The change, as "id|year|row".
+     */
+    public synchronized void restoreChange(String change) {
+        String[] t = change.split("\\|", 3);
+        long id = Long.parseLong(t[0]);
+        Transactions replacement = t.length < 3 || t[2].isEmpty() ? null : FileManager.parseTransaction(t[2]);
+        if (replacement != null) replacement.setId(id);
+        put(new Change(id, Integer.parseInt(t[1]), replacement));
+    }
+}
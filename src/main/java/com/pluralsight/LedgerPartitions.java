@@ -0,0 +1,676 @@
+package com.pluralsight;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * The LedgerPartitions Class keeps a user's transactions split by year into segment files, so a report over a date
+ * range only reads the years it needs instead of the whole history.
+ *
+ * The transaction file stays the ledger (new rows are appended to it, by this application or by others), and the
+ * segments are built from it: every row before a sealed offset is in exactly one segment, the rows after it (the tail)
+ * are read from the transaction file. "AllTransactions/NAMEpartitions/manifest.csv" lists every segment with its year,
+ * row count, first and last date and totals, so segments outside a range are skipped without being opened.
+ *
+ * New rows go into plain text segments (".csv"), one per year, which are merged into one every time the tail is
+ * sealed. Once a year is over and its plain segment holds at least -Dledger.partition.compressBytes of rows (64 KiB,
+ * about one block), the next seal stores it as a CompressedSegment file (".blk"), which is never rewritten: rows that
+ * show up later for that year go into a new plain segment of it. Smaller years stay plain, since a few rows don't
+ * compress (the block index alone would make them bigger). A read only inflates the blocks of its date range, side
+ * by side, and keeps them in memory (as long as the heap can spare them).
+ *
+ * Segment rows look like "csvEnd|date|time|description|vendor|amount", where csvEnd is where the row ends in the
+ * transaction file, so rows from several segments can be put back in ledger order.
+ *
+ * Rows that were edited or deleted (see LedgerOverlay) stay in their segment as dead rows, which reads skip; edited
+ * rows are read from the overlay instead, by their new date. Once more than -Dledger.partition.compactRatio (0.2) of
+ * a year's rows are dead, compact() writes its segments again without them.
+ */
+public class LedgerPartitions {
+
+    // manifests of other versions are ignored and the segments are built again
+    private static final int MANIFEST_VERSION = 2;
+    // the tail is sealed into segments once it is this big, it can be tuned with -Dledger.partition.sealBytes
+    private static final long SEAL_BYTES = Long.getLong("ledger.partition.sealBytes", 1 << 20);
+    // a plain segment of a year that is over is compressed once it is this big
+    private static final long COMPRESS_BYTES = Long.getLong("ledger.partition.compressBytes", 1 << 16);
+    // how much of the end of the sealed part of the transaction file is checked, to see it wasn't replaced
+    private static final int CHECK_BYTES = 4096;
+    // the share of a year's rows that can be dead before it is compacted
+    private static final double COMPACT_RATIO = Double.parseDouble(System.getProperty("ledger.partition.compactRatio", "0.2"));
+
+    private static final Metrics.Histogram SEAL = Metrics.histogram("ledger.partitions.seal");
+    private static final Metrics.Histogram READ = Metrics.histogram("ledger.partitions.read");
+    private static final Metrics.Counter SEGMENTS_READ = Metrics.counter("ledger.partitions.segmentsRead");
+    private static final Metrics.Counter SEGMENTS_PRUNED = Metrics.counter("ledger.partitions.segmentsPruned");
+    private static final Metrics.Histogram COMPACT = Metrics.histogram("ledger.partitions.compact");
+    private static final Metrics.Counter PURGED_ROWS = Metrics.counter("ledger.partitions.purgedRows");
+
+    /**
+     * One segment file, as listed in the manifest.
+     * @param file The file name, in the partitions folder.
+     * @param year The year of every row in it.
+     * @param rows The number of rows.
+     * @param first The earliest date.
+     * @param last The latest date.
+     * @param deposits The total of the deposits.
+     * @param payments The total of the payments.
+     * @param bytes The size of the file.
+     * @param rawBytes The size of its rows before compression.
+     */
+    public record Segment(String file, int year, long rows, LocalDate first, LocalDate last, double deposits, double payments,
+                          long bytes, long rawBytes) {
+        boolean overlaps(LocalDate from, LocalDate to) {
+            return !last.isBefore(from) && !first.isAfter(to);
+        }
+
+        /** @return true if the segment is a CompressedSegment. */
+        public boolean compressed() {
+            return file.endsWith(".blk");
+        }
+    }
+
+    /**
+     * The rows found by a date bounded read.
+     * @param found The rows in the range, in ledger order.
+     * @param rowsScanned How many rows were read to find them.
+     * @param plan How they were found, like "partitions 2/9 (blocks 40/300) + tail".
+     */
+    public record Scan(ArrayList<Transactions> found, long rowsScanned, String plan) { }
+
+    // a row and where it ends in the transaction file
+    private record Row(long csvEnd, Transactions transaction) { }
+
+    private final Path ledger;
+    private final Path directory;
+    private final LedgerOverlay overlay;
+    private final List<Segment> segments = new ArrayList<>();
+    // the block indexes and the rows of the blocks of compressed segments, which never change
+    private final Map<String, List<CompressedSegment.Block>> indexes = new ConcurrentHashMap<>();
+    private final Map<String, SoftReference<List<Row>>> cache = new ConcurrentHashMap<>();
+    // how many of each year's dead rows were dropped by compactions
+    private final Map<Integer, Long> purged = new TreeMap<>();
+    // one compaction at a time, without holding the lock reads need
+    private final Object compactLock = new Object();
+    // the segment a compaction is writing, so a seal doesn't delete it as unlisted
+    private String compacting;
+    private boolean manifestRead;
+    private long csvEnd;
+    private long checksum;
+    private long nextGeneration = 1;
+
+    /**
+     * @param name The user's name to identify the user's files (lower case).
+     * @param overlay The edits and deletes of the user's ledger, which reads apply.
+     */
+    public LedgerPartitions(String name, LedgerOverlay overlay) {
+        this.ledger = Path.of("AllTransactions/" + name + Screen.FILE_NAME);
+        this.directory = Path.of("AllTransactions/" + name + "partitions");
+        this.overlay = overlay;
+    }
+
+    /**
+     * Finds the rows between two dates (both included). Only the segments that can have rows in the range are read,
+     * plus the tail of the transaction file. Reads never write: the tail is only sealed by seal and sealIfLarge.
+     *
+     * @param from The first date to include.
+     * @param to The last date to include.
+     * @return The rows in the range, in ledger order.
+     * @throws IOException if a file can not be read or written.
+     */
+    public synchronized Scan read(LocalDate from, LocalDate to) throws IOException {
+        ArrayList<Transactions> found = new ArrayList<>();
+        Scan scan = forEach(from, to, found::add);
+        // every segment is already in ledger order, and a row's id is where it ends in the transaction file, so
+        // this only merges a few sorted runs
+        found.sort(Comparator.comparingLong(Transactions::getId));
+        return new Scan(found, scan.rowsScanned(), scan.plan());
+    }
+
+    /**
+     * Goes through the rows between two dates (both included) without keeping them, for callers that don't need them
+     * in ledger order: segment by segment, then the tail of the transaction file, then the edited rows. Only one
+     * segment's rows are in memory at a time.
+     *
+     * @param from The first date to include.
+     * @param to The last date to include.
+     * @param action Gets every row in the range.
+     * @return How the rows were found, with an empty list of rows.
+     * @throws IOException if a file can not be read or written.
+     */
+    public synchronized Scan forEach(LocalDate from, LocalDate to, Consumer<Transactions> action) throws IOException {
+        return forEachPart(from, to, () -> action);
+    }
+
+    /**
+     * Goes through the rows between two dates like forEach, handing every segment's rows (and then the tail's, and
+     * the edited rows) to an action of its own, so callers can keep a small summary per segment and merge them.
+     *
+     * @param from The first date to include.
+     * @param to The last date to include.
+     * @param actions Makes the action for the next part.
+     * @return How the rows were found, with an empty list of rows.
+     * @throws IOException if a file can not be read or written.
+     */
+    public synchronized Scan forEachPart(LocalDate from, LocalDate to, Supplier<Consumer<Transactions>> actions) throws IOException {
+        readManifest();
+        long start = System.nanoTime();
+        long scanned = 0;
+        int opened = 0;
+        int[] blocks = new int[2];
+        for (Segment segment : segments) {
+            if (!segment.overlaps(from, to)) continue;
+            opened++;
+            Consumer<Transactions> action = actions.get();
+            List<Row> read = segment.compressed() ? blockRows(segment, from, to, blocks) : segmentRows(segment);
+            for (Row row : read) {
+                LocalDate date = row.transaction().getDate();
+                if (!date.isBefore(from) && !date.isAfter(to) && !overlay.changed(row.csvEnd())) action.accept(row.transaction());
+            }
+            scanned += read.size();
+        }
+        List<Row> tail = tailRows();
+        Consumer<Transactions> tailAction = actions.get();
+        for (Row row : tail) {
+            LocalDate date = row.transaction().getDate();
+            if (!date.isBefore(from) && !date.isAfter(to) && !overlay.changed(row.csvEnd())) tailAction.accept(row.transaction());
+        }
+        scanned += tail.size();
+        // an edited row may have moved to another year, so it is found by its new date wherever its old copy is
+        List<Transactions> edited = overlay.replacements(from, to);
+        edited.forEach(actions.get());
+        scanned += edited.size();
+        SEGMENTS_READ.add(opened);
+        SEGMENTS_PRUNED.add(segments.size() - opened);
+        READ.recordSince(start);
+        String plan = "partitions " + opened + "/" + segments.size();
+        if (blocks[1] > 0) plan += " (blocks " + blocks[0] + "/" + blocks[1] + ")";
+        return new Scan(new ArrayList<>(), scanned, plan + " + tail");
+    }
+
+    /**
+     * Moves the rows of the tail of the transaction file into segments, if the tail has grown big. The LedgerEngine
+     * calls this from its background thread and when it is closed, so reads never wait for a seal.
+     * @throws IOException if a file can not be read or written.
+     */
+    public synchronized void sealIfLarge() throws IOException {
+        readManifest();
+        if (new File(ledger.toString()).length() - csvEnd > SEAL_BYTES) seal();
+    }
+
+    /**
+     * Moves every complete row of the tail of the transaction file into segments, one per year it has rows for.
+     * The new segments are written before the manifest that lists them is swapped in, so a crash leaves the old
+     * manifest and its segments as they were.
+     *
+     * @throws IOException if a file can not be read or written.
+     */
+    public synchronized void seal() throws IOException {
+        readManifest();
+        int openYear = LocalDate.now().getYear();
+        boolean cooled = false;
+        for (Segment segment : segments) {
+            if (cools(segment, openYear)) cooled = true;
+        }
+        if (new File(ledger.toString()).length() == csvEnd && !cooled) return;
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+        TreeMap<Integer, SegmentWriter> writers = new TreeMap<>();
+        List<SegmentWriter> cooling = new ArrayList<>();
+        List<Segment> merged = new ArrayList<>();
+        long end;
+        try {
+            // rows are copied as they are (only their date and amount are read), a year's segment is opened when
+            // its first row shows up
+            end = FileManager.readLinesFrom(ledger.toString(), csvEnd, (line, lineEnd) -> {
+                int firstBar = line.indexOf('|');
+                int lastBar = line.lastIndexOf('|');
+                try {
+                    LocalDate date = LocalDate.parse(line.substring(0, firstBar));
+                    double amount = Double.parseDouble(line.substring(lastBar + 1));
+                    if (line.split("\\|").length != 5) return;
+                    SegmentWriter writer = writers.get(date.getYear());
+                    if (writer == null) {
+                        writer = new SegmentWriter(date.getYear(), false);
+                        writers.put(date.getYear(), writer);
+                        // the year's plain segment is merged into the new one, its rows come first
+                        for (Segment segment : segments) {
+                            if (segment.year() != date.getYear() || segment.compressed()) continue;
+                            writer.copy(segment);
+                            merged.add(segment);
+                        }
+                    }
+                    writer.write(lineEnd, line, date, amount);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (RuntimeException e) {
+                    // an unreadable row is left out, the same as the EventLog does
+                }
+            });
+            List<Segment> written = new ArrayList<>();
+            for (SegmentWriter writer : writers.values()) written.add(writer.finish());
+            segments.addAll(written);
+            // plain segments of a year that is over, that have grown big enough, are compressed
+            for (Segment segment : new ArrayList<>(segments)) {
+                if (merged.contains(segment)) continue;
+                if (!cools(segment, openYear)) continue;
+                SegmentWriter writer = new SegmentWriter(segment.year(), true);
+                cooling.add(writer);
+                writer.copy(segment);
+                merged.add(segment);
+            }
+            for (SegmentWriter writer : cooling) segments.add(writer.finish());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (SegmentWriter writer : writers.values()) writer.close();
+            for (SegmentWriter writer : cooling) writer.close();
+        }
+        segments.removeAll(merged);
+        segments.sort(Comparator.comparing(Segment::first));
+        csvEnd = end;
+        checksum = checksum();
+        writeManifest();
+        deleteUnlisted();
+        SEAL.recordSince(start);
+    }
+
+    // a plain segment of a year that is over, with enough rows to be worth compressing
+    private static boolean cools(Segment segment, int openYear) {
+        return !segment.compressed() && segment.year() < openYear && segment.bytes() >= COMPRESS_BYTES;
+    }
+
+    /**
+     * Drops every segment, after the transaction file was written again and its rows got new ids (see
+     * EventLog.settle). The next seal builds them again from the first row.
+     * @throws IOException if a file can not be deleted.
+     */
+    public synchronized void startOver() throws IOException {
+        readManifest();
+        forget();
+        Files.deleteIfExists(directory.resolve("manifest.csv"));
+        if (Files.isDirectory(directory)) deleteUnlisted();
+    }
+
+    /**
+     * Gets the segments as they are, the rows of the tail are in none of them.
+     * @return The segments by date.
+     * @throws IOException if the manifest can not be read.
+     */
+    public synchronized List<Segment> segments() throws IOException {
+        readManifest();
+        return Collections.unmodifiableList(new ArrayList<>(segments));
+    }
+
+    /**
+     * Writes the segments of every year whose share of dead rows has gone past -Dledger.partition.compactRatio again,
+     * without their dead rows. Reads go on while a year is written: the lock is only taken to pick its segments and
+     * to swap the new one in, and if a seal replaced one of them in between, the new segment is thrown away.
+     *
+     * @param force true to compact every year with dead rows, however few.
+     * @return The number of dead rows dropped.
+     * @throws IOException if a file can not be read or written.
+     */
+    public long compact(boolean force) throws IOException {
+        synchronized (compactLock) {
+            long dropped = 0;
+            for (int year : yearsToCompact(force)) dropped += compactYear(year);
+            return dropped;
+        }
+    }
+
+    private synchronized List<Integer> yearsToCompact(boolean force) throws IOException {
+        readManifest();
+        TreeMap<Integer, Long> rows = new TreeMap<>();
+        for (Segment segment : segments) rows.merge(segment.year(), segment.rows(), Long::sum);
+        List<Integer> years = new ArrayList<>();
+        for (Map.Entry<Integer, Long> e : rows.entrySet()) {
+            long dead = overlay.deadRows(e.getKey(), csvEnd) - purged.getOrDefault(e.getKey(), 0L);
+            if (dead > 0 && (force || dead >= COMPACT_RATIO * e.getValue())) years.add(e.getKey());
+        }
+        return years;
+    }
+
+    private long compactYear(int year) throws IOException {
+        long start = System.nanoTime();
+        List<Segment> old = new ArrayList<>();
+        long dead;
+        SegmentWriter writer;
+        synchronized (this) {
+            long rawBytes = 0;
+            for (Segment segment : segments) {
+                if (segment.year() != year) continue;
+                old.add(segment);
+                rawBytes += segment.rawBytes();
+            }
+            // rows changed from here on are dropped too if they come after this, and counted by the next compaction
+            dead = overlay.deadRows(year, csvEnd);
+            // a small year stays plain, the same as seal leaves it
+            writer = new SegmentWriter(year, year < LocalDate.now().getYear() && rawBytes >= COMPRESS_BYTES);
+            compacting = writer.file;
+        }
+        Segment compacted = null;
+        long[] before = new long[1];
+        try {
+            for (Segment segment : old) {
+                forEachLine(segment, line -> {
+                    int bar = line.indexOf('|');
+                    long rowEnd = Long.parseLong(line.substring(0, bar));
+                    if (overlay.changed(rowEnd)) return;
+                    String row = line.substring(bar + 1);
+                    try {
+                        writer.write(rowEnd, row, LocalDate.parse(row.substring(0, row.indexOf('|'))),
+                                Double.parseDouble(row.substring(row.lastIndexOf('|') + 1)));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                before[0] += segment.rows();
+            }
+            compacted = writer.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            writer.close();
+            if (compacted == null) {
+                synchronized (this) {
+                    compacting = null;
+                }
+            }
+        }
+        synchronized (this) {
+            compacting = null;
+            if (!segments.containsAll(old)) {
+                Files.deleteIfExists(directory.resolve(compacted.file()));
+                return 0;
+            }
+            segments.removeAll(old);
+            if (compacted.rows() > 0) segments.add(compacted);
+            segments.sort(Comparator.comparing(Segment::first));
+            purged.put(year, dead);
+            writeManifest();
+            deleteUnlisted();
+        }
+        long dropped = before[0] - compacted.rows();
+        PURGED_ROWS.add(dropped);
+        COMPACT.recordSince(start);
+        return dropped;
+    }
+
+    // the rows of a segment as they are stored ("csvEnd|row"), a compressed one block by block
+    private void forEachLine(Segment segment, Consumer<String> consumer) throws IOException {
+        Path file = directory.resolve(segment.file());
+        if (!segment.compressed()) {
+            FileManager.readLinesFrom(file.toString(), 0, (line, lineEnd) -> consumer.accept(line));
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (CompressedSegment.Block block : CompressedSegment.index(channel)) {
+                CompressedSegment.decode(channel, block).forEach(consumer);
+            }
+        }
+    }
+
+    private List<Row> segmentRows(Segment segment) throws IOException {
+        List<Row> read = new ArrayList<>((int) segment.rows());
+        FileManager.readLinesFrom(directory.resolve(segment.file()).toString(), 0, (line, lineEnd) -> read.add(parseRow(line)));
+        return read;
+    }
+
+    // the rows of the blocks of a compressed segment that can have rows in the range, blocks are inflated in parallel
+    private List<Row> blockRows(Segment segment, LocalDate from, LocalDate to, int[] blocks) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve(segment.file()), StandardOpenOption.READ)) {
+            List<CompressedSegment.Block> index = indexes.get(segment.file());
+            if (index == null) {
+                index = CompressedSegment.index(channel);
+                indexes.put(segment.file(), index);
+            }
+            List<CompressedSegment.Block> needed = index.stream().filter(block -> block.overlaps(from, to)).toList();
+            blocks[0] += needed.size();
+            blocks[1] += index.size();
+            List<Row> rows = new ArrayList<>();
+            needed.parallelStream().map(block -> {
+                String key = segment.file() + "@" + block.offset();
+                SoftReference<List<Row>> cached = cache.get(key);
+                List<Row> read = cached == null ? null : cached.get();
+                if (read != null) return read;
+                try {
+                    List<String> lines = CompressedSegment.decode(channel, block);
+                    read = new ArrayList<>(lines.size());
+                    for (String line : lines) read.add(parseRow(line));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                cache.put(key, new SoftReference<>(read));
+                return read;
+            }).forEachOrdered(rows::addAll);
+            return rows;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Row parseRow(String line) {
+        int bar = line.indexOf('|');
+        long csvEnd = Long.parseLong(line.substring(0, bar));
+        Transactions transaction = FileManager.parseTransaction(line.substring(bar + 1));
+        transaction.setId(csvEnd);
+        return new Row(csvEnd, transaction);
+    }
+
+    private List<Row> tailRows() throws IOException {
+        List<Row> rows = new ArrayList<>();
+        FileManager.readLinesFrom(ledger.toString(), csvEnd, (line, lineEnd) -> {
+            try {
+                Transactions transaction = FileManager.parseTransaction(line);
+                transaction.setId(lineEnd);
+                rows.add(new Row(lineEnd, transaction));
+            } catch (RuntimeException e) {
+                // an unreadable row is left out, the same as the EventLog does
+            }
+        });
+        return rows;
+    }
+
+    // writes one new segment to a temporary file, which is moved in place when it is finished
+    private class SegmentWriter {
+        private final int year;
+        private final String file;
+        private final Path temp;
+        private final BufferedWriter writer;
+        private final CompressedSegment.Writer blocks;
+        private long rows;
+        private LocalDate first = LocalDate.MAX;
+        private LocalDate last = LocalDate.MIN;
+        private double deposits;
+        private double payments;
+
+        SegmentWriter(int year, boolean compressed) throws IOException {
+            this.year = year;
+            this.file = year + "-" + nextGeneration++ + (compressed ? ".blk" : ".csv");
+            this.temp = directory.resolve(file + ".tmp");
+            this.writer = compressed ? null : Files.newBufferedWriter(temp);
+            this.blocks = compressed ? new CompressedSegment.Writer(temp) : null;
+        }
+
+        void write(long rowEnd, String line, LocalDate date, double amount) throws IOException {
+            writeRow(rowEnd + "|" + line, date);
+            rows++;
+            if (date.isBefore(first)) first = date;
+            if (date.isAfter(last)) last = date;
+            if (amount >= 0) deposits += amount;
+            else payments += amount;
+        }
+
+        // copies the rows of a plain segment
+        void copy(Segment segment) throws IOException {
+            FileManager.readLinesFrom(directory.resolve(segment.file()).toString(), 0, (line, lineEnd) -> {
+                try {
+                    int bar = line.indexOf('|');
+                    writeRow(line, blocks == null ? null : LocalDate.parse(line.substring(bar + 1, line.indexOf('|', bar + 1))));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            rows += segment.rows();
+            if (segment.first().isBefore(first)) first = segment.first();
+            if (segment.last().isAfter(last)) last = segment.last();
+            deposits += segment.deposits();
+            payments += segment.payments();
+        }
+
+        Segment finish() throws IOException {
+            close();
+            long bytes = Files.size(temp);
+            Files.move(temp, directory.resolve(file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new Segment(file, year, rows, first, last, deposits, payments, bytes, blocks == null ? bytes : blocks.rawBytes());
+        }
+
+        void close() throws IOException {
+            if (blocks == null) writer.close();
+            else blocks.close();
+        }
+
+        private void writeRow(String row, LocalDate date) throws IOException {
+            if (blocks != null) {
+                blocks.add(row, date);
+                return;
+            }
+            writer.write(row);
+            writer.write('\n');
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        Path target = directory.resolve("manifest.csv");
+        Path temp = directory.resolve("manifest.csv.tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            writer.write("version|" + MANIFEST_VERSION + "\n");
+            writer.write("csvEnd|" + csvEnd + "\n");
+            writer.write("checksum|" + checksum + "\n");
+            writer.write("next|" + nextGeneration + "\n");
+            for (Segment s : segments) {
+                writer.write("segment|" + s.file() + "|" + s.year() + "|" + s.rows() + "|" + s.first() + "|" + s.last()
+                        + "|" + s.deposits() + "|" + s.payments() + "|" + s.bytes() + "|" + s.rawBytes() + "\n");
+            }
+            for (Map.Entry<Integer, Long> e : purged.entrySet()) {
+                writer.write("purged|" + e.getKey() + "|" + e.getValue() + "\n");
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void readManifest() throws IOException {
+        if (manifestRead) {
+            if (new File(ledger.toString()).length() < csvEnd) forget();
+            return;
+        }
+        manifestRead = true;
+        Path manifest = directory.resolve("manifest.csv");
+        if (!Files.exists(manifest)) return;
+        try (BufferedReader reader = Files.newBufferedReader(manifest)) {
+            String line;
+            int version = 0;
+            while ((line = reader.readLine()) != null) {
+                String[] t = line.split("\\|");
+                switch (t[0]) {
+                    case "version" -> version = Integer.parseInt(t[1]);
+                    case "csvEnd" -> csvEnd = Long.parseLong(t[1]);
+                    case "checksum" -> checksum = Long.parseLong(t[1]);
+                    case "next" -> nextGeneration = Long.parseLong(t[1]);
+                    case "segment" -> segments.add(new Segment(t[1], Integer.parseInt(t[2]), Long.parseLong(t[3]),
+                            LocalDate.parse(t[4]), LocalDate.parse(t[5]), Double.parseDouble(t[6]), Double.parseDouble(t[7]),
+                            Long.parseLong(t[8]), Long.parseLong(t[9])));
+                    case "purged" -> purged.put(Integer.parseInt(t[1]), Long.parseLong(t[2]));
+                    default -> { }
+                }
+            }
+            // a transaction file that was replaced or cut short doesn't match the segments any more
+            if (version != MANIFEST_VERSION || new File(ledger.toString()).length() < csvEnd || checksum() != checksum) {
+                forget();
+            }
+        } catch (RuntimeException e) {
+            // a manifest we can't read is just ignored, the segments are built again
+            forget();
+        }
+    }
+
+    // starts over as if there were no segments, the next seal builds them again (under new file names, the old
+    // files are deleted once the new manifest is in place)
+    private void forget() {
+        segments.clear();
+        indexes.clear();
+        cache.clear();
+        purged.clear();
+        csvEnd = 0;
+        checksum = 0;
+    }
+
+    private void deleteUnlisted() throws IOException {
+        Set<String> listed = new HashSet<>();
+        listed.add("manifest.csv");
+        for (Segment segment : segments) listed.add(segment.file());
+        if (compacting != null) {
+            listed.add(compacting);
+            listed.add(compacting + ".tmp");
+        }
+        File[] files = directory.toFile().listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (!listed.contains(file.getName())) {
+                indexes.remove(file.getName());
+                cache.keySet().removeIf(key -> key.startsWith(file.getName() + "@"));
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    // the CRC32 of the last few KiB of the sealed part of the transaction file
+    private long checksum() throws IOException {
+        return tailChecksum(ledger, csvEnd);
+    }
+
+    /**
+     * Checksums the last few KiB of a file before an offset, to tell if the file was replaced since something was built
+     * from it (a file that was only appended to still matches).
+     * @param file The file.
+     * @param end The offset.
+     * @return The CRC32 of the bytes, 0 if end is 0.
+     * @throws IOException if the file can not be read.
+     */
+    static long tailChecksum(Path file, long end) throws IOException {
+        if (end == 0) return 0;
+        int length = (int) Math.min(CHECK_BYTES, end);
+        byte[] bytes = new byte[length];
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            raf.seek(end - length);
+            raf.readFully(bytes);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+}
@@ -18,8 +18,9 @@ public class Menus {
      */
    public static void homeMenu(Scanner scanner) {
         while (Screen.running) {
-            //Stream method to get running total of the ledger account (amounts of deposits and payments).
-            double sum = Screen.transactions.stream().mapToDouble(x -> (x.getAmount())).reduce(0, Double::sum);
+            Screen.ledger.follower().drain();
+            //running total of the ledger account (amounts of deposits and payments), kept up to date by the EventLog.
+            double sum = Screen.ledger.balance();
             System.out.printf("YOUR CURRENT TOTAL LEDGER VALUE: %.2f \n", sum);
 
 
@@ -72,7 +73,9 @@ public class Menus {
      * @param scanner The Scanner object for user input.
      */
     public static void ledgerMenu(Scanner scanner) {
+        FileManager.ensureTransactionsLoaded();
         while (Screen.runningLedger) {
+            Screen.ledger.follower().drain();
             System.out.println("Here is your Account Ledger:");
             System.out.println("Choose an option to continue:");
             System.out.println(ConsoleColors.WHITE_BOLD_BRIGHT+"A) All📝"+ConsoleColors.RESET);
@@ -146,6 +149,7 @@ public class Menus {
     public static void reportsMenu(Scanner scanner) {
         boolean running = true;
         while (running) {
+            Screen.ledger.follower().drain();
             System.out.println("📘Reports📓");
             System.out.println("Choose an option:");
             System.out.println("1) 🔎Month To Date📅");
@@ -154,6 +158,12 @@ public class Menus {
             System.out.println("4) 🔎Previous Year⏳");
             System.out.println("5) 🔎Search by Vendor🚙");
             System.out.println("6) 🔎Custom Search🔍");
+            System.out.println("7) 🔎Top Vendors🏆");
+            System.out.println("8) 🔎Balance Trend📈");
+            System.out.println("9) 🔎Amount Quantiles📊");
+            System.out.println("10) 🔎Suspected Duplicates👯");
+            System.out.println("11) 🔎Recurring Payments🔁");
+            System.out.println("12) 🔎Reconcile With Bank Statement🏦");
             System.out.println("0) Back👈🏽");
             System.out.println(ConsoleColors.RED_BOLD_BRIGHT + "X) " + "Exit The Application 🛑" + ConsoleColors.RESET);
 
@@ -204,6 +214,57 @@ public class Menus {
                     FiltersAndSorts.customSearch();
                     System.out.println("\n" +"👈🏽GOING BACK TO REPORTS MENU!"+"\n");
                     Progress.progressSmall();
+                    break;
+                case "7":
+                    System.out.println("\n" + "GOING TO TOP VENDORS REPORT!👉🏽"+"\n");
+                    Progress.progressLong();
+                    FiltersAndSorts.getTopVendors();
+                    System.out.println("\n" +"👈🏽GOING BACK TO REPORTS MENU!"+"\n");
+                    Progress.progressSmall();
+                    break;
+                case "8":
+                    System.out.println("\n" + "GOING TO BALANCE TREND REPORT!👉🏽"+"\n");
+                    Progress.progressLong();
+                    try {
+                        FiltersAndSorts.getBalanceTrend();
+                    } catch (NumberFormatException e) {
+                        System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🚨⚠️INVALID entry, Please enter D, W, M or a NUMBER.⚠️🚨"+ConsoleColors.RESET);
+                    }
+                    System.out.println("\n" +"👈🏽GOING BACK TO REPORTS MENU!"+"\n");
+                    Progress.progressSmall();
+                    break;
+                case "9":
+                    System.out.println("\n" + "GOING TO AMOUNT QUANTILES REPORT!👉🏽"+"\n");
+                    Progress.progressLong();
+                    FiltersAndSorts.getAmountQuantiles();
+                    System.out.println("\n" +"👈🏽GOING BACK TO REPORTS MENU!"+"\n");
+                    Progress.progressSmall();
+                    break;
+                case "10":
+                    System.out.println("\n" + "GOING TO SUSPECTED DUPLICATES REPORT!👉🏽"+"\n");
+                    Progress.progressLong();
+                    FiltersAndSorts.getSuspectedDuplicates();
+                    System.out.println("\n" +"👈🏽GOING BACK TO REPORTS MENU!"+"\n");
+                    Progress.progressSmall();
+                    break;
+                case "11":
+                    System.out.println("\n" + "GOING TO RECURRING PAYMENTS REPORT!👉🏽"+"\n");
+                    Progress.progressLong();
+                    FiltersAndSorts.getRecurringPayments();
+                    System.out.println("\n" +"👈🏽GOING BACK TO REPORTS MENU!"+"\n");
+                    Progress.progressSmall();
+                    break;
+                case "12":
+                    System.out.println("\n" + "GOING TO BANK STATEMENT RECONCILIATION!👉🏽"+"\n");
+                    Progress.progressLong();
+                    try {
+                        FiltersAndSorts.getReconciliation();
+                    } catch (NumberFormatException e) {
+                        System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"🚨⚠️INVALID entry, Please enter WHOLE NUMBERS for the tolerances.⚠️🚨"+ConsoleColors.RESET);
+                    }
+                    System.out.println("\n" +"👈🏽GOING BACK TO REPORTS MENU!"+"\n");
+                    Progress.progressSmall();
+                    break;
                 case "0":
                     running = false;
                 case "X", "x":
@@ -227,16 +288,15 @@ public class Menus {
 
 
     /**
-     * Displays a menu for sorting a list of transactions based on user preferences.
-     * Users can choose to sort the list by date, amount, or vendor alphabetically, or choose not to sort.
-     * After sorting, the sorted transactions are displayed.
+     * Displays a menu for sorting a search, before it is run, so the matching transactions can go straight into
+     * the sort instead of being collected first.
+     * Users can choose to sort by date, amount, or vendor alphabetically, or choose not to sort.
      *
-     * @param listToBeSorted The list of transactions to be sorted based on user selection.
+     * @return "1" (by date), "2" (by amount), "3" (by vendor) or "0" (no sort).
      */
-    public static void sortMenu(ArrayList listToBeSorted){
+    public static String sortMenu(){
         Scanner scanner = new Scanner(System.in);
-        boolean running = true;
-        while (running) {
+        while (true) {
             System.out.println("WOULD YOU LIKE TO SORT YOUR SEARCH?");
             System.out.println("Choose an option:");
             System.out.println("1) Sort By Date(Chronologically)");
@@ -250,23 +310,10 @@ public class Menus {
 
             switch (input) {
                 case "1":
-                    FiltersAndSorts.sortByDate(listToBeSorted);
-                    running=false;
-                    break;
                 case "2":
-                    FiltersAndSorts.sortByPrice(listToBeSorted);
-                    running=false;
-                    break;
                 case "3":
-                    FiltersAndSorts.sortByVendor(listToBeSorted);
-                    running=false;
-                    break;
-
                 case "0":
-                    System.out.println("PRINTING YOUR SEARCH REPORT NOW!");
-                    FiltersAndSorts.noSort(listToBeSorted);
-                    running=false;
-                    break;
+                    return input;
             }
         }
     }
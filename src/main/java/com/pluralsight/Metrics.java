@@ -0,0 +1,376 @@
+package com.pluralsight;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * The Metrics Class is a small in-process registry of counters, gauges and latency histograms, cheap enough to
+ * stay on all the time: recording is a couple of atomic adds, without locks or allocation.
+ *
+ * Histograms keep counts in log-linear buckets (every power of two split into 32 buckets), so any latency from a
+ * nanosecond to centuries is kept within about 3% and percentiles never need the raw samples.
+ *
+ * Once publish() is called every metric is also an MXBean named "com.pluralsight.ledger:type=...,name=..." (for
+ * jconsole or any JMX client), and all of them are appended to AllTransactions/metrics.log every
+ * -Dledger.metrics.dumpSeconds seconds (60 by default, 0 turns the dump off) and when the application exits. Once
+ * the log is bigger than -Dledger.metrics.maxBytes (1 MiB by default) it is moved to metrics.log.1, replacing the
+ * one before, so the dumps never take more than about twice that.
+ *
+ * <pre>
+ * private static final Metrics.Histogram LOAD = Metrics.histogram("ledger.load");
+ * LOAD.time(() -> readTransactions(...));
+ * </pre>
+ */
+public class Metrics {
+
+    private static final String DUMP_FILE = "AllTransactions/metrics.log";
+    private static final long DUMP_SECONDS = Long.getLong("ledger.metrics.dumpSeconds", 60);
+    private static final long DUMP_MAX_BYTES = Long.getLong("ledger.metrics.maxBytes", 1 << 20);
+    private static final String DOMAIN = "com.pluralsight.ledger";
+
+    // sorted by name, so the dump lists related metrics together
+    private static final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+    private static volatile MBeanServer server;
+
+    /**
+     * What every metric can tell about itself.
+     */
+    public interface Metric {
+        /** @return The metric as one line of text (without its name). */
+        String describe();
+    }
+
+    /** What a Counter shows over JMX. */
+    public interface CounterMXBean {
+        long getCount();
+    }
+
+    /** What a Gauge shows over JMX. */
+    public interface GaugeMXBean {
+        long getValue();
+    }
+
+    /** What a Histogram shows over JMX, latencies in milliseconds. */
+    public interface HistogramMXBean {
+        long getCount();
+
+        double getMeanMillis();
+
+        double getP50Millis();
+
+        double getP95Millis();
+
+        double getP99Millis();
+
+        double getMaxMillis();
+    }
+
+    /**
+     * A number that only goes up, like the number of failed logins.
+     */
+    public static class Counter implements Metric, CounterMXBean {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long amount) {
+            count.add(amount);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public String describe() {
+            return "count=" + getCount();
+        }
+    }
+
+    /**
+     * A number that is read when it is needed, like the number of rows in memory.
+     */
+    public static class Gauge implements Metric, GaugeMXBean {
+        private final LongSupplier value;
+
+        Gauge(LongSupplier value) {
+            this.value = value;
+        }
+
+        @Override
+        public long getValue() {
+            return value.getAsLong();
+        }
+
+        @Override
+        public String describe() {
+            return "value=" + getValue();
+        }
+    }
+
+    /**
+     * A distribution of durations in nanoseconds.
+     */
+    public static class Histogram implements Metric, HistogramMXBean {
+        private static final int SUB_BITS = 5;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        // values under 2 * SUB_COUNT get a bucket each, then SUB_COUNT buckets per power of two up to 2^63
+        private static final int BUCKETS = 2 * SUB_COUNT + (63 - SUB_BITS - 1) * SUB_COUNT;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Records one duration.
+         * @param nanos The duration in nanoseconds (negative values count as 0).
+         */
+        public void record(long nanos) {
+            long value = Math.max(0, nanos);
+            buckets.incrementAndGet(bucket(value));
+            count.increment();
+            total.add(value);
+            if (value > max.get()) max.accumulateAndGet(value, Math::max);
+        }
+
+        /**
+         * Records the time since a System.nanoTime() reading.
+         * @param start The reading taken when the work started.
+         */
+        public void recordSince(long start) {
+            record(System.nanoTime() - start);
+        }
+
+        /**
+         * Runs some work and records how long it took, even if it throws.
+         * @param work The work.
+         * @return What the work returned.
+         * @param <T> The type of the result.
+         */
+        public <T> T time(Supplier<T> work) {
+            long start = System.nanoTime();
+            try {
+                return work.get();
+            } finally {
+                recordSince(start);
+            }
+        }
+
+        /**
+         * Gets a percentile, as the top of the bucket it falls in (never more than the largest value recorded).
+         * @param percentile The percentile, between 0 and 100.
+         * @return The duration in nanoseconds, 0 if nothing was recorded.
+         */
+        public long percentile(double percentile) {
+            long[] counts = new long[BUCKETS];
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                seen += counts[i];
+            }
+            if (seen == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * seen));
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                cumulative += counts[i];
+                if (cumulative >= rank) return Math.min(highestValue(i), max.get());
+            }
+            return max.get();
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : total.sum() / 1e6 / n;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return percentile(50) / 1e6;
+        }
+
+        @Override
+        public double getP95Millis() {
+            return percentile(95) / 1e6;
+        }
+
+        @Override
+        public double getP99Millis() {
+            return percentile(99) / 1e6;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return max.get() / 1e6;
+        }
+
+        @Override
+        public String describe() {
+            return String.format("count=%d mean=%.3fms p50=%.3fms p95=%.3fms p99=%.3fms max=%.3fms",
+                    getCount(), getMeanMillis(), getP50Millis(), getP95Millis(), getP99Millis(), getMaxMillis());
+        }
+
+        static int bucket(long value) {
+            if (value < 2 * SUB_COUNT) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) - SUB_COUNT;
+            return 2 * SUB_COUNT + (exponent - SUB_BITS - 1) * SUB_COUNT + sub;
+        }
+
+        static long highestValue(int bucket) {
+            if (bucket < 2 * SUB_COUNT) return bucket;
+            int exponent = (bucket - 2 * SUB_COUNT) / SUB_COUNT + SUB_BITS + 1;
+            long sub = (bucket - 2 * SUB_COUNT) % SUB_COUNT + SUB_COUNT;
+            return ((sub + 1) << (exponent - SUB_BITS)) - 1;
+        }
+    }
+
+    /**
+     * Gets a counter, creating it the first time the name is used.
+     * @param name The name, like "login.failed".
+     * @return The counter.
+     */
+    public static Counter counter(String name) {
+        return register(name, "Counter", Counter::new);
+    }
+
+    /**
+     * Adds a gauge. A later gauge with the same name is ignored.
+     * @param name The name, like "ledger.rows".
+     * @param value Reads the current value.
+     * @return The gauge.
+     */
+    public static Gauge gauge(String name, LongSupplier value) {
+        return register(name, "Gauge", () -> new Gauge(value));
+    }
+
+    /**
+     * Gets a histogram, creating it the first time the name is used.
+     * @param name The name, like "ledger.load".
+     * @return The histogram.
+     */
+    public static Histogram histogram(String name) {
+        return register(name, "Histogram", Histogram::new);
+    }
+
+    /**
+     * Gets every metric made so far.
+     * @return The metrics by name, in name order.
+     */
+    public static Map<String, Metric> all() {
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    /**
+     * Publishes every metric (the ones made so far and later ones) over JMX, and starts the periodic dump to
+     * AllTransactions/metrics.log. The work is done on a background thread, so start up doesn't wait for JMX.
+     */
+    public static void publish() {
+        ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ledger-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.execute(() -> {
+            MBeanServer platform = ManagementFactory.getPlatformMBeanServer();
+            synchronized (metrics) {
+                server = platform;
+                metrics.forEach(Metrics::registerMBean);
+            }
+        });
+        if (DUMP_SECONDS > 0) {
+            dumper.scheduleAtFixedRate(Metrics::dump, DUMP_SECONDS, DUMP_SECONDS, TimeUnit.SECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(Metrics::dump, "ledger-metrics-exit"));
+        }
+    }
+
+    /**
+     * Writes every metric that has something to show, one "name type values" line each.
+     * @param writer Where to write.
+     */
+    public static void print(PrintWriter writer) {
+        metrics.forEach((name, metric) -> {
+            if (metric instanceof Gauge || (metric instanceof CounterMXBean c && c.getCount() > 0)
+                    || (metric instanceof HistogramMXBean h && h.getCount() > 0)) {
+                writer.printf("%-28s %-9s %s%n", name, metric.getClass().getSimpleName(), metric.describe());
+            }
+        });
+    }
+
+    /**
+     * Appends all metrics to AllTransactions/metrics.log, under a time stamp, starting a new log first if it is full.
+     */
+    public static synchronized void dump() {
+        try {
+            Path log = Path.of(DUMP_FILE);
+            if (Files.exists(log) && Files.size(log) >= DUMP_MAX_BYTES) {
+                Files.move(log, Path.of(DUMP_FILE + ".1"), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // the dump is appended to the full log, the next one tries again
+        }
+        try (PrintWriter writer = new PrintWriter(new FileWriter(DUMP_FILE, true))) {
+            writer.println("--- " + LocalDateTime.now().withNano(0));
+            print(writer);
+        } catch (IOException e) {
+            // metrics must never break the application, the next dump will try again
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Metric> T register(String name, String type, Supplier<T> factory) {
+        Metric metric = metrics.get(name);
+        if (metric == null) {
+            synchronized (metrics) {
+                metric = metrics.get(name);
+                if (metric == null) {
+                    metric = factory.get();
+                    metrics.put(name, metric);
+                    if (server != null) registerMBean(name, metric);
+                }
+            }
+        }
+        if (!metric.getClass().getSimpleName().equals(type)) {
+            throw new IllegalArgumentException(name + " is already a " + metric.getClass().getSimpleName());
+        }
+        return (T) metric;
+    }
+
+    private static void registerMBean(String name, Metric metric) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + metric.getClass().getSimpleName() + ",name=" + ObjectName.quote(name));
+            if (!server.isRegistered(objectName)) server.registerMBean(metric, objectName);
+        } catch (JMException e) {
+            // the metric still works and is still dumped, it just isn't visible over JMX
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The OffHeapLedger Class is a list of transactions kept outside of the Java heap, for ledgers too big to keep as
+ * objects without long garbage collection pauses. It is used for the list of transactions when the application is
+ * started with -Dledger.storage=offheap.
+ *
+ * Rows are 32 bytes each in memory-mapped scratch files (in -Dledger.offheap.dir, the temporary folder by default):
+ * the row id, the amount, the date as a day number, the time as a second of the day, and the codes of the vendor and
+ * description. The strings themselves are kept once each in a separate arena, and found by an open-addressed hash
+ * table that is off the heap too (8 byte slots of a string's hash and code, doubled when it is half full), so every
+ * string is stored once however many rows and distinct strings there are. The first -Dledger.offheap.decodeLimit
+ * strings (65,536 by default) are also kept decoded on the heap, so the rows of common vendors don't decode them
+ * again. The heap only holds the mapped chunks and those strings, so it stays the same size however many rows there
+ * are. Times are kept to the second, like in the transaction file.
+ *
+ * get() makes a new Transactions object for the row every time, so iterating creates short-lived garbage only.
+ * forEachBetween() and byVendor() look at the rows' dates and vendor codes and only make objects for the rows they return.
+ */
+public class OffHeapLedger extends AbstractList<Transactions> implements RandomAccess {
+
+    /** true if the list of transactions is kept off the heap. */
+    public static final boolean ENABLED = "offheap".equalsIgnoreCase(System.getProperty("ledger.storage", "heap"));
+
+    private static final String DIR = System.getProperty("ledger.offheap.dir", System.getProperty("java.io.tmpdir"));
+    private static final int DECODE_LIMIT = Integer.getInteger("ledger.offheap.decodeLimit", 65_536);
+
+    // row layout
+    private static final int ROW_BYTES = 32;
+    private static final int ID = 0;
+    private static final int AMOUNT = 8;
+    private static final int DAY = 16;
+    private static final int SECOND = 20;
+    private static final int VENDOR = 24;
+    private static final int DESCRIPTION = 28;
+
+    // hash table slot layout, a code is stored plus one so an empty slot is zero
+    private static final int SLOT_BYTES = 8;
+    private static final int SLOT_HASH = 0;
+    private static final int SLOT_CODE = 4;
+    private static final long FIRST_SLOTS = 1 << 16;
+
+    // the scratch files are mapped 64 MiB at a time, which holds a whole number of rows
+    private static final int CHUNK_SHIFT = 26;
+    private static final long CHUNK_BYTES = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_MASK = CHUNK_BYTES - 1;
+
+    private final Region rows = new Region("rows");
+    private final Region arena = new Region("strings");
+    // where each string starts in the arena, by code
+    private final Region offsets = new Region("offsets");
+    // the code of every string by its hash
+    private Region table = new Region("codes");
+    private long slots = FIRST_SLOTS;
+    private final ArrayList<String> decoded = new ArrayList<>();
+    private int size = 0;
+    private int strings = 0;
+    private long arenaEnd = 0;
+
+    @Override
+    public Transactions get(int index) {
+        checkIndex(index, size);
+        long position = (long) index * ROW_BYTES;
+        MappedByteBuffer chunk = rows.chunk(position);
+        int at = Region.offset(position);
+        Transactions x = new Transactions(string(chunk.getInt(at + DESCRIPTION)), string(chunk.getInt(at + VENDOR)),
+                LocalDate.ofEpochDay(chunk.getInt(at + DAY)), LocalTime.ofSecondOfDay(chunk.getInt(at + SECOND)),
+                chunk.getDouble(at + AMOUNT));
+        x.setId(chunk.getLong(at + ID));
+        return x;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Transactions set(int index, Transactions transaction) {
+        Transactions before = get(index);
+        write(index, transaction);
+        return before;
+    }
+
+    @Override
+    public void add(int index, Transactions transaction) {
+        checkIndex(index, size + 1);
+        for (int i = size; i > index; i--) copy(i - 1, i);
+        write(index, transaction);
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Transactions remove(int index) {
+        Transactions before = get(index);
+        for (int i = index + 1; i < size; i++) copy(i, i - 1);
+        size--;
+        modCount++;
+        return before;
+    }
+
+    /**
+     * Forgets every row and string. The scratch files are kept, and written over by the next rows.
+     */
+    @Override
+    public void clear() {
+        size = 0;
+        strings = 0;
+        arenaEnd = 0;
+        table.close();
+        table = new Region("codes");
+        slots = FIRST_SLOTS;
+        decoded.clear();
+        modCount++;
+    }
+
+    /**
+     * Goes through the rows whose date falls between two dates, by their day numbers.
+     * @param from The first date to include.
+     * @param to The last date to include.
+     * @param action Gets every matching transaction, in list order.
+     */
+    public void forEachBetween(LocalDate from, LocalDate to, Consumer<Transactions> action) {
+        long first = from.toEpochDay();
+        long last = to.toEpochDay();
+        for (int i = 0; i < size; i++) {
+            long position = (long) i * ROW_BYTES;
+            int day = rows.chunk(position).getInt(Region.offset(position) + DAY);
+            if (day >= first && day <= last) action.accept(get(i));
+        }
+    }
+
+    /**
+     * Finds the rows of some vendors. Every distinct vendor is tested once, and the rows are matched by its code.
+     * @param test The test for a vendor spelling.
+     * @return The matching transactions in list order.
+     */
+    public ArrayList<Transactions> byVendor(Predicate<String> test) {
+        BitSet tested = new BitSet();
+        BitSet matching = new BitSet();
+        ArrayList<Transactions> found = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            long position = (long) i * ROW_BYTES;
+            int code = rows.chunk(position).getInt(Region.offset(position) + VENDOR);
+            if (!tested.get(code)) {
+                tested.set(code);
+                if (test.test(string(code))) matching.set(code);
+            }
+            if (matching.get(code)) found.add(get(i));
+        }
+        return found;
+    }
+
+    // the number of distinct strings in the arena (for the ledger.offheap.strings gauge, see LedgerEngine)
+    int strings() {
+        return strings;
+    }
+
+    // the bytes of the scratch files that are mapped (for the ledger.offheap.bytes gauge)
+    long mappedBytes() {
+        return rows.mapped() + arena.mapped() + offsets.mapped() + table.mapped();
+    }
+
+    private void write(int index, Transactions transaction) {
+        long position = (long) index * ROW_BYTES;
+        MappedByteBuffer chunk = rows.chunk(position);
+        int at = Region.offset(position);
+        chunk.putLong(at + ID, transaction.getId());
+        chunk.putDouble(at + AMOUNT, transaction.getAmount());
+        chunk.putInt(at + DAY, (int) transaction.getDate().toEpochDay());
+        chunk.putInt(at + SECOND, transaction.getTime().toSecondOfDay());
+        chunk.putInt(at + VENDOR, code(transaction.getVendor()));
+        chunk.putInt(at + DESCRIPTION, code(transaction.getDescription()));
+    }
+
+    private void copy(int from, int to) {
+        long source = (long) from * ROW_BYTES;
+        long target = (long) to * ROW_BYTES;
+        MappedByteBuffer in = rows.chunk(source);
+        MappedByteBuffer out = rows.chunk(target);
+        for (int i = 0; i < ROW_BYTES; i += Long.BYTES) {
+            out.putLong(Region.offset(target) + i, in.getLong(Region.offset(source) + i));
+        }
+    }
+
+    // the code of a string, adding it to the arena if it isn't there yet
+    private int code(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int hash = value.hashCode();
+        long slot = find(hash, bytes);
+        int known = slotCode(slot);
+        if (known >= 0) return known;
+        if (Integer.BYTES + bytes.length > CHUNK_BYTES) {
+            throw new IllegalArgumentException("a string of " + bytes.length + " bytes does not fit in the arena");
+        }
+        if (strings == Integer.MAX_VALUE) throw new IllegalStateException("too many different strings");
+        // a string never crosses from one chunk into the next
+        if (Region.offset(arenaEnd) + Integer.BYTES + bytes.length > CHUNK_BYTES) {
+            arenaEnd = (arenaEnd | CHUNK_MASK) + 1;
+        }
+        MappedByteBuffer chunk = arena.chunk(arenaEnd);
+        int at = Region.offset(arenaEnd);
+        chunk.putInt(at, bytes.length);
+        chunk.put(at + Integer.BYTES, bytes);
+        long position = (long) strings * Long.BYTES;
+        offsets.chunk(position).putLong(Region.offset(position), arenaEnd);
+        arenaEnd += Integer.BYTES + bytes.length;
+        int code = strings++;
+        setSlot(table, slot, hash, code);
+        if (code < DECODE_LIMIT) decoded.add(value);
+        if ((long) strings * 2 > slots) grow();
+        return code;
+    }
+
+    // the slot of a string in the hash table: the one holding its code, or the empty one it goes in
+    private long find(int hash, byte[] bytes) {
+        long mask = slots - 1;
+        for (long slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int code = slotCode(slot);
+            if (code < 0) return slot;
+            long position = slot * SLOT_BYTES;
+            if (table.chunk(position).getInt(Region.offset(position) + SLOT_HASH) == hash && sameBytes(code, bytes)) return slot;
+        }
+    }
+
+    // the code in a slot, -1 if it is empty
+    private int slotCode(long slot) {
+        long position = slot * SLOT_BYTES;
+        return table.chunk(position).getInt(Region.offset(position) + SLOT_CODE) - 1;
+    }
+
+    private static void setSlot(Region region, long slot, int hash, int code) {
+        long position = slot * SLOT_BYTES;
+        MappedByteBuffer chunk = region.chunk(position);
+        chunk.putInt(Region.offset(position) + SLOT_HASH, hash);
+        chunk.putInt(Region.offset(position) + SLOT_CODE, code + 1);
+    }
+
+    // moves every code to a table twice the size
+    private void grow() {
+        Region bigger = new Region("codes");
+        long biggerMask = slots * 2 - 1;
+        for (long slot = 0; slot < slots; slot++) {
+            int code = slotCode(slot);
+            if (code < 0) continue;
+            long position = slot * SLOT_BYTES;
+            int hash = table.chunk(position).getInt(Region.offset(position) + SLOT_HASH);
+            long target = spread(hash) & biggerMask;
+            while (true) {
+                long targetPosition = target * SLOT_BYTES;
+                if (bigger.chunk(targetPosition).getInt(Region.offset(targetPosition) + SLOT_CODE) == 0) break;
+                target = (target + 1) & biggerMask;
+            }
+            setSlot(bigger, target, hash, code);
+        }
+        table.close();
+        table = bigger;
+        slots *= 2;
+    }
+
+    // String.hashCode is weak in its low bits, which pick the slot
+    private static long spread(int hash) {
+        return (hash ^ (hash >>> 16)) * 0x9E3779B97F4A7C15L >>> 1;
+    }
+
+    // true if the string with a code has exactly these bytes
+    private boolean sameBytes(int code, byte[] bytes) {
+        long position = (long) code * Long.BYTES;
+        long start = offsets.chunk(position).getLong(Region.offset(position));
+        MappedByteBuffer chunk = arena.chunk(start);
+        int at = Region.offset(start);
+        if (chunk.getInt(at) != bytes.length) return false;
+        for (int i = 0; i < bytes.length; i++) {
+            if (chunk.get(at + Integer.BYTES + i) != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    private String string(int code) {
+        if (code < decoded.size()) return decoded.get(code);
+        long position = (long) code * Long.BYTES;
+        long start = offsets.chunk(position).getLong(Region.offset(position));
+        MappedByteBuffer chunk = arena.chunk(start);
+        int at = Region.offset(start);
+        byte[] bytes = new byte[chunk.getInt(at)];
+        chunk.get(at + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) throw new IndexOutOfBoundsException("index " + index + ", size " + bound);
+    }
+
+    // a scratch file that grows a chunk at a time, deleted when the application exits
+    private static final class Region {
+        private final String name;
+        private final ArrayList<MappedByteBuffer> chunks = new ArrayList<>();
+        private FileChannel channel;
+
+        Region(String name) {
+            this.name = name;
+        }
+
+        // the chunk holding a position, mapped (and the file made longer) the first time it is needed
+        MappedByteBuffer chunk(long position) {
+            int index = (int) (position >>> CHUNK_SHIFT);
+            while (chunks.size() <= index) {
+                try {
+                    if (channel == null) {
+                        Path file = Files.createTempFile(Path.of(DIR), "ledger-" + name + "-", ".bin");
+                        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+                    }
+                    chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, chunks.size() * CHUNK_BYTES, CHUNK_BYTES));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("could not grow the off-heap " + name, e);
+                }
+            }
+            return chunks.get(index);
+        }
+
+        long mapped() {
+            return chunks.size() * CHUNK_BYTES;
+        }
+
+        // deletes the file, the mapped chunks are unmapped once they are garbage collected
+        void close() {
+            chunks.clear();
+            if (channel == null) return;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // the file is deleted when the application exits anyway
+            }
+            channel = null;
+        }
+
+        static int offset(long position) {
+            return (int) (position & CHUNK_MASK);
+        }
+    }
+}
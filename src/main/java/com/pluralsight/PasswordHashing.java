@@ -1,5 +1,12 @@
 package com.pluralsight;
 
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
 /**
  * The PasswordHashing Class contains the method that will be used to Hash the User Password.
  */
@@ -8,6 +15,17 @@ public class PasswordHashing {
     //https://www.codewars.com/kata/520b9d2ad5c005041100000f/java
     //Pig Latin Hash ('Hamza' -> 'amzaHay')
 
+    private static final String KDF_PREFIX = "pbkdf2";
+    private static final String KDF_ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * The PBKDF2 work factor used for newly hashed passwords. It can be tuned with the
+     * "ledger.hash.iterations" system property; stored hashes keep the work factor they were created with.
+     */
+    public static final int ITERATIONS = Integer.getInteger("ledger.hash.iterations", 120_000);
 
     /**
      * Converts a given password into Pig Latin Hash format by applying the Pig Latin transformation rules.
@@ -35,4 +53,58 @@ public class PasswordHashing {
 
         return sb.toString().trim();
     };
+
+    /**
+     * Hashes a password with PBKDF2 using a fresh random salt and the configured work factor.
+     *
+     * @param password The plain text password.
+     * @return The stored form of the hash ("pbkdf2$iterations$salt$hash", salt and hash Base64 encoded).
+     */
+    public static String hashPassword(String password){
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, ITERATIONS);
+        return KDF_PREFIX + "$" + ITERATIONS + "$" + Base64.getEncoder().encodeToString(salt) + "$" + Base64.getEncoder().encodeToString(hash);
+    }
+
+    /**
+     * Checks a password against a stored hash. Hashes written before PBKDF2 was introduced are still
+     * accepted by comparing against the Pig Latin Hash.
+     *
+     * @param password The plain text password the user entered.
+     * @param storedHash The hash stored in users.csv.
+     * @return true if the password matches the stored hash.
+     */
+    public static boolean verifyPassword(String password, String storedHash){
+        if (!isKdfHash(storedHash)) {
+            return storedHash.equals(passwordHashPigLatin(password));
+        }
+        String[] parts = storedHash.split("\\$");
+        if (parts.length != 4) return false;
+        int iterations = Integer.parseInt(parts[1]);
+        byte[] salt = Base64.getDecoder().decode(parts[2]);
+        byte[] expected = Base64.getDecoder().decode(parts[3]);
+        return MessageDigest.isEqual(expected, pbkdf2(password, salt, iterations));
+    }
+
+    /**
+     * Tells if a stored hash was made with the key derivation function (and not the old Pig Latin Hash).
+     *
+     * @param storedHash The hash stored in users.csv.
+     * @return true if the hash is a PBKDF2 hash.
+     */
+    public static boolean isKdfHash(String storedHash){
+        return storedHash.startsWith(KDF_PREFIX + "$");
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations){
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_BITS);
+        try {
+            return SecretKeyFactory.getInstance(KDF_ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(KDF_ALGORITHM + " is not available on this JVM", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
 }
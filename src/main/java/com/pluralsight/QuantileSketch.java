@@ -0,0 +1,190 @@
+package com.pluralsight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The QuantileSketch Class is a KLL sketch (Karnin, Lang and Liberty) for approximate quantiles of a stream of numbers.
+ * Items live in levels; an item on level h stands for 2^h original items. When the sketch is over its size, the lowest
+ * full level is sorted and every other item is promoted one level up. With the default k = 200 the rank error is
+ * around 1%, memory stays at a few hundred numbers however many items are added, and every quantile is exact while
+ * fewer than k items have been added. Sketches can be merged, which is how a range of months is answered.
+ */
+public class QuantileSketch {
+
+    private static final int DEFAULT_K = 200;
+    private static final Random coin = new Random(20231030L);
+
+    private final int k;
+    private final List<double[]> levels = new ArrayList<>();
+    private final List<Integer> sizes = new ArrayList<>();
+    private long count = 0;
+
+    /**
+     * Makes an empty sketch with the default accuracy.
+     */
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * Makes an empty sketch.
+     * @param k The accuracy parameter, a bigger k is more accurate and uses more memory.
+     */
+    public QuantileSketch(int k) {
+        this.k = Math.max(8, k);
+        addLevel();
+    }
+
+    /**
+     * Adds a number.
+     * @param value The number.
+     */
+    public void update(double value) {
+        append(0, value);
+        count++;
+        compressIfNeeded();
+    }
+
+    /**
+     * Merges another sketch into this one.
+     * @param other The sketch to merge in, it is not changed.
+     */
+    public void merge(QuantileSketch other) {
+        for (int h = 0; h < other.levels.size(); h++) {
+            double[] items = other.levels.get(h);
+            for (int i = 0; i < other.sizes.get(h); i++) {
+                append(h, items[i]);
+            }
+        }
+        count += other.count;
+        compressIfNeeded();
+    }
+
+    /**
+     * Estimates a quantile.
+     * @param q The quantile between 0 and 1 (0.5 is the median).
+     * @return The estimated value, or NaN if the sketch is empty.
+     */
+    public double quantile(double q) {
+        int total = 0;
+        for (int size : sizes) total += size;
+        if (total == 0) return Double.NaN;
+        double[][] weighted = new double[total][];
+        int n = 0;
+        for (int h = 0; h < levels.size(); h++) {
+            double[] items = levels.get(h);
+            for (int i = 0; i < sizes.get(h); i++) {
+                weighted[n++] = new double[]{items[i], 1L << h};
+            }
+        }
+        Arrays.sort(weighted, (a, b) -> Double.compare(a[0], b[0]));
+        double weightTotal = 0;
+        for (double[] w : weighted) weightTotal += w[1];
+        double target = Math.max(1, Math.ceil(q * weightTotal));
+        double seen = 0;
+        for (double[] w : weighted) {
+            seen += w[1];
+            if (seen >= target) return w[0];
+        }
+        return weighted[total - 1][0];
+    }
+
+    /** @return The number of items added. */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Writes the sketch as text: the count, then each level as "level:value,value,...", separated by ";".
+     * @return The sketch as text.
+     */
+    public String serialize() {
+        StringBuilder sb = new StringBuilder().append(count);
+        for (int h = 0; h < levels.size(); h++) {
+            if (sizes.get(h) == 0) continue;
+            sb.append(';').append(h).append(':');
+            double[] items = levels.get(h);
+            for (int i = 0; i < sizes.get(h); i++) {
+                if (i > 0) sb.append(',');
+                sb.append(items[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads a sketch written by serialize().
+     * @param text The sketch as text.
+     * @return The sketch.
+     */
+    public static QuantileSketch deserialize(String text) {
+        QuantileSketch sketch = new QuantileSketch();
+        String[] parts = text.split(";");
+        sketch.count = Long.parseLong(parts[0]);
+        for (int p = 1; p < parts.length; p++) {
+            String[] level = parts[p].split(":");
+            int h = Integer.parseInt(level[0]);
+            for (String value : level[1].split(",")) {
+                sketch.append(h, Double.parseDouble(value));
+            }
+        }
+        return sketch;
+    }
+
+    private void append(int h, double value) {
+        while (levels.size() <= h) addLevel();
+        double[] items = levels.get(h);
+        int size = sizes.get(h);
+        if (size == items.length) {
+            items = Arrays.copyOf(items, items.length * 2);
+            levels.set(h, items);
+        }
+        items[size] = value;
+        sizes.set(h, size + 1);
+    }
+
+    private void addLevel() {
+        levels.add(new double[16]);
+        sizes.add(0);
+    }
+
+    private int capacity(int h) {
+        int depth = levels.size() - 1 - h;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(2.0 / 3.0, depth)));
+    }
+
+    private void compressIfNeeded() {
+        while (true) {
+            int total = 0;
+            int capacity = 0;
+            for (int h = 0; h < levels.size(); h++) {
+                total += sizes.get(h);
+                capacity += capacity(h);
+            }
+            if (total <= capacity) return;
+            for (int h = 0; h < levels.size(); h++) {
+                if (sizes.get(h) >= capacity(h)) {
+                    compact(h);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void compact(int h) {
+        if (h + 1 == levels.size()) addLevel();
+        double[] items = levels.get(h);
+        int size = sizes.get(h);
+        Arrays.sort(items, 0, size);
+        // an odd item out stays behind, the rest is halved into the next level
+        int keep = size % 2;
+        int offset = coin.nextBoolean() ? 1 : 0;
+        for (int i = keep + offset; i < size; i += 2) {
+            append(h + 1, items[i]);
+        }
+        sizes.set(h, keep);
+    }
+}
@@ -0,0 +1,245 @@
+package com.pluralsight;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Iterator;
+
+/**
+ * The Reconciler Class checks a ledger against a bank statement. Both files are sorted by amount and date with an
+ * ExternalSort (so files bigger than memory spill to disk) and then walked together in one sort-merge join. A ledger
+ * row matches a statement row when the amounts are within centTolerance cents and the dates within dayTolerance days
+ * of each other; among several candidates the closest amount, then the closest date, wins. Every row ends up in
+ * exactly one of three files: PREFIXmatched.csv (the ledger row, then the statement row), PREFIXledger-only.csv and
+ * PREFIXstatement-only.csv.
+ *
+ * The ledger is reconciled as it is now: rows that were edited or deleted (see LedgerOverlay) are skipped in the
+ * transaction file, and the edited rows are added in their new version.
+ *
+ * Statement rows can be in the ledger's date|time|description|vendor|amount format, or any "|" or ","
+ * separated format that starts with a yyyy-MM-dd date and ends with the amount. Lines that don't start with a date
+ * (like a header) are skipped.
+ */
+public class Reconciler {
+
+    /**
+     * The outcome of a reconciliation.
+     * @param matched The number of matched pairs.
+     * @param ledgerOnly The number of ledger rows with no statement row.
+     * @param statementOnly The number of statement rows with no ledger row.
+     * @param spilledRuns The number of sorted runs that had to be written to disk.
+     */
+    public record Summary(long matched, long ledgerOnly, long statementOnly, int spilledRuns) { }
+
+    // one row of either file, by its epoch day and amount in cents
+    private record Entry(int day, long cents, String line) { }
+
+    // a statement row waiting in the join's window
+    private static final class Candidate {
+        final Entry entry;
+        boolean matched;
+
+        Candidate(Entry entry) {
+            this.entry = entry;
+        }
+    }
+
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        if (a.cents() != b.cents()) return Long.compare(a.cents(), b.cents());
+        if (a.day() != b.day()) return Integer.compare(a.day(), b.day());
+        return a.line().compareTo(b.line());
+    };
+
+    private static final ExternalSort.Codec<Entry> CODEC = new ExternalSort.Codec<>() {
+        @Override
+        public void write(DataOutput out, Entry entry) throws IOException {
+            out.writeInt(entry.day());
+            out.writeLong(entry.cents());
+            ExternalSort.Codec.writeString(out, entry.line());
+        }
+
+        @Override
+        public Entry read(DataInput in) throws IOException {
+            return new Entry(in.readInt(), in.readLong(), ExternalSort.Codec.readString(in));
+        }
+    };
+
+    /**
+     * Reconciles a ledger file against a statement file.
+     *
+     * @param ledgerPath The transaction file.
+     * @param overlay The edits and deletes of the ledger.
+     * @param statementPath The bank statement file.
+     * @param dayTolerance How many days apart a match's dates may be.
+     * @param centTolerance How many cents apart a match's amounts may be.
+     * @param outputPrefix Where to write the three result files (for example "Reports/reconcile-").
+     * @return How many rows ended up in each file.
+     * @throws IOException if a file can not be read or written.
+     */
+    public static Summary reconcile(String ledgerPath, LedgerOverlay overlay, String statementPath, int dayTolerance, long centTolerance, String outputPrefix) throws IOException {
+        try (ExternalSort<Entry> ledger = new ExternalSort<>(ORDER, CODEC, ExternalSort.RUN_ROWS);
+             ExternalSort<Entry> statement = new ExternalSort<>(ORDER, CODEC, ExternalSort.RUN_ROWS)) {
+            try {
+                FileManager.readLinesFrom(ledgerPath, 0, (line, end) -> {
+                    if (overlay.changed(end)) return;
+                    Entry entry = parse(line);
+                    if (entry == null) return;
+                    try {
+                        ledger.add(entry);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            for (Transactions edited : overlay.replacements(LocalDate.MIN, LocalDate.MAX)) {
+                Entry entry = parse(FileManager.formatTransaction(edited));
+                if (entry != null) ledger.add(entry);
+            }
+            try (BufferedReader reader = new BufferedReader(new FileReader(statementPath), 1 << 16)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Entry entry = parse(line);
+                    if (entry != null) statement.add(entry);
+                }
+            }
+            Summary summary;
+            try (BufferedWriter matched = new BufferedWriter(new FileWriter(outputPrefix + "matched.csv"), 1 << 16);
+                 BufferedWriter ledgerOnly = new BufferedWriter(new FileWriter(outputPrefix + "ledger-only.csv"), 1 << 16);
+                 BufferedWriter statementOnly = new BufferedWriter(new FileWriter(outputPrefix + "statement-only.csv"), 1 << 16)) {
+                summary = join(ledger.sorted(), statement.sorted(), dayTolerance, centTolerance, matched, ledgerOnly, statementOnly);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return new Summary(summary.matched(), summary.ledgerOnly(), summary.statementOnly(), ledger.spilledRuns() + statement.spilledRuns());
+        }
+    }
+
+    private static Summary join(Iterator<Entry> ledger, Iterator<Entry> statement, int dayTolerance, long centTolerance,
+                                BufferedWriter matched, BufferedWriter ledgerOnly, BufferedWriter statementOnly) throws IOException {
+        long matches = 0;
+        long onlyInLedger = 0;
+        long onlyInStatement = 0;
+        // the statement rows whose amount is still close enough to the current ledger row's; a matched row is only
+        // marked, and dropped once it reaches the front, so a match doesn't have to search the window to remove it
+        ArrayDeque<Candidate> window = new ArrayDeque<>();
+        Entry nextStatement = statement.hasNext() ? statement.next() : null;
+        while (ledger.hasNext()) {
+            Entry row = ledger.next();
+            // rows too small for this ledger row are too small for every later one too
+            while (!window.isEmpty() && (window.peekFirst().matched || window.peekFirst().entry.cents() < row.cents() - centTolerance)) {
+                Candidate first = window.pollFirst();
+                if (first.matched) continue;
+                write(statementOnly, first.entry.line());
+                onlyInStatement++;
+            }
+            while (nextStatement != null && nextStatement.cents() <= row.cents() + centTolerance) {
+                if (nextStatement.cents() < row.cents() - centTolerance) {
+                    write(statementOnly, nextStatement.line());
+                    onlyInStatement++;
+                } else {
+                    window.addLast(new Candidate(nextStatement));
+                }
+                nextStatement = statement.hasNext() ? statement.next() : null;
+            }
+            if (centTolerance == 0) {
+                // the window only holds this exact amount, oldest first, so rows too old for this ledger row are
+                // too old for every later one too (common amounts like rent would make the window long otherwise)
+                while (!window.isEmpty() && (window.peekFirst().matched || window.peekFirst().entry.day() < row.day() - dayTolerance)) {
+                    Candidate first = window.pollFirst();
+                    if (first.matched) continue;
+                    write(statementOnly, first.entry.line());
+                    onlyInStatement++;
+                }
+            }
+            Candidate best = null;
+            for (Candidate candidate : window) {
+                if (candidate.matched) continue;
+                if (centTolerance == 0 && candidate.entry.day() > row.day() + dayTolerance) break;
+                if (Math.abs(candidate.entry.day() - row.day()) > dayTolerance) continue;
+                if (best == null || closer(row, candidate.entry, best.entry)) best = candidate;
+            }
+            if (best == null) {
+                write(ledgerOnly, row.line());
+                onlyInLedger++;
+            } else {
+                best.matched = true;
+                matched.write(row.line());
+                matched.write('|');
+                write(matched, best.entry.line());
+                matches++;
+            }
+        }
+        for (Candidate left : window) {
+            if (left.matched) continue;
+            write(statementOnly, left.entry.line());
+            onlyInStatement++;
+        }
+        while (nextStatement != null) {
+            write(statementOnly, nextStatement.line());
+            onlyInStatement++;
+            nextStatement = statement.hasNext() ? statement.next() : null;
+        }
+        return new Summary(matches, onlyInLedger, onlyInStatement, 0);
+    }
+
+    private static boolean closer(Entry row, Entry candidate, Entry best) {
+        long amount = Math.abs(candidate.cents() - row.cents()) - Math.abs(best.cents() - row.cents());
+        if (amount != 0) return amount < 0;
+        return Math.abs(candidate.day() - row.day()) < Math.abs(best.day() - row.day());
+    }
+
+    private static void write(BufferedWriter writer, String line) throws IOException {
+        writer.write(line);
+        writer.newLine();
+    }
+
+    /**
+     * Reads the date and amount of a row.
+     * @return The entry, or null if the line doesn't start with a date and end with an amount.
+     */
+    private static Entry parse(String line) {
+        String separator = line.indexOf('|') >= 0 ? "|" : ",";
+        int first = line.indexOf(separator);
+        int last = line.lastIndexOf(separator);
+        if (first < 0) return null;
+        try {
+            LocalDate date = parseDate(line, first);
+            String amount = line.substring(last + 1).trim().replace("$", "");
+            return new Entry((int) date.toEpochDay(), Math.round(Double.parseDouble(amount) * 100), line);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // yyyy-MM-dd is read by hand, the DateTimeFormatter is the slowest part of reading millions of rows
+    private static LocalDate parseDate(String line, int end) {
+        String text = line.substring(0, end).trim();
+        if (text.length() == 10 && text.charAt(4) == '-' && text.charAt(7) == '-') {
+            int year = digits(text, 0, 4);
+            int month = digits(text, 5, 7);
+            int day = digits(text, 8, 10);
+            if (year >= 0 && month >= 0 && day >= 0) return LocalDate.of(year, month, day);
+        }
+        return LocalDate.parse(text, Screen.DATE_FORMATTER);
+    }
+
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,170 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The RecurringDetector Class finds transactions that repeat on a schedule, like subscriptions, rent or pay checks.
+ *
+ * Rows are grouped by normalized vendor (deposits and payments apart), and each group's amounts are sorted and cut
+ * into clusters wherever one amount is more than 15% above the one before it, so 9.99 and 10.01 always end up
+ * together. The ledger is first copied into plain int/long columns, the rows are counting-sorted by group, and each
+ * group's amounts and each cluster's days are sorted on their own, so the whole detection is a few sort-and-group
+ * passes without comparing rows pairwise. A cluster is recurring when most of the gaps between its dates match a
+ * weekly, every-two-weeks, monthly, quarterly or yearly cadence.
+ */
+public class RecurringDetector {
+
+    // a cluster of amounts ends where the next amount is more than 15% bigger
+    private static final int CLUSTER_PERCENT = 115;
+    private static final int MIN_OCCURRENCES = 3;
+    private static final double MIN_MATCHING = 0.7;
+
+    /**
+     * A schedule a recurring series can follow.
+     */
+    public enum Cadence {
+        WEEKLY(7, 1), BIWEEKLY(14, 2), MONTHLY(30, 3), QUARTERLY(91, 7), YEARLY(365, 7);
+
+        final int days;
+        final int tolerance;
+
+        Cadence(int days, int tolerance) {
+            this.days = days;
+            this.tolerance = tolerance;
+        }
+
+        LocalDate next(LocalDate last) {
+            return switch (this) {
+                case MONTHLY -> last.plusMonths(1);
+                case QUARTERLY -> last.plusMonths(3);
+                case YEARLY -> last.plusYears(1);
+                default -> last.plusDays(days);
+            };
+        }
+
+        boolean matches(int gap) {
+            return Math.abs(gap - days) <= tolerance;
+        }
+    }
+
+    /**
+     * A detected recurring series.
+     * @param vendor The vendor, as it was written on the last row of the series in the ledger.
+     * @param cadence The schedule it follows.
+     * @param occurrences The number of transactions in the series.
+     * @param typicalAmount The median amount.
+     * @param lastDate The date of the latest transaction.
+     * @param nextDate The date the next transaction is expected on.
+     */
+    public record Series(String vendor, Cadence cadence, int occurrences, double typicalAmount, LocalDate lastDate, LocalDate nextDate) { }
+
+    /**
+     * Detects the recurring series in a list of transactions.
+     * @param transactions The transactions.
+     * @param vendors The canonical vendors of the ledger, a vendor's spellings are one series.
+     * @return The series, the ones expected soonest first.
+     */
+    public static List<Series> detect(List<Transactions> transactions, VendorCanonicalizer vendors) {
+        int n = transactions.size();
+        int[] group = new int[n];
+        int[] day = new int[n];
+        long[] cents = new long[n];
+        HashMap<String, Integer> vendorIds = new HashMap<>();
+
+        // one pass to turn the rows into columns, a group is a vendor's deposits or its payments
+        for (int i = 0; i < n; i++) {
+            Transactions x = transactions.get(i);
+            int vendor = vendorIds.computeIfAbsent(vendors.name(x.getVendor()), v -> vendorIds.size());
+            double amount = x.getAmount();
+            group[i] = vendor * 2 + (amount < 0 ? 1 : 0);
+            day[i] = (int) x.getDate().toEpochDay();
+            cents[i] = Math.round(amount * 100);
+        }
+
+        // counting sort of the rows by group (rows stay in ledger order within a group)
+        int groups = vendorIds.size() * 2;
+        int[] start = new int[groups + 1];
+        for (int g : group) start[g + 1]++;
+        for (int g = 0; g < groups; g++) start[g + 1] += start[g];
+        int[] fill = Arrays.copyOf(start, groups);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[fill[group[i]]++] = i;
+
+        List<Series> found = new ArrayList<>();
+        for (int g = 0; g < groups; g++) {
+            int size = start[g + 1] - start[g];
+            if (size < MIN_OCCURRENCES) continue;
+            // the smallest amount of every cluster, in order
+            long[] sorted = new long[size];
+            for (int j = 0; j < size; j++) sorted[j] = Math.abs(cents[order[start[g] + j]]);
+            Arrays.sort(sorted);
+            long[] lows = new long[size];
+            int clusters = 0;
+            for (int j = 0; j < size; j++) {
+                if (j == 0 || sorted[j] * 100 > sorted[j - 1] * CLUSTER_PERCENT) lows[clusters++] = sorted[j];
+            }
+            // the rows of each cluster, still in ledger order
+            int[] cluster = new int[size];
+            int[] clusterStart = new int[clusters + 1];
+            for (int j = 0; j < size; j++) {
+                int c = Arrays.binarySearch(lows, 0, clusters, Math.abs(cents[order[start[g] + j]]));
+                cluster[j] = c >= 0 ? c : -c - 2;
+                clusterStart[cluster[j] + 1]++;
+            }
+            for (int c = 0; c < clusters; c++) clusterStart[c + 1] += clusterStart[c];
+            int[] clusterFill = Arrays.copyOf(clusterStart, clusters);
+            int[] clusterOrder = new int[size];
+            for (int j = 0; j < size; j++) clusterOrder[clusterFill[cluster[j]]++] = order[start[g] + j];
+
+            for (int c = 0; c < clusters; c++) {
+                int count = clusterStart[c + 1] - clusterStart[c];
+                if (count < MIN_OCCURRENCES) continue;
+                // only the median amount is needed, so the days and the amounts are sorted on their own
+                int[] days = new int[count];
+                long[] amounts = new long[count];
+                for (int j = 0; j < count; j++) {
+                    int row = clusterOrder[clusterStart[c] + j];
+                    days[j] = day[row];
+                    amounts[j] = cents[row];
+                }
+                Arrays.sort(days);
+                String vendor = transactions.get(clusterOrder[clusterStart[c + 1] - 1]).getVendor();
+                Series series = classify(vendor, days, amounts);
+                if (series != null) found.add(series);
+            }
+        }
+        found.sort(Comparator.comparing(Series::nextDate));
+        return found;
+    }
+
+    private static Series classify(String vendor, int[] days, long[] amounts) {
+        int[] gaps = new int[days.length - 1];
+        int gapCount = 0;
+        for (int j = 1; j < days.length; j++) {
+            int gap = days[j] - days[j - 1];
+            if (gap > 0) gaps[gapCount++] = gap;
+        }
+        if (gapCount < MIN_OCCURRENCES - 1) return null;
+        int[] sortedGaps = Arrays.copyOf(gaps, gapCount);
+        Arrays.sort(sortedGaps);
+        int median = sortedGaps[gapCount / 2];
+        for (Cadence cadence : Cadence.values()) {
+            if (!cadence.matches(median)) continue;
+            int matching = 0;
+            for (int k = 0; k < gapCount; k++) {
+                if (cadence.matches(gaps[k])) matching++;
+            }
+            if (matching < MIN_MATCHING * gapCount) return null;
+            long[] sortedAmounts = amounts.clone();
+            Arrays.sort(sortedAmounts);
+            LocalDate last = LocalDate.ofEpochDay(days[days.length - 1]);
+            return new Series(vendor, cadence, days.length, sortedAmounts[sortedAmounts.length / 2] / 100.0, last, cadence.next(last));
+        }
+        return null;
+    }
+}
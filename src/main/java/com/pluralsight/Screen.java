@@ -1,7 +1,7 @@
 package com.pluralsight;
 
+import java.io.IOException;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
 import java.util.Scanner;
 
 /**
@@ -10,8 +10,8 @@ import java.util.Scanner;
  * for users to record financial transactions and generate various reports related to their financial activity.
  */
 public class Screen {
-    public static final ArrayList<Transactions> transactions = new ArrayList<Transactions>();
     public static String NAME = "";
+    public static LedgerEngine ledger;
     public static boolean running = true;
     public static boolean runningLedger = true;
     public static final String FILE_NAME = "transactions.csv";
@@ -22,9 +22,18 @@ public class Screen {
     /**
      * The main method is the entry point of the Accounting Ledger application. It initializes the user interface,
      * processes user inputs, and performs various actions related to recording transactions and generating reports.
-     * @param args Command-line arguments (not used in this application)
+     * @param args Command-line arguments, "--batch" runs the commands that follow without any prompts (see BatchMode),
+     *             "--generate" writes a made-up ledger (see LedgerGenerator)
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--generate")) {
+            System.exit(LedgerGenerator.run(args));
+        }
+        //timings and counters over JMX and in AllTransactions/metrics.log
+        Metrics.publish();
+        if (args.length > 0 && args[0].equals("--batch")) {
+            System.exit(BatchMode.run(args));
+        }
         Scanner scanner = new Scanner(System.in);
         //Loading bar, and a welcome message
         Progress.onLoadUpWelcome();
@@ -32,10 +41,34 @@ public class Screen {
         UserLogin.USER_LOGIN();
         //clears the reports file for the new login session
         FileManager.clearReportFile();
-        //loads the transactions from a file, or creates a file if it does not exist
-        FileManager.loadTransactions(FILE_NAME.toLowerCase(), NAME.toLowerCase());
+        //opens the ledger: the balance comes from the latest snapshot and the events after it (the rows are loaded when needed)
+        try {
+            ledger = LedgerEngine.open(NAME);
+        } catch (IOException e) {
+            System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"Something went wrong while reading your ledger log! " + e.getMessage()+ConsoleColors.RESET);
+            return;
+        }
+        LedgerChecksums.Recovery recovery = ledger.recovery();
+        if (recovery != null && recovery.quarantined() > 0) {
+            System.out.println(ConsoleColors.YELLOW_BOLD_BRIGHT+"⚠️" + recovery.quarantined() + " DAMAGED ROW(S) OF YOUR LEDGER WERE MOVED ASIDE TO AllTransactions/" + NAME.toLowerCase() + "quarantine.csv⚠️"+ConsoleColors.RESET);
+        }
+        EventLog.Recovery events = ledger.events();
+        if (events.unreadableEvents() > 0 || events.unreadableRows() > 0) {
+            System.out.println(ConsoleColors.YELLOW_BOLD_BRIGHT+"⚠️" + events.unreadableRows() + " ROW(S) AND " + events.unreadableEvents() + " LOG EVENT(S) OF YOUR LEDGER COULD NOT BE READ AND WERE SKIPPED⚠️"+ConsoleColors.RESET);
+        }
+        if (events.unreadableRules() > 0) {
+            System.out.println(ConsoleColors.YELLOW_BOLD_BRIGHT+"⚠️" + events.unreadableRules() + " BUDGET RULE(S) IN " + BudgetAlerts.RULES_FILE + " COULD NOT BE READ AND WERE SKIPPED⚠️"+ConsoleColors.RESET);
+        }
+        //picks up rows that other programs append to the transaction file while the application runs
+        ledger.follower().start();
         //gets and displays the home menu from Menus class
         Menus.homeMenu(scanner);
+        ledger.follower().stop();
+        try {
+            ledger.close();
+        } catch (IOException e) {
+            System.out.println(ConsoleColors.RED_BOLD_BRIGHT+"Could not write the ledger snapshot: " + e.getMessage()+ConsoleColors.RESET);
+        }
         scanner.close();
     }
 
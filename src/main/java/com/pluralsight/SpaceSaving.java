@@ -0,0 +1,177 @@
+package com.pluralsight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The SpaceSaving Class is a streaming heavy-hitters sketch (Metwally, Agrawal and El Abbadi's Space-Saving algorithm,
+ * weighted version). It keeps at most "capacity" counters no matter how many different keys it sees. While there are
+ * no more keys than counters every count is exact; after that, each kept count is at most "error" too high, and any key
+ * whose true weight is bigger than the smallest counter is guaranteed to be kept.
+ * Two sketches can be merged, so partitions of a ledger can be scanned in parallel.
+ */
+public class SpaceSaving {
+
+    /**
+     * One kept key with its estimated weight and the most that estimate can be too high.
+     * @param key The key.
+     * @param weight The estimated total weight (never lower than the true weight).
+     * @param error The most the weight can be over-estimated by.
+     */
+    public record Counter(String key, double weight, double error) { }
+
+    private final int capacity;
+    private final HashMap<String, Integer> slots;
+    // a min-heap of counters ordered by weight, with "slots" pointing at each key's position
+    private final String[] keys;
+    private final double[] weights;
+    private final double[] errors;
+    private int size = 0;
+    private boolean exact = true;
+
+    /**
+     * Makes an empty sketch.
+     * @param capacity The most counters the sketch keeps.
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        this.capacity = capacity;
+        this.slots = new HashMap<>(capacity * 2);
+        this.keys = new String[capacity];
+        this.weights = new double[capacity];
+        this.errors = new double[capacity];
+    }
+
+    /**
+     * Adds weight to a key. When the key is new and the sketch is full, the key with the smallest weight is replaced
+     * and its weight becomes the new key's error.
+     *
+     * @param key The key.
+     * @param weight The weight to add (must not be negative).
+     */
+    public void offer(String key, double weight) {
+        offer(key, weight, 0);
+    }
+
+    private void offer(String key, double weight, double error) {
+        Integer slot = slots.get(key);
+        if (slot != null) {
+            weights[slot] += weight;
+            errors[slot] += error;
+            siftDown(slot);
+        } else if (size < capacity) {
+            keys[size] = key;
+            weights[size] = weight;
+            errors[size] = error;
+            slots.put(key, size);
+            siftUp(size++);
+        } else {
+            exact = false;
+            double evicted = weights[0];
+            slots.remove(keys[0]);
+            keys[0] = key;
+            weights[0] = evicted + weight;
+            errors[0] = evicted + error;
+            slots.put(key, 0);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Merges another sketch into this one. Keys the other sketch doesn't keep may still have up to its smallest
+     * weight there, so that much is added to the error of keys only this sketch keeps (and the other way round).
+     *
+     * @param other The sketch to merge in, it is not changed.
+     */
+    public void merge(SpaceSaving other) {
+        double thisFloor = isFull() ? weights[0] : 0;
+        double otherFloor = other.isFull() ? other.weights[0] : 0;
+        HashMap<String, double[]> combined = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            combined.put(keys[i], new double[]{weights[i], errors[i], 1});
+        }
+        for (int i = 0; i < other.size; i++) {
+            double[] c = combined.get(other.keys[i]);
+            if (c == null) {
+                combined.put(other.keys[i], new double[]{other.weights[i] + thisFloor, other.errors[i] + thisFloor, 2});
+            } else {
+                c[0] += other.weights[i];
+                c[1] += other.errors[i];
+                c[2] = 3;
+            }
+        }
+        List<Counter> merged = new ArrayList<>(combined.size());
+        combined.forEach((key, c) -> {
+            double extra = c[2] == 1 ? otherFloor : 0;
+            merged.add(new Counter(key, c[0] + extra, c[1] + extra));
+        });
+        merged.sort(Comparator.comparingDouble(Counter::weight).reversed());
+        exact = exact && other.exact && merged.size() <= capacity;
+        slots.clear();
+        size = 0;
+        for (Counter c : merged.subList(0, Math.min(capacity, merged.size()))) {
+            offer(c.key(), c.weight(), c.error());
+        }
+    }
+
+    /**
+     * Gets the heaviest keys, heaviest first.
+     * @param n The most keys to return.
+     * @return The counters of the top keys.
+     */
+    public List<Counter> top(int n) {
+        Counter[] all = new Counter[size];
+        for (int i = 0; i < size; i++) {
+            all[i] = new Counter(keys[i], weights[i], errors[i]);
+        }
+        Arrays.sort(all, Comparator.comparingDouble(Counter::weight).reversed());
+        return List.of(all).subList(0, Math.min(n, all.length));
+    }
+
+    /** @return true if no key was ever dropped, so every count is exact. */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /** @return The number of keys kept. */
+    public int size() {
+        return size;
+    }
+
+    private boolean isFull() {
+        return size == capacity;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (weights[parent] <= weights[i]) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && weights[left] < weights[smallest]) smallest = left;
+            if (right < size && weights[right] < weights[smallest]) smallest = right;
+            if (smallest == i) return;
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        String key = keys[a]; keys[a] = keys[b]; keys[b] = key;
+        double weight = weights[a]; weights[a] = weights[b]; weights[b] = weight;
+        double error = errors[a]; errors[a] = errors[b]; errors[b] = error;
+        slots.put(keys[a], a);
+        slots.put(keys[b], b);
+    }
+}
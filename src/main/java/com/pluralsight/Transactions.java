@@ -22,6 +22,8 @@ public class Transactions {
     private double amount;
     private boolean isDeposit;
     private boolean isPayment;
+    // where the row ends in the transaction file, it names the row for edits and deletes (0 until it is written)
+    private long id;
 
 /*
 ________________________
@@ -109,6 +111,14 @@ ________________________
         isPayment = payment;
     }
 
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
 
 //_________________________//
 //     additional Methods
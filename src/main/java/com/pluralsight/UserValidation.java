@@ -194,11 +194,14 @@ public class UserValidation {
      * @return The vendor for the transaction
      */
     public static String transactionVendor(){
-        System.out.println("Please enter the vendor for this Transaction🚙:");
-        System.out.print("Vendor For Your Transaction 👉🏽");
-        String vendor = scanner.next();
-        System.out.println("\n");
-        return vendor;
+        while (true) {
+            System.out.println("Please enter the vendor for this Transaction🚙:");
+            System.out.print("Vendor For Your Transaction 👉🏽");
+            String vendor = scanner.next();
+            System.out.println("\n");
+            if (FileManager.isWritableText(vendor)) return vendor;
+            System.out.println("🚨⚠️INVALID entry, the vendor can't contain a | character.⚠️🚨");
+        }
     }
 
     /**
@@ -206,11 +209,14 @@ public class UserValidation {
      * @return The description or item name for the transaction
      */
     public static String transactionDescription(){
-        System.out.println("Please enter the description or item name for this Transaction📝:");
-        System.out.print("Description Or Item Name For Your Transaction 👉🏽");
-        String description = scanner.next();
-        System.out.println("\n");
-        return description;
+        while (true) {
+            System.out.println("Please enter the description or item name for this Transaction📝:");
+            System.out.print("Description Or Item Name For Your Transaction 👉🏽");
+            String description = scanner.next();
+            System.out.println("\n");
+            if (FileManager.isWritableText(description)) return description;
+            System.out.println("🚨⚠️INVALID entry, the description can't contain a | character.⚠️🚨");
+        }
     }
 
     /**
@@ -0,0 +1,117 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * The VendorAnalytics Class finds the top vendors by spend (total of payments) and by frequency (number of
+ * transactions) over a date range. Each part of the ledger (a slice of the rows in memory, or a year partition on
+ * disk) is scanned into its own Tally, a pair of SpaceSaving sketches, and the tallies are then merged, so memory
+ * stays bounded however many rows and vendors there are.
+ * The results are exact as long as the number of vendors in the range fits in the sketch.
+ */
+public class VendorAnalytics {
+
+    /** The number of counters per sketch, it can be tuned with -Dledger.vendors.capacity. */
+    public static final int CAPACITY = Integer.getInteger("ledger.vendors.capacity", 1024);
+    private static final int PARTITION_ROWS = 65_536;
+
+    /**
+     * The top vendors of a date range.
+     * @param bySpend The vendors with the most money paid to them.
+     * @param byFrequency The vendors with the most transactions.
+     * @param exact true if no vendor had to be dropped, so the numbers are exact.
+     */
+    public record Result(List<SpaceSaving.Counter> bySpend, List<SpaceSaving.Counter> byFrequency, boolean exact) { }
+
+    /**
+     * The spend and frequency sketches of one part of the ledger. Rows outside the date range are skipped.
+     */
+    public static final class Tally implements Consumer<Transactions> {
+        private final LocalDate from;
+        private final LocalDate to;
+        private final VendorCanonicalizer vendors;
+        private final SpaceSaving spend = new SpaceSaving(CAPACITY);
+        private final SpaceSaving frequency = new SpaceSaving(CAPACITY);
+
+        /**
+         * Makes an empty tally.
+         * @param from The first date to count.
+         * @param to The last date to count.
+         * @param vendors The canonical vendors, so different spellings of a vendor are counted together.
+         */
+        public Tally(LocalDate from, LocalDate to, VendorCanonicalizer vendors) {
+            this.from = from;
+            this.to = to;
+            this.vendors = vendors;
+        }
+
+        @Override
+        public void accept(Transactions x) {
+            LocalDate date = x.getDate();
+            if (date.isBefore(from) || date.isAfter(to)) return;
+            String vendor = vendors.name(x.getVendor());
+            frequency.offer(vendor, 1);
+            if (x.isPayment()) {
+                spend.offer(vendor, -x.getAmount());
+            }
+        }
+
+        /**
+         * Adds another tally's counts to this one.
+         * @param other The tally to merge in, it is not changed.
+         * @return This tally.
+         */
+        public Tally merge(Tally other) {
+            spend.merge(other.spend);
+            frequency.merge(other.frequency);
+            return this;
+        }
+
+        /**
+         * @param n The number of vendors to return in each list.
+         * @return The top vendors counted so far.
+         */
+        public Result result(int n) {
+            return new Result(spend.top(n), frequency.top(n), spend.isExact() && frequency.isExact());
+        }
+    }
+
+    /**
+     * Finds the top vendors between two dates (both included), scanning slices of the list in parallel.
+     *
+     * @param transactions The transactions to scan.
+     * @param from The first date to include.
+     * @param to The last date to include.
+     * @param n The number of vendors to return in each list.
+     * @param vendors The canonical vendors of the ledger.
+     * @return The top vendors by spend and by frequency.
+     */
+    public static Result topVendors(List<Transactions> transactions, LocalDate from, LocalDate to, int n, VendorCanonicalizer vendors) {
+        int partitions = Math.max(1, (transactions.size() + PARTITION_ROWS - 1) / PARTITION_ROWS);
+        return IntStream.range(0, partitions).parallel()
+                .mapToObj(p -> {
+                    Tally tally = new Tally(from, to, vendors);
+                    transactions.subList(p * PARTITION_ROWS, Math.min(transactions.size(), (p + 1) * PARTITION_ROWS)).forEach(tally);
+                    return tally;
+                })
+                .reduce(Tally::merge)
+                .orElseGet(() -> new Tally(from, to, vendors))
+                .result(n);
+    }
+
+    /**
+     * Merges the tallies of the parts of a ledger.
+     * @param tallies The tallies, one per part.
+     * @param n The number of vendors to return in each list.
+     * @return The top vendors by spend and by frequency.
+     */
+    public static Result topVendors(List<Tally> tallies, int n) {
+        if (tallies.isEmpty()) return new Result(List.of(), List.of(), true);
+        Tally merged = new Tally(LocalDate.MIN, LocalDate.MAX, tallies.get(0).vendors);
+        for (Tally tally : tallies) merged.merge(tally);
+        return merged.result(n);
+    }
+}
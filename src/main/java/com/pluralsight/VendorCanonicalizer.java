@@ -0,0 +1,178 @@
+package com.pluralsight;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The VendorCanonicalizer Class gives every vendor a canonical name and id, so "FreshMart", "Fresh Mart" and
+ * "FRESHMART " are all counted as the same vendor.
+ *
+ * A vendor name is reduced to its letters and digits in lower case, and names that reduce to the same text are the
+ * same vendor (one hash lookup). Any other name is a vendor of its own: names that are only close, like "Tarjet" and
+ * "Target" or "Fresh Mart #241" and "Fresh Mart #242", are often different vendors, so they are never merged. The
+ * reduced names are kept in a BK-tree, which finds the close ones as "did you mean" suggestions (see suggest) while
+ * only visiting the branches that can hold a close enough name. Every open ledger has its own (see EventLog.vendors),
+ * and the canonical name of a vendor is the first spelling of it that ledger saw.
+ */
+public class VendorCanonicalizer {
+
+    /**
+     * A canonical vendor.
+     * @param id The vendor id, starting at 0 in the order vendors were first seen.
+     * @param name The canonical name (the first spelling that was seen, trimmed).
+     */
+    public record Vendor(int id, String name) { }
+
+    private static final int SUGGESTION_DISTANCE = 3;
+    // every reduced spelling seen so far, read without locking on the hot path
+    private final ConcurrentHashMap<String, Vendor> spellings = new ConcurrentHashMap<>();
+    private final List<Vendor> vendors = new ArrayList<>();
+    private Node root = null;
+
+    private static class Node {
+        final String text;
+        final Vendor vendor;
+        final HashMap<Integer, Node> children = new HashMap<>();
+
+        Node(String text, Vendor vendor) {
+            this.text = text;
+            this.vendor = vendor;
+        }
+    }
+
+    /**
+     * Gets the canonical vendor of a name, making it a new vendor if no known name reduces to the same text.
+     * @param name The vendor name as entered.
+     * @return The canonical vendor.
+     */
+    public Vendor canonical(String name) {
+        String text = reduce(name);
+        Vendor known = spellings.get(text);
+        if (known != null) return known;
+        synchronized (this) {
+            known = spellings.get(text);
+            if (known != null) return known;
+            Vendor vendor = new Vendor(vendors.size(), name.trim());
+            vendors.add(vendor);
+            insert(new Node(text, vendor));
+            spellings.put(text, vendor);
+            return vendor;
+        }
+    }
+
+    /**
+     * Gets the canonical name of a vendor name (see canonical).
+     * @param name The vendor name as entered.
+     * @return The canonical name.
+     */
+    public String name(String name) {
+        return canonical(name).name();
+    }
+
+    /**
+     * Finds the known vendor a name refers to, without remembering the name.
+     * @param name The vendor name to look for.
+     * @return The vendor, or null if no known name reduces to the same text (see suggest).
+     */
+    public Vendor find(String name) {
+        return spellings.get(reduce(name));
+    }
+
+    /**
+     * Suggests known vendors with a name close to one that was not found ("did you mean").
+     * @param name The vendor name that was entered.
+     * @param max The most suggestions to return.
+     * @return The canonical names of the closest vendors, closest first.
+     */
+    public synchronized List<String> suggest(String name, int max) {
+        String text = reduce(name);
+        int radius = Math.max(SUGGESTION_DISTANCE, text.length() / 3);
+        List<Map.Entry<Node, Integer>> matches = new ArrayList<>();
+        search(text, radius, matches);
+        matches.sort(Map.Entry.comparingByValue(Comparator.naturalOrder()));
+        LinkedHashMap<Integer, String> names = new LinkedHashMap<>();
+        for (Map.Entry<Node, Integer> match : matches) {
+            if (names.size() == max) break;
+            names.putIfAbsent(match.getKey().vendor.id(), match.getKey().vendor.name());
+        }
+        return new ArrayList<>(names.values());
+    }
+
+    /** @return The number of canonical vendors. */
+    public synchronized int size() {
+        return vendors.size();
+    }
+
+    /**
+     * Reduces a name to the text vendors are compared on.
+     * @param name The vendor name.
+     * @return Its letters and digits in lower case (or the trimmed name in lower case if it has none).
+     */
+    public static String reduce(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c)) sb.append(Character.toLowerCase(c));
+        }
+        return sb.length() > 0 ? sb.toString() : name.trim().toLowerCase();
+    }
+
+    /**
+     * The Levenshtein distance between two strings (the fewest single character inserts, deletes and replacements
+     * that turn one into the other).
+     */
+    static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int replace = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(replace, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private void insert(Node node) {
+        if (root == null) {
+            root = node;
+            return;
+        }
+        Node at = root;
+        while (true) {
+            int d = distance(node.text, at.text);
+            Node child = at.children.get(d);
+            if (child == null) {
+                at.children.put(d, node);
+                return;
+            }
+            at = child;
+        }
+    }
+
+    private void search(String text, int radius, List<Map.Entry<Node, Integer>> matches) {
+        if (root == null) return;
+        ArrayList<Node> stack = new ArrayList<>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.remove(stack.size() - 1);
+            int d = distance(text, node.text);
+            if (d <= radius) matches.add(Map.entry(node, d));
+            // by the triangle inequality, only children at distance d-radius..d+radius can be close enough
+            for (int k = Math.max(0, d - radius); k <= d + radius; k++) {
+                Node child = node.children.get(k);
+                if (child != null) stack.add(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BalanceSeriesTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+    private final BalanceSeries series = new BalanceSeries();
+
+    @Test
+    void closingBalancesAddUpEveryEarlierDay() {
+        assertNull(series.firstDate());
+        series.add(START.plusDays(10), 100);
+        series.add(START, 50);
+        series.add(START.plusDays(10), -30);
+        series.add(START.plusDays(40), -5);
+        assertEquals(START, series.firstDate());
+        assertEquals(START.plusDays(40), series.lastDate());
+        assertEquals(0, series.closingBalance(START.minusDays(1)));
+        assertEquals(50, series.closingBalance(START.plusDays(9)));
+        assertEquals(120, series.closingBalance(START.plusDays(10)));
+        assertEquals(115, series.closingBalance(START.plusYears(3)));
+    }
+
+    @Test
+    void dailyWeeklyAndMonthlyViewsAgree() {
+        Random random = new Random(15);
+        double total = 0;
+        for (int i = 0; i < 2_000; i++) {
+            double amount = random.nextInt(20_000) / 100.0 - 100;
+            series.add(START.plusDays(random.nextInt(365)), amount);
+            total += amount;
+        }
+        LocalDate end = START.plusDays(364);
+        List<BalanceSeries.Point> daily = series.daily(START, end);
+        List<BalanceSeries.Point> weekly = series.weekly(START, end);
+        List<BalanceSeries.Point> monthly = series.monthly(START, end);
+        assertEquals(365, daily.size());
+        assertEquals(12, monthly.size());
+        assertEquals(53, weekly.size());
+        for (List<BalanceSeries.Point> view : List.of(daily, weekly, monthly)) {
+            assertEquals(total, view.get(view.size() - 1).closingBalance(), 0.001);
+            assertEquals(total, view.stream().mapToDouble(BalanceSeries.Point::netFlow).sum(), 0.001);
+        }
+        assertEquals(LocalDate.of(2024, 1, 31), monthly.get(0).date());
+        assertEquals(series.closingBalance(LocalDate.of(2024, 1, 31)), monthly.get(0).closingBalance(), 0.001);
+        // 2024-01-07 is the first Sunday
+        assertEquals(LocalDate.of(2024, 1, 7), weekly.get(0).date());
+    }
+
+    @Test
+    void downsamplingKeepsTheEndsAndTheExtremes() {
+        for (int day = 0; day < 1_000; day++) {
+            series.add(START.plusDays(day), day == 500 ? 10_000 : day == 700 ? -20_000 : 1);
+        }
+        LocalDate end = START.plusDays(999);
+        List<BalanceSeries.Point> daily = series.daily(START, end);
+        List<BalanceSeries.Point> points = series.downsample(START, end, 50);
+        assertEquals(50, points.size());
+        assertEquals(daily.get(0).date(), points.get(0).date());
+        assertEquals(daily.get(999).date(), points.get(49).date());
+        assertTrue(points.stream().anyMatch(p -> p.date().equals(START.plusDays(500))));
+        assertTrue(points.stream().anyMatch(p -> p.date().equals(START.plusDays(700))));
+        // each point's net flow is the change since the point before it
+        for (int i = 1; i < points.size(); i++) {
+            assertEquals(points.get(i).closingBalance() - points.get(i - 1).closingBalance(), points.get(i).netFlow(), 0.001);
+        }
+        assertEquals(daily, series.downsample(START, end, 2_000));
+    }
+}
@@ -0,0 +1,55 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchModeTest {
+
+    private static final String USER = "batch";
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TestLedgers.clean();
+    }
+
+    @Test
+    void quotedWordsKeepTheirSpaces() {
+        assertEquals(List.of("add", "2024-01-02", "now", "Weekly shop", "Fresh Mart", "-42.5"),
+                BatchMode.tokenize("add 2024-01-02  now \"Weekly shop\" \"Fresh Mart\" -42.5"));
+        assertEquals(List.of("report", ""), BatchMode.tokenize("report \"\""));
+        assertEquals(List.of(), BatchMode.tokenize("   "));
+    }
+
+    @Test
+    void commandsChangeTheLedgerAndReportFailures() throws IOException {
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertTrue(BatchMode.execute(List.of("add", "2024-01-02", "10:00:00", "Coffee", "Corner Cafe", "-3.5"), ledger));
+            assertTrue(BatchMode.execute(List.of("report", "all"), ledger));
+            assertFalse(BatchMode.execute(List.of("add", "2024-01-02", "10:00:00", "Coffee"), ledger));
+            assertFalse(BatchMode.execute(List.of("frobnicate"), ledger));
+            assertFalse(BatchMode.execute(List.of("search", "colour=red"), ledger));
+            assertEquals(1, ledger.transactions().size());
+        }
+        assertEquals(List.of("2024-01-02|10:00:00|Coffee|Corner Cafe|-3.5"), Files.readAllLines(TestLedgers.ledger(USER)));
+    }
+
+    @Test
+    void rowsThatCanNotBeStoredAreRejected() throws IOException {
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertFalse(BatchMode.execute(List.of("add", "2024-01-02", "10:00:00", "a|b", "Shop", "-1"), ledger));
+            assertFalse(BatchMode.execute(List.of("add", "2024-01-02", "10:00:00", "Coffee", "Shop\nNext", "-1"), ledger));
+            assertFalse(BatchMode.execute(List.of("add", "2024-01-02", "10:00:00", "Coffee", "Shop", "NaN"), ledger));
+            assertFalse(BatchMode.execute(List.of("add", "2024-13-02", "10:00:00", "Coffee", "Shop", "-1"), ledger));
+            assertEquals(0.0, ledger.balance());
+        }
+        assertEquals(0, Files.size(TestLedgers.ledger(USER)));
+    }
+}
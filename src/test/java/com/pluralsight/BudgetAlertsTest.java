@@ -0,0 +1,92 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BudgetAlertsTest {
+
+    private static final String USER = "budgets";
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TestLedgers.clean();
+        Files.writeString(Path.of(BudgetAlerts.RULES_FILE), String.join("\n",
+                "# user|vendor|period|limit",
+                "budgets|Shell|monthly|100",
+                "someone else|*|daily|1",
+                "*|*|yearly|10000",
+                "budgets|Shell|sometimes|5",
+                ""));
+    }
+
+    @Test
+    void alertsOnceWhenATotalGoesOverItsLimit() throws IOException {
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(List.of(), ledger.append(row("Shell", -60)).alerts());
+            List<String> alerts = ledger.append(row("SHELL", -50)).alerts();
+            assertEquals(1, alerts.size());
+            assertTrue(alerts.get(0).startsWith("MONTHLY PAYMENTS TO SHELL"), alerts.get(0));
+            assertEquals(List.of(), ledger.append(row("Shell", -50)).alerts());
+            // deposits don't count
+            assertEquals(List.of(), ledger.append(row("Shell", 500)).alerts());
+            assertEquals(1, ledger.append(row("Landlord", -9900)).alerts().size());
+        }
+        assertEquals(2, Files.readAllLines(Path.of("AllTransactions/" + USER + "alerts.log")).size());
+    }
+
+    @Test
+    void replayedAndOldImportedRowsDontAlert() throws IOException {
+        TestLedgers.append(USER, List.of(
+                FileManager.formatTransaction(new Transactions("Old", "Shell", TODAY.minusYears(2), LocalTime.NOON, -500))));
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(List.of(), ledger.takeAlerts());
+            ledger.append(row("Shell", -150));
+            ledger.takeAlerts();
+        }
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(List.of(), ledger.takeAlerts());
+            // the total was restored, so this add doesn't cross the limit again
+            assertEquals(List.of(), ledger.append(row("Shell", -1)).alerts());
+        }
+    }
+
+    @Test
+    void deletedPaymentsLeaveTheTotal() throws IOException {
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            long id = ledger.append(row("Shell", -90)).transaction().getId();
+            ledger.delete(id);
+            assertEquals(List.of(), ledger.append(row("Shell", -90)).alerts());
+            long small = ledger.append(row("Shell", -5)).transaction().getId();
+            // 90 + 20 is over the limit once the 5 is replaced
+            ledger.edit(small, row("Shell", -20));
+            assertEquals(1, ledger.takeAlerts().size());
+        }
+    }
+
+    @Test
+    void problemsAreReturnedNotPrinted() throws IOException {
+        // the alert log can't be written where a folder is in the way
+        Files.createDirectories(Path.of("AllTransactions/" + USER + "alerts.log"));
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(1, ledger.events().unreadableRules());
+            List<String> alerts = ledger.append(row("Shell", -150)).alerts();
+            assertEquals(1, alerts.size());
+            assertTrue(alerts.get(0).contains("COULD NOT BE SAVED TO THE ALERT LOG"), alerts.get(0));
+        }
+    }
+
+    private static Transactions row(String vendor, double amount) {
+        return new Transactions("Row", vendor, TODAY, LocalTime.NOON, amount);
+    }
+}
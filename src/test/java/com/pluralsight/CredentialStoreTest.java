@@ -0,0 +1,73 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CredentialStoreTest {
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TestLedgers.clean();
+    }
+
+    @Test
+    void registeredUserLogsInWithTheirPasswordOnly() throws IOException {
+        assertTrue(CredentialStore.register("alice", "correct horse"));
+        assertTrue(CredentialStore.contains("alice"));
+        assertTrue(CredentialStore.verify("alice", "correct horse"));
+        assertFalse(CredentialStore.verify("alice", "Correct horse"));
+        assertFalse(CredentialStore.verify("nobody", "correct horse"));
+        // the hash is stored, never the password
+        String users = Files.readString(TestLedgers.DIRECTORY.resolve("users.csv"));
+        assertTrue(users.startsWith("alice|"));
+        assertFalse(users.contains("correct horse"));
+    }
+
+    @Test
+    void takenUsernameIsNotRegisteredAgain() {
+        assertTrue(CredentialStore.register("bob", "first"));
+        assertFalse(CredentialStore.register("bob", "second"));
+        assertTrue(CredentialStore.verify("bob", "first"));
+        assertFalse(CredentialStore.verify("bob", "second"));
+    }
+
+    @Test
+    void concurrentLoginsAreAllChecked() throws Exception {
+        CredentialStore.register("carol", "pw");
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                String password = i % 2 == 0 ? "pw" : "wrong";
+                results.add(callers.submit((Callable<Boolean>) () -> CredentialStore.verify("carol", password)));
+            }
+            for (int i = 0; i < results.size(); i++) assertEquals(i % 2 == 0, results.get(i).get());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    void oldPigLatinHashesStillVerify() {
+        String old = PasswordHashing.passwordHashPigLatin("hello");
+        assertFalse(PasswordHashing.isKdfHash(old));
+        assertTrue(PasswordHashing.verifyPassword("hello", old));
+        String hash = PasswordHashing.hashPassword("hello");
+        assertTrue(PasswordHashing.isKdfHash(hash));
+        assertTrue(PasswordHashing.verifyPassword("hello", hash));
+        assertFalse(PasswordHashing.verifyPassword("hellO", hash));
+    }
+}
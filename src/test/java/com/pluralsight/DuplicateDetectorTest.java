@@ -0,0 +1,84 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DuplicateDetectorTest {
+
+    private static final String USER = "duplicates";
+    private static final String ROW = "2024-03-04|12:00:00|Groceries|Fresh Mart|-42.1";
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TestLedgers.clean();
+        TestLedgers.append(USER, TestLedgers.rows(20, 300, 2023, 2024));
+    }
+
+    @Test
+    void keyIgnoresCaseSpacesAndPunctuationOfTheVendor() {
+        assertEquals(DuplicateDetector.key(FileManager.parseTransaction(ROW)),
+                DuplicateDetector.key(FileManager.parseTransaction("2024-03-04|12:00:00|Other|FRESH-MART|-42.10")));
+        assertFalse(DuplicateDetector.key(FileManager.parseTransaction(ROW))
+                .equals(DuplicateDetector.key(FileManager.parseTransaction("2024-03-04|12:00:00|Groceries|Fresh Mart|-42.11"))));
+    }
+
+    @Test
+    void addsAreCheckedWithoutReadingTheLedger() throws IOException {
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            long reads = reads();
+            assertFalse(ledger.append(FileManager.parseTransaction(ROW)).duplicate());
+            assertTrue(ledger.append(FileManager.parseTransaction(ROW)).duplicate());
+            assertFalse(ledger.append(FileManager.parseTransaction("2024-03-04|12:00:01|Groceries|Fresh Mart|-42.1")).duplicate());
+            assertEquals(reads, reads());
+            assertFalse(ledger.isLoaded());
+        }
+    }
+
+    @Test
+    void copiesFromBeforeTheSnapshotAreFound() throws IOException {
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            ledger.append(FileManager.parseTransaction(ROW));
+        }
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertTrue(ledger.append(FileManager.parseTransaction(ROW)).duplicate());
+        }
+    }
+
+    @Test
+    void deletingOneCopyKeepsTheOthers() throws IOException {
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            long first = ledger.append(FileManager.parseTransaction(ROW)).transaction().getId();
+            long second = ledger.append(FileManager.parseTransaction(ROW)).transaction().getId();
+            ledger.delete(first);
+            assertTrue(ledger.append(FileManager.parseTransaction(ROW)).duplicate());
+            ledger.edit(second, FileManager.parseTransaction("2024-03-05|12:00:00|Groceries|Fresh Mart|-42.1"));
+            List<Transactions> copies = ledger.between(TestLedgers.FIRST, TestLedgers.LAST).stream()
+                    .filter(x -> FileManager.formatTransaction(x).equals(ROW)).toList();
+            assertEquals(1, copies.size());
+            ledger.delete(copies.get(0).getId());
+            assertFalse(ledger.append(FileManager.parseTransaction(ROW)).duplicate());
+        }
+    }
+
+    @Test
+    void editingOneLoadedCopyKeepsTheOthers() throws IOException {
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            ledger.load();
+            long first = ledger.append(FileManager.parseTransaction(ROW)).transaction().getId();
+            assertTrue(ledger.append(FileManager.parseTransaction(ROW)).duplicate());
+            ledger.edit(first, FileManager.parseTransaction("2024-03-05|12:00:00|Groceries|Fresh Mart|-42.1"));
+            assertTrue(ledger.append(FileManager.parseTransaction(ROW)).duplicate());
+        }
+    }
+
+    private static long reads() {
+        return ((Metrics.Histogram) Metrics.all().get("ledger.partitions.read")).getCount();
+    }
+}
@@ -0,0 +1,112 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventLogTest {
+
+    private static final String USER = "events";
+
+    private List<String> rows;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TestLedgers.clean();
+        rows = TestLedgers.rows(10, 500, 2022, 2023);
+        TestLedgers.append(USER, rows);
+    }
+
+    @Test
+    void balanceIsRestoredWithoutReadingTheRows() throws IOException {
+        LedgerEngine.open(USER).close();
+        assertTrue(Files.exists(snapshot()));
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(sum(rows), ledger.balance(), 0.001);
+            assertFalse(ledger.isLoaded());
+        }
+    }
+
+    @Test
+    void rowsPastTheSnapshotAreCaughtUp() throws IOException {
+        LedgerEngine.open(USER).close();
+        // as if the run that added the row ended before its snapshot was written
+        byte[] snapshot = Files.readAllBytes(snapshot());
+        Transactions added = FileManager.parseTransaction("2023-12-31|23:00:00|Bonus|Payroll Inc|250.0");
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            ledger.append(added);
+        }
+        Files.write(snapshot(), snapshot);
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(sum(rows) + 250.0, ledger.balance(), 0.001);
+        }
+    }
+
+    @Test
+    void outdatedSnapshotKeepsItsEditsWhenRebuilt() throws IOException {
+        double balance;
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            List<Transactions> all = ledger.between(TestLedgers.FIRST, TestLedgers.LAST);
+            ledger.edit(all.get(0).getId(), FileManager.parseTransaction("2022-05-05|05:05:05|Edited|Shell|-1000.0"));
+            ledger.delete(all.get(1).getId());
+            balance = sum(rows) - all.get(0).getAmount() - 1000.0 - all.get(1).getAmount();
+            assertEquals(balance, ledger.balance(), 0.001);
+        }
+        String text = Files.readString(snapshot());
+        Files.writeString(snapshot(), text.replaceFirst("(?m)^version\\|\\d+$", "version|1"));
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(balance, ledger.balance(), 0.001);
+            assertEquals(rows.size() - 1, ledger.transactions().size());
+        }
+    }
+
+    @Test
+    void replacedTransactionFileIsReadAgain() throws IOException {
+        LedgerEngine.open(USER).close();
+        List<String> other = TestLedgers.rows(11, 300, 2022, 2023);
+        Files.delete(TestLedgers.ledger(USER));
+        TestLedgers.append(USER, other);
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(sum(other), ledger.balance(), 0.001);
+        }
+    }
+
+    @Test
+    void ledgersOpenSideBySideKeepTheirOwnState() throws IOException {
+        List<String> other = TestLedgers.rows(12, 200, 2021, 2021);
+        TestLedgers.append("sidebyside", other);
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            ledger.load();
+            try (LedgerEngine second = LedgerEngine.open("sidebyside")) {
+                assertEquals(sum(rows), ledger.balance(), 0.001);
+                assertEquals(sum(other), second.balance(), 0.001);
+                assertEquals(other, TestLedgers.format(second.transactions()));
+                assertFalse(ledger.byVendor("Shell").isEmpty());
+                second.delete(second.transactions().get(0).getId());
+                assertEquals(rows.size(), ledger.transactions().size());
+                assertEquals(other.size() - 1, second.transactions().size());
+            }
+            // the first ledger still reads its own rows once the second one is closed
+            assertEquals(rows, TestLedgers.format(ledger.transactions()));
+            assertEquals(sum(rows), ledger.balance(), 0.001);
+            assertTrue(ledger.between(LocalDate.of(2021, 1, 1), LocalDate.of(2021, 12, 31)).isEmpty());
+        }
+    }
+
+    private static Path snapshot() {
+        return TestLedgers.DIRECTORY.resolve(USER + "snapshot.csv");
+    }
+
+    private static double sum(List<String> lines) {
+        return lines.stream().mapToDouble(line -> FileManager.parseTransaction(line).getAmount()).sum();
+    }
+}
@@ -0,0 +1,86 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class ExternalSortTest {
+
+    private static final ExternalSort.Codec<String> STRINGS = new ExternalSort.Codec<>() {
+        @Override
+        public void write(DataOutput out, String item) throws IOException {
+            ExternalSort.Codec.writeString(out, item);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return ExternalSort.Codec.readString(in);
+        }
+    };
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TestLedgers.clean();
+    }
+
+    @Test
+    void spilledRunsMergeInOrder() throws IOException {
+        Random random = new Random(38);
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) items.add(Integer.toString(random.nextInt(1_000_000), 36) + "é".repeat(i % 3));
+        try (ExternalSort<String> sort = new ExternalSort<>(Comparator.naturalOrder(), STRINGS, 999)) {
+            for (String item : items) sort.add(item);
+            assertEquals(10, sort.spilledRuns());
+            assertEquals(items.size(), sort.size());
+            List<String> sorted = new ArrayList<>();
+            sort.sorted().forEachRemaining(sorted::add);
+            items.sort(Comparator.naturalOrder());
+            assertEquals(items, sorted);
+        }
+    }
+
+    @Test
+    void oneRunStaysInMemory() throws IOException {
+        try (ExternalSort<String> sort = new ExternalSort<>(Comparator.reverseOrder(), STRINGS, 10)) {
+            for (String item : List.of("b", "c", "a")) sort.add(item);
+            List<String> sorted = new ArrayList<>();
+            sort.sorted().forEachRemaining(sorted::add);
+            assertEquals(List.of("c", "b", "a"), sorted);
+            assertEquals(0, sort.spilledRuns());
+        }
+        try (ExternalSort<String> sort = new ExternalSort<>(Comparator.naturalOrder(), STRINGS, 10)) {
+            Iterator<String> sorted = sort.sorted();
+            assertFalse(sorted.hasNext());
+        }
+    }
+
+    @Test
+    void searchSortedKeepsEqualRowsInLedgerOrder() throws IOException {
+        List<String> lines = TestLedgers.rows(39, 3_000, 2020, 2024);
+        TestLedgers.append("sorted", lines);
+        LocalDate from = LocalDate.of(2019, 1, 1);
+        LocalDate to = LocalDate.of(2025, 1, 1);
+        try (LedgerEngine ledger = LedgerEngine.open("sorted")) {
+            for (Comparator<Transactions> order : List.of(LedgerEngine.DATE_ORDER, LedgerEngine.PRICE_ORDER, LedgerEngine.VENDOR_ORDER)) {
+                List<Transactions> expected = new ArrayList<>(ledger.search(from, to, "", "", -5_000, 5_000));
+                expected.sort(order.thenComparingLong(Transactions::getId));
+                List<Transactions> streamed = new ArrayList<>();
+                long found = ledger.searchSorted(from, to, "", "", -5_000, 5_000, order, streamed::add);
+                assertEquals(expected.size(), found);
+                assertEquals(TestLedgers.format(expected), TestLedgers.format(streamed));
+            }
+        }
+    }
+}
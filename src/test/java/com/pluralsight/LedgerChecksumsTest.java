@@ -0,0 +1,95 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LedgerChecksumsTest {
+
+    private static final String USER = "torn";
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TestLedgers.clean();
+    }
+
+    @Test
+    void tornLastRowIsQuarantinedAndCutOff() throws IOException {
+        List<String> rows = TestLedgers.rows(1, 20, 2023, 2023);
+        TestLedgers.append(USER, rows);
+        LedgerEngine.open(USER).close();
+        long length = Files.size(TestLedgers.ledger(USER));
+        TestLedgers.appendRaw(USER, "2023-05-06|10:1");
+
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(1, ledger.recovery().quarantined());
+            assertEquals("2023-05-06|10:1".length(), ledger.recovery().truncatedBytes());
+            assertEquals(length, Files.size(TestLedgers.ledger(USER)));
+            assertTrue(Files.readString(TestLedgers.DIRECTORY.resolve(USER + "quarantine.csv")).contains("|torn|" + length + "|2023-05-06|10:1"));
+            assertEquals(rows, TestLedgers.format(ledger.transactions()));
+            assertTrue(ledger.verify().isEmpty());
+        }
+    }
+
+    @Test
+    void tornRowThatStillReadsIsQuarantinedToo() throws IOException {
+        List<String> rows = TestLedgers.rows(4, 20, 2023, 2023);
+        TestLedgers.append(USER, rows);
+        LedgerEngine.open(USER).close();
+        long length = Files.size(TestLedgers.ledger(USER));
+        // what a crash can leave of "...|landlord|-1500.0"
+        TestLedgers.appendRaw(USER, "2023-06-01|09:00:00|Rent|landlord|-15");
+
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(1, ledger.recovery().quarantined());
+            assertEquals(length, Files.size(TestLedgers.ledger(USER)));
+            assertEquals(rows, TestLedgers.format(ledger.transactions()));
+        }
+    }
+
+    @Test
+    void lastRowWithoutLineBreakIsKeptBeforeThereAreChecksums() throws IOException {
+        List<String> rows = TestLedgers.rows(2, 20, 2023, 2023);
+        TestLedgers.append(USER, rows);
+        // a file written by hand, never opened by the application
+        String last = "2023-07-08|09:30:00|Refund|Target|12.5";
+        TestLedgers.appendRaw(USER, last);
+
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(0, ledger.recovery().quarantined());
+            assertEquals(0, ledger.recovery().truncatedBytes());
+            assertTrue(Files.readString(TestLedgers.ledger(USER)).endsWith(last + "\n"));
+            List<String> expected = new ArrayList<>(rows);
+            expected.add(last);
+            assertEquals(expected, TestLedgers.format(ledger.transactions()));
+            assertTrue(ledger.verify().isEmpty());
+        }
+    }
+
+    @Test
+    void rowAppendedAfterRecoveryIsNotGluedOntoTheTornRow() throws IOException {
+        List<String> rows = TestLedgers.rows(3, 5, 2023, 2023);
+        TestLedgers.append(USER, rows);
+        LedgerEngine.open(USER).close();
+        TestLedgers.appendRaw(USER, "2023-01-0");
+        Transactions added = FileManager.parseTransaction("2023-02-03|08:00:00|Coffee|Corner Cafe|-3.5");
+
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            ledger.append(added);
+        }
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(0, ledger.recovery().quarantined());
+            List<String> expected = new ArrayList<>(rows);
+            expected.add(FileManager.formatTransaction(added));
+            assertEquals(expected, TestLedgers.format(ledger.transactions()));
+            assertEquals(expected, Files.readAllLines(TestLedgers.ledger(USER)));
+        }
+    }
+}
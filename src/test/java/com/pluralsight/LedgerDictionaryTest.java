@@ -0,0 +1,74 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LedgerDictionaryTest {
+
+    @Test
+    void equalStringsShareOneCopy() {
+        LedgerDictionary dictionary = new LedgerDictionary();
+        Transactions first = row("Coffee", "Corner Cafe");
+        Transactions second = row("Coffee", "Corner Cafe");
+        assertNotSame(first.getVendor(), second.getVendor());
+        dictionary.intern(first);
+        dictionary.intern(second);
+        assertSame(first.getVendor(), second.getVendor());
+        assertSame(first.getDescription(), second.getDescription());
+        assertEquals(2, dictionary.size());
+        assertTrue(dictionary.bytesSaved() > 0);
+
+        dictionary.clear();
+        assertEquals(0, dictionary.size());
+        assertEquals(0, dictionary.bytesSaved());
+    }
+
+    @Test
+    void vendorsMatchRowsByReference() {
+        LedgerDictionary dictionary = new LedgerDictionary();
+        Transactions cafe = row("Coffee", "Corner Cafe");
+        Transactions shell = row("Fuel", "Shell");
+        dictionary.intern(cafe);
+        dictionary.intern(shell);
+        Set<String> found = dictionary.vendorsMatching(v -> v.startsWith("Corner"));
+        assertEquals(1, found.size());
+        assertTrue(found.contains(cafe.getVendor()));
+        // an equal String that isn't the dictionary's copy isn't matched
+        assertFalse(found.contains(new String("Corner Cafe")));
+    }
+
+    @Test
+    void loadedRowsShareTheirVendors() throws IOException {
+        TestLedgers.clean();
+        List<String> rows = TestLedgers.rows(49, 3_000, 2023, 2023);
+        TestLedgers.append("interned", rows);
+        try (LedgerEngine ledger = LedgerEngine.open("interned")) {
+            ledger.load();
+            List<Transactions> loaded = ledger.transactions();
+            assertEquals(rows, TestLedgers.format(loaded));
+            if (OffHeapLedger.ENABLED) return;
+            Map<String, String> first = new HashMap<>();
+            for (Transactions x : loaded) assertSame(first.computeIfAbsent(x.getVendor(), v -> v), x.getVendor());
+            List<String> shell = TestLedgers.format(ledger.byVendor("Shell"));
+            assertEquals(rows.stream().filter(line -> line.contains("|Shell|")).toList(), shell);
+        }
+    }
+
+    private static Transactions row(String description, String vendor) {
+        // new Strings, the way split() hands them out for every row read
+        return new Transactions(new String(description), new String(vendor), LocalDate.of(2024, 1, 2), LocalTime.NOON, -1);
+    }
+}
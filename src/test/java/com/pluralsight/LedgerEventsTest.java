@@ -0,0 +1,84 @@
+package com.pluralsight;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LedgerEventsTest {
+
+    private static final String USER = "recorded";
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TestLedgers.clean();
+        TestLedgers.append(USER, TestLedgers.rows(42, 1_000, 2022, 2023));
+    }
+
+    @Test
+    void ledgerWorkShowsInARecording() throws IOException {
+        Path file = TestLedgers.DIRECTORY.resolve("ledger.jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : List.of("Load", "Append", "Report", "Search", "ReportFileWrite")) {
+                recording.enable("com.pluralsight.ledger." + name).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+                ledger.search(LocalDate.of(2021, 1, 1), LocalDate.of(2024, 1, 1), "", "shell", -10_000, 10_000);
+                ledger.topVendors(TestLedgers.FIRST, TestLedgers.LAST, 3);
+                ledger.load();
+                ledger.append(FileManager.parseTransaction("2024-01-01|10:00:00|Fuel|Shell|-30.0"));
+                Files.writeString(TestLedgers.DIRECTORY.resolve("statement.csv"), "2024-01-01,SHELL,-30.00\n");
+                ledger.reconcile(TestLedgers.DIRECTORY.resolve("statement.csv").toString(), 0, 0, "AllTransactions/reconcile-");
+            }
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+        RecordedEvent load = only(events, "Load");
+        assertEquals(USER, load.getString("user"));
+        assertEquals(1_000, load.getLong("rows"));
+        assertEquals(Files.size(TestLedgers.ledger(USER)) - "2024-01-01|10:00:00|Fuel|Shell|-30.0\n".length(), load.getLong("bytes"));
+
+        RecordedEvent append = only(events, "Append");
+        assertEquals("Shell", append.getString("vendor"));
+        assertEquals(-30.0, append.getDouble("amount"));
+
+        RecordedEvent search = only(events, "Search");
+        assertEquals(1_000, search.getLong("rowsScanned"));
+        assertTrue(search.getString("plan").startsWith("partitions"), search.getString("plan"));
+        assertTrue(search.getString("criteria").contains("vendor=shell"), search.getString("criteria"));
+
+        RecordedEvent report = events.stream().filter(e -> name(e).equals("Report") && e.getString("type").equals("topVendors"))
+                .findFirst().orElseThrow();
+        assertEquals(1_000, report.getLong("rowsScanned"));
+        assertEquals(6, report.getLong("rowsEmitted"));
+
+        RecordedEvent reconcile = events.stream().filter(e -> name(e).equals("Report") && e.getString("type").equals("reconcile"))
+                .findFirst().orElseThrow();
+        assertEquals(1_001, reconcile.getLong("rowsEmitted"));
+        assertTrue(reconcile.getDuration().toNanos() > 0);
+    }
+
+    private static RecordedEvent only(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> found = events.stream().filter(e -> name(e).equals(name)).toList();
+        assertEquals(1, found.size(), name);
+        return found.get(0);
+    }
+
+    private static String name(RecordedEvent event) {
+        return event.getEventType().getName().substring("com.pluralsight.ledger.".length());
+    }
+}
@@ -0,0 +1,49 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LedgerFollowerTest {
+
+    private static final String USER = "followed";
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TestLedgers.clean();
+        TestLedgers.append(USER, List.of("2024-01-02|10:00:00|Coffee|Corner Cafe|-3.5"));
+    }
+
+    @Test
+    void rowsAppendedByAnotherProgramArrive() throws Exception {
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            ledger.load();
+            ledger.follower().start();
+            // a row is only picked up once its line break is written
+            TestLedgers.appendRaw(USER, "2024-01-03|11:00:00|Lunch|Corner");
+            Thread.sleep(3_000);
+            assertEquals(-3.5, ledger.balance(), 0.001);
+            TestLedgers.appendRaw(USER, " Cafe|-12.0\n2024-01-04|09:00:00|Pay|Payroll Inc|100.0\n");
+            waitFor(() -> Math.abs(ledger.balance() - 84.5) < 0.001);
+
+            assertEquals(2, ledger.follower().drain());
+            assertEquals(List.of("2024-01-02|10:00:00|Coffee|Corner Cafe|-3.5", "2024-01-03|11:00:00|Lunch|Corner Cafe|-12.0",
+                    "2024-01-04|09:00:00|Pay|Payroll Inc|100.0"), TestLedgers.format(ledger.transactions()));
+            assertEquals(0, ledger.follower().drain());
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 15_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(50);
+        }
+    }
+}
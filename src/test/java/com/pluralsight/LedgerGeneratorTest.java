@@ -0,0 +1,71 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LedgerGeneratorTest {
+
+    // more than one chunk, so chunks built in parallel are checked to be written in order
+    private static final long ROWS = 300_000;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TestLedgers.clean();
+    }
+
+    @Test
+    void sameSeedGivesTheSameFile() throws Exception {
+        Path first = TestLedgers.DIRECTORY.resolve("first.csv");
+        Path second = TestLedgers.DIRECTORY.resolve("second.csv");
+        Path other = TestLedgers.DIRECTORY.resolve("other.csv");
+        new LedgerGenerator(ROWS, 40, 500).write(first);
+        new LedgerGenerator(ROWS, 40, 500).write(second);
+        new LedgerGenerator(ROWS, 41, 500).write(other);
+        assertEquals(-1, Files.mismatch(first, second));
+        assertNotEquals(-1, Files.mismatch(first, other));
+    }
+
+    @Test
+    void rowsAreReadableAndInDateOrder() throws Exception {
+        Path file = TestLedgers.DIRECTORY.resolve("generated.csv");
+        new LedgerGenerator(ROWS, 42, 500).write(file);
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(ROWS, lines.size());
+        LocalDate previous = LocalDate.MIN;
+        long deposits = 0;
+        Map<String, Integer> vendors = new HashMap<>();
+        for (String line : lines) {
+            Transactions x = FileManager.parseTransaction(line);
+            assertFalse(x.getDate().isBefore(previous), line);
+            previous = x.getDate();
+            if (x.getAmount() > 0) deposits++;
+            else vendors.merge(x.getVendor(), 1, Integer::sum);
+        }
+        // about one row in 15 is a deposit
+        assertEquals(ROWS / 15.0, deposits, ROWS / 100.0);
+        // a few vendors get most of the payments
+        int top = vendors.values().stream().sorted((a, b) -> b - a).limit(10).mapToInt(Integer::intValue).sum();
+        assertTrue(top > (ROWS - deposits) / 4, "top 10 vendors have " + top + " rows");
+    }
+
+    @Test
+    void commandLineWritesTheFile() throws IOException {
+        Path file = TestLedgers.DIRECTORY.resolve("cli.csv");
+        assertEquals(0, LedgerGenerator.run(new String[]{"--generate", file.toString(), "1_000", "--seed", "7", "--vendors", "20"}));
+        assertEquals(1_000, Files.readAllLines(file).size());
+        assertEquals(1, LedgerGenerator.run(new String[]{"--generate", file.toString()}));
+    }
+}
@@ -0,0 +1,104 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LedgerIndexTest {
+
+    private static final String USER = "indexed";
+
+    private List<String> rows;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TestLedgers.clean();
+        rows = TestLedgers.rows(7, 2_000, 2023, 2023);
+        rows.set(rows.size() - 1, "2023-01-01|09:00:00|Groceries|Fresh Mart|-25.5");
+        TestLedgers.append(USER, rows);
+    }
+
+    @Test
+    void unchangedLedgerKeepsItsIndex() throws IOException {
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(vendorRows("Fresh Mart"), TestLedgers.format(ledger.byVendor("Fresh Mart")));
+        }
+        long rebuilds = rebuilds();
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(vendorRows("Shell"), TestLedgers.format(ledger.byVendor("Shell")));
+            assertFalse(ledger.isLoaded());
+        }
+        assertEquals(rebuilds, rebuilds());
+    }
+
+    @Test
+    void rowChangedByHandRebuildsTheIndex() throws IOException {
+        int last = rows.size() - 1;
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertTrue(TestLedgers.format(ledger.byVendor("Fresh Mart")).contains(rows.get(last)));
+        }
+        // the same length, so the file is modified in place and its last row no longer matches its checksum
+        String text = Files.readString(TestLedgers.ledger(USER));
+        int at = text.lastIndexOf("|Fresh Mart|");
+        Files.writeString(TestLedgers.ledger(USER), text.substring(0, at) + "|Shell Oil!|" + text.substring(at + "|Fresh Mart|".length()));
+        Files.setLastModifiedTime(TestLedgers.ledger(USER), FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        rows.set(last, rows.get(last).replace("|Fresh Mart|", "|Shell Oil!|"));
+
+        long rebuilds = rebuilds();
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(vendorRows("Fresh Mart"), TestLedgers.format(ledger.byVendor("Fresh Mart")));
+            assertEquals(List.of(rows.get(last)), TestLedgers.format(ledger.byVendor("Shell Oil")));
+        }
+        assertTrue(rebuilds() > rebuilds);
+    }
+
+    @Test
+    void appendedRowsAreIndexed() throws IOException {
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            ledger.byVendor("Target");
+            ledger.append(FileManager.parseTransaction("2023-12-30|18:00:00|Gift|TARGET|-80.0"));
+        }
+        rows.add("2023-12-30|18:00:00|Gift|TARGET|-80.0");
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            List<String> found = TestLedgers.format(ledger.byVendor("Target"));
+            assertEquals(vendorRows("Target"), found);
+            assertTrue(found.contains("2023-12-30|18:00:00|Gift|TARGET|-80.0"));
+        }
+    }
+
+    @Test
+    void rowsAppendedByAnotherProgramKeepTheIndex() throws IOException {
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            ledger.byVendor("Target");
+        }
+        List<String> added = List.of("2023-12-30|18:00:00|Gift|TARGET|-80.0", "2023-12-31|08:00:00|Fuel|Shell|-30.0");
+        TestLedgers.append(USER, added);
+        Files.setLastModifiedTime(TestLedgers.ledger(USER), FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        rows.addAll(added);
+
+        long rebuilds = rebuilds();
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(vendorRows("Target"), TestLedgers.format(ledger.byVendor("Target")));
+            assertEquals(vendorRows("Shell"), TestLedgers.format(ledger.byVendor("Shell")));
+        }
+        assertEquals(rebuilds, rebuilds());
+    }
+
+    // the rows whose vendor reduces to the same text, in ledger order
+    private List<String> vendorRows(String vendor) {
+        String reduced = VendorCanonicalizer.reduce(vendor);
+        return rows.stream().filter(line -> VendorCanonicalizer.reduce(line.split("\\|")[3]).equals(reduced)).toList();
+    }
+
+    private static long rebuilds() {
+        return ((Metrics.Counter) Metrics.all().get("ledger.index.rebuilds")).getCount();
+    }
+}
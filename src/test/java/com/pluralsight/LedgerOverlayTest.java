@@ -0,0 +1,127 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LedgerOverlayTest {
+
+    private static final String USER = "overlay";
+    private static final LocalDate FROM = LocalDate.of(2020, 1, 1);
+    private static final LocalDate TO = LocalDate.of(2021, 12, 31);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TestLedgers.clean();
+        TestLedgers.append(USER, TestLedgers.rows(4, 2_000, 2020, 2021));
+    }
+
+    @Test
+    void editsAndDeletesSurviveCompactionAndReopening() throws IOException {
+        List<String> expected;
+        double balance;
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            // every row moves into a year partition, so the changes leave dead rows in them
+            assertEquals(2, ledger.partitions().size());
+            List<Transactions> rows = ledger.between(FROM, TO);
+            Transactions moved = firstIn(rows, 2020);
+            Transactions deleted = rows.get(rows.indexOf(moved) + 1);
+            Transactions replacement = FileManager.parseTransaction("2021-06-15|12:00:00|Moved|Shell|-4321.0");
+
+            ledger.edit(moved.getId(), replacement);
+            ledger.delete(deleted.getId());
+
+            expected = TestLedgers.format(rows);
+            expected.remove(FileManager.formatTransaction(deleted));
+            expected.remove(FileManager.formatTransaction(moved));
+            expected.add(FileManager.formatTransaction(replacement));
+            balance = rows.stream().mapToDouble(Transactions::getAmount).sum() - deleted.getAmount() - moved.getAmount() + replacement.getAmount();
+
+            assertSameRows(expected, ledger.between(FROM, TO));
+            assertTrue(ledger.between(replacement.getDate(), replacement.getDate()).stream().anyMatch(x -> x.getDescription().equals("Moved")));
+            assertFalse(ledger.between(moved.getDate(), moved.getDate()).stream().anyMatch(x -> x.getId() == moved.getId()));
+            assertEquals(balance, ledger.balance(), 0.001);
+
+            assertEquals(2, ledger.compact());
+            assertEquals(0, ledger.compact());
+            assertSameRows(expected, ledger.between(FROM, TO));
+            assertEquals(expected.size(), ledger.partitions().stream().mapToLong(LedgerPartitions.Segment::rows).sum()
+                    + ledger.log().overlay().replacements(FROM, TO).size());
+            assertQuantiles(expected, YearMonth.from(moved.getDate()), ledger);
+        }
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertSameRows(expected, ledger.between(FROM, TO));
+            assertEquals(balance, ledger.balance(), 0.001);
+            ledger.load();
+            assertSameRows(expected, ledger.transactions());
+        }
+    }
+
+    @Test
+    void manyChangesAreSettledIntoTheTransactionFileOnClose() throws IOException {
+        List<String> expected = new ArrayList<>();
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            List<Transactions> rows = ledger.between(FROM, TO);
+            for (int i = 0; i < rows.size(); i++) {
+                Transactions x = rows.get(i);
+                if (i % 2 == 0) {
+                    ledger.delete(x.getId());
+                } else if (i % 3 == 0) {
+                    Transactions replacement = FileManager.parseTransaction(FileManager.formatTransaction(x).replace("|Row ", "|Edited "));
+                    ledger.edit(x.getId(), replacement);
+                    expected.add(FileManager.formatTransaction(replacement));
+                } else {
+                    expected.add(FileManager.formatTransaction(x));
+                }
+            }
+        }
+        // the file is written again in ledger order, with the changes in it
+        assertEquals(expected, Files.readAllLines(TestLedgers.ledger(USER)));
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(0, ledger.log().overlay().size());
+            assertEquals(expected, TestLedgers.format(ledger.between(FROM, TO)));
+            assertEquals(expected.stream().mapToDouble(line -> FileManager.parseTransaction(line).getAmount()).sum(), ledger.balance(), 0.001);
+            assertTrue(ledger.verify().isEmpty());
+            assertEquals(TestLedgers.format(ledger.between(FROM, TO)).stream().filter(line -> line.contains("|Shell|")).toList(),
+                    TestLedgers.format(ledger.byVendor("Shell")));
+            Transactions last = ledger.between(FROM, TO).get(0);
+            ledger.delete(last.getId());
+            assertEquals(expected.size() - 1, ledger.between(FROM, TO).size());
+        }
+    }
+
+    private static Transactions firstIn(List<Transactions> rows, int year) {
+        for (Transactions x : rows) {
+            if (x.getDate().getYear() == year) return x;
+        }
+        throw new AssertionError("no row in " + year);
+    }
+
+    // the edited row is found by its new date, so it isn't in ledger order with the rest
+    private static void assertSameRows(List<String> expected, List<Transactions> found) {
+        List<String> sortedExpected = new ArrayList<>(expected);
+        List<String> sortedFound = TestLedgers.format(found);
+        sortedExpected.sort(null);
+        sortedFound.sort(null);
+        assertEquals(sortedExpected, sortedFound);
+    }
+
+    // the month the edited row moved out of no longer counts its old amount
+    private static void assertQuantiles(List<String> expected, YearMonth month, LedgerEngine ledger) {
+        long payments = TestLedgers.between(expected, month.atDay(1), month.atEndOfMonth()).stream()
+                .filter(line -> FileManager.parseTransaction(line).getAmount() < 0).count();
+        LedgerEngine.QuantileRow row = ledger.quantiles(month, month).stream()
+                .filter(q -> month.equals(q.month()) && q.side() == AmountQuantiles.PAYMENTS).findFirst().orElseThrow();
+        assertEquals(payments, row.sketch().count());
+    }
+}
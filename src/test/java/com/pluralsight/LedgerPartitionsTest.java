@@ -0,0 +1,128 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LedgerPartitionsTest {
+
+    private static final String USER = "pruned";
+
+    private List<String> rows;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TestLedgers.clean();
+        rows = TestLedgers.rows(5, 5_000, 2018, 2022);
+        TestLedgers.append(USER, rows);
+    }
+
+    @Test
+    void prunedReadsFindWhatAFullScanFinds() throws IOException {
+        List<LocalDate[]> ranges = ranges();
+        List<List<String>> pruned = new ArrayList<>();
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            List<LedgerPartitions.Segment> segments = ledger.partitions();
+            assertEquals(5, segments.size());
+            assertEquals(rows.size(), segments.stream().mapToLong(LedgerPartitions.Segment::rows).sum());
+            long pruneBefore = counter("ledger.partitions.segmentsPruned");
+            for (LocalDate[] range : ranges) {
+                pruned.add(TestLedgers.format(ledger.between(range[0], range[1])));
+            }
+            assertTrue(counter("ledger.partitions.segmentsPruned") > pruneBefore);
+            assertFalse(ledger.isLoaded());
+
+            ledger.load();
+            for (int i = 0; i < ranges.size(); i++) {
+                LocalDate[] range = ranges.get(i);
+                List<String> scanned = TestLedgers.format(ledger.between(range[0], range[1]));
+                assertEquals(TestLedgers.between(rows, range[0], range[1]), scanned);
+                assertEquals(scanned, pruned.get(i));
+            }
+        }
+    }
+
+    @Test
+    void rowsAppendedAfterSealingAreReadFromTheTail() throws IOException {
+        LocalDate from = LocalDate.of(2022, 3, 1);
+        LocalDate to = LocalDate.of(2022, 3, 31);
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            ledger.partitions();
+        }
+        List<String> added = List.of("2022-03-10|11:00:00|Late|Shell|-40.0", "2019-01-01|00:00:01|Late|Target|-1.0");
+        TestLedgers.append(USER, added);
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            List<String> expected = TestLedgers.between(rows, from, to);
+            expected.add(added.get(0));
+            assertEquals(expected, TestLedgers.format(ledger.between(from, to)));
+        }
+    }
+
+    @Test
+    void readsLeaveABigTailForCloseToSeal() throws IOException {
+        // well past the 1 MiB a tail can grow to before it is sealed
+        TestLedgers.append(USER, TestLedgers.rows(7, 25_000, 2023, 2023));
+        Path manifest = TestLedgers.DIRECTORY.resolve(USER + "partitions/manifest.csv");
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            assertEquals(TestLedgers.between(rows, LocalDate.of(2019, 1, 1), LocalDate.of(2019, 1, 31)),
+                    TestLedgers.format(ledger.between(LocalDate.of(2019, 1, 1), LocalDate.of(2019, 1, 31))));
+            assertFalse(Files.exists(manifest));
+        }
+        assertTrue(Files.exists(manifest));
+    }
+
+    @Test
+    void onlyBigClosedYearsAreCompressed() throws IOException {
+        List<String> few = TestLedgers.rows(8, 51, 1980, 2014);
+        List<String> many = TestLedgers.rows(9, 5_000, 2015, 2015);
+        TestLedgers.append("cold", few);
+        TestLedgers.append("cold", many);
+        try (LedgerEngine ledger = LedgerEngine.open("cold")) {
+            List<LedgerPartitions.Segment> segments = ledger.partitions();
+            assertEquals(few.size() + many.size(), segments.stream().mapToLong(LedgerPartitions.Segment::rows).sum());
+            for (LedgerPartitions.Segment segment : segments) {
+                assertEquals(segment.year() == 2015, segment.compressed(), segment.file());
+                assertTrue(segment.bytes() <= segment.rawBytes(), segment.file());
+            }
+            assertEquals(TestLedgers.between(few, LocalDate.of(1990, 1, 1), LocalDate.of(1999, 12, 31)),
+                    TestLedgers.format(ledger.between(LocalDate.of(1990, 1, 1), LocalDate.of(1999, 12, 31))));
+        }
+        // late rows of a small year are merged into its plain segment instead of adding one more file
+        TestLedgers.append("cold", List.of(few.get(0)));
+        try (LedgerEngine ledger = LedgerEngine.open("cold")) {
+            int year = LocalDate.parse(few.get(0).substring(0, 10)).getYear();
+            assertEquals(1, ledger.partitions().stream().filter(s -> s.year() == year).count());
+        }
+    }
+
+    // ranges inside one year, across years, and past either end of the ledger
+    private static List<LocalDate[]> ranges() {
+        Random random = new Random(6);
+        List<LocalDate[]> ranges = new ArrayList<>();
+        ranges.add(new LocalDate[]{LocalDate.of(2019, 1, 1), LocalDate.of(2019, 12, 31)});
+        ranges.add(new LocalDate[]{LocalDate.of(2020, 12, 31), LocalDate.of(2021, 1, 1)});
+        ranges.add(new LocalDate[]{LocalDate.of(2000, 1, 1), LocalDate.of(2018, 2, 1)});
+        ranges.add(new LocalDate[]{LocalDate.of(2022, 11, 30), LocalDate.of(2030, 1, 1)});
+        ranges.add(new LocalDate[]{LocalDate.of(2010, 1, 1), LocalDate.of(2012, 1, 1)});
+        for (int i = 0; i < 10; i++) {
+            LocalDate from = LocalDate.of(2018, 1, 1).plusDays(random.nextInt(5 * 365));
+            ranges.add(new LocalDate[]{from, from.plusDays(random.nextInt(120))});
+        }
+        return ranges;
+    }
+
+    private static long counter(String name) {
+        return ((Metrics.Counter) Metrics.all().get(name)).getCount();
+    }
+}
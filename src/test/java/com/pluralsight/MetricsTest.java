@@ -0,0 +1,87 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsTest {
+
+    @Test
+    void everyValueFallsInABucketThatHoldsIt() {
+        Random random = new Random(41);
+        int previous = -1;
+        for (long value = 0; value < 100_000; value++) {
+            int bucket = Metrics.Histogram.bucket(value);
+            assertTrue(bucket == previous || bucket == previous + 1, "buckets go up one at a time at " + value);
+            assertTrue(value <= Metrics.Histogram.highestValue(bucket));
+            if (bucket > 0) assertTrue(value > Metrics.Histogram.highestValue(bucket - 1));
+            previous = bucket;
+        }
+        for (int i = 0; i < 100_000; i++) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            long top = Metrics.Histogram.highestValue(Metrics.Histogram.bucket(value));
+            assertTrue(top >= value && (top - value) <= value / 32 + 1, value + " is kept as " + top);
+        }
+        assertEquals(Long.MAX_VALUE, Metrics.Histogram.highestValue(Metrics.Histogram.bucket(Long.MAX_VALUE)));
+    }
+
+    @Test
+    void percentilesAreWithinABucket() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        assertEquals(0, histogram.percentile(50));
+        for (long micros = 1; micros <= 1_000; micros++) histogram.record(micros * 1_000);
+        histogram.record(-5);
+        assertEquals(1_001, histogram.getCount());
+        assertEquals(500_000, histogram.percentile(50), 500_000 / 32.0);
+        assertEquals(990_000, histogram.percentile(99), 990_000 / 32.0);
+        assertEquals(1_000_000, histogram.percentile(100));
+        assertEquals(0, histogram.percentile(0));
+        assertEquals(1.0, histogram.getMaxMillis());
+    }
+
+    @Test
+    void metricsAreSharedByName() {
+        Metrics.Counter counter = Metrics.counter("test.metrics.counter");
+        assertSame(counter, Metrics.counter("test.metrics.counter"));
+        counter.add(3);
+        assertThrows(IllegalArgumentException.class, () -> Metrics.histogram("test.metrics.counter"));
+        Metrics.gauge("test.metrics.gauge", () -> 7);
+        StringWriter text = new StringWriter();
+        Metrics.print(new PrintWriter(text, true));
+        assertTrue(text.toString().contains("count=3"), text.toString());
+        assertTrue(text.toString().contains("value=7"), text.toString());
+    }
+
+    @Test
+    void reportFileFailuresAreCounted() throws IOException {
+        TestLedgers.clean();
+        Metrics.Counter errors = (Metrics.Counter) Metrics.all().get("reportFile.errors");
+        Transactions row = new Transactions("Row", "Shell", LocalDate.of(2024, 1, 1), LocalTime.NOON, -5);
+        Path reports = Path.of("Reports");
+        Files.deleteIfExists(reports.resolve("Report.txt"));
+        Files.deleteIfExists(reports);
+        // a file where the folder should be
+        Files.writeString(reports, "");
+        long before = errors.getCount();
+        FileManager.printToReportFile(row);
+        FileManager.printToReportFile("Heading");
+        assertEquals(before + 2, errors.getCount());
+        Files.delete(reports);
+        Files.createDirectories(reports);
+        FileManager.printToReportFile(row);
+        assertEquals(before + 2, errors.getCount());
+        assertTrue(Files.readString(reports.resolve("Report.txt")).contains("Shell"));
+    }
+}
@@ -0,0 +1,107 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OffHeapLedgerTest {
+
+    private final OffHeapLedger offHeap = new OffHeapLedger();
+    private final List<Transactions> heap = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        offHeap.clear();
+    }
+
+    @Test
+    void sameRowsAsAListOnTheHeap() {
+        Random random = new Random(8);
+        for (int i = 0; i < 20_000; i++) {
+            Transactions x = row(random, i);
+            switch (random.nextInt(10)) {
+                case 0 -> {
+                    int at = random.nextInt(heap.size() + 1);
+                    heap.add(at, x);
+                    offHeap.add(at, x);
+                }
+                case 1 -> {
+                    if (heap.isEmpty()) continue;
+                    int at = random.nextInt(heap.size());
+                    assertSameRow(heap.set(at, x), offHeap.set(at, x));
+                }
+                case 2 -> {
+                    if (heap.isEmpty()) continue;
+                    int at = random.nextInt(heap.size());
+                    assertSameRow(heap.remove(at), offHeap.remove(at));
+                }
+                default -> {
+                    heap.add(x);
+                    offHeap.add(x);
+                }
+            }
+        }
+        assertSameRows(heap, offHeap);
+
+        LocalDate from = LocalDate.of(2021, 3, 1);
+        LocalDate to = LocalDate.of(2022, 8, 15);
+        List<Transactions> between = new ArrayList<>();
+        offHeap.forEachBetween(from, to, between::add);
+        assertSameRows(heap.stream().filter(x -> !x.getDate().isBefore(from) && !x.getDate().isAfter(to)).toList(), between);
+
+        Predicate<String> vendor = v -> v.startsWith("Vendor 1");
+        assertSameRows(heap.stream().filter(x -> vendor.test(x.getVendor())).toList(), offHeap.byVendor(vendor));
+    }
+
+    @Test
+    void stringsPastTheFirstTableAreStoredOnce() {
+        Random random = new Random(9);
+        // more distinct descriptions than the hash table starts with room for, every one used twice
+        for (int i = 0; i < 100_000; i++) {
+            Transactions x = row(random, i);
+            x.setDescription("Description " + (i % 50_000));
+            heap.add(x);
+            offHeap.add(x);
+        }
+        assertSameRows(heap, offHeap);
+        assertEquals(50_000 + distinctVendors(), offHeap.strings());
+
+        offHeap.clear();
+        heap.clear();
+        heap.add(row(random, 0));
+        offHeap.add(heap.get(0));
+        assertSameRows(heap, offHeap);
+    }
+
+    private long distinctVendors() {
+        return heap.stream().map(Transactions::getVendor).distinct().count();
+    }
+
+    // ids, dates and times to the second, amounts, and strings from a few common ones to many rare ones
+    private static Transactions row(Random random, int i) {
+        String vendor = random.nextInt(4) == 0 ? "Vendor " + random.nextInt(100_000) : "Vendor " + random.nextInt(50);
+        String description = random.nextBoolean() ? "Groceries" : "Note " + i + " été";
+        Transactions x = new Transactions(description, vendor, LocalDate.of(2020, 1, 1).plusDays(random.nextInt(1_500)),
+                LocalTime.ofSecondOfDay(random.nextInt(86_400)), Math.round(random.nextGaussian() * 10_000) / 100.0);
+        x.setId(random.nextLong() & Long.MAX_VALUE);
+        return x;
+    }
+
+    private static void assertSameRow(Transactions expected, Transactions found) {
+        assertEquals(FileManager.formatTransaction(expected), FileManager.formatTransaction(found));
+        assertEquals(expected.getId(), found.getId());
+    }
+
+    private static void assertSameRows(List<Transactions> expected, List<Transactions> found) {
+        assertEquals(expected.size(), found.size());
+        for (int i = 0; i < expected.size(); i++) assertSameRow(expected.get(i), found.get(i));
+    }
+}
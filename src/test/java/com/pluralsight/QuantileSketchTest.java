@@ -0,0 +1,105 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantileSketchTest {
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TestLedgers.clean();
+    }
+
+    @Test
+    void smallSketchesAreExact() {
+        QuantileSketch sketch = new QuantileSketch();
+        assertTrue(Double.isNaN(sketch.quantile(0.5)));
+        for (int i = 100; i >= 1; i--) sketch.update(i);
+        assertEquals(100, sketch.count());
+        assertEquals(1, sketch.quantile(0));
+        assertEquals(50, sketch.quantile(0.5));
+        assertEquals(99, sketch.quantile(0.99));
+        assertEquals(100, sketch.quantile(1));
+    }
+
+    @Test
+    void largeSketchesStayWithinTheRankError() {
+        Random random = new Random(16);
+        QuantileSketch sketch = new QuantileSketch();
+        double[] values = new double[200_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.exp(random.nextGaussian() * 2);
+            sketch.update(values[i]);
+        }
+        assertRanks(values, sketch);
+        assertTrue(sketch.serialize().length() < 100_000, "the sketch stays small");
+    }
+
+    @Test
+    void mergedSketchesAnswerForBoth() {
+        Random random = new Random(17);
+        QuantileSketch left = new QuantileSketch();
+        QuantileSketch right = new QuantileSketch();
+        double[] values = new double[100_000];
+        for (int i = 0; i < values.length; i++) {
+            // two different distributions, so a merge that dropped one side would show
+            values[i] = i % 2 == 0 ? random.nextDouble() * 100 : 1_000 + random.nextDouble() * 100;
+            (i % 2 == 0 ? left : right).update(values[i]);
+        }
+        left.merge(right);
+        assertEquals(values.length, left.count());
+        assertRanks(values, left);
+    }
+
+    @Test
+    void serializedSketchGivesTheSameAnswers() {
+        Random random = new Random(18);
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = 0; i < 10_000; i++) sketch.update(random.nextInt(5_000) / 100.0);
+        QuantileSketch copy = QuantileSketch.deserialize(sketch.serialize());
+        assertEquals(sketch.count(), copy.count());
+        for (double q : new double[]{0.1, 0.5, 0.9, 0.99}) assertEquals(sketch.quantile(q), copy.quantile(q));
+    }
+
+    @Test
+    void monthlyQuantilesComeFromTheLedger() throws IOException {
+        TestLedgers.append("quantiles", List.of(
+                "2024-01-02|10:00:00|a|Shop|-10.0", "2024-01-03|10:00:00|b|Shop|-30.0", "2024-01-04|10:00:00|c|Shop|-20.0",
+                "2024-01-05|10:00:00|d|Payroll Inc|500.0", "2024-02-01|10:00:00|e|Shop|-7.0"));
+        try (LedgerEngine ledger = LedgerEngine.open("quantiles")) {
+            List<LedgerEngine.QuantileRow> rows = ledger.quantiles(YearMonth.of(2024, 1), YearMonth.of(2024, 2));
+            LedgerEngine.QuantileRow january = find(rows, YearMonth.of(2024, 1), AmountQuantiles.PAYMENTS);
+            assertEquals(3, january.sketch().count());
+            assertEquals(20, january.sketch().quantile(0.5));
+            assertEquals(1, find(rows, YearMonth.of(2024, 1), AmountQuantiles.DEPOSITS).sketch().count());
+            assertEquals(4, find(rows, null, AmountQuantiles.PAYMENTS).sketch().count());
+            assertEquals(7, find(rows, null, AmountQuantiles.PAYMENTS).sketch().quantile(0));
+        }
+    }
+
+    private static LedgerEngine.QuantileRow find(List<LedgerEngine.QuantileRow> rows, YearMonth month, int side) {
+        return rows.stream().filter(r -> Objects.equals(r.month(), month) && r.side() == side).findFirst().orElseThrow();
+    }
+
+    // every estimated quantile is within 2% of the rank it was asked for
+    private static void assertRanks(double[] values, QuantileSketch sketch) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double q : new double[]{0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99}) {
+            double estimate = sketch.quantile(q);
+            int rank = Arrays.binarySearch(sorted, estimate);
+            assertTrue(rank >= 0, "the estimate is one of the values");
+            assertEquals(q, rank / (double) sorted.length, 0.02, "quantile " + q);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReconcilerTest {
+
+    private static final String USER = "reconcile";
+    private static final String PREFIX = "AllTransactions/reconcile-";
+    private static final Path STATEMENT = Path.of("AllTransactions/statement.csv");
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TestLedgers.clean();
+    }
+
+    @Test
+    void matchesWithinTheTolerances() throws IOException {
+        TestLedgers.append(USER, List.of(
+                "2024-01-10|09:00:00|Rent|Landlord|-1500.0",
+                "2024-01-12|09:00:00|Gas|Shell|-40.0",
+                "2024-01-15|09:00:00|Coffee|Corner Cafe|-4.5",
+                "2024-01-20|09:00:00|Pay|Payroll Inc|2000.0",
+                "2024-02-01|09:00:00|Snack|Corner Cafe|-3.0"));
+        Files.write(STATEMENT, List.of(
+                "date,description,amount",
+                "2024-01-10,LANDLORD,-1500.00",
+                // two days and one cent off
+                "2024-01-14,SHELL 0042,-40.01",
+                // four days off
+                "2024-01-19,CORNER CAFE,-4.50",
+                "2024-01-20,PAYROLL,2000.00",
+                "2024-01-22,PAYROLL,2000.00"));
+        Reconciler.Summary summary = reconcile(2, 1);
+        assertEquals(3, summary.matched());
+        assertEquals(2, summary.ledgerOnly());
+        assertEquals(2, summary.statementOnly());
+        assertEquals(List.of("2024-01-10|09:00:00|Rent|Landlord|-1500.0|2024-01-10,LANDLORD,-1500.00",
+                        "2024-01-12|09:00:00|Gas|Shell|-40.0|2024-01-14,SHELL 0042,-40.01",
+                        "2024-01-20|09:00:00|Pay|Payroll Inc|2000.0|2024-01-20,PAYROLL,2000.00"),
+                sorted(PREFIX + "matched.csv"));
+        assertEquals(List.of("2024-01-15|09:00:00|Coffee|Corner Cafe|-4.5", "2024-02-01|09:00:00|Snack|Corner Cafe|-3.0"),
+                sorted(PREFIX + "ledger-only.csv"));
+        assertEquals(List.of("2024-01-19,CORNER CAFE,-4.50", "2024-01-22,PAYROLL,2000.00"), sorted(PREFIX + "statement-only.csv"));
+
+        summary = reconcile(0, 0);
+        assertEquals(2, summary.matched());
+    }
+
+    @Test
+    void closestAmountThenClosestDateWins() throws IOException {
+        TestLedgers.append(USER, List.of("2024-03-10|09:00:00|Shop|Target|-20.0"));
+        Files.write(STATEMENT, List.of(
+                "2024-03-10|TARGET|-20.05",
+                "2024-03-13|TARGET|-20.01",
+                "2024-03-09|TARGET|-20.01"));
+        assertEquals(1, reconcile(5, 10).matched());
+        assertEquals(List.of("2024-03-10|09:00:00|Shop|Target|-20.0|2024-03-09|TARGET|-20.01"), sorted(PREFIX + "matched.csv"));
+    }
+
+    @Test
+    void editedAndDeletedRowsAreReconciledAsTheyAreNow() throws IOException {
+        TestLedgers.append(USER, List.of("2024-04-01|09:00:00|A|Shell|-10.0", "2024-04-02|09:00:00|B|Shell|-11.0"));
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            List<Transactions> rows = ledger.between(TestLedgers.FIRST, TestLedgers.LAST);
+            ledger.edit(rows.get(0).getId(), FileManager.parseTransaction("2024-04-05|09:00:00|A|Shell|-12.0"));
+            ledger.delete(rows.get(1).getId());
+            Files.write(STATEMENT, List.of("2024-04-05,SHELL,-12.00", "2024-04-02,SHELL,-11.00"));
+            Reconciler.Summary summary = ledger.reconcile(STATEMENT.toString(), 0, 0, PREFIX);
+            assertEquals(1, summary.matched());
+            assertEquals(0, summary.ledgerOnly());
+            assertEquals(List.of("2024-04-02,SHELL,-11.00"), sorted(PREFIX + "statement-only.csv"));
+        }
+    }
+
+    @Test
+    void everyRowEndsUpInExactlyOneFile() throws IOException {
+        List<String> lines = TestLedgers.rows(37, 5_000, 2023, 2024);
+        TestLedgers.append(USER, lines);
+        Random random = new Random(37);
+        List<String> statement = new ArrayList<>();
+        for (String line : lines) {
+            if (random.nextInt(10) == 0) continue;
+            String[] t = line.split("\\|");
+            statement.add(t[0] + "," + t[3] + "," + t[4]);
+        }
+        for (int i = 0; i < 300; i++) statement.add("2024-06-" + (10 + i % 20) + ",EXTRA," + (-100_000 - i));
+        Collections.shuffle(statement, random);
+        Files.write(STATEMENT, statement);
+        Reconciler.Summary summary = reconcile(0, 0);
+        assertEquals(statement.size() - 300, summary.matched());
+        assertEquals(lines.size() - summary.matched(), summary.ledgerOnly());
+        assertEquals(300, summary.statementOnly());
+        List<String> matched = sorted(PREFIX + "matched.csv");
+        HashSet<String> ledgerRows = new HashSet<>();
+        for (String pair : matched) ledgerRows.add(String.join("|", List.of(pair.split("\\|")).subList(0, 5)));
+        assertEquals(matched.size(), ledgerRows.size());
+        assertTrue(lines.containsAll(ledgerRows));
+    }
+
+    private static Reconciler.Summary reconcile(int days, long cents) throws IOException {
+        // through a LedgerEngine, so the edits of the ledgers other tests opened are not applied
+        try (LedgerEngine ledger = LedgerEngine.open(USER)) {
+            return ledger.reconcile(STATEMENT.toString(), days, cents, PREFIX);
+        }
+    }
+
+    private static List<String> sorted(String file) throws IOException {
+        List<String> lines = new ArrayList<>(Files.readAllLines(Path.of(file)));
+        Collections.sort(lines);
+        return lines;
+    }
+}
@@ -0,0 +1,64 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecurringDetectorTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 3);
+
+    @Test
+    void findsEachCadenceWithItsNextDate() {
+        List<Transactions> rows = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            rows.add(row("Netflix", START.plusMonths(i), i % 2 == 0 ? -15.49 : -15.51));
+            rows.add(row("Payroll Inc", START.plusWeeks(2L * i), 2000));
+            rows.add(row("Gym", START.plusWeeks(i), -10));
+        }
+        for (int i = 0; i < 4; i++) rows.add(row("Insurance", START.plusYears(i), -600));
+        // the same vendor at a very different amount is a series of its own
+        for (int i = 0; i < 4; i++) rows.add(row("netflix", START.plusMonths(3L * i), -99));
+        Collections.shuffle(rows, new Random(34));
+
+        List<RecurringDetector.Series> found = RecurringDetector.detect(rows, new VendorCanonicalizer());
+        assertEquals(RecurringDetector.Cadence.MONTHLY, series(found, "Netflix", -15.49).cadence());
+        assertEquals(12, series(found, "Netflix", -15.49).occurrences());
+        assertEquals(START.plusMonths(12), series(found, "Netflix", -15.49).nextDate());
+        assertEquals(RecurringDetector.Cadence.QUARTERLY, series(found, "Netflix", -99).cadence());
+        assertEquals(RecurringDetector.Cadence.BIWEEKLY, series(found, "Payroll Inc", 2000).cadence());
+        assertEquals(START.plusWeeks(22), series(found, "Payroll Inc", 2000).lastDate());
+        assertEquals(RecurringDetector.Cadence.WEEKLY, series(found, "Gym", -10).cadence());
+        assertEquals(RecurringDetector.Cadence.YEARLY, series(found, "Insurance", -600).cadence());
+        for (int i = 1; i < found.size(); i++) {
+            assertTrue(!found.get(i).nextDate().isBefore(found.get(i - 1).nextDate()));
+        }
+    }
+
+    @Test
+    void irregularAndRareRowsAreNotSeries() {
+        List<Transactions> rows = new ArrayList<>();
+        Random random = new Random(35);
+        for (int i = 0; i < 30; i++) rows.add(row("Corner Cafe", START.plusDays(random.nextInt(365)), -4.5));
+        rows.add(row("Landlord", START, -1500));
+        rows.add(row("Landlord", START.plusMonths(1), -1500));
+        assertEquals(List.of(), RecurringDetector.detect(rows, new VendorCanonicalizer()));
+    }
+
+    private static RecurringDetector.Series series(List<RecurringDetector.Series> found, String vendor, double amount) {
+        return found.stream().filter(s -> s.vendor().equalsIgnoreCase(vendor) && Math.abs(s.typicalAmount() - amount) < 1)
+                .findFirst().orElseThrow(() -> new AssertionError("no series for " + vendor + " " + amount));
+    }
+
+    private static Transactions row(String vendor, LocalDate date, double amount) {
+        return new Transactions("Row", vendor, date, LocalTime.NOON, amount);
+    }
+}
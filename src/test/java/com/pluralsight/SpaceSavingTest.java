@@ -0,0 +1,119 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpaceSavingTest {
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TestLedgers.clean();
+    }
+
+    @Test
+    void countsAreExactWhileTheKeysFit() {
+        SpaceSaving sketch = new SpaceSaving(4);
+        sketch.offer("a", 5);
+        sketch.offer("b", 1);
+        sketch.offer("a", 2);
+        sketch.offer("c", 3);
+        assertTrue(sketch.isExact());
+        assertEquals(List.of(new SpaceSaving.Counter("a", 7, 0), new SpaceSaving.Counter("c", 3, 0)), sketch.top(2));
+        assertEquals(3, sketch.size());
+    }
+
+    @Test
+    void heavyKeysAreKeptAndNeverUnderCounted() {
+        Random random = new Random(12);
+        SpaceSaving sketch = new SpaceSaving(20);
+        Map<String, Double> truth = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            // three heavy keys among thousands of light ones
+            String key = random.nextInt(4) == 0 ? "heavy" + random.nextInt(3) : "light" + random.nextInt(5_000);
+            sketch.offer(key, 1);
+            truth.merge(key, 1.0, Double::sum);
+        }
+        assertFalse(sketch.isExact());
+        List<SpaceSaving.Counter> top = sketch.top(3);
+        for (SpaceSaving.Counter c : top) {
+            assertTrue(c.key().startsWith("heavy"), c.key());
+            assertBounds(truth.get(c.key()), c);
+        }
+    }
+
+    @Test
+    void mergedSketchesBoundTheTrueWeights() {
+        Random random = new Random(13);
+        SpaceSaving left = new SpaceSaving(30);
+        SpaceSaving right = new SpaceSaving(30);
+        Map<String, Double> truth = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            String key = "k" + (int) Math.abs(random.nextGaussian() * 40);
+            double weight = 1 + random.nextInt(10);
+            (i % 2 == 0 ? left : right).offer(key, weight);
+            truth.merge(key, weight, Double::sum);
+        }
+        left.offer("big", 5_000);
+        right.offer("big", 5_000);
+        truth.put("big", 10_000.0);
+        left.merge(right);
+        assertEquals(30, left.size());
+        for (SpaceSaving.Counter c : left.top(30)) assertBounds(truth.getOrDefault(c.key(), 0.0), c);
+        assertEquals("big", left.top(1).get(0).key());
+    }
+
+    @Test
+    void mergingExactSketchesStaysExact() {
+        SpaceSaving left = new SpaceSaving(10);
+        SpaceSaving right = new SpaceSaving(10);
+        left.offer("a", 1);
+        right.offer("a", 2);
+        right.offer("b", 4);
+        left.merge(right);
+        assertTrue(left.isExact());
+        assertEquals(List.of(new SpaceSaving.Counter("b", 4, 0), new SpaceSaving.Counter("a", 3, 0)), left.top(5));
+    }
+
+    @Test
+    void partitionsAndRowsInMemoryFindTheSameTopVendors() throws IOException {
+        TestLedgers.append("vendors", TestLedgers.rows(14, 3_000, 2021, 2023));
+        LocalDate from = LocalDate.of(2021, 6, 1);
+        LocalDate to = LocalDate.of(2023, 2, 1);
+        try (LedgerEngine ledger = LedgerEngine.open("vendors")) {
+            ledger.partitions();
+            VendorAnalytics.Result fromPartitions = ledger.topVendors(from, to, 5);
+            assertFalse(ledger.isLoaded());
+            ledger.load();
+            VendorAnalytics.Result inMemory = ledger.topVendors(from, to, 5);
+            assertTrue(inMemory.exact());
+            assertEquals(inMemory.exact(), fromPartitions.exact());
+            assertSameCounts(inMemory.bySpend(), fromPartitions.bySpend());
+            assertSameCounts(inMemory.byFrequency(), fromPartitions.byFrequency());
+        }
+    }
+
+    private static void assertSameCounts(List<SpaceSaving.Counter> expected, List<SpaceSaving.Counter> found) {
+        assertEquals(expected.size(), found.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).key(), found.get(i).key());
+            assertEquals(expected.get(i).weight(), found.get(i).weight(), 0.001);
+        }
+    }
+
+    // the estimate is never below the true weight, and never more than its error above it
+    private static void assertBounds(double truth, SpaceSaving.Counter c) {
+        assertTrue(c.weight() >= truth - 1e-9, c.toString());
+        assertTrue(c.weight() - c.error() <= truth + 1e-9, c.toString());
+    }
+}
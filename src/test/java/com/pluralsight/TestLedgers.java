@@ -0,0 +1,97 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Writes ledgers for the tests into AllTransactions, under the working directory the tests run in (see pom.xml).
+ */
+final class TestLedgers {
+
+    static final Path DIRECTORY = Path.of("AllTransactions");
+    // a range holding every row the tests write
+    static final LocalDate FIRST = LocalDate.of(1900, 1, 1);
+    static final LocalDate LAST = LocalDate.of(2100, 12, 31);
+
+    private TestLedgers() { }
+
+    /**
+     * Deletes every file a ledger left behind, so each test starts with an empty AllTransactions.
+     */
+    static void clean() throws IOException {
+        if (Files.exists(DIRECTORY)) {
+            try (Stream<Path> files = Files.walk(DIRECTORY)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(file);
+            }
+        }
+        Files.createDirectories(DIRECTORY);
+    }
+
+    /** @return The transaction file of a user. */
+    static Path ledger(String user) {
+        return DIRECTORY.resolve(user + Screen.FILE_NAME);
+    }
+
+    /**
+     * Writes rows to the end of a user's transaction file, each with its line break.
+     */
+    static void append(String user, List<String> lines) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) sb.append(line).append('\n');
+        appendRaw(user, sb.toString());
+    }
+
+    /**
+     * Writes text to the end of a user's transaction file as it is (to tear the last row, for example).
+     */
+    static void appendRaw(String user, String text) throws IOException {
+        Files.writeString(ledger(user), text, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Makes rows with dates spread over a range of years, from a fixed seed.
+     * @return The rows, in the transaction file format.
+     */
+    static List<String> rows(long seed, int count, int firstYear, int lastYear) {
+        Random random = new Random(seed);
+        String[] vendors = {"Fresh Mart", "Target", "Shell", "Landlord", "Payroll Inc", "Corner Cafe"};
+        LocalDate first = LocalDate.of(firstYear, 1, 1);
+        int days = (int) (LocalDate.of(lastYear, 12, 31).toEpochDay() - first.toEpochDay()) + 1;
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String vendor = vendors[random.nextInt(vendors.length)];
+            double amount = vendor.equals("Payroll Inc") ? 1000 + random.nextInt(2000) : -(1 + random.nextInt(20_000) / 100.0);
+            Transactions x = new Transactions("Row " + i, vendor, first.plusDays(random.nextInt(days)),
+                    LocalTime.ofSecondOfDay(random.nextInt(86_400)), amount);
+            lines.add(FileManager.formatTransaction(x));
+        }
+        return lines;
+    }
+
+    /** @return The rows in the transaction file format, to compare them. */
+    static List<String> format(List<Transactions> rows) {
+        List<String> lines = new ArrayList<>();
+        for (Transactions x : rows) lines.add(FileManager.formatTransaction(x));
+        return lines;
+    }
+
+    /** @return The rows of a date range, in the order they were given. */
+    static List<String> between(List<String> lines, LocalDate from, LocalDate to) {
+        List<String> found = new ArrayList<>();
+        for (String line : lines) {
+            LocalDate date = LocalDate.parse(line.substring(0, line.indexOf('|')));
+            if (!date.isBefore(from) && !date.isAfter(to)) found.add(line);
+        }
+        return found;
+    }
+}
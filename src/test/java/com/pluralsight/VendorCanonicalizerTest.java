@@ -0,0 +1,76 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VendorCanonicalizerTest {
+
+    private final VendorCanonicalizer vendors = new VendorCanonicalizer();
+
+    @Test
+    void reducesToLowerCaseLettersAndDigits() {
+        assertEquals("freshmart241", VendorCanonicalizer.reduce(" Fresh-Mart #241 "));
+        assertEquals("café", VendorCanonicalizer.reduce("CAFÉ"));
+        assertEquals("&&", VendorCanonicalizer.reduce(" && "));
+    }
+
+    @Test
+    void onlyNamesThatReduceAlikeAreOneVendor() {
+        VendorCanonicalizer.Vendor vendor = vendors.canonical("  Quikstop Market ");
+        assertEquals("Quikstop Market", vendor.name());
+        assertEquals(vendor, vendors.canonical("QUIKSTOP-MARKET"));
+        assertEquals("Quikstop Market", vendors.name("quikstopmarket"));
+        assertEquals(vendor, vendors.find("Quik Stop Market"));
+        // close names are suggested, never merged
+        assertNull(vendors.find("Quikstop Markets"));
+        assertNotEquals(vendor, vendors.canonical("Quikstop Market 2"));
+    }
+
+    @Test
+    void suggestsTheClosestKnownVendorsFirst() {
+        vendors.canonical("Zarget Stores");
+        vendors.canonical("Zarjet Stores");
+        vendors.canonical("Zzzz Unrelated Name");
+        List<String> suggestions = vendors.suggest("zarget store", 5);
+        assertEquals("Zarget Stores", suggestions.get(0));
+        assertEquals("Zarjet Stores", suggestions.get(1));
+        assertFalse(suggestions.contains("Zzzz Unrelated Name"));
+        assertEquals(1, vendors.suggest("zarget store", 1).size());
+    }
+
+    @Test
+    void treeSearchFindsWhatAFullScanFinds() {
+        Random random = new Random(36);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            StringBuilder sb = new StringBuilder("yv");
+            for (int j = 0; j < 6 + random.nextInt(4); j++) sb.append((char) ('a' + random.nextInt(6)));
+            names.add(sb.toString());
+            vendors.canonical(sb.toString());
+        }
+        for (int i = 0; i < 50; i++) {
+            String query = names.get(random.nextInt(names.size())) + "x";
+            int radius = Math.max(3, VendorCanonicalizer.reduce(query).length() / 3);
+            long expected = names.stream().distinct().filter(n -> VendorCanonicalizer.distance(query, n) <= radius).count();
+            List<String> found = vendors.suggest(query, Integer.MAX_VALUE);
+            assertEquals(expected, found.stream().filter(n -> n.startsWith("yv")).count(), query);
+        }
+    }
+
+    @Test
+    void distanceCountsEdits() {
+        assertEquals(0, VendorCanonicalizer.distance("target", "target"));
+        assertEquals(1, VendorCanonicalizer.distance("target", "tarjet"));
+        assertEquals(3, VendorCanonicalizer.distance("kitten", "sitting"));
+        assertEquals(6, VendorCanonicalizer.distance("", "target"));
+    }
+}